@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+
+/**
+ * Pending result of an asynchronous request.
+ * Cancelling the future aborts the request if it's still in progress.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public interface ApiFuture<T> extends Future<T> {
+
+    /**
+     * Add callback which is called once the request is completed, failed or cancelled.
+     * Callbacks are called in the thread which completes the request and must not block it.
+     * If the request is already completed, the callback is called at once in the calling thread.
+     */
+    void addCallback(ApiCallback<? super T> callback);
+
+    /**
+     * Wait for the result like {@link #get()}, but rethrow failure of the request as is
+     * @throws java.util.concurrent.CancellationException if the request was cancelled
+     */
+    T getResult() throws ApiException, IOException, InterruptedException;
+
+}
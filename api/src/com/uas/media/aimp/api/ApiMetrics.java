@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of per-action metrics of a plugin: latency histograms of all finished and of successful requests,
+ * count of successful, failed, timed out, cancelled and retried requests,
+ * and count of calls which shared the response of an identical request instead of sending their own.
+ * Counters of an action are created on its first request, then recording is lock-free and doesn't allocate.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class ApiMetrics {
+
+    /**
+     * Name used for requests without an action
+     */
+    public static final String UNKNOWN = "other";
+
+
+    private final ConcurrentMap<String, ActionMetrics> mActions = new ConcurrentHashMap<String, ActionMetrics>();
+
+
+    /**
+     * Record finished request
+     * @param action Name of the action, e.g. get_custom_status
+     * @param nanos Duration of the request
+     * @param failure Exception the request is failed with, null if the request succeeded
+     */
+    public void record(String action, long nanos, Throwable failure) {
+        ActionMetrics metrics = get(action);
+
+        if (failure == null) {
+            metrics.mSuccesses.incrementAndGet();
+            metrics.mSuccessLatency.record(nanos / 1000);
+        } else if (failure instanceof InterruptedException) {
+            // duration of cancelled request says nothing about the network
+            metrics.mCancels.incrementAndGet();
+            return;
+        } else if (failure instanceof InterruptedIOException) {
+            // socket, connect and pool timeouts
+            metrics.mTimeouts.incrementAndGet();
+        } else {
+            metrics.mErrors.incrementAndGet();
+        }
+        metrics.mLatency.record(nanos / 1000);
+    }
+
+    /**
+     * Histogram of latencies of successful requests of the action. Unlike {@link #getLatency(String)}
+     * it doesn't grow towards the timeout when requests time out, so it tells how long a response takes
+     * @return null if the action has no requests yet
+     */
+    public LatencyHistogram getSuccessLatency(String action) {
+        ActionMetrics metrics = mActions.get(action == null ? UNKNOWN : action);
+        return metrics == null ? null : metrics.mSuccessLatency;
+    }
+
+    public void recordRetry(String action) {
+        get(action).mRetries.incrementAndGet();
+    }
+
+    public void recordDeduplicated(String action) {
+        get(action).mDeduplicated.incrementAndGet();
+    }
+
+    /**
+     * Histogram of latencies of the action
+     * @return null if the action has no requests yet
+     */
+    public LatencyHistogram getLatency(String action) {
+        ActionMetrics metrics = mActions.get(action == null ? UNKNOWN : action);
+        return metrics == null ? null : metrics.mLatency;
+    }
+
+    public void reset() {
+        mActions.clear();
+    }
+
+    /**
+     * Current values of all actions, sorted by the 99th percentile of latency descending
+     */
+    public List<ActionStats> getSnapshot() {
+        List<ActionStats> result = new ArrayList<ActionStats>(mActions.size());
+        for (Map.Entry<String, ActionMetrics> e: mActions.entrySet()) {
+            result.add(new ActionStats(e.getKey(), e.getValue()));
+        }
+        Collections.sort(result, new Comparator<ActionStats>() {
+            @Override
+            public int compare(ActionStats lhs, ActionStats rhs) {
+                long l = lhs.getP99();
+                long r = rhs.getP99();
+                return l > r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Write snapshot as a text table, one action per line.
+     * Latencies are in milliseconds.
+     */
+    public void dump(Appendable out) throws IOException {
+        out.append(String.format(
+                "%-24s %8s %8s %8s %8s %8s %8s %9s %9s %9s %9s %9s%n",
+                "action", "ok", "errors", "timeouts", "cancels", "retries", "dedup",
+                "mean", "p50", "p95", "p99", "max"
+        ));
+        for (ActionStats s: getSnapshot()) {
+            out.append(s.toString()).append(String.format("%n"));
+        }
+    }
+
+
+    private ActionMetrics get(String action) {
+        if (action == null) {
+            action = UNKNOWN;
+        }
+        ActionMetrics metrics = mActions.get(action);
+        if (metrics == null) {
+            ActionMetrics created = new ActionMetrics();
+            metrics = mActions.putIfAbsent(action, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+
+    private static class ActionMetrics {
+        final LatencyHistogram mLatency = new LatencyHistogram();
+        final LatencyHistogram mSuccessLatency = new LatencyHistogram();
+        final AtomicLong mSuccesses = new AtomicLong();
+        final AtomicLong mErrors = new AtomicLong();
+        final AtomicLong mTimeouts = new AtomicLong();
+        final AtomicLong mCancels = new AtomicLong();
+        final AtomicLong mRetries = new AtomicLong();
+        final AtomicLong mDeduplicated = new AtomicLong();
+    }
+
+
+    /**
+     * Values of one action at the moment of snapshot. Latencies are in microseconds
+     */
+    public static class ActionStats {
+
+        private final String mAction;
+        private final long mSuccesses;
+        private final long mErrors;
+        private final long mTimeouts;
+        private final long mCancels;
+        private final long mRetries;
+        private final long mDeduplicated;
+        private final long mMean;
+        private final long mP50;
+        private final long mP95;
+        private final long mP99;
+        private final long mMax;
+
+        ActionStats(String action, ActionMetrics metrics) {
+            mAction = action;
+            mSuccesses = metrics.mSuccesses.get();
+            mErrors = metrics.mErrors.get();
+            mTimeouts = metrics.mTimeouts.get();
+            mCancels = metrics.mCancels.get();
+            mRetries = metrics.mRetries.get();
+            mDeduplicated = metrics.mDeduplicated.get();
+            mMean = metrics.mLatency.getMean();
+            mMax = metrics.mLatency.getMax();
+
+            long[] percentiles = metrics.mLatency.getValuesAtPercentiles(50, 95, 99);
+            mP50 = percentiles[0];
+            mP95 = percentiles[1];
+            mP99 = percentiles[2];
+        }
+
+        public String getAction() {
+            return mAction;
+        }
+
+        public long getSuccesses() {
+            return mSuccesses;
+        }
+
+        public long getErrors() {
+            return mErrors;
+        }
+
+        public long getTimeouts() {
+            return mTimeouts;
+        }
+
+        public long getCancels() {
+            return mCancels;
+        }
+
+        public long getRetries() {
+            return mRetries;
+        }
+
+        /**
+         * Count of calls which got the response of a concurrent identical request
+         */
+        public long getDeduplicated() {
+            return mDeduplicated;
+        }
+
+        public long getMean() {
+            return mMean;
+        }
+
+        public long getP50() {
+            return mP50;
+        }
+
+        public long getP95() {
+            return mP95;
+        }
+
+        public long getP99() {
+            return mP99;
+        }
+
+        public long getMax() {
+            return mMax;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%-24s %8d %8d %8d %8d %8d %8d %9.1f %9.1f %9.1f %9.1f %9.1f",
+                    mAction, mSuccesses, mErrors, mTimeouts, mCancels, mRetries, mDeduplicated,
+                    mMean / 1000.0, mP50 / 1000.0, mP95 / 1000.0, mP99 / 1000.0, mMax / 1000.0
+            );
+        }
+    }
+
+}
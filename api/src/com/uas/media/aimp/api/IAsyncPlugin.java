@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api;
+
+import com.uas.media.aimp.api.models.CurrentSongInfo;
+import com.uas.media.aimp.api.models.Playlist;
+import com.uas.media.aimp.api.models.Song;
+import com.uas.media.aimp.api.models.StatusSnapshot;
+
+import java.util.List;
+
+/**
+ * Non-blocking variant of {@link IPlugin}. Each method sends the request and returns at once,
+ * the result is delivered by the returned future. Many requests may be in flight at the same time
+ * without a thread per request.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public interface IAsyncPlugin {
+
+    /**
+     * Plugin which keeps settings of the remote host, traffic and metrics
+     */
+    IPlugin getPlugin();
+
+    /**
+     * Abort requests in flight and free network resources.
+     * Plugin still can be used after release, resources are allocated again on demand.
+     */
+    void release();
+
+
+    /**
+     * Check if AIMP is accessible. Future is completed with false if AIMP didn't respond correctly.
+     */
+    ApiFuture<Boolean> ping();
+
+    ApiFuture<Boolean> play();
+    ApiFuture<Boolean> play(int playlistId, int songPosition);
+    ApiFuture<Boolean> play(int playlistId, int songPosition, int playPosition);
+    ApiFuture<Boolean> stop();
+    ApiFuture<Boolean> pause();
+    ApiFuture<Boolean> next();
+    ApiFuture<Boolean> previous();
+
+    /**
+     * One of const {@link IPlugin}.PLAY_STATE_*
+     */
+    ApiFuture<Integer> getPlayState();
+
+    ApiFuture<Void> setSongPlayPosition(int second);
+    ApiFuture<Integer> getSongPlayPosition();
+
+    ApiFuture<Void> setRepeatSong(boolean state);
+    ApiFuture<Boolean> isRepeatSong();
+
+    ApiFuture<Void> setVolume(int volume);
+    ApiFuture<Integer> getVolume();
+
+    ApiFuture<Void> setMute(boolean state);
+    ApiFuture<Boolean> isMute();
+
+    ApiFuture<Void> setShuffle(boolean state);
+    ApiFuture<Boolean> isShuffle();
+
+    /**
+     * Read several custom statuses at once, see {@link IPlugin#getCustomStatuses(int...)}
+     */
+    ApiFuture<StatusSnapshot> getCustomStatuses(int... statuses);
+
+    ApiFuture<CurrentSongInfo> getCurrentSongInfo();
+
+    ApiFuture<List<Playlist>> getPlaylists();
+    ApiFuture<String> getPlaylistHash(int playlistId);
+
+    ApiFuture<List<Song>> getPlaylistSongs(int playlistId);
+    ApiFuture<Void> removeSong(int playlistId, int songPosition);
+
+}
@@ -34,8 +34,11 @@ package com.uas.media.aimp.api;
 import com.uas.media.aimp.api.models.CurrentSongInfo;
 import com.uas.media.aimp.api.models.Playlist;
 import com.uas.media.aimp.api.models.Song;
+import com.uas.media.aimp.api.models.StatusSnapshot;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.util.List;
 
 /**
@@ -62,12 +65,46 @@ public interface IPlugin {
     void setRemotePort(int port);
 
 
+	/**
+	 * Look the remote host up and cache its address for the next connections
+	 */
+	InetAddress resolveRemoteHost() throws UnknownHostException;
+
 	void setConnectionTimeout(int timeout);
 	int getConnectionTimeout();
 
+	/**
+	 * Bytes received from the remote host including HTTP headers
+	 */
 	int getTrafficIn();
+
+	/**
+	 * Bytes sent to the remote host including HTTP headers
+	 */
 	int getTrafficOut();
 
+	/**
+	 * Detailed traffic counters: per action, per caller's scope and the rate of the last minute
+	 */
+	TrafficMeter getTrafficMeter();
+
+	/**
+	 * Latency and outcome of requests per action
+	 */
+	ApiMetrics getMetrics();
+
+	/**
+	 * Abort all requests in flight, e.g. on disconnect. Blocked calls throw {@link InterruptedException} at once.
+	 * Requests sent after this call are performed as usual.
+	 */
+	void abortRequests();
+
+	/**
+	 * Close opened connections and free other network resources.
+	 * Plugin still can be used after release, resources are allocated again on demand.
+	 */
+	void release();
+
 
 	/**
 	 * Check if AIMP is accessible
@@ -105,6 +142,14 @@ public interface IPlugin {
     void setShuffle(boolean state) throws ApiException, IOException, InterruptedException;
     boolean isShuffle() throws ApiException, IOException, InterruptedException;
 
+    /**
+     * Read several custom statuses at once. Requests are overlapped,
+     * so the whole read costs about one round trip.
+     * @param statuses Codes of statuses, see {@link Statuses}
+     * @return Snapshot with integer value of each requested status
+     */
+    StatusSnapshot getCustomStatuses(int... statuses) throws ApiException, IOException, InterruptedException;
+
 
     /**
      * Get info about current playing (stopped) song
@@ -117,6 +162,15 @@ public interface IPlugin {
     String getPlaylistHash(int playlistId)throws ApiException, IOException, InterruptedException;
 
 	List<Song> getPlaylistSongs(int playlistId) throws ApiException, IOException, InterruptedException;
+
+	/**
+	 * Load songs of playlist progressively. Songs are passed to the listener by chunks
+	 * while the response is still being read, so huge playlists can be shown before they are loaded completely.
+	 * @param playlistId Id of playlist
+	 * @param chunkSize Max count of songs in one chunk
+	 * @param listener Receiver of chunks. Is called in the calling thread
+	 */
+	void getPlaylistSongs(int playlistId, int chunkSize, SongsChunkListener listener) throws ApiException, IOException, InterruptedException;
 	void removeSong(int playlistId, int songPosition) throws ApiException, IOException, InterruptedException;
 
 }
\ No newline at end of file
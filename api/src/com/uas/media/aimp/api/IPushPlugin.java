@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api;
+
+import java.io.IOException;
+
+/**
+ * Plugin which reports changes of the player itself, so the state is loaded only when it changes.
+ * The state of a plugin which doesn't implement this interface must be polled.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public interface IPushPlugin extends IPlugin {
+
+	/**
+	 * Changes reported by {@link #waitForChanges()}
+	 */
+	int CHANGE_PLAY_STATE = 1;
+	int CHANGE_CURRENT_SONG = 2;
+	int CHANGE_CONTROLS = 4;
+	int CHANGE_PLAYLISTS = 8;
+	int CHANGE_ALL = CHANGE_PLAY_STATE | CHANGE_CURRENT_SONG | CHANGE_CONTROLS | CHANGE_PLAYLISTS;
+
+
+	/**
+	 * Wait until the state of the player changes. The remote side holds the request until a change happens,
+	 * so the call may block for a minute. The first call returns {@link #CHANGE_ALL} at once.
+	 * @return Combination of CHANGE_* flags: play state or position jump, current song,
+	 * volume and modes (mute, repeat, shuffle), playlists. 0 if nothing has changed for a while
+	 */
+	int waitForChanges() throws ApiException, IOException, InterruptedException;
+
+}
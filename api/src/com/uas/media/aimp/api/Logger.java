@@ -34,6 +34,8 @@ package com.uas.media.aimp.api;
 import android.util.Log;
 
 /**
+ * Writes to the Android log, or to the standard error stream when running on a plain JVM
+ *
  * User: uas.sorokin@gmail.com
  */
 public class Logger {
@@ -41,13 +43,20 @@ public class Logger {
 	private static final boolean SHOW_DEBUG_INFO = true; 
 	protected static final String TAG = "AimpControl/API";
 
+	// ART reports the same VM name as Dalvik
+	private static final boolean IS_ANDROID = "Dalvik".equals(System.getProperty("java.vm.name"));
+
 
 	public static void d(String tag, String message) {
-		if (SHOW_DEBUG_INFO) Log.d(tag, message);
+		if (SHOW_DEBUG_INFO) {
+			if (IS_ANDROID) Log.d(tag, message); else print("D", tag, message, null);
+		}
 	}
 
 	public static void d(String tag, String message, Throwable t) {
-		if (SHOW_DEBUG_INFO) Log.d(tag, message, t);
+		if (SHOW_DEBUG_INFO) {
+			if (IS_ANDROID) Log.d(tag, message, t); else print("D", tag, message, t);
+		}
 	}
 	
 	public static void d(String message) {
@@ -60,11 +69,11 @@ public class Logger {
 
 
 	public static void e(String tag, String message) {
-		Log.e(tag, message);
+		if (IS_ANDROID) Log.e(tag, message); else print("E", tag, message, null);
 	}
 
 	public static void e(String tag, String message, Throwable t) {
-		Log.e(tag, message, t);
+		if (IS_ANDROID) Log.e(tag, message, t); else print("E", tag, message, t);
 	}
 
 	public static void e(String message) {
@@ -76,15 +85,22 @@ public class Logger {
 	}
 
 	public static void i(String tag, String message) {
-		Log.i(tag, message);
+		if (IS_ANDROID) Log.i(tag, message); else print("I", tag, message, null);
 	}
 
 	public static void v(String tag, String message) {
-		Log.v(tag, message);
+		if (IS_ANDROID) Log.v(tag, message); else print("V", tag, message, null);
 	}
 	
 	public static void w(String tag, String message, Throwable t) {
-		Log.v(tag, message, t);
+		if (IS_ANDROID) Log.v(tag, message, t); else print("W", tag, message, t);
+	}
+
+	private static void print(String level, String tag, String message, Throwable t) {
+		System.err.println(level + "/" + tag + ": " + message);
+		if (t != null) {
+			t.printStackTrace();
+		}
 	}
 	
 }
\ No newline at end of file
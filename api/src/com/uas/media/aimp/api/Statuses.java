@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api;
+
+/**
+ * Codes of custom statuses of AIMP, see {@link IPlugin#getCustomStatuses(int...)}.
+ * They are the same for all plugins.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public interface Statuses {
+    int VOLUME = 1;
+    int BALANCE = 2;
+    int SPEED = 3;
+    int PLAY = 4;
+    int MUTE = 5;
+    int REVERBATION = 6;
+    int ECHO = 7;
+    int CHORUS = 8;
+    int FLANGER = 9;
+    int EQUALIZER = 10;
+
+    int EQUALIZER1  = 11;
+    int EQUALIZER2  = 12;
+    int EQUALIZER3  = 13;
+    int EQUALIZER4  = 14;
+    int EQUALIZER5  = 15;
+    int EQUALIZER6  = 16;
+    int EQUALIZER7  = 17;
+    int EQUALIZER8  = 18;
+    int EQUALIZER9  = 19;
+    int EQUALIZER10 = 20;
+    int EQUALIZER11 = 21;
+    int EQUALIZER12 = 22;
+    int EQUALIZER13 = 23;
+    int EQUALIZER14 = 24;
+    int EQUALIZER15 = 25;
+    int EQUALIZER16 = 26;
+    int EQUALIZER17 = 27;
+    int EQUALIZER18 = 28;
+
+    int REPEAT_SONG = 29;
+    int STOP = 30;
+    int POSITION = 31;
+    int LENGTH = 32;
+    int REPEAT_PLAYLIST = 33;
+    int REPEAT_PLAYLIST_1 = 34;
+    int KBPS = 35;
+    int KHz = 36;
+    int MODE = 37;
+    int RADIO = 38;
+    int STREAM_TYPE = 39;
+    int TIMER = 40;
+    int SHUFFLE = 41;
+}
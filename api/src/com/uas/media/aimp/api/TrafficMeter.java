@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts bytes sent to and received from the remote host.
+ * Bytes are counted on the socket level, so HTTP headers are included.
+ * Traffic is attributed to the action being executed by the current thread
+ * and to the scope of the caller (e.g. an updater of the sync service), see {@link #enterScope(String)}.
+ * All counters are lock-free.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class TrafficMeter {
+
+    /**
+     * Name used for traffic which is sent outside of any action or scope
+     */
+    public static final String UNKNOWN = "other";
+
+    private static final int RATE_WINDOW_SECONDS = 60;
+
+    private static final ThreadLocal<String> sScope = new ThreadLocal<String>();
+
+
+    private final ThreadLocal<String> mAction = new ThreadLocal<String>();
+
+    private final AtomicLong mTotalIn = new AtomicLong();
+    private final AtomicLong mTotalOut = new AtomicLong();
+    private final ConcurrentMap<String, Counter> mActions = new ConcurrentHashMap<String, Counter>();
+    private final ConcurrentMap<String, Counter> mScopes = new ConcurrentHashMap<String, Counter>();
+
+    // ring of per-second buckets, each one holds its second in the high half and bytes in the low half,
+    // so a bucket is started again and counted by one CAS and bytes of concurrent requests aren't lost
+    private final AtomicLongArray mRateBuckets = new AtomicLongArray(RATE_WINDOW_SECONDS);
+
+
+    /**
+     * Attribute traffic of the current thread to the given scope until {@link #exitScope(String)} is called.
+     * Scopes are shared by all meters, so the caller doesn't need to know the plugin it works with.
+     * @return Previous scope, must be passed to exitScope
+     */
+    public static String enterScope(String scope) {
+        String previous = sScope.get();
+        sScope.set(scope);
+        return previous;
+    }
+
+    public static void exitScope(String previous) {
+        if (previous == null) {
+            sScope.remove();
+        } else {
+            sScope.set(previous);
+        }
+    }
+
+    public static String getScope() {
+        return sScope.get();
+    }
+
+
+    /**
+     * Attribute traffic of the current thread to the given action until {@link #exitAction(String)} is called
+     * @return Previous action, must be passed to exitAction
+     */
+    public String enterAction(String action) {
+        String previous = mAction.get();
+        mAction.set(action);
+        return previous;
+    }
+
+    public void exitAction(String previous) {
+        if (previous == null) {
+            mAction.remove();
+        } else {
+            mAction.set(previous);
+        }
+    }
+
+
+    public void addIn(int bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+        mTotalIn.addAndGet(bytes);
+        counter(mActions, mAction.get()).mIn.addAndGet(bytes);
+        counter(mScopes, sScope.get()).mIn.addAndGet(bytes);
+        addToRate(bytes);
+    }
+
+    public void addOut(int bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+        mTotalOut.addAndGet(bytes);
+        counter(mActions, mAction.get()).mOut.addAndGet(bytes);
+        counter(mScopes, sScope.get()).mOut.addAndGet(bytes);
+        addToRate(bytes);
+    }
+
+
+    public long getTotalIn() {
+        return mTotalIn.get();
+    }
+
+    public long getTotalOut() {
+        return mTotalOut.get();
+    }
+
+    /**
+     * Bytes sent and received during the last minute
+     */
+    public long getBytesPerMinute() {
+        long now = currentSecond();
+        long sum = 0;
+        for (int i = 0; i < RATE_WINDOW_SECONDS; i++) {
+            long bucket = mRateBuckets.get(i);
+            if (now - (bucket >>> 32) < RATE_WINDOW_SECONDS) {
+                sum += bucket & 0xffffffffL;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Usage per WebCtl action, sorted by total bytes descending
+     */
+    public List<Usage> getActionsUsage() {
+        return snapshot(mActions);
+    }
+
+    /**
+     * Usage per caller's scope, sorted by total bytes descending
+     */
+    public List<Usage> getScopesUsage() {
+        return snapshot(mScopes);
+    }
+
+    /**
+     * Zero all counters. Traffic of requests which are in progress is counted from zero
+     */
+    public void reset() {
+        mTotalIn.set(0);
+        mTotalOut.set(0);
+        mActions.clear();
+        mScopes.clear();
+        for (int i = 0; i < RATE_WINDOW_SECONDS; i++) {
+            mRateBuckets.set(i, 0);
+        }
+    }
+
+
+    private void addToRate(int bytes) {
+        long second = currentSecond();
+        int index = (int) (second % RATE_WINDOW_SECONDS);
+        long bucket;
+        long updated;
+        do {
+            bucket = mRateBuckets.get(index);
+            // the bucket of a minute ago is started again
+            long count = (bucket >>> 32) == second ? bucket & 0xffffffffL : 0;
+            updated = (second << 32) | Math.min(count + bytes, 0xffffffffL);
+        } while (!mRateBuckets.compareAndSet(index, bucket, updated));
+    }
+
+    private static long currentSecond() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private static Counter counter(ConcurrentMap<String, Counter> counters, String name) {
+        if (name == null) {
+            name = UNKNOWN;
+        }
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            Counter created = new Counter();
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    private static List<Usage> snapshot(ConcurrentMap<String, Counter> counters) {
+        List<Usage> result = new ArrayList<Usage>(counters.size());
+        for (Map.Entry<String, Counter> e: counters.entrySet()) {
+            result.add(new Usage(e.getKey(), e.getValue().mIn.get(), e.getValue().mOut.get()));
+        }
+        Collections.sort(result, new Comparator<Usage>() {
+            @Override
+            public int compare(Usage lhs, Usage rhs) {
+                long l = lhs.getTotal();
+                long r = rhs.getTotal();
+                return l > r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        return result;
+    }
+
+
+    private static class Counter {
+        final AtomicLong mIn = new AtomicLong();
+        final AtomicLong mOut = new AtomicLong();
+    }
+
+
+    /**
+     * Bytes sent and received by one action or scope
+     */
+    public static class Usage {
+
+        private final String mName;
+        private final long mIn;
+        private final long mOut;
+
+        Usage(String name, long in, long out) {
+            mName = name;
+            mIn = in;
+            mOut = out;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public long getIn() {
+            return mIn;
+        }
+
+        public long getOut() {
+            return mOut;
+        }
+
+        public long getTotal() {
+            return mIn + mOut;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: in=%d, out=%d", mName, mIn, mOut);
+        }
+    }
+
+}
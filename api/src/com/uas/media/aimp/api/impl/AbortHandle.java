@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+/**
+ * Lets another thread abort a blocking request.
+ * Transport sets the action which breaks the request off, e.g. closes its connection,
+ * as soon as there is something to break.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class AbortHandle {
+
+    private Runnable mAction;
+    private boolean mIsAborted;
+
+
+    public synchronized boolean isAborted() {
+        return mIsAborted;
+    }
+
+    /**
+     * Set action which aborts the request. If the request is already aborted, the action is run at once.
+     */
+    public void setAction(Runnable action) {
+        synchronized (this) {
+            if (!mIsAborted) {
+                mAction = action;
+                return;
+            }
+        }
+        action.run();
+    }
+
+    /**
+     * Abort the request. Can be called from any thread, only the first call has effect.
+     */
+    public void abort() {
+        Runnable action;
+        synchronized (this) {
+            if (mIsAborted) {
+                return;
+            }
+            mIsAborted = true;
+            action = mAction;
+            mAction = null;
+        }
+        if (action != null) {
+            action.run();
+        }
+    }
+
+}
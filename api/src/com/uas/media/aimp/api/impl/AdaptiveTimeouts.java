@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per-action request timeouts derived from measured round trip time, like TCP retransmission timeout (RFC 6298):
+ * timeout = SRTT + max(G, 4 * RTTVAR), doubled after each timeout of the action until the next successful response.
+ * Time to response's headers is used as RTT sample, so it includes time the server spends to prepare the response.
+ * Sizes of responses are remembered by request, and the timeout of a request which response is bigger than usual
+ * is scaled by the ratio of its size to the mean size of the action. Requests which were not seen yet get the full
+ * bound if sizes of the action's responses vary much, e.g. songs of a new playlist.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+class AdaptiveTimeouts {
+
+    public static final int MIN_TIMEOUT = 500;
+    public static final int MAX_TIMEOUT = 1000*60;
+
+    private static final int CLOCK_GRANULARITY = 100;
+    private static final int MAX_BACKOFF_SHIFT = 6;
+    private static final int MAX_REMEMBERED_REQUESTS = 256;
+
+
+    private final ConcurrentMap<String, Estimator> mEstimators = new ConcurrentHashMap<String, Estimator>();
+    private final ConcurrentMap<String, Long> mResponseSizes = new ConcurrentHashMap<String, Long>();
+
+
+    /**
+     * @param bound Timeout for actions without samples, also the max timeout of usual sized responses
+     * @return Timeout in milliseconds
+     */
+    public int getTimeout(String action, String request, int bound) {
+        Estimator e = mEstimators.get(key(action));
+        if (e == null) {
+            return bound;
+        }
+        Long size = mResponseSizes.get(request);
+        return e.getTimeout(bound, size == null ? -1 : size);
+    }
+
+    /**
+     * Response headers of the action were received after the given time
+     */
+    public void onResponse(String action, long millis) {
+        get(action).onSample(millis);
+    }
+
+    /**
+     * Request of the action timed out
+     */
+    public void onTimeout(String action) {
+        get(action).onTimeout();
+    }
+
+    /**
+     * Response of the request was completely read
+     */
+    public void onResponseSize(String action, String request, long bytes) {
+        if (mResponseSizes.size() >= MAX_REMEMBERED_REQUESTS) {
+            mResponseSizes.clear();
+        }
+        mResponseSizes.put(request, bytes);
+        get(action).onSize(bytes);
+    }
+
+    public void reset() {
+        mEstimators.clear();
+        mResponseSizes.clear();
+    }
+
+
+    private Estimator get(String action) {
+        action = key(action);
+        Estimator e = mEstimators.get(action);
+        if (e == null) {
+            Estimator created = new Estimator();
+            e = mEstimators.putIfAbsent(action, created);
+            if (e == null) {
+                e = created;
+            }
+        }
+        return e;
+    }
+
+    private static String key(String action) {
+        return action == null ? "" : action;
+    }
+
+
+    /**
+     * Smoothed RTT and its variance of one action
+     */
+    static class Estimator {
+
+        private double mSmoothedRtt;
+        private double mRttVariance;
+        private boolean mHasSamples;
+        private int mBackoffShift;
+        private double mMeanSize;
+        private long mMaxSize;
+
+        synchronized void onSample(long rtt) {
+            if (!mHasSamples) {
+                mSmoothedRtt = rtt;
+                mRttVariance = rtt / 2.0;
+                mHasSamples = true;
+            } else {
+                mRttVariance = 0.75 * mRttVariance + 0.25 * Math.abs(mSmoothedRtt - rtt);
+                mSmoothedRtt = 0.875 * mSmoothedRtt + 0.125 * rtt;
+            }
+            mBackoffShift = 0;
+        }
+
+        synchronized void onTimeout() {
+            if (mBackoffShift < MAX_BACKOFF_SHIFT) {
+                mBackoffShift++;
+            }
+        }
+
+        synchronized void onSize(long bytes) {
+            mMeanSize = mMeanSize == 0
+                    ? bytes
+                    : 0.875 * mMeanSize + 0.125 * bytes;
+            mMaxSize = Math.max(mMaxSize, bytes);
+        }
+
+        /**
+         * @param expectedSize Size of the last response to the same request, -1 if unknown
+         */
+        synchronized int getTimeout(int bound, long expectedSize) {
+            double timeout = mHasSamples
+                    ? mSmoothedRtt + Math.max(CLOCK_GRANULARITY, 4 * mRttVariance)
+                    : bound;
+            timeout = Math.min(Math.max(timeout, MIN_TIMEOUT), bound);
+
+            double limit = bound;
+            if (expectedSize == -1 && mMaxSize > 2 * mMeanSize) {
+                // size of the response is unknown and can be big
+                timeout = bound;
+            } else if (expectedSize > mMeanSize && mMeanSize > 0) {
+                // big response takes more time to prepare and send
+                timeout = timeout * expectedSize / mMeanSize;
+                limit = MAX_TIMEOUT;
+            }
+
+            timeout *= 1 << mBackoffShift;
+            return (int) Math.min(timeout, Math.max(limit, bound));
+        }
+    }
+
+}
@@ -0,0 +1,509 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+import com.uas.media.aimp.api.ApiRequestException;
+import com.uas.media.aimp.api.models.Playlist;
+import com.uas.media.aimp.api.models.Song;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decoders of JSON-RPC responses of AIMP Control Plugin. Like {@link WebCtlDecoder} reads UTF-8 bytes
+ * of the response straight into the models. Responses of a batch are matched with the calls by their ids,
+ * so the server may return them in any order. Decoder keeps its buffers between responses, so one instance per thread is enough.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+class AimpControlDecoder {
+
+    private static final String[] RESPONSE_FIELDS = {"id", "result", "error"};
+    private static final int RESPONSE_ID = 0;
+    private static final int RESPONSE_RESULT = 1;
+    private static final int RESPONSE_ERROR = 2;
+
+    private static final String[] ERROR_FIELDS = {"code", "message"};
+    private static final int ERROR_CODE = 0;
+    private static final int ERROR_MESSAGE = 1;
+
+    private static final String[] VALUE_FIELDS = {"value"};
+
+    static final String[] PLAYLIST_FIELDS = {"id", "title", "duration", "size_of_entries", "crc32"};
+    private static final int PLAYLIST_ID = 0;
+    private static final int PLAYLIST_TITLE = 1;
+    private static final int PLAYLIST_DURATION = 2;
+    private static final int PLAYLIST_SIZE = 3;
+    private static final int PLAYLIST_CRC = 4;
+
+    static final String[] PLAYLIST_HASH_FIELDS = {"id", "crc32"};
+
+    private static final String[] ENTRIES_FIELDS = {"total_entries_count", "entries"};
+    private static final int ENTRIES_TOTAL = 0;
+    private static final int ENTRIES_ENTRIES = 1;
+
+    /**
+     * Fields of songs requested from GetPlaylistEntries, entries are arrays of values in this order
+     */
+    static final String[] SONG_FIELDS = {"title", "duration"};
+    static final String[] TRACK_ID_FIELDS = {"id"};
+
+    private static final String[] ENTRY_INFO_FIELDS = {"title", "duration"};
+    private static final int ENTRY_INFO_TITLE = 0;
+    private static final int ENTRY_INFO_DURATION = 1;
+
+    private static final String[] ENTRY_POSITION_FIELDS = {"track_position"};
+
+    private static final String[] STATE_FIELDS = {
+            "playback_state", "track_position", "volume", "mute_mode_on", "repeat_mode_on", "shuffle_mode_on",
+            "playlist_id", "track_id", "playlists_changed"
+    };
+    private static final int STATE_PLAYBACK = 0;
+    private static final int STATE_POSITION = 1;
+    private static final int STATE_VOLUME = 2;
+    private static final int STATE_MUTE = 3;
+    private static final int STATE_REPEAT = 4;
+    private static final int STATE_SHUFFLE = 5;
+    private static final int STATE_PLAYLIST = 6;
+    private static final int STATE_TRACK = 7;
+    private static final int STATE_PLAYLISTS_CHANGED = 8;
+
+    private static final String PLAYBACK_PLAYING = "playing";
+    private static final String PLAYBACK_PAUSED = "paused";
+
+    private final JsonStreamReader mReader;
+
+
+    /**
+     * Reader of the result of one call
+     */
+    interface ResultReader<T> {
+        T read(AimpControlDecoder decoder) throws IOException, ApiRequestException;
+    }
+
+    /**
+     * State of the player's control panel
+     */
+    static class PanelState {
+        int mPlayState = -1;
+        int mPosition;
+        int mVolume;
+        boolean mIsMute;
+        boolean mIsRepeat;
+        boolean mIsShuffle;
+        int mPlaylistId = -1;
+        int mTrackId = -1;
+        boolean mIsPlaylistsChanged;
+    }
+
+
+    AimpControlDecoder() {
+        mReader = new JsonStreamReader();
+    }
+
+    public void reset(InputStream in) {
+        mReader.reset(in);
+    }
+
+    public InputStream detach() {
+        return mReader.detach();
+    }
+
+    /**
+     * Count of bytes of the current response decoded so far
+     */
+    public long getBytesRead() {
+        return mReader.getPosition();
+    }
+
+    // ================================================================================
+    // ====================== Envelopes
+
+    /**
+     * Decode responses of the calls. A single call has a single response, a batch has an array of them.
+     * @param readers Reader of the result per call, null if the result is not needed
+     * @param methods Methods of the calls, used in messages of errors
+     * @return Results in the order of calls
+     * @throws ApiRequestException if any call has failed
+     */
+    public Object[] decodeResponses(ResultReader<?>[] readers, String[] methods) throws IOException, ApiRequestException {
+        Object[] results = new Object[readers.length];
+        boolean[] received = new boolean[readers.length];
+
+        if (readers.length == 1 && mReader.peek() != '[') {
+            decodeResponse(readers, methods, results, received);
+        } else {
+            mReader.beginArray();
+            while (mReader.hasNext()) {
+                decodeResponse(readers, methods, results, received);
+            }
+            mReader.endArray();
+        }
+
+        for (int i = 0; i < received.length; i++) {
+            if (!received[i]) {
+                throw new ApiRequestException("No response to " + methods[i]);
+            }
+        }
+        return results;
+    }
+
+    private void decodeResponse(ResultReader<?>[] readers, String[] methods, Object[] results, boolean[] received) throws IOException, ApiRequestException {
+        // a single call is answered even if the server doesn't return its id
+        int index = readers.length == 1 ? 0 : -1;
+        boolean hasResult = false;
+        Object result = null;
+        String error = null;
+
+        mReader.beginObject();
+        while (mReader.hasNext()) {
+            switch (mReader.nextName(RESPONSE_FIELDS)) {
+                case RESPONSE_ID:
+                    if (!mReader.skipNull()) {
+                        index = mReader.nextInt();
+                        if (index < 0 || index >= readers.length) {
+                            throw new ApiRequestException("Response has unknown id " + index);
+                        }
+                    }
+                    break;
+                case RESPONSE_RESULT:
+                    if (index < 0) {
+                        throw new ApiRequestException("Result of a batch precedes its id");
+                    }
+                    if (readers[index] == null) {
+                        mReader.skipValue();
+                    } else if (!mReader.skipNull()) {
+                        result = readers[index].read(this);
+                    }
+                    hasResult = true;
+                    break;
+                case RESPONSE_ERROR:
+                    error = decodeError();
+                    break;
+                default:
+                    mReader.skipValue();
+                    break;
+            }
+        }
+        mReader.endObject();
+
+        String method = index < 0 ? "batch" : methods[index];
+        if (error != null) {
+            throw new ApiRequestException(method + " failed: " + error);
+        }
+        if (index < 0 || !hasResult) {
+            throw new ApiRequestException("Response to " + method + " has no result");
+        }
+        results[index] = result;
+        received[index] = true;
+    }
+
+    private String decodeError() throws IOException, ApiRequestException {
+        if (mReader.peek() != '{') {
+            return mReader.skipNull() ? "unknown error" : mReader.nextString();
+        }
+        long code = 0;
+        String message = null;
+
+        mReader.beginObject();
+        while (mReader.hasNext()) {
+            switch (mReader.nextName(ERROR_FIELDS)) {
+                case ERROR_CODE:
+                    code = mReader.nextLong();
+                    break;
+                case ERROR_MESSAGE:
+                    message = mReader.nextString();
+                    break;
+                default:
+                    mReader.skipValue();
+                    break;
+            }
+        }
+        mReader.endObject();
+        return message == null ? "error " + code : message + " (" + code + ")";
+    }
+
+    // ================================================================================
+    // ====================== Results
+
+    /**
+     * Decode result of Status: {"value": 1}
+     */
+    public int decodeStatusValue() throws IOException, ApiRequestException {
+        if (mReader.peek() != '{') {
+            return mReader.nextInt();
+        }
+        boolean hasValue = false;
+        int value = 0;
+
+        mReader.beginObject();
+        while (mReader.hasNext()) {
+            if (mReader.nextName(VALUE_FIELDS) == 0) {
+                value = mReader.peek() == 't' || mReader.peek() == 'f'
+                        ? (mReader.nextBoolean() ? 1 : 0)
+                        : mReader.nextInt();
+                hasValue = true;
+            } else {
+                mReader.skipValue();
+            }
+        }
+        mReader.endObject();
+
+        if (!hasValue) {
+            throw new ApiRequestException("Status has no value");
+        }
+        return value;
+    }
+
+    /**
+     * Decode result of GetPlaylists requested with {@link #PLAYLIST_FIELDS} or {@link #PLAYLIST_HASH_FIELDS}.
+     * CRC of a playlist is its hash. Durations are converted to seconds.
+     */
+    public List<Playlist> decodePlaylists() throws IOException, ApiRequestException {
+        ArrayList<Playlist> result = new ArrayList<Playlist>();
+
+        mReader.beginArray();
+        while (mReader.hasNext()) {
+            Playlist pl = new Playlist();
+            boolean hasId = false;
+
+            mReader.beginObject();
+            while (mReader.hasNext()) {
+                switch (mReader.nextName(PLAYLIST_FIELDS)) {
+                    case PLAYLIST_ID:
+                        pl.setId(mReader.nextInt());
+                        hasId = true;
+                        break;
+                    case PLAYLIST_TITLE:
+                        pl.setName(mReader.nextString());
+                        break;
+                    case PLAYLIST_DURATION:
+                        pl.setDuration((int) (mReader.nextLong() / 1000));
+                        break;
+                    case PLAYLIST_SIZE:
+                        pl.setSizeInBytes(mReader.nextLong());
+                        break;
+                    case PLAYLIST_CRC:
+                        pl.setHash(Long.toString(mReader.nextLong()));
+                        break;
+                    default:
+                        mReader.skipValue();
+                        break;
+                }
+            }
+            mReader.endObject();
+
+            if (!hasId) {
+                throw new ApiRequestException("Unable to parse list of playlists. Playlist has no id");
+            }
+            result.add(pl);
+        }
+        mReader.endArray();
+
+        return result;
+    }
+
+    /**
+     * Decode result of GetPlaylistEntries requested with {@link #SONG_FIELDS}
+     * @param songs Receives the songs of the page
+     * @return Count of all songs in the playlist
+     */
+    public int decodeSongs(List<Song> songs) throws IOException, ApiRequestException {
+        int total = -1;
+
+        mReader.beginObject();
+        while (mReader.hasNext()) {
+            switch (mReader.nextName(ENTRIES_FIELDS)) {
+                case ENTRIES_TOTAL:
+                    total = mReader.nextInt();
+                    break;
+                case ENTRIES_ENTRIES:
+                    mReader.beginArray();
+                    while (mReader.hasNext()) {
+                        mReader.beginArray();
+                        String title = mReader.nextString();
+                        int duration = (int) (mReader.nextLong() / 1000);
+                        mReader.endArray();
+                        songs.add(new Song(title, duration));
+                    }
+                    mReader.endArray();
+                    break;
+                default:
+                    mReader.skipValue();
+                    break;
+            }
+        }
+        mReader.endObject();
+
+        if (total < 0) {
+            throw new ApiRequestException("Unable to parse songs. Response has no total count of entries");
+        }
+        return total;
+    }
+
+    /**
+     * Decode result of GetPlaylistEntries requested with {@link #TRACK_ID_FIELDS}
+     * @return Id of the first entry, -1 if there are no entries
+     */
+    public int decodeTrackId() throws IOException, ApiRequestException {
+        int id = -1;
+
+        mReader.beginObject();
+        while (mReader.hasNext()) {
+            if (mReader.nextName(ENTRIES_FIELDS) == ENTRIES_ENTRIES) {
+                mReader.beginArray();
+                while (mReader.hasNext()) {
+                    mReader.beginArray();
+                    int entryId = mReader.nextInt();
+                    mReader.endArray();
+                    if (id < 0) {
+                        id = entryId;
+                    }
+                }
+                mReader.endArray();
+            } else {
+                mReader.skipValue();
+            }
+        }
+        mReader.endObject();
+
+        return id;
+    }
+
+    /**
+     * Decode result of GetEntryPositionInDataTable
+     */
+    public int decodeEntryPosition() throws IOException, ApiRequestException {
+        int position = -1;
+
+        mReader.beginObject();
+        while (mReader.hasNext()) {
+            if (mReader.nextName(ENTRY_POSITION_FIELDS) == 0) {
+                position = mReader.nextInt();
+            } else {
+                mReader.skipValue();
+            }
+        }
+        mReader.endObject();
+
+        if (position < 0) {
+            throw new ApiRequestException("Unable to retrieve position of the song");
+        }
+        return position;
+    }
+
+    /**
+     * Decode result of GetPlaylistEntryInfo. Duration is converted to seconds.
+     */
+    public Song decodeEntryInfo() throws IOException, ApiRequestException {
+        String title = null;
+        int duration = -1;
+
+        mReader.beginObject();
+        while (mReader.hasNext()) {
+            switch (mReader.nextName(ENTRY_INFO_FIELDS)) {
+                case ENTRY_INFO_TITLE:
+                    title = mReader.nextString();
+                    break;
+                case ENTRY_INFO_DURATION:
+                    duration = (int) (mReader.nextLong() / 1000);
+                    break;
+                default:
+                    mReader.skipValue();
+                    break;
+            }
+        }
+        mReader.endObject();
+
+        if (title == null || duration < 0) {
+            throw new ApiRequestException("Unable to retrieve info about the song. Response has no title or duration");
+        }
+        return new Song(title, duration);
+    }
+
+    /**
+     * Decode result of GetPlayerControlPanelState and of the state update event
+     */
+    public PanelState decodePanelState() throws IOException, ApiRequestException {
+        PanelState state = new PanelState();
+
+        mReader.beginObject();
+        while (mReader.hasNext()) {
+            switch (mReader.nextName(STATE_FIELDS)) {
+                case STATE_PLAYBACK:
+                    String playback = mReader.nextString();
+                    state.mPlayState = PLAYBACK_PLAYING.equals(playback)
+                            ? AimpControlPlugin.PLAY_STATE_PLAYING
+                            : PLAYBACK_PAUSED.equals(playback)
+                                    ? AimpControlPlugin.PLAY_STATE_PAUSED
+                                    : AimpControlPlugin.PLAY_STATE_STOPPED;
+                    break;
+                case STATE_POSITION:
+                    state.mPosition = mReader.nextInt();
+                    break;
+                case STATE_VOLUME:
+                    state.mVolume = mReader.nextInt();
+                    break;
+                case STATE_MUTE:
+                    state.mIsMute = mReader.nextBoolean();
+                    break;
+                case STATE_REPEAT:
+                    state.mIsRepeat = mReader.nextBoolean();
+                    break;
+                case STATE_SHUFFLE:
+                    state.mIsShuffle = mReader.nextBoolean();
+                    break;
+                case STATE_PLAYLIST:
+                    state.mPlaylistId = mReader.nextInt();
+                    break;
+                case STATE_TRACK:
+                    state.mTrackId = mReader.nextInt();
+                    break;
+                case STATE_PLAYLISTS_CHANGED:
+                    state.mIsPlaylistsChanged = mReader.nextBoolean();
+                    break;
+                default:
+                    mReader.skipValue();
+                    break;
+            }
+        }
+        mReader.endObject();
+
+        if (state.mPlayState < 0) {
+            throw new ApiRequestException("Unable to retrieve state of the player. Response has no playback state");
+        }
+        return state;
+    }
+
+}
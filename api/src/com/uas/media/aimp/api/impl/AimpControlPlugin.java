@@ -0,0 +1,705 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+import com.uas.media.aimp.api.ApiException;
+import com.uas.media.aimp.api.ApiRequestException;
+import com.uas.media.aimp.api.IPushPlugin;
+import com.uas.media.aimp.api.Logger;
+import com.uas.media.aimp.api.SongsChunkListener;
+import com.uas.media.aimp.api.Statuses;
+import com.uas.media.aimp.api.models.CurrentSongInfo;
+import com.uas.media.aimp.api.models.Playlist;
+import com.uas.media.aimp.api.models.Song;
+import com.uas.media.aimp.api.models.StatusSnapshot;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plugin which works with AIMP Control Plugin via its JSON-RPC 2.0 interface.
+ * Reads of several values are sent as one batch, so they cost one round trip.
+ * Changes of the player are pushed by the server: {@link #waitForChanges()} subscribes on the update
+ * of the control panel's state, and the server holds the request until the state changes (long polling).
+ * <p/>
+ * Statuses have the same codes as in WebCtl, see {@link Statuses}. Songs are addressed by their positions
+ * like in WebCtl, ids of tracks are looked up when they are needed.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class AimpControlPlugin extends HttpPlugin implements IPushPlugin {
+
+    public static final int DEFAULT_PORT = 3333;
+    public static final int DEFAULT_LONG_POLL_TIMEOUT = 1000*60;
+    public static final String RPC_PATH = "/RPC_JSON";
+
+    private static final String CONTENT_TYPE = "application/json; charset=UTF-8";
+    private static final String EVENT_STATE_CHANGE = "control_panel_state_change";
+    private static final int SONGS_PAGE_SIZE = 1024;
+    // position differs from the expected one by rounding and by latency of the event
+    private static final int POSITION_TOLERANCE = 2;
+
+    private static final AimpControlDecoder.ResultReader<Integer> STATUS_VALUE = new AimpControlDecoder.ResultReader<Integer>() {
+        @Override
+        public Integer read(AimpControlDecoder decoder) throws IOException, ApiRequestException {
+            return decoder.decodeStatusValue();
+        }
+    };
+
+    private static final AimpControlDecoder.ResultReader<AimpControlDecoder.PanelState> PANEL_STATE = new AimpControlDecoder.ResultReader<AimpControlDecoder.PanelState>() {
+        @Override
+        public AimpControlDecoder.PanelState read(AimpControlDecoder decoder) throws IOException, ApiRequestException {
+            return decoder.decodePanelState();
+        }
+    };
+
+    private static final AimpControlDecoder.ResultReader<List<Playlist>> PLAYLISTS = new AimpControlDecoder.ResultReader<List<Playlist>>() {
+        @Override
+        public List<Playlist> read(AimpControlDecoder decoder) throws IOException, ApiRequestException {
+            return decoder.decodePlaylists();
+        }
+    };
+
+    private static final AimpControlDecoder.ResultReader<Integer> TRACK_ID = new AimpControlDecoder.ResultReader<Integer>() {
+        @Override
+        public Integer read(AimpControlDecoder decoder) throws IOException, ApiRequestException {
+            return decoder.decodeTrackId();
+        }
+    };
+
+    private static final AimpControlDecoder.ResultReader<Integer> ENTRY_POSITION = new AimpControlDecoder.ResultReader<Integer>() {
+        @Override
+        public Integer read(AimpControlDecoder decoder) throws IOException, ApiRequestException {
+            return decoder.decodeEntryPosition();
+        }
+    };
+
+    private static final AimpControlDecoder.ResultReader<Song> ENTRY_INFO = new AimpControlDecoder.ResultReader<Song>() {
+        @Override
+        public Song read(AimpControlDecoder decoder) throws IOException, ApiRequestException {
+            return decoder.decodeEntryInfo();
+        }
+    };
+
+
+    private volatile int mLongPollTimeout = DEFAULT_LONG_POLL_TIMEOUT;
+
+    // state seen by the last waitForChanges(), guarded by this
+    private AimpControlDecoder.PanelState mLastState;
+    private long mLastStateTime;
+    // changes were returned, so the state could change while the caller was processing them
+    private boolean mIsLastStateStale;
+
+    private final ThreadLocal<AimpControlDecoder> mDecoders = new ThreadLocal<AimpControlDecoder>() {
+        @Override
+        protected AimpControlDecoder initialValue() {
+            return new AimpControlDecoder();
+        }
+    };
+
+
+    public AimpControlPlugin() {
+        super("AimpControl", null, 0);
+    }
+
+    public AimpControlPlugin(String host) {
+        this(host, DEFAULT_PORT);
+    }
+
+    public AimpControlPlugin(String host, int port) {
+        super("AimpControl", host, port);
+    }
+
+    @Override
+    public int getDefaultRemotePort() {
+        return DEFAULT_PORT;
+    }
+
+    @Override
+    public String getRemotePluginName() {
+        return "AIMP Control Plugin";
+    }
+
+    @Override
+    public void setRemoteHost(String host) {
+        super.setRemoteHost(host);
+        forgetState();
+    }
+
+    @Override
+    public void setRemotePort(int port) {
+        super.setRemotePort(port);
+        forgetState();
+    }
+
+    /**
+     * How long to wait for a change in {@link #waitForChanges()}. Must be longer than the server holds the request
+     */
+    public void setLongPollTimeout(int timeout) {
+        if (timeout < 1) {
+            throw new IllegalArgumentException("Long poll timeout must be positive number. Given value is " + timeout);
+        }
+        mLongPollTimeout = timeout;
+    }
+
+    public int getLongPollTimeout() {
+        return mLongPollTimeout;
+    }
+
+    @Override
+    public synchronized void release() {
+        super.release();
+        forgetState();
+    }
+
+    // ================================================================================
+    // ================================================================================
+
+
+    @Override
+    public boolean ping() throws InterruptedException {
+        try {
+            call(new JsonRpcCall("GetPlayerControlPanelState"), PANEL_STATE);
+            return true;
+        } catch(InterruptedException ex) {
+            throw ex;
+        } catch(Exception e) {
+            Logger.e("Ping operation failed. Reason: " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Changes are found by comparing the state of the control panel with the previous one.
+     * The server reports only changes made after the subscription, so after changes were returned
+     * the state is read before the subscription, and a change made while the caller was processing
+     * the previous ones is returned at once. A change made within the round trip between the read
+     * and the subscription is still returned only when the hold expires.
+     */
+    @Override
+    public int waitForChanges() throws ApiException, IOException, InterruptedException {
+        AimpControlDecoder.PanelState previous;
+        long previousTime;
+        boolean isStale;
+        synchronized (this) {
+            previous = mLastState;
+            previousTime = mLastStateTime;
+            isStale = mIsLastStateStale;
+        }
+
+        if (previous == null || isStale) {
+            AimpControlDecoder.PanelState state = call(new JsonRpcCall("GetPlayerControlPanelState"), PANEL_STATE);
+            long now = System.nanoTime() / 1000000;
+            int changes = previous == null ? CHANGE_ALL : getChanges(previous, state, now - previousTime);
+            setLastState(state, now, changes != 0);
+            if (changes != 0) {
+                return changes;
+            }
+            previous = state;
+            previousTime = now;
+        }
+
+        AimpControlDecoder.PanelState state;
+        try {
+            state = callOnce(
+                    new JsonRpcCall("SubscribeOnAIMPStateUpdateEvent").param("event", EVENT_STATE_CHANGE),
+                    PANEL_STATE,
+                    mLongPollTimeout
+            );
+        } catch (SocketTimeoutException ex) {
+            // nothing has changed while the server held the request
+            return 0;
+        }
+
+        long now = System.nanoTime() / 1000000;
+        int changes = getChanges(previous, state, now - previousTime);
+        setLastState(state, now, changes != 0);
+        return changes;
+    }
+
+    private synchronized void setLastState(AimpControlDecoder.PanelState state, long time, boolean isStale) {
+        mLastState = state;
+        mLastStateTime = time;
+        mIsLastStateStale = isStale;
+    }
+
+    static int getChanges(AimpControlDecoder.PanelState previous, AimpControlDecoder.PanelState state, long elapsed) {
+        int changes = 0;
+        if (state.mPlayState != previous.mPlayState) {
+            changes |= CHANGE_PLAY_STATE;
+        } else {
+            long expected = previous.mPosition + (previous.mPlayState == PLAY_STATE_PLAYING ? elapsed / 1000 : 0);
+            if (Math.abs(state.mPosition - expected) > POSITION_TOLERANCE) {
+                changes |= CHANGE_PLAY_STATE;
+            }
+        }
+        if (state.mPlaylistId != previous.mPlaylistId || state.mTrackId != previous.mTrackId) {
+            changes |= CHANGE_CURRENT_SONG;
+        }
+        if (state.mVolume != previous.mVolume
+                || state.mIsMute != previous.mIsMute
+                || state.mIsRepeat != previous.mIsRepeat
+                || state.mIsShuffle != previous.mIsShuffle) {
+            changes |= CHANGE_CONTROLS;
+        }
+        if (state.mIsPlaylistsChanged) {
+            changes |= CHANGE_PLAYLISTS;
+        }
+        return changes;
+    }
+
+    private synchronized void forgetState() {
+        mLastState = null;
+    }
+
+    @Override
+    public boolean play() throws ApiException, IOException, InterruptedException {
+        callCommand(new JsonRpcCall("Play"));
+        return true;
+    }
+
+    @Override
+    public boolean play(int playlistId, int songPosition) throws ApiException, IOException, InterruptedException {
+        play(playlistId, songPosition, 0);
+        return true;
+    }
+
+    @Override
+    public boolean play(int playlistId, int songPosition, int playPosition) throws ApiException, IOException, InterruptedException {
+        if (songPosition < 0) {
+            throw new IllegalArgumentException("Invalid song's position value: " + songPosition);
+        }
+        if (playPosition < 0) {
+            throw new IllegalArgumentException("Invalid song's play position value: " + playPosition);
+        }
+
+        callCommand(new JsonRpcCall("Play")
+                .param("playlist_id", playlistId)
+                .param("track_id", getTrackId(playlistId, songPosition))
+        );
+
+        setSongPlayPosition(playPosition);
+        return true;
+    }
+
+    @Override
+    public boolean stop() throws ApiException, IOException, InterruptedException {
+        callCommand(new JsonRpcCall("Stop"));
+        return true;
+    }
+
+    @Override
+    public boolean pause() throws ApiException, IOException, InterruptedException {
+        callCommand(new JsonRpcCall("Pause"));
+        return true;
+    }
+
+    @Override
+    public boolean next() throws ApiException, IOException, InterruptedException {
+        callCommand(new JsonRpcCall("PlayNext"));
+        return true;
+    }
+
+    @Override
+    public boolean previous() throws ApiException, IOException, InterruptedException {
+        callCommand(new JsonRpcCall("PlayPrevious"));
+        return true;
+    }
+
+    /**
+     * Unlike WebCtl the pause is distinguished from the stop
+     */
+    @Override
+    public int getPlayState() throws ApiException, IOException, InterruptedException {
+        return callShared(new JsonRpcCall("GetPlayerControlPanelState"), PANEL_STATE).mPlayState;
+    }
+
+    @Override
+    public int getSongPlayPosition() throws ApiException, IOException, InterruptedException {
+        return getStatus(Statuses.POSITION);
+    }
+
+    @Override
+    public void setSongPlayPosition(int second) throws ApiException, IOException, InterruptedException {
+        if (second < 0) {
+            throw new IllegalArgumentException("Seconds must be not negative. Given value: " + second);
+        }
+        setStatus(Statuses.POSITION, second);
+    }
+
+    @Override
+    public void setRepeatSong(boolean state) throws ApiException, IOException, InterruptedException {
+        setStatus(Statuses.REPEAT_SONG, state ? 1 : 0);
+    }
+
+    @Override
+    public boolean isRepeatSong() throws ApiException, IOException, InterruptedException {
+        return getStatus(Statuses.REPEAT_SONG) == 1;
+    }
+
+    @Override
+    public void setVolume(int volume) throws ApiException, IOException, InterruptedException {
+        if (volume < 0 || volume > 100) {
+            throw new IllegalArgumentException("Volume value must be in range of [0, 100]. Given value is " + volume);
+        }
+        setStatus(Statuses.VOLUME, volume);
+    }
+
+    @Override
+    public int getVolume() throws ApiException, IOException, InterruptedException {
+        return getStatus(Statuses.VOLUME);
+    }
+
+    @Override
+    public void setMute(boolean state) throws ApiException, IOException, InterruptedException {
+        setStatus(Statuses.MUTE, state ? 1 : 0);
+    }
+
+    @Override
+    public boolean isMute() throws ApiException, IOException, InterruptedException {
+        return getStatus(Statuses.MUTE) == 1;
+    }
+
+    @Override
+    public void setShuffle(boolean state) throws ApiException, IOException, InterruptedException {
+        setStatus(Statuses.SHUFFLE, state ? 1 : 0);
+    }
+
+    @Override
+    public boolean isShuffle() throws ApiException, IOException, InterruptedException {
+        return getStatus(Statuses.SHUFFLE) == 1;
+    }
+
+    /**
+     * All statuses are read by one batch
+     */
+    @Override
+    public StatusSnapshot getCustomStatuses(int... statuses) throws ApiException, IOException, InterruptedException {
+        if (statuses == null) {
+            throw new IllegalArgumentException("Statuses is null");
+        }
+
+        JsonRpcCall[] calls = new JsonRpcCall[statuses.length];
+        AimpControlDecoder.ResultReader<?>[] readers = new AimpControlDecoder.ResultReader<?>[statuses.length];
+        for (int i = 0; i < statuses.length; i++) {
+            calls[i] = new JsonRpcCall("Status").param("status_id", statuses[i]);
+            readers[i] = STATUS_VALUE;
+        }
+        Object[] results = statuses.length == 0
+                ? new Object[0]
+                : callBatchShared(calls, readers);
+
+        int[] values = new int[statuses.length];
+        for (int i = 0; i < statuses.length; i++) {
+            values[i] = (Integer) results[i];
+        }
+        return new StatusSnapshot(statuses, values);
+    }
+
+    @Override
+    public CurrentSongInfo getCurrentSongInfo() throws ApiException, IOException, InterruptedException {
+        AimpControlDecoder.PanelState state = callShared(new JsonRpcCall("GetPlayerControlPanelState"), PANEL_STATE);
+
+        CurrentSongInfo si = new CurrentSongInfo();
+        si.setPlaylistId(state.mPlaylistId);
+        if (state.mTrackId < 0) {
+            si.setSongPosition(-1);
+            si.setInfo(null);
+            return si;
+        }
+
+        Object[] results = callBatchShared(
+                new JsonRpcCall[] {
+                        new JsonRpcCall("GetEntryPositionInDataTable")
+                                .param("playlist_id", state.mPlaylistId)
+                                .param("track_id", state.mTrackId),
+                        new JsonRpcCall("GetPlaylistEntryInfo")
+                                .param("track_id", state.mTrackId)
+                },
+                new AimpControlDecoder.ResultReader<?>[] {ENTRY_POSITION, ENTRY_INFO}
+        );
+        si.setSongPosition((Integer) results[0]);
+        si.setInfo((Song) results[1]);
+        return si;
+    }
+
+    /**
+     * Hashes of playlists are received with the list itself
+     */
+    @Override
+    public List<Playlist> getPlaylists() throws ApiException, IOException, InterruptedException {
+        return call(
+                new JsonRpcCall("GetPlaylists").param("fields", AimpControlDecoder.PLAYLIST_FIELDS),
+                PLAYLISTS
+        );
+    }
+
+    @Override
+    public String getPlaylistHash(int playlistId) throws ApiException, IOException, InterruptedException {
+        List<Playlist> playlists = call(
+                new JsonRpcCall("GetPlaylists").param("fields", AimpControlDecoder.PLAYLIST_HASH_FIELDS),
+                PLAYLISTS
+        );
+        for (Playlist pl: playlists) {
+            if (pl.getId() == playlistId) {
+                return pl.getHash();
+            }
+        }
+        throw new ApiRequestException("Playlist is not found: " + playlistId);
+    }
+
+    @Override
+    public List<Song> getPlaylistSongs(int playlistId) throws ApiException, IOException, InterruptedException {
+        final ArrayList<Song> result = new ArrayList<Song>(0);
+
+        getPlaylistSongs(playlistId, SONGS_PAGE_SIZE, new SongsChunkListener() {
+            @Override
+            public void onSongsChunkLoaded(int playlistId, List<Song> chunk, int loadedCount) {
+                result.addAll(chunk);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Songs are requested by pages, each page is passed to the listener as soon as it's received
+     */
+    @Override
+    public void getPlaylistSongs(int playlistId, int chunkSize, SongsChunkListener listener) throws ApiException, IOException, InterruptedException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive number. Given value is " + chunkSize);
+        }
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener is null");
+        }
+
+        // page consists of whole chunks
+        int pageSize = chunkSize * Math.max(1, SONGS_PAGE_SIZE / chunkSize);
+        int loaded = 0;
+        while (true) {
+            final List<Song> page = new ArrayList<Song>(pageSize);
+            int total = call(
+                    new JsonRpcCall("GetPlaylistEntries")
+                            .param("playlist_id", playlistId)
+                            .param("fields", AimpControlDecoder.SONG_FIELDS)
+                            .param("start_index", loaded)
+                            .param("entries_count", pageSize),
+                    new AimpControlDecoder.ResultReader<Integer>() {
+                        @Override
+                        public Integer read(AimpControlDecoder decoder) throws IOException, ApiRequestException {
+                            return decoder.decodeSongs(page);
+                        }
+                    }
+            );
+
+            for (int from = 0; from < page.size(); from += chunkSize) {
+                List<Song> chunk = new ArrayList<Song>(page.subList(from, Math.min(page.size(), from + chunkSize)));
+                loaded += chunk.size();
+                listener.onSongsChunkLoaded(playlistId, chunk, loaded);
+            }
+            if (page.isEmpty() || loaded >= total) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void removeSong(int playlistId, int songPosition) throws ApiException, IOException, InterruptedException {
+        callCommand(new JsonRpcCall("RemoveTrack").param("track_id", getTrackId(playlistId, songPosition)));
+    }
+
+
+    // ================================================================================
+    // ====================== Requests
+
+    protected int getTrackId(int playlistId, int songPosition) throws ApiException, IOException, InterruptedException {
+        int id = call(
+                new JsonRpcCall("GetPlaylistEntries")
+                        .param("playlist_id", playlistId)
+                        .param("fields", AimpControlDecoder.TRACK_ID_FIELDS)
+                        .param("start_index", songPosition)
+                        .param("entries_count", 1),
+                TRACK_ID
+        );
+        if (id < 0) {
+            throw new ApiRequestException("Playlist " + playlistId + " has no song at position " + songPosition);
+        }
+        return id;
+    }
+
+    protected int getStatus(int status) throws ApiException, IOException, InterruptedException {
+        return callShared(new JsonRpcCall("Status").param("status_id", status), STATUS_VALUE);
+    }
+
+    protected void setStatus(int status, int value) throws ApiException, IOException, InterruptedException {
+        callCommand(new JsonRpcCall("Status").param("status_id", status).param("value", value));
+    }
+
+    /**
+     * Call the method which changes the state of the player. It's retried only if the request was not sent.
+     */
+    protected void callCommand(JsonRpcCall call) throws ApiException, IOException, InterruptedException {
+        Request request = new Request(new JsonRpcCall[] {call}, new AimpControlDecoder.ResultReader<?>[] {null});
+        performCommand(request.mAction, getExchange(request, 0));
+    }
+
+    /**
+     * Call read-only method, it's retried and hedged as any other read
+     */
+    @SuppressWarnings("unchecked")
+    protected <T> T call(JsonRpcCall call, AimpControlDecoder.ResultReader<T> reader) throws ApiException, IOException, InterruptedException {
+        return (T) callBatch(new JsonRpcCall[] {call}, new AimpControlDecoder.ResultReader<?>[] {reader})[0];
+    }
+
+    /**
+     * Same as {@link #call(JsonRpcCall, AimpControlDecoder.ResultReader)}, but concurrent identical calls share one response
+     */
+    @SuppressWarnings("unchecked")
+    protected <T> T callShared(JsonRpcCall call, AimpControlDecoder.ResultReader<T> reader) throws ApiException, IOException, InterruptedException {
+        return (T) callBatchShared(new JsonRpcCall[] {call}, new AimpControlDecoder.ResultReader<?>[] {reader})[0];
+    }
+
+    /**
+     * Call read-only methods by one request and decode their results. A single call is sent without a batch.
+     * @param readers Reader of the result per call
+     * @return Results in the order of calls
+     */
+    protected Object[] callBatch(JsonRpcCall[] calls, AimpControlDecoder.ResultReader<?>[] readers) throws ApiException, IOException, InterruptedException {
+        Request request = new Request(calls, readers);
+        return performRead(request.mAction, getExchange(request, 0));
+    }
+
+    /**
+     * Same as {@link #callBatch}, but concurrent identical batches share one response.
+     * Results must not be changed, as they are returned to all the callers.
+     */
+    protected Object[] callBatchShared(JsonRpcCall[] calls, AimpControlDecoder.ResultReader<?>[] readers) throws ApiException, IOException, InterruptedException {
+        Request request = new Request(calls, readers);
+        return performReadShared(request.mAction, request.mBody, getExchange(request, 0));
+    }
+
+    /**
+     * Call the method once with the given timeout, e.g. the long poll which is held by the server
+     */
+    @SuppressWarnings("unchecked")
+    protected <T> T callOnce(JsonRpcCall call, AimpControlDecoder.ResultReader<T> reader, int timeout) throws ApiException, IOException, InterruptedException {
+        Request request = new Request(new JsonRpcCall[] {call}, new AimpControlDecoder.ResultReader<?>[] {reader});
+        return (T) perform(request.mAction, getExchange(request, timeout))[0];
+    }
+
+    /**
+     * Send the request and decode its response with the decoder of the current thread.
+     * If decoding fails or is interrupted, the rest of the response is not downloaded.
+     * @param timeout Read timeout in milliseconds, 0 to adapt it to the latency of the action
+     */
+    private Exchange<Object[]> getExchange(final Request request, final int timeout) {
+        return new Exchange<Object[]>() {
+            @Override
+            public Object[] perform(AbortHandle abort) throws ApiException, IOException, InterruptedException {
+                AimpControlDecoder decoder = mDecoders.get();
+                HttpTransport.Response response = null;
+                boolean isCompleted = false;
+                try {
+                    response = post(
+                            request.mAction, RPC_PATH, CONTENT_TYPE, request.mBody.getBytes("UTF-8"),
+                            timeout > 0 ? timeout : getTimeout(request.mAction, request.mBody), abort
+                    );
+                    decoder.reset(response.getContent());
+
+                    Object[] results = decoder.decodeResponses(request.mReaders, request.mMethods);
+                    isCompleted = true;
+                    if (timeout == 0) {
+                        onResponseSize(request.mAction, request.mBody, decoder.getBytesRead());
+                    }
+                    return results;
+                } finally {
+                    decoder.detach();
+                    if (response != null) {
+                        if (isCompleted && !abort.isAborted()) {
+                            response.release();
+                        } else {
+                            response.abort();
+                        }
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Method is the action of a single call and of a batch of the same calls
+     */
+    protected static String getActionName(String[] methods) {
+        for (int i = 1; i < methods.length; i++) {
+            if (!methods[i].equals(methods[0])) {
+                return "batch";
+            }
+        }
+        return methods[0];
+    }
+
+
+    /**
+     * Body of the request with the calls, it's the same for identical calls
+     */
+    private static class Request {
+        final String mBody;
+        final String mAction;
+        final String[] mMethods;
+        final AimpControlDecoder.ResultReader<?>[] mReaders;
+
+        Request(JsonRpcCall[] calls, AimpControlDecoder.ResultReader<?>[] readers) {
+            mMethods = new String[calls.length];
+            StringBuilder body = new StringBuilder(128 * calls.length);
+            if (calls.length > 1) {
+                body.append('[');
+            }
+            for (int i = 0; i < calls.length; i++) {
+                if (i > 0) {
+                    body.append(',');
+                }
+                calls[i].writeTo(body, i);
+                mMethods[i] = calls[i].getMethod();
+            }
+            if (calls.length > 1) {
+                body.append(']');
+            }
+            mBody = body.toString();
+            mAction = getActionName(mMethods);
+            mReaders = readers;
+        }
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+import com.uas.media.aimp.api.TrafficMeter;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.entity.BufferedHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Transport based on Apache HttpClient and its connection pool.
+ * Requests are sent to the resolved address of the host, so HttpClient doesn't look it up for each connection.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class ApacheHttpTransport implements HttpTransport {
+
+    private final HttpConnectionPool mPool;
+    private final HostResolver mResolver;
+
+
+    public ApacheHttpTransport(TrafficMeter trafficMeter, HostResolver resolver) {
+        if (resolver == null) {
+            throw new IllegalArgumentException("Resolver is null");
+        }
+        mPool = new HttpConnectionPool(trafficMeter);
+        mResolver = resolver;
+    }
+
+    @Override
+    public Response get(String host, int port, String path, String userAgent, int timeout, int connectionWaitTimeout, AbortHandle abort) throws IOException {
+        return new EntityResponse(execute(new HttpGet(getUrl(host, port, path)), host, port, userAgent, timeout, connectionWaitTimeout, abort));
+    }
+
+    @Override
+    public Response post(String host, int port, String path, String contentType, byte[] body, String userAgent, int timeout, int connectionWaitTimeout, AbortHandle abort) throws IOException {
+        ByteArrayEntity entity = new ByteArrayEntity(body);
+        entity.setContentType(contentType);
+
+        HttpPost httpPost = new HttpPost(getUrl(host, port, path));
+        httpPost.setEntity(entity);
+        return new EntityResponse(execute(httpPost, host, port, userAgent, timeout, connectionWaitTimeout, abort));
+    }
+
+    private String getUrl(String host, int port, String path) throws IOException {
+        String address = HostResolver.toUrlHost(mResolver.resolve(host));
+        StringBuilder url = new StringBuilder(16 + address.length() + path.length());
+        url.append("http://").append(address).append(':').append(port).append(path);
+        return url.toString();
+    }
+
+    private HttpEntity execute(final HttpRequestBase request, String host, int port, String userAgent, int timeout, int connectionWaitTimeout, AbortHandle abort) throws IOException {
+        request.setHeader("Host", host + ":" + port);
+        request.setHeader("User-Agent", userAgent);
+
+        HttpParams httpParameters = request.getParams();
+        HttpConnectionParams.setConnectionTimeout(httpParameters, timeout);
+        HttpConnectionParams.setSoTimeout(httpParameters, timeout);
+        ConnManagerParams.setTimeout(httpParameters, connectionWaitTimeout);
+
+        if (abort != null) {
+            // shuts down the connection of the request, blocked reading fails at once
+            abort.setAction(new Runnable() {
+                @Override
+                public void run() {
+                    request.abort();
+                }
+            });
+        }
+        return mPool.execute(request).getEntity();
+    }
+
+    @Override
+    public boolean isPipelining() {
+        return false;
+    }
+
+    /**
+     * HttpClient can't pipeline, so requests are sent one by one. Each response is read to memory
+     * and its connection is returned to the pool at once, so the next request doesn't wait for a free connection.
+     */
+    @Override
+    public List<Response> getPipelined(String host, int port, List<String> paths, String userAgent, int timeout, int connectionWaitTimeout, AbortHandle abort) throws IOException {
+        List<Response> responses = new ArrayList<Response>(paths.size());
+        for (String path: paths) {
+            HttpEntity entity = execute(new HttpGet(getUrl(host, port, path)), host, port, userAgent, timeout, connectionWaitTimeout, abort);
+            try {
+                responses.add(new EntityResponse(entity == null ? null : new BufferedHttpEntity(entity)));
+            } finally {
+                mPool.release(entity);
+            }
+        }
+        return responses;
+    }
+
+    @Override
+    public void setMaxConnections(int max) {
+        mPool.setMaxConnectionsPerRoute(max);
+    }
+
+    @Override
+    public HttpConnectionPool.Stats getStats() {
+        return mPool.getStats();
+    }
+
+    @Override
+    public void shutdown() {
+        mPool.shutdown();
+    }
+
+
+    class EntityResponse implements Response {
+
+        private final HttpEntity mEntity;
+        private InputStream mContent;
+
+        EntityResponse(HttpEntity entity) {
+            mEntity = entity;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            if (mContent == null) {
+                mContent = mEntity.getContent();
+            }
+            return mContent;
+        }
+
+        @Override
+        public void release() throws IOException {
+            if (mContent != null) {
+                mContent.close();
+            } else {
+                mPool.release(mEntity);
+            }
+        }
+
+        @Override
+        public void abort() throws IOException {
+            mPool.abort(getContent());
+        }
+    }
+
+}
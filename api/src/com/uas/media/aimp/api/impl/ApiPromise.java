@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+import com.uas.media.aimp.api.ApiCallback;
+import com.uas.media.aimp.api.ApiException;
+import com.uas.media.aimp.api.ApiFuture;
+import com.uas.media.aimp.api.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Future which is completed by calling {@link #complete(Object)} or {@link #fail(Throwable)}.
+ * Only the first of completion, failure and cancellation takes effect.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class ApiPromise<T> implements ApiFuture<T> {
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_COMPLETED = 1;
+    private static final int STATE_FAILED = 2;
+    private static final int STATE_CANCELLED = 3;
+
+    // guarded by this
+    private int mState = STATE_PENDING;
+    private T mResult;
+    private Throwable mFailure;
+    private List<ApiCallback<? super T>> mCallbacks;
+    private Runnable mCanceller;
+
+
+    public boolean complete(T result) {
+        return finish(STATE_COMPLETED, result, null);
+    }
+
+    public boolean fail(Throwable failure) {
+        if (failure == null) {
+            throw new IllegalArgumentException("Failure is null");
+        }
+        return finish(STATE_FAILED, null, failure);
+    }
+
+    /**
+     * Set action which stops the work if the future is cancelled.
+     * If the future is already cancelled, the action is run at once.
+     */
+    public void setCanceller(Runnable canceller) {
+        synchronized (this) {
+            if (mState == STATE_PENDING) {
+                mCanceller = canceller;
+                return;
+            }
+            if (mState != STATE_CANCELLED) {
+                return;
+            }
+        }
+        canceller.run();
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        Runnable canceller;
+        synchronized (this) {
+            canceller = mCanceller;
+        }
+        if (!finish(STATE_CANCELLED, null, new CancellationException("Request is cancelled"))) {
+            return false;
+        }
+        if (canceller != null) {
+            canceller.run();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return mState == STATE_CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return mState != STATE_PENDING;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (mState == STATE_PENDING) {
+            wait();
+        }
+        return report();
+    }
+
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (mState == STATE_PENDING) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return report();
+    }
+
+    @Override
+    public T getResult() throws ApiException, IOException, InterruptedException {
+        try {
+            return get();
+        } catch (ExecutionException ex) {
+            Throwable t = ex.getCause();
+            if (t instanceof ApiException) {
+                throw (ApiException) t;
+            } else if (t instanceof IOException) {
+                throw (IOException) t;
+            } else if (t instanceof InterruptedException) {
+                throw (InterruptedException) t;
+            } else if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            } else {
+                throw new ApiException(t.getMessage(), t);
+            }
+        }
+    }
+
+    @Override
+    public void addCallback(ApiCallback<? super T> callback) {
+        if (callback == null) {
+            throw new IllegalArgumentException("Callback is null");
+        }
+        synchronized (this) {
+            if (mState == STATE_PENDING) {
+                if (mCallbacks == null) {
+                    mCallbacks = new ArrayList<ApiCallback<? super T>>(2);
+                }
+                mCallbacks.add(callback);
+                return;
+            }
+        }
+        deliver(callback);
+    }
+
+    private boolean finish(int state, T result, Throwable failure) {
+        List<ApiCallback<? super T>> callbacks;
+        synchronized (this) {
+            if (mState != STATE_PENDING) {
+                return false;
+            }
+            mState = state;
+            mResult = result;
+            mFailure = failure;
+            callbacks = mCallbacks;
+            mCallbacks = null;
+            mCanceller = null;
+            notifyAll();
+        }
+        if (callbacks != null) {
+            for (ApiCallback<? super T> c: callbacks) {
+                deliver(c);
+            }
+        }
+        return true;
+    }
+
+    private T report() throws ExecutionException {
+        switch (mState) {
+            case STATE_COMPLETED:
+                return mResult;
+            case STATE_CANCELLED:
+                throw (CancellationException) mFailure;
+            default:
+                throw new ExecutionException(mFailure);
+        }
+    }
+
+    private void deliver(ApiCallback<? super T> callback) {
+        T result;
+        Throwable failure;
+        synchronized (this) {
+            result = mResult;
+            failure = mFailure;
+        }
+        try {
+            if (failure == null) {
+                callback.onSuccess(result);
+            } else {
+                callback.onFailure(failure);
+            }
+        } catch (RuntimeException ex) {
+            // other callbacks must be called anyway
+            Logger.e("Callback failed: " + ex.getMessage(), ex);
+        }
+    }
+
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+import com.uas.media.aimp.api.ApiFuture;
+import com.uas.media.aimp.api.IAsyncPlugin;
+import com.uas.media.aimp.api.IPlugin;
+import com.uas.media.aimp.api.TrafficMeter;
+import com.uas.media.aimp.api.models.CurrentSongInfo;
+import com.uas.media.aimp.api.models.Playlist;
+import com.uas.media.aimp.api.models.Song;
+import com.uas.media.aimp.api.models.StatusSnapshot;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous view of any blocking {@link IPlugin}, e.g. of {@link CachingPlugin}.
+ * Calls are executed by a small pool of threads, cancelling a future interrupts its call.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class AsyncPluginAdapter implements IAsyncPlugin {
+
+    public static final int DEFAULT_THREADS = 2;
+
+    private static final long THREADS_KEEP_ALIVE = 1000*30;
+
+    private final IPlugin mPlugin;
+    private final int mThreads;
+    private ThreadPoolExecutor mExecutor;
+
+
+    public AsyncPluginAdapter(IPlugin plugin) {
+        this(plugin, DEFAULT_THREADS);
+    }
+
+    public AsyncPluginAdapter(IPlugin plugin, int threads) {
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin is null");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Count of threads must be positive. Given value is " + threads);
+        }
+        mPlugin = plugin;
+        mThreads = threads;
+    }
+
+    @Override
+    public IPlugin getPlugin() {
+        return mPlugin;
+    }
+
+    /**
+     * Interrupt calls in progress and stop the threads. The wrapped plugin is not released.
+     */
+    @Override
+    public synchronized void release() {
+        if (mExecutor != null) {
+            mExecutor.shutdownNow();
+            mExecutor = null;
+        }
+    }
+
+    protected synchronized ThreadPoolExecutor getExecutor() {
+        if (mExecutor == null) {
+            mExecutor = new ThreadPoolExecutor(
+                    mThreads, mThreads,
+                    THREADS_KEEP_ALIVE, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new HttpPlugin.WorkersThreadFactory("AsyncPlugin")
+            );
+        }
+        return mExecutor;
+    }
+
+    // ================================================================================
+    // ================================================================================
+
+
+    @Override
+    public ApiFuture<Boolean> ping() {
+        return call(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return mPlugin.ping();
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<Boolean> play() {
+        return call(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return mPlugin.play();
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<Boolean> play(final int playlistId, final int songPosition) {
+        return call(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return mPlugin.play(playlistId, songPosition);
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<Boolean> play(final int playlistId, final int songPosition, final int playPosition) {
+        return call(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return mPlugin.play(playlistId, songPosition, playPosition);
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<Boolean> stop() {
+        return call(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return mPlugin.stop();
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<Boolean> pause() {
+        return call(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return mPlugin.pause();
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<Boolean> next() {
+        return call(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return mPlugin.next();
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<Boolean> previous() {
+        return call(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return mPlugin.previous();
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<Integer> getPlayState() {
+        return call(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return mPlugin.getPlayState();
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<Void> setSongPlayPosition(final int second) {
+        return call(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                mPlugin.setSongPlayPosition(second);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<Integer> getSongPlayPosition() {
+        return call(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return mPlugin.getSongPlayPosition();
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<Void> setRepeatSong(final boolean state) {
+        return call(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                mPlugin.setRepeatSong(state);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<Boolean> isRepeatSong() {
+        return call(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return mPlugin.isRepeatSong();
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<Void> setVolume(final int volume) {
+        return call(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                mPlugin.setVolume(volume);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<Integer> getVolume() {
+        return call(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return mPlugin.getVolume();
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<Void> setMute(final boolean state) {
+        return call(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                mPlugin.setMute(state);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<Boolean> isMute() {
+        return call(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return mPlugin.isMute();
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<Void> setShuffle(final boolean state) {
+        return call(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                mPlugin.setShuffle(state);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<Boolean> isShuffle() {
+        return call(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return mPlugin.isShuffle();
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<StatusSnapshot> getCustomStatuses(final int... statuses) {
+        return call(new Callable<StatusSnapshot>() {
+            @Override
+            public StatusSnapshot call() throws Exception {
+                return mPlugin.getCustomStatuses(statuses);
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<CurrentSongInfo> getCurrentSongInfo() {
+        return call(new Callable<CurrentSongInfo>() {
+            @Override
+            public CurrentSongInfo call() throws Exception {
+                return mPlugin.getCurrentSongInfo();
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<List<Playlist>> getPlaylists() {
+        return call(new Callable<List<Playlist>>() {
+            @Override
+            public List<Playlist> call() throws Exception {
+                return mPlugin.getPlaylists();
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<String> getPlaylistHash(final int playlistId) {
+        return call(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return mPlugin.getPlaylistHash(playlistId);
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<List<Song>> getPlaylistSongs(final int playlistId) {
+        return call(new Callable<List<Song>>() {
+            @Override
+            public List<Song> call() throws Exception {
+                return mPlugin.getPlaylistSongs(playlistId);
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<Void> removeSong(final int playlistId, final int songPosition) {
+        return call(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                mPlugin.removeSong(playlistId, songPosition);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Execute the call in the pool. Traffic of the call is attributed to the scope of the caller.
+     */
+    protected <T> ApiFuture<T> call(final Callable<T> call) {
+        final ApiPromise<T> promise = new ApiPromise<T>();
+        final String scope = TrafficMeter.getScope();
+        try {
+            final Future<?> task = getExecutor().submit(new Runnable() {
+                @Override
+                public void run() {
+                    if (promise.isDone()) {
+                        return;
+                    }
+                    String previousScope = TrafficMeter.enterScope(scope);
+                    try {
+                        promise.complete(call.call());
+                    } catch (Throwable ex) {
+                        promise.fail(ex);
+                    } finally {
+                        TrafficMeter.exitScope(previousScope);
+                    }
+                }
+            });
+            promise.setCanceller(new Runnable() {
+                @Override
+                public void run() {
+                    task.cancel(true);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            promise.fail(ex);
+        }
+        return promise;
+    }
+
+}
@@ -0,0 +1,605 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+import com.uas.media.aimp.api.ApiCallback;
+import com.uas.media.aimp.api.ApiException;
+import com.uas.media.aimp.api.ApiFuture;
+import com.uas.media.aimp.api.IAsyncPlugin;
+import com.uas.media.aimp.api.IPlugin;
+import com.uas.media.aimp.api.Logger;
+import com.uas.media.aimp.api.SongsChunkListener;
+import com.uas.media.aimp.api.Statuses;
+import com.uas.media.aimp.api.TrafficMeter;
+import com.uas.media.aimp.api.models.CurrentSongInfo;
+import com.uas.media.aimp.api.models.Playlist;
+import com.uas.media.aimp.api.models.Song;
+import com.uas.media.aimp.api.models.StatusSnapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous client of AIMP Web Control Plugin. All requests are performed by one event loop thread,
+ * responses are decoded in it too. Settings of the remote host, timeouts, traffic and metrics
+ * are shared with the given {@link WebCtlPlugin}, so both of them can be used at the same time.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class AsyncWebCtlPlugin implements IAsyncPlugin {
+
+    private static final String EVENT_LOOP_NAME = "WebCtlEventLoop";
+    private static final int SONGS_CHUNK_SIZE = 1024;
+
+    private final WebCtlPlugin mPlugin;
+    private HttpEventLoop mLoop;
+
+    private final ThreadLocal<WebCtlDecoder> mDecoders = new ThreadLocal<WebCtlDecoder>() {
+        @Override
+        protected WebCtlDecoder initialValue() {
+            return new WebCtlDecoder();
+        }
+    };
+
+
+    public AsyncWebCtlPlugin(WebCtlPlugin plugin) {
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin is null");
+        }
+        mPlugin = plugin;
+    }
+
+    @Override
+    public IPlugin getPlugin() {
+        return mPlugin;
+    }
+
+    /**
+     * Stop the event loop. Requests in flight are failed with {@link IOException}.
+     * Connections of the blocking plugin are not affected.
+     */
+    @Override
+    public synchronized void release() {
+        if (mLoop != null) {
+            mLoop.shutdown();
+            mLoop = null;
+        }
+    }
+
+    public synchronized HttpConnectionPool.Stats getConnectionPoolStats() {
+        return getLoop().getStats();
+    }
+
+    protected synchronized HttpEventLoop getLoop() {
+        if (mLoop == null) {
+            mLoop = new HttpEventLoop(
+                    EVENT_LOOP_NAME,
+                    mPlugin.getMaxConcurrentRequests(),
+                    HttpConnectionPool.DEFAULT_IDLE_TIMEOUT,
+                    mPlugin.getTrafficMeter()
+            );
+        }
+        mLoop.setMaxConnections(mPlugin.getMaxConcurrentRequests());
+        return mLoop;
+    }
+
+    // ================================================================================
+    // ================================================================================
+
+
+    @Override
+    public ApiFuture<Boolean> ping() {
+        ApiPromise<Boolean> result = new ApiPromise<Boolean>();
+        final ApiFuture<List<Playlist>> playlists = receive("/?action=get_playlist_list", new WebCtlPlugin.Decoding<List<Playlist>>() {
+            @Override
+            public List<Playlist> decode(WebCtlDecoder decoder) throws ApiException, IOException, InterruptedException {
+                return decoder.decodePlaylists();
+            }
+        });
+        result.setCanceller(canceller(playlists));
+        playlists.addCallback(new Forward<List<Playlist>, Boolean>(result) {
+            @Override
+            public void onSuccess(List<Playlist> value) {
+                mTarget.complete(true);
+            }
+
+            @Override
+            public void onFailure(Throwable error) {
+                Logger.e("Ping operation failed. Reason: " + error.getMessage(), error);
+                mTarget.complete(false);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public ApiFuture<Boolean> play() {
+        return succeeded(sendCommand("/?action=player_play"));
+    }
+
+    @Override
+    public ApiFuture<Boolean> play(int playlistId, int songPosition) {
+        return play(playlistId, songPosition, 0);
+    }
+
+    @Override
+    public ApiFuture<Boolean> play(int playlistId, int songPosition, final int playPosition) {
+        if (songPosition < 0) {
+            throw new IllegalArgumentException("Invalid song's position value: " + songPosition);
+        }
+        if (playPosition < 0) {
+            throw new IllegalArgumentException("Invalid song's play position value: " + playPosition);
+        }
+
+        ApiFuture<Void> song = sendCommand(
+                "/?action=set_song_play" +
+                        "&playlist=" + playlistId +
+                        "&song=" + songPosition
+        );
+        return succeeded(then(song, new Step<Void, Void>() {
+            @Override
+            ApiFuture<Void> next(Void value) {
+                return setSongPlayPosition(playPosition);
+            }
+        }));
+    }
+
+    @Override
+    public ApiFuture<Boolean> stop() {
+        return succeeded(sendCommand("/?action=player_stop"));
+    }
+
+    @Override
+    public ApiFuture<Boolean> pause() {
+        return succeeded(sendCommand("/?action=player_pause"));
+    }
+
+    @Override
+    public ApiFuture<Boolean> next() {
+        return succeeded(sendCommand("/?action=player_next"));
+    }
+
+    @Override
+    public ApiFuture<Boolean> previous() {
+        return succeeded(sendCommand("/?action=player_prevous"));
+    }
+
+    @Override
+    public ApiFuture<Integer> getPlayState() {
+        return then(getCustomStatus(Statuses.PLAY), new Step<Integer, Integer>() {
+            @Override
+            ApiFuture<Integer> next(Integer value) {
+                return done(value == 1 ? IPlugin.PLAY_STATE_PLAYING : IPlugin.PLAY_STATE_STOPPED);
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<Void> setSongPlayPosition(int second) {
+        if (second < 0) {
+            throw new IllegalArgumentException("Seconds must be not negative. Given value: " + second);
+        }
+        return setCustomStatus(Statuses.POSITION, second);
+    }
+
+    @Override
+    public ApiFuture<Integer> getSongPlayPosition() {
+        return getCustomStatus(Statuses.POSITION);
+    }
+
+    @Override
+    public ApiFuture<Void> setRepeatSong(boolean state) {
+        return setCustomStatus(Statuses.REPEAT_SONG, state ? 1 : 0);
+    }
+
+    @Override
+    public ApiFuture<Boolean> isRepeatSong() {
+        return isCustomStatusOn(Statuses.REPEAT_SONG);
+    }
+
+    @Override
+    public ApiFuture<Void> setVolume(int volume) {
+        if (volume < 0 || volume > 100) {
+            throw new IllegalArgumentException("Volume value must be in range of [0, 100]. Given value is " + volume);
+        }
+        return setCustomStatus(Statuses.VOLUME, volume);
+    }
+
+    @Override
+    public ApiFuture<Integer> getVolume() {
+        return getCustomStatus(Statuses.VOLUME);
+    }
+
+    @Override
+    public ApiFuture<Void> setMute(boolean state) {
+        return setCustomStatus(Statuses.MUTE, state ? 1 : 0);
+    }
+
+    @Override
+    public ApiFuture<Boolean> isMute() {
+        return isCustomStatusOn(Statuses.MUTE);
+    }
+
+    @Override
+    public ApiFuture<Void> setShuffle(boolean state) {
+        return setCustomStatus(Statuses.SHUFFLE, state ? 1 : 0);
+    }
+
+    @Override
+    public ApiFuture<Boolean> isShuffle() {
+        return isCustomStatusOn(Statuses.SHUFFLE);
+    }
+
+    @Override
+    public ApiFuture<StatusSnapshot> getCustomStatuses(final int... statuses) {
+        if (statuses == null) {
+            throw new IllegalArgumentException("Statuses is null");
+        }
+
+        // all the requests are in flight at once
+        List<ApiFuture<Integer>> values = new ArrayList<ApiFuture<Integer>>(statuses.length);
+        for (int status: statuses) {
+            values.add(getCustomStatus(status));
+        }
+        return then(all(values), new Step<List<Integer>, StatusSnapshot>() {
+            @Override
+            ApiFuture<StatusSnapshot> next(List<Integer> list) {
+                int[] result = new int[list.size()];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = list.get(i);
+                }
+                return done(new StatusSnapshot(statuses, result));
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<CurrentSongInfo> getCurrentSongInfo() {
+        return receive("/?action=get_song_current", new WebCtlPlugin.Decoding<CurrentSongInfo>() {
+            @Override
+            public CurrentSongInfo decode(WebCtlDecoder decoder) throws ApiException, IOException, InterruptedException {
+                return decoder.decodeCurrentSong();
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<List<Playlist>> getPlaylists() {
+        ApiFuture<List<Playlist>> playlists = receive("/?action=get_playlist_list", new WebCtlPlugin.Decoding<List<Playlist>>() {
+            @Override
+            public List<Playlist> decode(WebCtlDecoder decoder) throws ApiException, IOException, InterruptedException {
+                return decoder.decodePlaylists();
+            }
+        });
+
+        return then(playlists, new Step<List<Playlist>, List<Playlist>>() {
+            @Override
+            ApiFuture<List<Playlist>> next(final List<Playlist> result) {
+                // hashes are requested one per playlist, all of them at once
+                List<ApiFuture<String>> hashes = new ArrayList<ApiFuture<String>>(result.size());
+                for (Playlist pl: result) {
+                    hashes.add(getPlaylistHash(pl.getId()));
+                }
+                return then(all(hashes), new Step<List<String>, List<Playlist>>() {
+                    @Override
+                    ApiFuture<List<Playlist>> next(List<String> list) {
+                        for (int i = 0; i < result.size(); i++) {
+                            result.get(i).setHash(list.get(i));
+                        }
+                        return done(result);
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<String> getPlaylistHash(int playlistId) {
+        return receive("/?action=get_playlist_crc&id=" + playlistId, new WebCtlPlugin.Decoding<String>() {
+            @Override
+            public String decode(WebCtlDecoder decoder) throws ApiException, IOException, InterruptedException {
+                return decoder.decodeText();
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<List<Song>> getPlaylistSongs(final int playlistId) {
+        return receive("/?action=get_playlist_songs&id=" + playlistId, new WebCtlPlugin.Decoding<List<Song>>() {
+            @Override
+            public List<Song> decode(WebCtlDecoder decoder) throws ApiException, IOException, InterruptedException {
+                final ArrayList<Song> result = new ArrayList<Song>(0);
+                decoder.decodePlaylistSongs(playlistId, SONGS_CHUNK_SIZE, new SongsChunkListener() {
+                    @Override
+                    public void onSongsChunkLoaded(int playlistId, List<Song> chunk, int loadedCount) {
+                        result.addAll(chunk);
+                    }
+                });
+                return result;
+            }
+        });
+    }
+
+    @Override
+    public ApiFuture<Void> removeSong(int playlistId, int songPosition) {
+        return sendCommand(
+                "/?action=playlist_del_file" +
+                "&playlist=" + playlistId +
+                "&file=" + songPosition
+        );
+    }
+
+    // ================================================================================
+    // ====================== Requests
+
+    protected ApiFuture<Void> setCustomStatus(int status, int value) {
+        return sendCommand("/?action=set_custom_status&status=" + status + "&value=" + value);
+    }
+
+    /**
+     * Read integer value of custom status and check it's in the range of known statuses
+     */
+    protected ApiFuture<Integer> getCustomStatus(final int status) {
+        return receive(mPlugin.getCustomStatusRequest(status), new WebCtlPlugin.Decoding<Integer>() {
+            @Override
+            public Integer decode(WebCtlDecoder decoder) throws ApiException, IOException, InterruptedException {
+                return mPlugin.checkCustomStatus(status, decoder.decodeCustomStatus(status));
+            }
+        });
+    }
+
+    private ApiFuture<Boolean> isCustomStatusOn(int status) {
+        return then(getCustomStatus(status), new Step<Integer, Boolean>() {
+            @Override
+            ApiFuture<Boolean> next(Integer value) {
+                return done(value == 1);
+            }
+        });
+    }
+
+    /**
+     * Send request which response is not needed
+     */
+    protected ApiFuture<Void> sendCommand(String request) {
+        return receive(request, new WebCtlPlugin.Decoding<Void>() {
+            @Override
+            public Void decode(WebCtlDecoder decoder) {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Send request and decode its response in the event loop.
+     * Latency and outcome are recorded to the metrics of the plugin, timeouts are adapted as for blocking requests.
+     */
+    protected <T> ApiFuture<T> receive(final String request, final WebCtlPlugin.Decoding<T> decoding) {
+        final ApiPromise<T> promise = new ApiPromise<T>();
+        final String action = WebCtlPlugin.getActionName(request);
+        final AdaptiveTimeouts timeouts = mPlugin.getAdaptiveTimeouts();
+        final long startTime = System.nanoTime();
+
+        HttpEventLoop.Handler handler = new HttpEventLoop.Handler() {
+            @Override
+            public void onResponse(HttpEventLoop.Exchange exchange, byte[] body, int length) {
+                timeouts.onResponse(action, exchange.getHeadTime());
+                if (promise.isCancelled()) {
+                    return;
+                }
+                WebCtlDecoder decoder = mDecoders.get();
+                decoder.reset(new ByteArrayInputStream(body, 0, length));
+                T result = null;
+                Throwable failure = null;
+                try {
+                    result = decoding.decode(decoder);
+                    timeouts.onResponseSize(action, request, decoder.getBytesRead());
+                } catch (Exception ex) {
+                    failure = ex;
+                } finally {
+                    decoder.detach();
+                }
+                mPlugin.getMetrics().record(action, System.nanoTime() - startTime, failure);
+                if (failure == null) {
+                    promise.complete(result);
+                } else {
+                    promise.fail(failure);
+                }
+            }
+
+            @Override
+            public void onFailure(HttpEventLoop.Exchange exchange, IOException ex) {
+                if (ex instanceof InterruptedIOException) {
+                    timeouts.onTimeout(action);
+                }
+                mPlugin.onConnectFailure(ex);
+                mPlugin.getMetrics().record(action, System.nanoTime() - startTime, ex);
+                promise.fail(ex);
+            }
+        };
+
+        try {
+            // only the first lookup blocks, later ones are served from the cache
+            String host = mPlugin.getRemoteHost();
+            InetAddress address = mPlugin.getHostResolver().resolve(host);
+            final HttpEventLoop.Exchange exchange = getLoop().submit(
+                    host, address, mPlugin.getRemotePort(), request, mPlugin.getHttpClientName(),
+                    mPlugin.getTimeout(action, request), mPlugin.getConnectionTimeout(),
+                    action, TrafficMeter.getScope(), handler
+            );
+            promise.setCanceller(new Runnable() {
+                @Override
+                public void run() {
+                    exchange.abort();
+                    mPlugin.getMetrics().record(action, System.nanoTime() - startTime, new InterruptedException());
+                }
+            });
+        } catch (IOException ex) {
+            promise.fail(ex);
+        }
+        return promise;
+    }
+
+    // ================================================================================
+    // ====================== Composition
+
+    /**
+     * Next asynchronous step which starts when the previous one succeeds
+     */
+    private static abstract class Step<S, T> {
+        abstract ApiFuture<T> next(S value) throws ApiException;
+    }
+
+    /**
+     * Callback which passes failure of the source to the target future
+     */
+    private static abstract class Forward<S, T> implements ApiCallback<S> {
+
+        protected final ApiPromise<T> mTarget;
+
+        Forward(ApiPromise<T> target) {
+            mTarget = target;
+        }
+
+        @Override
+        public void onFailure(Throwable error) {
+            mTarget.fail(error);
+        }
+    }
+
+    /**
+     * Run the step after the source succeeds. Cancelling the result cancels the running step.
+     */
+    private static <S, T> ApiFuture<T> then(final ApiFuture<S> source, final Step<S, T> step) {
+        final ApiPromise<T> result = new ApiPromise<T>();
+        result.setCanceller(canceller(source));
+        source.addCallback(new Forward<S, T>(result) {
+            @Override
+            public void onSuccess(S value) {
+                ApiFuture<T> next;
+                try {
+                    next = step.next(value);
+                } catch (Exception ex) {
+                    mTarget.fail(ex);
+                    return;
+                }
+                mTarget.setCanceller(canceller(next));
+                next.addCallback(new Forward<T, T>(mTarget) {
+                    @Override
+                    public void onSuccess(T value) {
+                        mTarget.complete(value);
+                    }
+                });
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Wait for all the futures. Result fails as soon as any of them fails, the rest are cancelled then.
+     */
+    private static <T> ApiFuture<List<T>> all(final List<ApiFuture<T>> futures) {
+        final ApiPromise<List<T>> result = new ApiPromise<List<T>>();
+        final int count = futures.size();
+        if (count == 0) {
+            result.complete(new ArrayList<T>(0));
+            return result;
+        }
+
+        final Object[] values = new Object[count];
+        final AtomicInteger remaining = new AtomicInteger(count);
+        final Runnable cancelAll = new Runnable() {
+            @Override
+            public void run() {
+                for (ApiFuture<T> f: futures) {
+                    f.cancel(true);
+                }
+            }
+        };
+        result.setCanceller(cancelAll);
+
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            futures.get(i).addCallback(new Forward<T, List<T>>(result) {
+                @Override
+                @SuppressWarnings("unchecked")
+                public void onSuccess(T value) {
+                    values[index] = value;
+                    if (remaining.decrementAndGet() == 0) {
+                        List<T> list = new ArrayList<T>(count);
+                        for (Object v: values) {
+                            list.add((T) v);
+                        }
+                        mTarget.complete(list);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable error) {
+                    if (mTarget.fail(error)) {
+                        cancelAll.run();
+                    }
+                }
+            });
+        }
+        return result;
+    }
+
+    private static ApiFuture<Boolean> succeeded(ApiFuture<Void> source) {
+        return then(source, new Step<Void, Boolean>() {
+            @Override
+            ApiFuture<Boolean> next(Void value) {
+                return done(true);
+            }
+        });
+    }
+
+    private static <T> ApiFuture<T> done(T value) {
+        ApiPromise<T> result = new ApiPromise<T>();
+        result.complete(value);
+        return result;
+    }
+
+    private static Runnable canceller(final ApiFuture<?> future) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                future.cancel(true);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,728 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+import com.uas.media.aimp.api.ApiException;
+import com.uas.media.aimp.api.ApiMetrics;
+import com.uas.media.aimp.api.IPlugin;
+import com.uas.media.aimp.api.IPushPlugin;
+import com.uas.media.aimp.api.SongsChunkListener;
+import com.uas.media.aimp.api.Statuses;
+import com.uas.media.aimp.api.TrafficMeter;
+import com.uas.media.aimp.api.models.CurrentSongInfo;
+import com.uas.media.aimp.api.models.Playlist;
+import com.uas.media.aimp.api.models.Song;
+import com.uas.media.aimp.api.models.StatusSnapshot;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plugin which keeps values read from another plugin for a while, so rarely changed values
+ * like shuffle or the list of playlists are not requested by each sync.
+ * Each custom status and each kind of read has its own time to live, zero TTL disables caching.
+ * Writes made through this plugin update or drop the affected values immediately,
+ * so the caller always reads its own changes. Changes made on the remote side are seen not later than TTL,
+ * or at once if the plugin pushes them (see {@link PushCachingPlugin} and {@link #create(IPlugin)}).
+ * <p/>
+ * Default TTLs fit the default periods of polling sync. Shuffle, repeat and mute are read both by the sync
+ * of the play state and by the sync of others, their TTL is the period of the latter, so they are requested
+ * half as often and are as late as the other controls. Volume and playlists are read by one sync each,
+ * so polling gains nothing from their TTLs, which only serve reads made by UI between syncs.
+ * Values of a plugin which pushes changes live much longer, see {@link PushCachingPlugin}.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class CachingPlugin implements IPlugin {
+
+    public static final long DEFAULT_FLAGS_TTL = 1000*10;
+    public static final long DEFAULT_VOLUME_TTL = 1000*5;
+    public static final long DEFAULT_PLAYLISTS_TTL = 1000*5;
+    public static final long DEFAULT_PLAYLIST_HASH_TTL = 1000*5;
+
+    // keys of values which are not custom statuses
+    private static final int KEY_PLAY_STATE = -1;
+    private static final int KEY_CURRENT_SONG = -2;
+    private static final int KEY_PLAYLISTS = -3;
+
+
+    private final IPlugin mPlugin;
+
+    private final ConcurrentMap<Integer, Long> mTtls = new ConcurrentHashMap<Integer, Long>();
+    private volatile long mPlaylistHashTtl = DEFAULT_PLAYLIST_HASH_TTL;
+
+    private final ConcurrentMap<Integer, Entry> mValues = new ConcurrentHashMap<Integer, Entry>();
+    private final ConcurrentMap<Integer, Entry> mHashes = new ConcurrentHashMap<Integer, Entry>();
+
+    // is changed by each write, values read before the write are not stored
+    private final AtomicLong mGeneration = new AtomicLong();
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mStalenessSum = new AtomicLong();
+    private final AtomicLong mMaxStaleness = new AtomicLong();
+
+
+    public CachingPlugin(IPlugin plugin) {
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin is null");
+        }
+        mPlugin = plugin;
+
+        setStatusTtl(Statuses.SHUFFLE, DEFAULT_FLAGS_TTL);
+        setStatusTtl(Statuses.REPEAT_SONG, DEFAULT_FLAGS_TTL);
+        setStatusTtl(Statuses.MUTE, DEFAULT_FLAGS_TTL);
+        setStatusTtl(Statuses.VOLUME, DEFAULT_VOLUME_TTL);
+        mTtls.put(KEY_PLAYLISTS, DEFAULT_PLAYLISTS_TTL);
+    }
+
+    /**
+     * Cache of the plugin which also pushes changes if the plugin does
+     */
+    public static CachingPlugin create(IPlugin plugin) {
+        return plugin instanceof IPushPlugin
+                ? new PushCachingPlugin((IPushPlugin) plugin)
+                : new CachingPlugin(plugin);
+    }
+
+    public IPlugin getPlugin() {
+        return mPlugin;
+    }
+
+    // ================================================================================
+    // ====================== Policies
+
+    /**
+     * Set how long the value of a custom status is reused
+     * @param status Code of status, see {@link Statuses}
+     * @param ttl Milliseconds, 0 to read the status each time
+     */
+    public void setStatusTtl(int status, long ttl) {
+        if (status < 1) {
+            throw new IllegalArgumentException("Invalid status code: " + status);
+        }
+        setTtl(status, ttl);
+    }
+
+    public long getStatusTtl(int status) {
+        return getTtl(status);
+    }
+
+    public void setPlayStateTtl(long ttl) {
+        setTtl(KEY_PLAY_STATE, ttl);
+    }
+
+    public void setCurrentSongTtl(long ttl) {
+        setTtl(KEY_CURRENT_SONG, ttl);
+    }
+
+    public void setPlaylistsTtl(long ttl) {
+        setTtl(KEY_PLAYLISTS, ttl);
+    }
+
+    public void setPlaylistHashTtl(long ttl) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("TTL must be not negative. Given value is " + ttl);
+        }
+        mPlaylistHashTtl = ttl;
+    }
+
+    /**
+     * Drop all cached values
+     */
+    public void invalidate() {
+        mGeneration.incrementAndGet();
+        mValues.clear();
+        mHashes.clear();
+    }
+
+    public Stats getStats() {
+        long hits = mHits.get();
+        return new Stats(
+                hits,
+                mMisses.get(),
+                hits == 0 ? 0 : mStalenessSum.get() / hits,
+                mMaxStaleness.get()
+        );
+    }
+
+    // ================================================================================
+    // ====================== Connection parameters
+
+    @Override
+    public String getRemotePluginName() {
+        return mPlugin.getRemotePluginName();
+    }
+
+    @Override
+    public String getHttpClientName() {
+        return mPlugin.getHttpClientName();
+    }
+
+    @Override
+    public void setHttpClientName(String name) {
+        mPlugin.setHttpClientName(name);
+    }
+
+    @Override
+    public int getDefaultRemotePort() {
+        return mPlugin.getDefaultRemotePort();
+    }
+
+    @Override
+    public String getRemoteHost() {
+        return mPlugin.getRemoteHost();
+    }
+
+    @Override
+    public void setRemoteHost(String host) {
+        mPlugin.setRemoteHost(host);
+        invalidate();
+    }
+
+    @Override
+    public int getRemotePort() {
+        return mPlugin.getRemotePort();
+    }
+
+    @Override
+    public void setRemotePort(int port) {
+        mPlugin.setRemotePort(port);
+        invalidate();
+    }
+
+    @Override
+    public InetAddress resolveRemoteHost() throws UnknownHostException {
+        return mPlugin.resolveRemoteHost();
+    }
+
+    @Override
+    public void setConnectionTimeout(int timeout) {
+        mPlugin.setConnectionTimeout(timeout);
+    }
+
+    @Override
+    public int getConnectionTimeout() {
+        return mPlugin.getConnectionTimeout();
+    }
+
+    @Override
+    public int getTrafficIn() {
+        return mPlugin.getTrafficIn();
+    }
+
+    @Override
+    public int getTrafficOut() {
+        return mPlugin.getTrafficOut();
+    }
+
+    @Override
+    public TrafficMeter getTrafficMeter() {
+        return mPlugin.getTrafficMeter();
+    }
+
+    @Override
+    public ApiMetrics getMetrics() {
+        return mPlugin.getMetrics();
+    }
+
+    @Override
+    public void abortRequests() {
+        mPlugin.abortRequests();
+    }
+
+    @Override
+    public void release() {
+        invalidate();
+        mPlugin.release();
+    }
+
+    @Override
+    public boolean ping() throws InterruptedException {
+        return mPlugin.ping();
+    }
+
+    // ================================================================================
+    // ====================== Playback
+
+    /**
+     * Drop values reported as changed by the remote side, so the following reads see the changes at once
+     * @param changes Combination of IPushPlugin.CHANGE_* flags
+     */
+    protected void invalidate(int changes) {
+        if (changes != 0) {
+            mGeneration.incrementAndGet();
+        }
+        if ((changes & (IPushPlugin.CHANGE_PLAY_STATE | IPushPlugin.CHANGE_CURRENT_SONG)) != 0) {
+            invalidatePlayback();
+        }
+        if ((changes & IPushPlugin.CHANGE_CONTROLS) != 0) {
+            mValues.remove(Statuses.VOLUME);
+            mValues.remove(Statuses.MUTE);
+            mValues.remove(Statuses.REPEAT_SONG);
+            mValues.remove(Statuses.SHUFFLE);
+        }
+        if ((changes & IPushPlugin.CHANGE_PLAYLISTS) != 0) {
+            mValues.remove(KEY_PLAYLISTS);
+            mHashes.clear();
+        }
+    }
+
+    @Override
+    public boolean play() throws ApiException, IOException, InterruptedException {
+        invalidatePlayback();
+        return mPlugin.play();
+    }
+
+    @Override
+    public boolean play(int playlistId, int songPosition) throws ApiException, IOException, InterruptedException {
+        invalidatePlayback();
+        return mPlugin.play(playlistId, songPosition);
+    }
+
+    @Override
+    public boolean play(int playlistId, int songPosition, int playPosition) throws ApiException, IOException, InterruptedException {
+        invalidatePlayback();
+        return mPlugin.play(playlistId, songPosition, playPosition);
+    }
+
+    @Override
+    public boolean stop() throws ApiException, IOException, InterruptedException {
+        invalidatePlayback();
+        return mPlugin.stop();
+    }
+
+    @Override
+    public boolean pause() throws ApiException, IOException, InterruptedException {
+        invalidatePlayback();
+        return mPlugin.pause();
+    }
+
+    @Override
+    public boolean next() throws ApiException, IOException, InterruptedException {
+        invalidatePlayback();
+        return mPlugin.next();
+    }
+
+    @Override
+    public boolean previous() throws ApiException, IOException, InterruptedException {
+        invalidatePlayback();
+        return mPlugin.previous();
+    }
+
+    @Override
+    public int getPlayState() throws ApiException, IOException, InterruptedException {
+        Integer state = (Integer) getCached(KEY_PLAY_STATE);
+        if (state == null) {
+            long generation = mGeneration.get();
+            state = mPlugin.getPlayState();
+            put(KEY_PLAY_STATE, state, generation);
+        }
+        return state;
+    }
+
+    @Override
+    public void setSongPlayPosition(int second) throws ApiException, IOException, InterruptedException {
+        writeStatus(Statuses.POSITION);
+        mPlugin.setSongPlayPosition(second);
+        written(Statuses.POSITION, second);
+    }
+
+    @Override
+    public int getSongPlayPosition() throws ApiException, IOException, InterruptedException {
+        Integer position = (Integer) getCached(Statuses.POSITION);
+        if (position == null) {
+            long generation = mGeneration.get();
+            position = mPlugin.getSongPlayPosition();
+            put(Statuses.POSITION, position, generation);
+        }
+        return position;
+    }
+
+    // ================================================================================
+    // ====================== Custom statuses
+
+    @Override
+    public void setRepeatSong(boolean state) throws ApiException, IOException, InterruptedException {
+        writeStatus(Statuses.REPEAT_SONG);
+        mPlugin.setRepeatSong(state);
+        written(Statuses.REPEAT_SONG, state ? 1 : 0);
+    }
+
+    @Override
+    public boolean isRepeatSong() throws ApiException, IOException, InterruptedException {
+        Integer value = (Integer) getCached(Statuses.REPEAT_SONG);
+        if (value == null) {
+            long generation = mGeneration.get();
+            value = mPlugin.isRepeatSong() ? 1 : 0;
+            put(Statuses.REPEAT_SONG, value, generation);
+        }
+        return value == 1;
+    }
+
+    @Override
+    public void setVolume(int volume) throws ApiException, IOException, InterruptedException {
+        writeStatus(Statuses.VOLUME);
+        mPlugin.setVolume(volume);
+        written(Statuses.VOLUME, volume);
+    }
+
+    @Override
+    public int getVolume() throws ApiException, IOException, InterruptedException {
+        Integer value = (Integer) getCached(Statuses.VOLUME);
+        if (value == null) {
+            long generation = mGeneration.get();
+            value = mPlugin.getVolume();
+            put(Statuses.VOLUME, value, generation);
+        }
+        return value;
+    }
+
+    @Override
+    public void setMute(boolean state) throws ApiException, IOException, InterruptedException {
+        writeStatus(Statuses.MUTE);
+        mPlugin.setMute(state);
+        written(Statuses.MUTE, state ? 1 : 0);
+    }
+
+    @Override
+    public boolean isMute() throws ApiException, IOException, InterruptedException {
+        Integer value = (Integer) getCached(Statuses.MUTE);
+        if (value == null) {
+            long generation = mGeneration.get();
+            value = mPlugin.isMute() ? 1 : 0;
+            put(Statuses.MUTE, value, generation);
+        }
+        return value == 1;
+    }
+
+    @Override
+    public void setShuffle(boolean state) throws ApiException, IOException, InterruptedException {
+        writeStatus(Statuses.SHUFFLE);
+        mPlugin.setShuffle(state);
+        written(Statuses.SHUFFLE, state ? 1 : 0);
+    }
+
+    @Override
+    public boolean isShuffle() throws ApiException, IOException, InterruptedException {
+        Integer value = (Integer) getCached(Statuses.SHUFFLE);
+        if (value == null) {
+            long generation = mGeneration.get();
+            value = mPlugin.isShuffle() ? 1 : 0;
+            put(Statuses.SHUFFLE, value, generation);
+        }
+        return value == 1;
+    }
+
+    @Override
+    public StatusSnapshot getCustomStatuses(int... statuses) throws ApiException, IOException, InterruptedException {
+        if (statuses == null) {
+            throw new IllegalArgumentException("Statuses is null");
+        }
+
+        int[] values = new int[statuses.length];
+        int[] missed = new int[statuses.length];
+        int missedCount = 0;
+        for (int i = 0; i < statuses.length; i++) {
+            Integer value = (Integer) getCached(statuses[i]);
+            if (value == null) {
+                missed[missedCount++] = statuses[i];
+            } else {
+                values[i] = value;
+            }
+        }
+
+        if (missedCount > 0) {
+            int[] request = new int[missedCount];
+            System.arraycopy(missed, 0, request, 0, missedCount);
+
+            long generation = mGeneration.get();
+            StatusSnapshot loaded = mPlugin.getCustomStatuses(request);
+            for (int i = 0; i < loaded.size(); i++) {
+                put(loaded.getStatus(i), loaded.getValue(i), generation);
+            }
+            for (int i = 0; i < statuses.length; i++) {
+                if (loaded.contains(statuses[i])) {
+                    values[i] = loaded.getInt(statuses[i]);
+                }
+            }
+        }
+
+        return new StatusSnapshot(statuses, values);
+    }
+
+    // ================================================================================
+    // ====================== Songs and playlists
+
+    @Override
+    public CurrentSongInfo getCurrentSongInfo() throws ApiException, IOException, InterruptedException {
+        CurrentSongInfo info = (CurrentSongInfo) getCached(KEY_CURRENT_SONG);
+        if (info == null) {
+            long generation = mGeneration.get();
+            info = mPlugin.getCurrentSongInfo();
+            put(KEY_CURRENT_SONG, info, generation);
+        }
+        return info;
+    }
+
+    @Override
+    public List<Playlist> getPlaylists() throws ApiException, IOException, InterruptedException {
+        @SuppressWarnings("unchecked")
+        List<Playlist> playlists = (List<Playlist>) getCached(KEY_PLAYLISTS);
+        if (playlists == null) {
+            long generation = mGeneration.get();
+            playlists = mPlugin.getPlaylists();
+            if (getTtl(KEY_PLAYLISTS) > 0) {
+                put(KEY_PLAYLISTS, copy(playlists), generation);
+            }
+            return playlists;
+        }
+        // callers fill playlists with songs, so each of them gets own objects
+        return copy(playlists);
+    }
+
+    @Override
+    public String getPlaylistHash(int playlistId) throws ApiException, IOException, InterruptedException {
+        Entry entry = mHashes.get(playlistId);
+        if (entry != null && isFresh(entry, mPlaylistHashTtl)) {
+            return (String) entry.mValue;
+        }
+        if (mPlaylistHashTtl > 0) {
+            mMisses.incrementAndGet();
+        }
+
+        long generation = mGeneration.get();
+        String hash = mPlugin.getPlaylistHash(playlistId);
+        if (mPlaylistHashTtl > 0 && mGeneration.get() == generation) {
+            mHashes.put(playlistId, new Entry(hash, now()));
+        }
+        return hash;
+    }
+
+    @Override
+    public List<Song> getPlaylistSongs(int playlistId) throws ApiException, IOException, InterruptedException {
+        return mPlugin.getPlaylistSongs(playlistId);
+    }
+
+    @Override
+    public void getPlaylistSongs(int playlistId, int chunkSize, SongsChunkListener listener) throws ApiException, IOException, InterruptedException {
+        mPlugin.getPlaylistSongs(playlistId, chunkSize, listener);
+    }
+
+    @Override
+    public void removeSong(int playlistId, int songPosition) throws ApiException, IOException, InterruptedException {
+        mGeneration.incrementAndGet();
+        mValues.remove(KEY_PLAYLISTS);
+        mValues.remove(KEY_CURRENT_SONG);
+        mHashes.remove(playlistId);
+        mPlugin.removeSong(playlistId, songPosition);
+    }
+
+    // ================================================================================
+    // ================================================================================
+
+
+    private void setTtl(int key, long ttl) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("TTL must be not negative. Given value is " + ttl);
+        }
+        mTtls.put(key, ttl);
+        mValues.remove(key);
+    }
+
+    private long getTtl(int key) {
+        Long ttl = mTtls.get(key);
+        return ttl == null ? 0 : ttl;
+    }
+
+    /**
+     * @return Value if it's fresh, otherwise null. Values which are not cached aren't counted as misses.
+     */
+    private Object getCached(int key) {
+        long ttl = getTtl(key);
+        Entry entry = mValues.get(key);
+        if (entry != null && isFresh(entry, ttl)) {
+            return entry.mValue;
+        }
+        if (ttl > 0) {
+            mMisses.incrementAndGet();
+        }
+        return null;
+    }
+
+    private boolean isFresh(Entry entry, long ttl) {
+        long age = now() - entry.mTime;
+        if (age >= ttl) {
+            return false;
+        }
+
+        mHits.incrementAndGet();
+        mStalenessSum.addAndGet(age);
+        long max;
+        while (age > (max = mMaxStaleness.get()) && !mMaxStaleness.compareAndSet(max, age)) {
+            // another thread has updated max, check again
+        }
+        return true;
+    }
+
+    /**
+     * Store value which was read when generation was the given one.
+     * Is skipped if anything was written since that moment, as the value can be outdated.
+     */
+    private void put(int key, Object value, long generation) {
+        if (getTtl(key) > 0 && value != null && mGeneration.get() == generation) {
+            mValues.put(key, new Entry(value, now()));
+        }
+    }
+
+    /**
+     * Is called before write of the status: until the write is completed the value is unknown
+     */
+    private void writeStatus(int status) {
+        mGeneration.incrementAndGet();
+        mValues.remove(status);
+    }
+
+    /**
+     * Write of the status is completed, so its value is known without a request
+     */
+    private void written(int status, int value) {
+        // reads which were in flight during the write can return the old value
+        mGeneration.incrementAndGet();
+        if (getTtl(status) > 0) {
+            mValues.put(status, new Entry(value, now()));
+        }
+    }
+
+    private void invalidatePlayback() {
+        mGeneration.incrementAndGet();
+        mValues.remove(KEY_PLAY_STATE);
+        mValues.remove(KEY_CURRENT_SONG);
+        mValues.remove(Statuses.PLAY);
+        mValues.remove(Statuses.STOP);
+        mValues.remove(Statuses.POSITION);
+        mValues.remove(Statuses.LENGTH);
+    }
+
+    private static List<Playlist> copy(List<Playlist> playlists) {
+        List<Playlist> result = new ArrayList<Playlist>(playlists.size());
+        for (Playlist p: playlists) {
+            Playlist c = new Playlist();
+            c.setId(p.getId());
+            c.setName(p.getName());
+            c.setDuration(p.getDuration());
+            c.setSizeInBytes(p.getSizeInBytes());
+            if (p.getHash() != null) {
+                c.setHash(p.getHash());
+            }
+            result.add(c);
+        }
+        return result;
+    }
+
+    /**
+     * Time in milliseconds by which values get old
+     */
+    protected long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+
+    private static class Entry {
+        final Object mValue;
+        final long mTime;
+
+        Entry(Object value, long time) {
+            mValue = value;
+            mTime = time;
+        }
+    }
+
+
+    /**
+     * Snapshot of cache counters. Reads of values with zero TTL are neither hits nor misses.
+     * Staleness is the age of a value when it was returned from the cache
+     */
+    public static class Stats {
+
+        private final long mHits;
+        private final long mMisses;
+        private final long mMeanStaleness;
+        private final long mMaxStaleness;
+
+        Stats(long hits, long misses, long meanStaleness, long maxStaleness) {
+            mHits = hits;
+            mMisses = misses;
+            mMeanStaleness = meanStaleness;
+            mMaxStaleness = maxStaleness;
+        }
+
+        public long getHits() {
+            return mHits;
+        }
+
+        public long getMisses() {
+            return mMisses;
+        }
+
+        public double getHitRatio() {
+            long total = mHits + mMisses;
+            return total == 0 ? 0 : (double) mHits / total;
+        }
+
+        /**
+         * Mean age of returned cached values in milliseconds
+         */
+        public long getMeanStaleness() {
+            return mMeanStaleness;
+        }
+
+        public long getMaxStaleness() {
+            return mMaxStaleness;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "hits=%d, misses=%d, ratio=%.2f, staleness mean=%dms, max=%dms",
+                    mHits, mMisses, getHitRatio(), mMeanStaleness, mMaxStaleness
+            );
+        }
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+import com.uas.media.aimp.api.ApiMetrics;
+import com.uas.media.aimp.api.Logger;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Cache of resolved addresses of remote hosts, so new connections don't look the host up each time.
+ * Expired address is still used while the host is resolved again in the background.
+ * Each lookup is recorded to the metrics as action {@link #ACTION_RESOLVE}.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class HostResolver {
+
+    public static final long DEFAULT_TTL = 1000*60*5;
+    public static final String ACTION_RESOLVE = "resolve_host";
+
+    private static final long WORKER_KEEP_ALIVE = 1000*30;
+
+    private final ApiMetrics mMetrics;
+    private final ConcurrentHashMap<String, Entry> mEntries = new ConcurrentHashMap<String, Entry>();
+    private volatile long mTtl = DEFAULT_TTL;
+    private volatile long mLastResolveTime = -1;
+    private ThreadPoolExecutor mWorker;
+
+
+    /**
+     * @param metrics Metrics which lookups are recorded to, may be null
+     */
+    public HostResolver(ApiMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    public long getTtl() {
+        return mTtl;
+    }
+
+    /**
+     * Set how long resolved address is used before the host is resolved again
+     */
+    public void setTtl(long ttl) {
+        if (ttl < 1) {
+            throw new IllegalArgumentException("TTL must be positive. Given value is " + ttl);
+        }
+        mTtl = ttl;
+    }
+
+    /**
+     * Duration of the last lookup in milliseconds, -1 if there was no lookup yet
+     */
+    public long getLastResolveTime() {
+        return mLastResolveTime;
+    }
+
+    /**
+     * Get cached address of the host. The host is looked up only if it has no address yet,
+     * expired address is returned and refreshed in the background.
+     */
+    public InetAddress resolve(String host) throws UnknownHostException {
+        Entry entry = mEntries.get(host);
+        if (entry == null) {
+            return resolveNow(host);
+        }
+        if (System.currentTimeMillis() - entry.mResolvedTime >= mTtl) {
+            refreshAsync(host, entry);
+        }
+        return entry.mAddress;
+    }
+
+    /**
+     * Look the host up ignoring the cached address, and cache the result
+     */
+    public InetAddress resolveNow(String host) throws UnknownHostException {
+        if (host == null) {
+            throw new IllegalArgumentException("Host is null");
+        }
+        long startTime = System.nanoTime();
+        Throwable failure = null;
+        try {
+            InetAddress address = InetAddress.getByName(host);
+            mEntries.put(host, new Entry(address));
+            return address;
+        } catch (UnknownHostException ex) {
+            failure = ex;
+            throw ex;
+        } catch (RuntimeException ex) {
+            failure = ex;
+            throw ex;
+        } finally {
+            long duration = System.nanoTime() - startTime;
+            mLastResolveTime = duration / 1000000;
+            if (mMetrics != null) {
+                mMetrics.record(ACTION_RESOLVE, duration, failure);
+            }
+        }
+    }
+
+    /**
+     * Forget address of the host, e.g. when it can't be connected
+     */
+    public void invalidate(String host) {
+        mEntries.remove(host);
+    }
+
+    public void clear() {
+        mEntries.clear();
+    }
+
+    /**
+     * Stop the background lookups. Cached addresses are kept.
+     */
+    public synchronized void release() {
+        if (mWorker != null) {
+            mWorker.shutdownNow();
+            mWorker = null;
+        }
+    }
+
+    /**
+     * Host part of URL for the address, IPv6 addresses are enclosed in brackets
+     */
+    public static String toUrlHost(InetAddress address) {
+        String literal = address.getHostAddress();
+        return address instanceof Inet6Address
+                ? "[" + literal + "]"
+                : literal;
+    }
+
+    private void refreshAsync(final String host, final Entry entry) {
+        if (!entry.mIsRefreshing.compareAndSet(false, true)) {
+            return;
+        }
+        getWorker().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    resolveNow(host);
+                } catch (UnknownHostException ex) {
+                    // the old address is kept until it fails to connect
+                    Logger.e("Host " + host + " is not resolved again. Reason: " + ex.getMessage(), ex);
+                    entry.mIsRefreshing.set(false);
+                }
+            }
+        });
+    }
+
+    private synchronized ThreadPoolExecutor getWorker() {
+        if (mWorker == null) {
+            mWorker = new ThreadPoolExecutor(
+                    0, 1,
+                    WORKER_KEEP_ALIVE, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new HttpPlugin.WorkersThreadFactory("HostResolver")
+            );
+        }
+        return mWorker;
+    }
+
+
+    private static class Entry {
+
+        private final InetAddress mAddress;
+        private final long mResolvedTime;
+        private final AtomicBoolean mIsRefreshing = new AtomicBoolean();
+
+        Entry(InetAddress address) {
+            mAddress = address;
+            mResolvedTime = System.currentTimeMillis();
+        }
+    }
+
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+import com.uas.media.aimp.api.TrafficMeter;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.scheme.SocketFactory;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.HTTP;
+
+import java.io.IOException;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe pool of HTTP/1.1 keep-alive connections.
+ * One instance is shared by all requests of a plugin, so connections to the remote host
+ * are reused instead of doing a TCP handshake per request.
+ * Caller must consume the entity of each response (see {@link #release(HttpEntity)}),
+ * otherwise the connection is not returned to the pool.
+ * If a traffic meter is given, all bytes written to and read from the sockets are counted by it.
+ *
+ * HttpClient fixes the max count of connections to a host when it opens the first connection there,
+ * so {@link #setMaxConnectionsPerRoute(int)} builds a new connection manager with the new limit.
+ * The old one is closed when connections which are still used by requests are released to it.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class HttpConnectionPool {
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 4;
+    public static final int DEFAULT_MAX_CONNECTIONS_TOTAL = 8;
+    public static final long DEFAULT_IDLE_TIMEOUT = 1000*30;
+
+    private static final long IDLE_CHECK_INTERVAL = 1000*5;
+
+
+    private volatile ThreadSafeClientConnManager mConnManager;
+    private volatile DefaultHttpClient mHttpClient;
+    private int mMaxConnectionsPerRoute;
+    private final int mMaxConnectionsTotal;
+    // managers replaced by setMaxConnectionsPerRoute(), until their connections are released
+    private final List<ThreadSafeClientConnManager> mRetiredConnManagers;
+    private final long mIdleTimeout;
+    private final TrafficMeter mTrafficMeter;
+
+    private final AtomicLong mRequestsCount;
+    private final AtomicLong mNewConnectionsCount;
+    private final AtomicLong mEvictedConnectionsCount;
+    private final AtomicLong mLastIdleCheckTime;
+
+
+    public HttpConnectionPool() {
+        this(null);
+    }
+
+    public HttpConnectionPool(TrafficMeter trafficMeter) {
+        this(DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_MAX_CONNECTIONS_TOTAL, DEFAULT_IDLE_TIMEOUT, trafficMeter);
+    }
+
+    public HttpConnectionPool(int maxConnectionsPerRoute, int maxConnectionsTotal, long idleTimeout, TrafficMeter trafficMeter) {
+        if (maxConnectionsPerRoute < 1) {
+            throw new IllegalArgumentException("Max connections per route must be positive. Given value is " + maxConnectionsPerRoute);
+        }
+        if (maxConnectionsTotal < maxConnectionsPerRoute) {
+            throw new IllegalArgumentException("Max total connections must be not less than per route value. Given value is " + maxConnectionsTotal);
+        }
+        if (idleTimeout < 1) {
+            throw new IllegalArgumentException("Idle timeout must be positive. Given value is " + idleTimeout);
+        }
+
+        mRequestsCount = new AtomicLong();
+        mNewConnectionsCount = new AtomicLong();
+        mEvictedConnectionsCount = new AtomicLong();
+        mLastIdleCheckTime = new AtomicLong(System.currentTimeMillis());
+        mIdleTimeout = idleTimeout;
+        mTrafficMeter = trafficMeter;
+        mMaxConnectionsTotal = maxConnectionsTotal;
+        mRetiredConnManagers = new CopyOnWriteArrayList<ThreadSafeClientConnManager>();
+
+        createClient(maxConnectionsPerRoute);
+    }
+
+    private void createClient(int maxConnectionsPerRoute) {
+        mMaxConnectionsPerRoute = maxConnectionsPerRoute;
+
+        HttpParams params = new BasicHttpParams();
+        HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+        HttpProtocolParams.setContentCharset(params, HTTP.UTF_8);
+        HttpProtocolParams.setUseExpectContinue(params, false);
+        HttpConnectionParams.setStaleCheckingEnabled(params, true);
+        HttpConnectionParams.setTcpNoDelay(params, true);
+        ConnManagerParams.setMaxTotalConnections(params, Math.max(mMaxConnectionsTotal, maxConnectionsPerRoute));
+        ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(maxConnectionsPerRoute));
+
+        SchemeRegistry schemes = new SchemeRegistry();
+        schemes.register(new Scheme("http", new CountingSocketFactory(), 80));
+
+        ThreadSafeClientConnManager connManager = new ThreadSafeClientConnManager(params, schemes);
+        DefaultHttpClient httpClient = new DefaultHttpClient(connManager, params);
+        // requests are retried by the plugin, which knows if they are safe to repeat
+        httpClient.setHttpRequestRetryHandler(new DefaultHttpRequestRetryHandler(0, false));
+        mConnManager = connManager;
+        mHttpClient = httpClient;
+    }
+
+
+    public synchronized int getMaxConnectionsPerRoute() {
+        return mMaxConnectionsPerRoute;
+    }
+
+    /**
+     * Requests which are sent after the call use a new connection manager with the limit,
+     * connections of the old one are not reused and are closed when they are released
+     */
+    public synchronized void setMaxConnectionsPerRoute(int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("Max connections per route must be positive. Given value is " + max);
+        }
+        if (max == mMaxConnectionsPerRoute) {
+            return;
+        }
+        mRetiredConnManagers.add(mConnManager);
+        createClient(max);
+        closeRetiredConnManagers();
+    }
+
+
+    /**
+     * Execute request using a pooled connection.
+     * Response's entity must be consumed or released by the caller.
+     */
+    public HttpResponse execute(HttpUriRequest request) throws IOException {
+        evictIdleConnections();
+        mRequestsCount.incrementAndGet();
+        return mHttpClient.execute(request);
+    }
+
+    /**
+     * Read out the rest of the entity, so the connection can be reused by the next request
+     */
+    public void release(HttpEntity entity) throws IOException {
+        if (entity != null) {
+            entity.consumeContent();
+        }
+    }
+
+    /**
+     * Drop the connection without reading the rest of the response.
+     * Is used when the response is not needed anymore, e.g. loading was cancelled.
+     */
+    public void abort(InputStream content) throws IOException {
+        if (content instanceof ConnectionReleaseTrigger) {
+            ((ConnectionReleaseTrigger) content).abortConnection();
+        } else if (content != null) {
+            content.close();
+        }
+    }
+
+    /**
+     * Close expired and idle connections. Is called on each request, but does the real work
+     * not more often than once in IDLE_CHECK_INTERVAL.
+     */
+    public void evictIdleConnections() {
+        if (!mRetiredConnManagers.isEmpty()) {
+            closeRetiredConnManagers();
+        }
+
+        long now = System.currentTimeMillis();
+        long last = mLastIdleCheckTime.get();
+        if (now - last < IDLE_CHECK_INTERVAL || !mLastIdleCheckTime.compareAndSet(last, now)) {
+            return;
+        }
+
+        ThreadSafeClientConnManager connManager = mConnManager;
+        int before = connManager.getConnectionsInPool();
+        connManager.closeExpiredConnections();
+        connManager.closeIdleConnections(mIdleTimeout, TimeUnit.MILLISECONDS);
+        int evicted = before - connManager.getConnectionsInPool();
+        if (evicted > 0) {
+            mEvictedConnectionsCount.addAndGet(evicted);
+        }
+    }
+
+    public synchronized void shutdown() {
+        mConnManager.shutdown();
+        for (ThreadSafeClientConnManager connManager: mRetiredConnManagers) {
+            connManager.shutdown();
+        }
+        mRetiredConnManagers.clear();
+    }
+
+    /**
+     * Close released connections of the retired managers and forget managers without connections.
+     * They are not shut down, as a request may have taken the old client just before it was replaced.
+     */
+    private void closeRetiredConnManagers() {
+        for (ThreadSafeClientConnManager connManager: mRetiredConnManagers) {
+            connManager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+            if (connManager.getConnectionsInPool() == 0) {
+                mRetiredConnManagers.remove(connManager);
+            }
+        }
+    }
+
+    public Stats getStats() {
+        long requests = mRequestsCount.get();
+        long newConnections = mNewConnectionsCount.get();
+        return new Stats(
+                requests,
+                Math.max(0, requests - newConnections),
+                newConnections,
+                mEvictedConnectionsCount.get(),
+                mConnManager.getConnectionsInPool()
+        );
+    }
+
+
+    /**
+     * Snapshot of pool counters
+     */
+    public static class Stats {
+
+        private final long mRequests;
+        private final long mHits;
+        private final long mNewConnections;
+        private final long mEvictions;
+        private final int mPooledConnections;
+
+        Stats(long requests, long hits, long newConnections, long evictions, int pooledConnections) {
+            mRequests = requests;
+            mHits = hits;
+            mNewConnections = newConnections;
+            mEvictions = evictions;
+            mPooledConnections = pooledConnections;
+        }
+
+        public long getRequests() {
+            return mRequests;
+        }
+
+        /**
+         * Count of requests which were sent over an already opened connection
+         */
+        public long getHits() {
+            return mHits;
+        }
+
+        public long getNewConnections() {
+            return mNewConnections;
+        }
+
+        public long getEvictions() {
+            return mEvictions;
+        }
+
+        public int getPooledConnections() {
+            return mPooledConnections;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "requests=%d, hits=%d, new=%d, evicted=%d, pooled=%d",
+                    mRequests, mHits, mNewConnections, mEvictions, mPooledConnections
+            );
+        }
+    }
+
+
+    /**
+     * Plain socket factory that counts opened connections and their traffic
+     */
+    class CountingSocketFactory implements SocketFactory {
+
+        private final SocketFactory mDelegate = PlainSocketFactory.getSocketFactory();
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return mTrafficMeter == null
+                    ? mDelegate.createSocket()
+                    : new CountingSocket(mTrafficMeter);
+        }
+
+        @Override
+        public Socket connectSocket(Socket sock, String host, int port, InetAddress localAddress, int localPort, HttpParams params) throws IOException {
+            Socket s = mDelegate.connectSocket(sock, host, port, localAddress, localPort, params);
+            mNewConnectionsCount.incrementAndGet();
+            return s;
+        }
+
+        @Override
+        public boolean isSecure(Socket sock) throws IllegalArgumentException {
+            return false;
+        }
+    }
+
+
+    /**
+     * Socket which passes count of transferred bytes to the traffic meter
+     */
+    static class CountingSocket extends Socket {
+
+        private final TrafficMeter mMeter;
+        private InputStream mInputStream;
+        private OutputStream mOutputStream;
+
+        CountingSocket(TrafficMeter meter) {
+            mMeter = meter;
+        }
+
+        @Override
+        public synchronized InputStream getInputStream() throws IOException {
+            if (mInputStream == null) {
+                mInputStream = new FilterInputStream(super.getInputStream()) {
+                    @Override
+                    public int read() throws IOException {
+                        int b = super.read();
+                        if (b != -1) {
+                            mMeter.addIn(1);
+                        }
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] buffer, int offset, int count) throws IOException {
+                        int read = super.read(buffer, offset, count);
+                        mMeter.addIn(read);
+                        return read;
+                    }
+                };
+            }
+            return mInputStream;
+        }
+
+        @Override
+        public synchronized OutputStream getOutputStream() throws IOException {
+            if (mOutputStream == null) {
+                mOutputStream = new FilterOutputStream(super.getOutputStream()) {
+                    @Override
+                    public void write(int b) throws IOException {
+                        out.write(b);
+                        mMeter.addOut(1);
+                    }
+
+                    @Override
+                    public void write(byte[] buffer, int offset, int count) throws IOException {
+                        out.write(buffer, offset, count);
+                        mMeter.addOut(count);
+                    }
+                };
+            }
+            return mOutputStream;
+        }
+    }
+
+}
@@ -0,0 +1,903 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+import com.uas.media.aimp.api.Logger;
+import com.uas.media.aimp.api.TrafficMeter;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One thread which performs GET requests over non-blocking connections, so any count of requests
+ * may be in flight without a thread per request. Requests are submitted from any thread,
+ * responses are read completely and passed to handlers in the loop's thread.
+ * Connections are kept alive and reused, requests wait in a queue while all connections are busy.
+ * The thread is started by the first request.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+class HttpEventLoop implements Runnable {
+
+    private static final int BUFFER_SIZE = 8192;
+    /**
+     * Body buffer of a connection is shrunk after bigger responses
+     */
+    private static final int MAX_KEPT_BODY_SIZE = 64*1024;
+
+    private static final int STATE_CONNECTING = 0;
+    private static final int STATE_WRITING = 1;
+    private static final int STATE_STATUS = 2;
+    private static final int STATE_HEADERS = 3;
+    private static final int STATE_BODY = 4;
+    private static final int STATE_UNTIL_CLOSE = 5;
+    private static final int STATE_CHUNK_SIZE = 6;
+    private static final int STATE_CHUNK_END = 7;
+    private static final int STATE_TRAILERS = 8;
+    private static final int STATE_IDLE = 9;
+
+
+    /**
+     * Receiver of the result of a request. Is called in the loop's thread and must not block it.
+     */
+    interface Handler {
+
+        /**
+         * @param body Buffer with the body of the response, is valid only during the call
+         * @param length Length of the body
+         */
+        void onResponse(Exchange exchange, byte[] body, int length);
+
+        void onFailure(Exchange exchange, IOException ex);
+    }
+
+
+    private final String mName;
+    private final TrafficMeter mTrafficMeter;
+    private final long mIdleTimeout;
+    private volatile int mMaxConnections;
+
+    // guarded by this
+    private Thread mThread;
+    private Selector mSelector;
+    private boolean mIsShutdown;
+    private final ConcurrentLinkedQueue<Runnable> mTasks = new ConcurrentLinkedQueue<Runnable>();
+
+    // used by the loop's thread only
+    private final LinkedList<Exchange> mQueue = new LinkedList<Exchange>();
+    private final LinkedList<Connection> mIdleConnections = new LinkedList<Connection>();
+    private final List<Connection> mActiveConnections = new ArrayList<Connection>();
+    private final ByteBuffer mIn = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private final AtomicLong mRequestsCount = new AtomicLong();
+    private final AtomicLong mNewConnectionsCount = new AtomicLong();
+    private final AtomicLong mEvictedConnectionsCount = new AtomicLong();
+    private volatile int mIdleConnectionsCount;
+
+
+    HttpEventLoop(String name, int maxConnections, long idleTimeout, TrafficMeter trafficMeter) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("Max connections must be positive. Given value is " + maxConnections);
+        }
+        if (idleTimeout < 1) {
+            throw new IllegalArgumentException("Idle timeout must be positive. Given value is " + idleTimeout);
+        }
+        mName = name;
+        mMaxConnections = maxConnections;
+        mIdleTimeout = idleTimeout;
+        mTrafficMeter = trafficMeter;
+    }
+
+    /**
+     * Send GET request. Handler is called when the whole response is received or the request fails.
+     * @param address Resolved address of the host, is used if a new connection is needed
+     * @param timeout Connect and read timeout in milliseconds
+     * @param connectionWaitTimeout How long the request may wait in the queue for a free connection
+     * @param action Name of the action and scope of the caller which the traffic is attributed to, may be null
+     * @throws IOException if the loop is shut down
+     */
+    Exchange submit(String host, InetAddress address, int port, String path, String userAgent, int timeout, int connectionWaitTimeout,
+                    String action, String scope, Handler handler) throws IOException {
+        final Exchange exchange = new Exchange(host, address, port, path, userAgent, timeout, connectionWaitTimeout, action, scope, handler);
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                mRequestsCount.incrementAndGet();
+                exchange.mDeadline = System.currentTimeMillis() + exchange.mConnectionWaitTimeout;
+                mQueue.addLast(exchange);
+                dispatch();
+            }
+        });
+        return exchange;
+    }
+
+    void setMaxConnections(int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("Max connections must be positive. Given value is " + max);
+        }
+        mMaxConnections = max;
+    }
+
+    HttpConnectionPool.Stats getStats() {
+        long requests = mRequestsCount.get();
+        long newConnections = mNewConnectionsCount.get();
+        return new HttpConnectionPool.Stats(
+                requests,
+                Math.max(0, requests - newConnections),
+                newConnections,
+                mEvictedConnectionsCount.get(),
+                mIdleConnectionsCount
+        );
+    }
+
+    /**
+     * Stop the thread. Requests in flight are failed, connections are closed.
+     */
+    void shutdown() {
+        Selector selector;
+        synchronized (this) {
+            if (mIsShutdown) {
+                return;
+            }
+            mIsShutdown = true;
+            selector = mSelector;
+        }
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    private void execute(Runnable task) throws IOException {
+        Selector selector;
+        synchronized (this) {
+            if (mIsShutdown) {
+                throw new IOException("Event loop is shut down");
+            }
+            if (mThread == null) {
+                mSelector = Selector.open();
+                mThread = new Thread(this, mName);
+                mThread.setDaemon(true);
+                mThread.start();
+            }
+            mTasks.add(task);
+            selector = mSelector;
+        }
+        selector.wakeup();
+    }
+
+    private synchronized boolean isShutdown() {
+        return mIsShutdown;
+    }
+
+    // ================================================================================
+    // ====================== Loop
+
+    @Override
+    public void run() {
+        try {
+            while (!isShutdown()) {
+                runTasks();
+                long timeout = checkDeadlines(System.currentTimeMillis());
+                mSelector.select(timeout);
+
+                for (Iterator<SelectionKey> it = mSelector.selectedKeys().iterator(); it.hasNext(); ) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (key.isValid()) {
+                        ((Connection) key.attachment()).onReady();
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            Logger.e("Event loop failed. Reason: " + ex.getMessage(), ex);
+        } finally {
+            synchronized (this) {
+                mIsShutdown = true;
+            }
+            // tasks can't be added anymore, the rest of requests fails below
+            runTasks();
+            IOException failure = new IOException("Event loop is shut down");
+            for (Connection c: new ArrayList<Connection>(mActiveConnections)) {
+                c.fail(failure, false);
+            }
+            for (Exchange e: mQueue) {
+                e.fail(failure);
+            }
+            mQueue.clear();
+            for (Connection c: mIdleConnections) {
+                c.close();
+            }
+            mIdleConnections.clear();
+            mIdleConnectionsCount = 0;
+            try {
+                mSelector.close();
+            } catch (IOException ex) {
+                // nothing to do
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = mTasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Fail requests and connections which are late, close connections which are idle too long
+     * @return Time until the nearest deadline, or 0 if there is nothing to wait for
+     */
+    private long checkDeadlines(long now) {
+        long nearest = Long.MAX_VALUE;
+
+        for (Iterator<Exchange> it = mQueue.iterator(); it.hasNext(); ) {
+            Exchange e = it.next();
+            if (e.mDeadline <= now) {
+                it.remove();
+                e.fail(new ConnectionPoolTimeoutException("Timeout waiting for connection"));
+            } else {
+                nearest = Math.min(nearest, e.mDeadline);
+            }
+        }
+        for (Connection c: new ArrayList<Connection>(mActiveConnections)) {
+            long deadline = c.mExchange.mDeadline;
+            if (deadline <= now) {
+                c.fail(c.mState == STATE_CONNECTING
+                        ? new ConnectTimeoutException("Connect to " + c.mHost + ":" + c.mPort + " timed out")
+                        : new SocketTimeoutException("Read timed out"),
+                        false);
+            } else {
+                nearest = Math.min(nearest, deadline);
+            }
+        }
+        for (Iterator<Connection> it = mIdleConnections.iterator(); it.hasNext(); ) {
+            Connection c = it.next();
+            long deadline = c.mIdleSince + mIdleTimeout;
+            if (deadline <= now) {
+                it.remove();
+                c.close();
+                mEvictedConnectionsCount.incrementAndGet();
+            } else {
+                nearest = Math.min(nearest, deadline);
+            }
+        }
+        mIdleConnectionsCount = mIdleConnections.size();
+
+        return nearest == Long.MAX_VALUE ? 0 : Math.max(1, nearest - now);
+    }
+
+    /**
+     * Start queued requests while there are free connections
+     */
+    private void dispatch() {
+        if (isShutdown()) {
+            return;
+        }
+        while (!mQueue.isEmpty()) {
+            Exchange exchange = mQueue.getFirst();
+            Connection c = takeIdle(exchange.mHost, exchange.mPort);
+            if (c == null) {
+                if (mActiveConnections.size() + mIdleConnections.size() >= mMaxConnections) {
+                    if (mIdleConnections.isEmpty()) {
+                        return;
+                    }
+                    // idle connections to another host are not needed anymore
+                    mIdleConnections.removeFirst().close();
+                    mEvictedConnectionsCount.incrementAndGet();
+                }
+                c = new Connection(exchange.mHost, exchange.mPort);
+            }
+            mQueue.removeFirst();
+            mActiveConnections.add(c);
+            c.start(exchange);
+        }
+        mIdleConnectionsCount = mIdleConnections.size();
+    }
+
+    private Connection takeIdle(String host, int port) {
+        // the most recently used connection is the least likely to be closed by the server
+        for (ListIterator<Connection> it = mIdleConnections.listIterator(mIdleConnections.size()); it.hasPrevious(); ) {
+            Connection c = it.previous();
+            if (c.mPort == port && c.mHost.equals(host)) {
+                it.remove();
+                return c;
+            }
+        }
+        return null;
+    }
+
+    private void abort(final Exchange exchange) {
+        try {
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (exchange.mIsDone) {
+                        return;
+                    }
+                    exchange.mIsDone = true;
+                    if (exchange.mConnection != null) {
+                        // the rest of the response can't be skipped without reading it
+                        exchange.mConnection.close();
+                        mActiveConnections.remove(exchange.mConnection);
+                        dispatch();
+                    } else {
+                        mQueue.remove(exchange);
+                    }
+                }
+            });
+        } catch (IOException ex) {
+            // requests are already failed by shutdown
+        }
+    }
+
+    // ================================================================================
+    // ====================== Requests
+
+    /**
+     * Request and its progress
+     */
+    class Exchange {
+
+        private final String mHost;
+        private final InetAddress mAddress;
+        private final int mPort;
+        private final String mPath;
+        private final String mUserAgent;
+        private final int mTimeout;
+        private final int mConnectionWaitTimeout;
+        private final String mAction;
+        private final String mScope;
+        private final Handler mHandler;
+
+        private long mDeadline;
+        private long mSentTime;
+        private long mHeadTime;
+        private Connection mConnection;
+        private boolean mIsDone;
+
+        Exchange(String host, InetAddress address, int port, String path, String userAgent, int timeout, int connectionWaitTimeout,
+                 String action, String scope, Handler handler) {
+            mHost = host;
+            mAddress = address;
+            mPort = port;
+            mPath = path;
+            mUserAgent = userAgent;
+            mTimeout = timeout;
+            mConnectionWaitTimeout = connectionWaitTimeout;
+            mAction = action;
+            mScope = scope;
+            mHandler = handler;
+        }
+
+        /**
+         * Time from sending the request until its headers were received, in milliseconds
+         */
+        long getHeadTime() {
+            return (mHeadTime - mSentTime) / 1000000;
+        }
+
+        /**
+         * Stop the request, handler won't be called. Can be called from any thread.
+         */
+        void abort() {
+            HttpEventLoop.this.abort(this);
+        }
+
+        private void complete(byte[] body, int length) {
+            if (mIsDone) {
+                return;
+            }
+            mIsDone = true;
+            try {
+                mHandler.onResponse(this, body, length);
+            } catch (RuntimeException ex) {
+                Logger.e("Response handler failed. Reason: " + ex.getMessage(), ex);
+            }
+        }
+
+        private void fail(IOException failure) {
+            if (mIsDone) {
+                return;
+            }
+            mIsDone = true;
+            try {
+                mHandler.onFailure(this, failure);
+            } catch (RuntimeException ex) {
+                Logger.e("Response handler failed. Reason: " + ex.getMessage(), ex);
+            }
+        }
+    }
+
+    // ================================================================================
+    // ====================== Connection
+
+    class Connection {
+
+        private final String mHost;
+        private final int mPort;
+        private SocketChannel mChannel;
+        private SelectionKey mKey;
+        private ByteBuffer mOut;
+
+        private Exchange mExchange;
+        private int mState;
+        private boolean mIsReusable;
+        private boolean mIsReused;
+        private long mIdleSince;
+
+        // response parsing
+        private byte[] mLine = new byte[256];
+        private int mLineLength;
+        private boolean mIsReceiving;
+        private int mStatus;
+        private boolean mIsChunked;
+        private boolean mIsClose;
+        private long mContentLength;
+        private long mRemaining;
+        private byte[] mBody = new byte[BUFFER_SIZE];
+        private int mBodyLength;
+
+        Connection(String host, int port) {
+            mHost = host;
+            mPort = port;
+        }
+
+        void start(Exchange exchange) {
+            mExchange = exchange;
+            exchange.mConnection = this;
+            exchange.mDeadline = System.currentTimeMillis() + exchange.mTimeout;
+            mIsReceiving = false;
+            handle(true);
+        }
+
+        void onReady() {
+            handle(false);
+        }
+
+        /**
+         * Start the request or continue it when the channel is ready.
+         * Traffic is attributed to the action and scope of the request.
+         */
+        private void handle(boolean isStart) {
+            String previousScope = null;
+            String previousAction = null;
+            if (mExchange != null && mTrafficMeter != null) {
+                previousScope = TrafficMeter.enterScope(mExchange.mScope);
+                previousAction = mTrafficMeter.enterAction(mExchange.mAction);
+            }
+            try {
+                if (isStart) {
+                    if (mChannel == null) {
+                        connect();
+                    } else {
+                        mIsReused = true;
+                        write();
+                    }
+                    return;
+                }
+                switch (mState) {
+                    case STATE_IDLE:
+                        onIdleReadable();
+                        break;
+                    case STATE_CONNECTING:
+                        if (mChannel.finishConnect()) {
+                            write();
+                        }
+                        break;
+                    case STATE_WRITING:
+                        flush();
+                        break;
+                    default:
+                        read();
+                        break;
+                }
+            } catch (IOException ex) {
+                fail(ex, !mIsReceiving && mIsReused && isClosedByServer(ex));
+            } finally {
+                if (previousAction != null || previousScope != null) {
+                    mTrafficMeter.exitAction(previousAction);
+                    TrafficMeter.exitScope(previousScope);
+                }
+            }
+        }
+
+        private void connect() throws IOException {
+            mNewConnectionsCount.incrementAndGet();
+            mState = STATE_CONNECTING;
+            mChannel = SocketChannel.open();
+            mChannel.configureBlocking(false);
+            mChannel.socket().setTcpNoDelay(true);
+            mKey = mChannel.register(mSelector, 0, this);
+            if (mChannel.connect(new InetSocketAddress(mExchange.mAddress, mPort))) {
+                write();
+            } else {
+                mKey.interestOps(SelectionKey.OP_CONNECT);
+            }
+        }
+
+        // ====================== Writing
+
+        private void write() throws IOException {
+            Exchange e = mExchange;
+            if (mOut == null) {
+                mOut = ByteBuffer.allocate(512);
+            }
+            mOut.clear();
+            append("GET ").append(e.mPath).append(" HTTP/1.1\r\n");
+            append("Host: ").append(mHost).append(":").append(Integer.toString(mPort)).append("\r\n");
+            append("User-Agent: ").append(e.mUserAgent).append("\r\n");
+            append("Connection: keep-alive\r\n\r\n");
+            mOut.flip();
+
+            mState = STATE_WRITING;
+            mIsReusable = true;
+            mIsReceiving = false;
+            e.mSentTime = System.nanoTime();
+            flush();
+        }
+
+        private void flush() throws IOException {
+            int written = mChannel.write(mOut);
+            if (written > 0 && mTrafficMeter != null) {
+                mTrafficMeter.addOut(written);
+            }
+            if (mOut.hasRemaining()) {
+                mKey.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            mState = STATE_STATUS;
+            mLineLength = 0;
+            mBodyLength = 0;
+            mExchange.mDeadline = System.currentTimeMillis() + mExchange.mTimeout;
+            mKey.interestOps(SelectionKey.OP_READ);
+        }
+
+        private Connection append(String s) {
+            int length = s.length();
+            if (mOut.remaining() < length) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(mOut.capacity() * 2, mOut.position() + length));
+                mOut.flip();
+                bigger.put(mOut);
+                mOut = bigger;
+            }
+            for (int i = 0; i < length; i++) {
+                char c = s.charAt(i);
+                mOut.put(c < 0x80 ? (byte) c : (byte) '?');
+            }
+            return this;
+        }
+
+        // ====================== Reading
+
+        private void read() throws IOException {
+            mIn.clear();
+            int read = mChannel.read(mIn);
+            mIn.flip();
+            if (read == 0) {
+                return;
+            }
+            if (read == -1) {
+                if (mState == STATE_UNTIL_CLOSE) {
+                    mIsReusable = false;
+                    complete();
+                } else if (!mIsReceiving) {
+                    throw new NoHttpResponseException(mHost + ":" + mPort + " failed to respond");
+                } else {
+                    throw new EOFException("Connection closed in the middle of the response");
+                }
+                return;
+            }
+            if (mTrafficMeter != null) {
+                mTrafficMeter.addIn(read);
+            }
+            mIsReceiving = true;
+            mExchange.mDeadline = System.currentTimeMillis() + mExchange.mTimeout;
+
+            if (parse()) {
+                if (mIn.hasRemaining()) {
+                    // nothing is expected after the response
+                    mIsReusable = false;
+                }
+                complete();
+            }
+        }
+
+        /**
+         * Parse bytes of the input buffer
+         * @return true if the response is read completely
+         */
+        private boolean parse() throws IOException {
+            while (true) {
+                if (mState == STATE_BODY) {
+                    int count = (int) Math.min(mIn.remaining(), mRemaining);
+                    appendBody(count);
+                    mRemaining -= count;
+                    if (mRemaining > 0) {
+                        return false;
+                    }
+                    if (!mIsChunked) {
+                        return true;
+                    }
+                    mState = STATE_CHUNK_END;
+                } else if (mState == STATE_UNTIL_CLOSE) {
+                    appendBody(mIn.remaining());
+                    return false;
+                } else {
+                    if (!readLine()) {
+                        return false;
+                    }
+                    boolean isCompleted = onLine();
+                    mLineLength = 0;
+                    if (isCompleted) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Collect bytes of the current line without CRLF
+         * @return true if the line is ended
+         */
+        private boolean readLine() throws ProtocolException {
+            while (mIn.hasRemaining()) {
+                byte b = mIn.get();
+                if (b == '\n') {
+                    if (mLineLength > 0 && mLine[mLineLength - 1] == '\r') {
+                        mLineLength--;
+                    }
+                    return true;
+                }
+                if (mLineLength == mLine.length) {
+                    if (mLineLength >= SocketHttpTransport.MAX_HEADER_LINE) {
+                        throw new ProtocolException("Header line is too long");
+                    }
+                    byte[] bigger = new byte[mLineLength * 2];
+                    System.arraycopy(mLine, 0, bigger, 0, mLineLength);
+                    mLine = bigger;
+                }
+                mLine[mLineLength++] = b;
+            }
+            return false;
+        }
+
+        /**
+         * Handle the line according to the state
+         * @return true if the response is read completely
+         */
+        private boolean onLine() throws IOException {
+            int length = mLineLength;
+            switch (mState) {
+                case STATE_STATUS:
+                    // HTTP/1.1 200 OK
+                    if (length < 12 || mLine[0] != 'H' || mLine[4] != '/') {
+                        throw new ProtocolException("Invalid status line: " + new String(mLine, 0, length, "ISO-8859-1"));
+                    }
+                    mStatus = (mLine[9] - '0') * 100 + (mLine[10] - '0') * 10 + (mLine[11] - '0');
+                    mIsClose = mLine[5] == '1' && mLine[7] == '0';
+                    mIsChunked = false;
+                    mContentLength = -1;
+                    mState = STATE_HEADERS;
+                    return false;
+
+                case STATE_HEADERS:
+                    if (length > 0) {
+                        onHeader(length);
+                        return false;
+                    }
+                    if (mStatus >= 100 && mStatus < 200) {
+                        mState = STATE_STATUS;
+                        return false;
+                    }
+                    mExchange.mHeadTime = System.nanoTime();
+                    if (mIsClose) {
+                        mIsReusable = false;
+                    }
+                    if (mStatus == 204 || mStatus == 304) {
+                        return true;
+                    }
+                    if (mIsChunked) {
+                        mState = STATE_CHUNK_SIZE;
+                        return false;
+                    }
+                    if (mContentLength >= 0) {
+                        mState = STATE_BODY;
+                        mRemaining = mContentLength;
+                        return mContentLength == 0;
+                    }
+                    // body lasts until the connection is closed
+                    mIsReusable = false;
+                    mState = STATE_UNTIL_CLOSE;
+                    return false;
+
+                case STATE_CHUNK_SIZE:
+                    long size = parseChunkSize(length);
+                    if (size == 0) {
+                        mState = STATE_TRAILERS;
+                    } else {
+                        mState = STATE_BODY;
+                        mRemaining = size;
+                    }
+                    return false;
+
+                case STATE_CHUNK_END:
+                    mState = STATE_CHUNK_SIZE;
+                    return false;
+
+                case STATE_TRAILERS:
+                    return length == 0;
+
+                default:
+                    throw new IllegalStateException("Unexpected state " + mState);
+            }
+        }
+
+        private void onHeader(int length) throws ProtocolException {
+            int colon = SocketHttpTransport.indexOf(mLine, length, (byte) ':');
+            if (colon == -1) {
+                return;
+            }
+            if (SocketHttpTransport.equalsIgnoreCase(SocketHttpTransport.HEADER_CONTENT_LENGTH, mLine, 0, colon)) {
+                mContentLength = SocketHttpTransport.parseLong(mLine, colon + 1, length);
+            } else if (SocketHttpTransport.equalsIgnoreCase(SocketHttpTransport.HEADER_TRANSFER_ENCODING, mLine, 0, colon)) {
+                mIsChunked = SocketHttpTransport.containsIgnoreCase(mLine, colon + 1, length, SocketHttpTransport.VALUE_CHUNKED);
+            } else if (SocketHttpTransport.equalsIgnoreCase(SocketHttpTransport.HEADER_CONNECTION, mLine, 0, colon)) {
+                if (SocketHttpTransport.containsIgnoreCase(mLine, colon + 1, length, SocketHttpTransport.VALUE_CLOSE)) {
+                    mIsClose = true;
+                } else if (SocketHttpTransport.containsIgnoreCase(mLine, colon + 1, length, SocketHttpTransport.VALUE_KEEP_ALIVE)) {
+                    mIsClose = false;
+                }
+            }
+        }
+
+        private long parseChunkSize(int length) throws ProtocolException {
+            long size = 0;
+            int i = 0;
+            for (; i < length; i++) {
+                int digit = Character.digit(mLine[i], 16);
+                if (digit == -1) {
+                    // chunk extension or whitespace
+                    break;
+                }
+                size = size * 16 + digit;
+            }
+            if (i == 0) {
+                throw new ProtocolException("Invalid chunk size");
+            }
+            return size;
+        }
+
+        private void appendBody(int count) {
+            if (mBodyLength + count > mBody.length) {
+                byte[] bigger = new byte[Math.max(mBody.length * 2, mBodyLength + count)];
+                System.arraycopy(mBody, 0, bigger, 0, mBodyLength);
+                mBody = bigger;
+            }
+            mIn.get(mBody, mBodyLength, count);
+            mBodyLength += count;
+        }
+
+        // ====================== Completion
+
+        private void complete() {
+            Exchange exchange = mExchange;
+            exchange.complete(mBody, mBodyLength);
+            if (mBody.length > MAX_KEPT_BODY_SIZE) {
+                mBody = new byte[BUFFER_SIZE];
+            }
+            recycle();
+            dispatch();
+        }
+
+        /**
+         * Fail the current request and close the connection
+         * @param isRetry Send the request again over another connection
+         */
+        void fail(IOException failure, boolean isRetry) {
+            Exchange exchange = mExchange;
+            close();
+            mActiveConnections.remove(this);
+            if (exchange != null) {
+                exchange.mConnection = null;
+                if (isRetry && !exchange.mIsDone) {
+                    // server has closed the idle connection before our request was read
+                    mEvictedConnectionsCount.incrementAndGet();
+                    exchange.mDeadline = System.currentTimeMillis() + exchange.mConnectionWaitTimeout;
+                    mQueue.addFirst(exchange);
+                } else {
+                    exchange.fail(failure);
+                }
+            }
+            dispatch();
+        }
+
+        private void recycle() {
+            mActiveConnections.remove(this);
+            mExchange.mConnection = null;
+            mExchange = null;
+            if (!mIsReusable || isShutdown()) {
+                close();
+                return;
+            }
+            mState = STATE_IDLE;
+            mIdleSince = System.currentTimeMillis();
+            // closing by the server is noticed at once
+            mKey.interestOps(SelectionKey.OP_READ);
+            mIdleConnections.addLast(this);
+        }
+
+        private void onIdleReadable() {
+            // the server has closed the connection or sent something unexpected
+            mIdleConnections.remove(this);
+            mIdleConnectionsCount = mIdleConnections.size();
+            mEvictedConnectionsCount.incrementAndGet();
+            close();
+        }
+
+        void close() {
+            mIsReusable = false;
+            mExchange = null;
+            if (mChannel != null) {
+                try {
+                    mChannel.close();
+                } catch (IOException ex) {
+                    // nothing to do
+                }
+            }
+        }
+
+        private boolean isClosedByServer(IOException ex) {
+            return ex instanceof NoHttpResponseException || ex instanceof SocketException;
+        }
+    }
+
+}
@@ -0,0 +1,860 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+import com.uas.media.aimp.api.ApiException;
+import com.uas.media.aimp.api.ApiMetrics;
+import com.uas.media.aimp.api.IPlugin;
+import com.uas.media.aimp.api.LatencyHistogram;
+import com.uas.media.aimp.api.TrafficMeter;
+import org.apache.http.conn.ConnectTimeoutException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Base of plugins which talk to AIMP over HTTP. Keeps the remote host and the transport, and performs requests:
+ * each request can be aborted by {@link #abortRequests()}, its traffic and latency are recorded,
+ * and its timeout is adapted to the latency of its action. Failed reads are retried by the retry policy
+ * and may be hedged, concurrent identical reads may share one response. Commands are retried only if they were not sent.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public abstract class HttpPlugin implements IPlugin {
+
+    public static final int DEFAULT_REQUEST_TIMEOUT = 5000;
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = HttpConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+
+    private static final long WORKERS_KEEP_ALIVE = 1000*30;
+    private static final int MAX_HEDGED_REQUESTS = 4;
+    private static final int MIN_SAMPLES_TO_HEDGE = 20;
+    private static final double HEDGE_PERCENTILE = 95;
+
+    /**
+     * Implementations of HTTP, see {@link #setTransportType(TransportType)}
+     */
+    public enum TransportType {
+        /**
+         * Apache HttpClient
+         */
+        APACHE,
+        /**
+         * Own HTTP/1.1 client over socket channels, supports pipelining
+         */
+        SOCKET
+    }
+
+
+    private final String mName;
+    private String mRemoteHost;
+    private int mRemotePort;
+    private int mConnectionTimeout = DEFAULT_REQUEST_TIMEOUT;
+    private String mHttpClientName = "";
+    private HttpTransport mTransport;
+    private TransportType mTransportType = TransportType.APACHE;
+    private ThreadPoolExecutor mWorkers;
+    private ThreadPoolExecutor mHedgeWorkers;
+    private int mMaxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+    private final TrafficMeter mTrafficMeter = new TrafficMeter();
+    private final ApiMetrics mMetrics = new ApiMetrics();
+    private final HostResolver mResolver = new HostResolver(mMetrics);
+    private final AdaptiveTimeouts mTimeouts = new AdaptiveTimeouts();
+    private volatile boolean mIsAdaptiveTimeouts = true;
+    private volatile RetryPolicy mRetryPolicy = new RetryPolicy();
+    private volatile boolean mIsHedging = false;
+    private volatile boolean mIsCoalescing = true;
+    private final SingleFlight mFlights = new SingleFlight();
+    // requests in flight and threads which perform them
+    private final ConcurrentHashMap<AbortHandle, Thread> mInFlight = new ConcurrentHashMap<AbortHandle, Thread>();
+
+
+    /**
+     * @param name Prefix of names of worker threads
+     */
+    protected HttpPlugin(String name, String host, int port) {
+        mName = name;
+        mRemoteHost = host;
+        mRemotePort = port;
+    }
+
+    @Override
+    public String getRemoteHost() {
+        return mRemoteHost;
+    }
+
+    @Override
+    public void setRemoteHost(String host) {
+        if (host == null) {
+            throw new IllegalArgumentException("Host has null value");
+        }
+        mRemoteHost = host;
+    }
+
+    @Override
+    public int getRemotePort() {
+        return mRemotePort;
+    }
+
+    @Override
+    public void setRemotePort(int port) {
+        if (port < 1) {
+            throw new IllegalArgumentException("Port value is below 0. Given value is " + port);
+        }
+        mRemotePort = port;
+    }
+
+    @Override
+    public void setConnectionTimeout(int timeout) {
+        if (timeout < 1) {
+            throw new IllegalArgumentException("Connection timeout must be positive number. Given value is " + timeout);
+        }
+        mConnectionTimeout = timeout;
+    }
+
+    @Override
+    public int getConnectionTimeout() {
+        return mConnectionTimeout;
+    }
+
+    /**
+     * Cache of the remote host's address which is used for new connections
+     */
+    public HostResolver getHostResolver() {
+        return mResolver;
+    }
+
+    @Override
+    public InetAddress resolveRemoteHost() throws UnknownHostException {
+        return mResolver.resolveNow(mRemoteHost);
+    }
+
+    AdaptiveTimeouts getAdaptiveTimeouts() {
+        return mTimeouts;
+    }
+
+    public boolean isAdaptiveTimeouts() {
+        return mIsAdaptiveTimeouts;
+    }
+
+    /**
+     * Derive timeout of each request from measured round trip time of its action and size of its response.
+     * Connection timeout is used until the action has samples and as the upper bound for usual sized responses.
+     * If disabled, connection timeout is used for all requests.
+     */
+    public void setAdaptiveTimeouts(boolean state) {
+        mIsAdaptiveTimeouts = state;
+        if (!state) {
+            mTimeouts.reset();
+        }
+    }
+
+    @Override
+    public int getTrafficIn() {
+        return (int) Math.min(Integer.MAX_VALUE, mTrafficMeter.getTotalIn());
+    }
+
+    @Override
+    public int getTrafficOut() {
+        return (int) Math.min(Integer.MAX_VALUE, mTrafficMeter.getTotalOut());
+    }
+
+    @Override
+    public TrafficMeter getTrafficMeter() {
+        return mTrafficMeter;
+    }
+
+    @Override
+    public ApiMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    @Override
+    public String getHttpClientName() {
+        return mHttpClientName;
+    }
+
+    @Override
+    public void setHttpClientName(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("HttpClientName is null");
+        }
+        mHttpClientName = name;
+    }
+
+    public synchronized int getMaxConcurrentRequests() {
+        return mMaxConcurrentRequests;
+    }
+
+    /**
+     * Set how many requests may be sent to the remote host in parallel,
+     * e.g. when playlists' hashes or a batch of statuses are loaded
+     */
+    public synchronized void setMaxConcurrentRequests(int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("Max concurrent requests must be positive number. Given value is " + max);
+        }
+        mMaxConcurrentRequests = max;
+
+        if (mTransport != null) {
+            mTransport.setMaxConnections(max);
+        }
+        if (mWorkers != null) {
+            // one of the tasks is always executed by the calling thread
+            int workers = Math.max(1, max - 1);
+            if (workers > mWorkers.getMaximumPoolSize()) {
+                mWorkers.setMaximumPoolSize(workers);
+                mWorkers.setCorePoolSize(workers);
+            } else {
+                mWorkers.setCorePoolSize(workers);
+                mWorkers.setMaximumPoolSize(workers);
+            }
+        }
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return mRetryPolicy;
+    }
+
+    /**
+     * Set policy of retries of failed requests. Requests which change state of the player
+     * are retried only if they were not sent.
+     */
+    public void setRetryPolicy(RetryPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("Retry policy is null");
+        }
+        mRetryPolicy = policy;
+    }
+
+    public boolean isHedging() {
+        return mIsHedging;
+    }
+
+    /**
+     * If enabled, read-only request which is not answered in the 95th percentile of its action's latency
+     * is sent once more, and the first of the responses is used. Hedged requests are taken from the retry budget.
+     */
+    public void setHedging(boolean state) {
+        mIsHedging = state;
+    }
+
+    public boolean isCoalescing() {
+        return mIsCoalescing;
+    }
+
+    /**
+     * If enabled, concurrent identical reads of statuses and of the current song share one response
+     */
+    public void setCoalescing(boolean state) {
+        mIsCoalescing = state;
+    }
+
+    /**
+     * Count of calls which got the response of a concurrent identical request instead of sending their own
+     */
+    public long getDeduplicatedRequests() {
+        return mFlights.getSharedCount();
+    }
+
+    public synchronized TransportType getTransportType() {
+        return mTransportType;
+    }
+
+    /**
+     * Choose implementation of HTTP. Opened connections of the previous transport are closed.
+     */
+    public synchronized void setTransportType(TransportType type) {
+        if (type == null) {
+            throw new IllegalArgumentException("Transport type is null");
+        }
+        if (type != mTransportType && mTransport != null) {
+            mTransport.shutdown();
+            mTransport = null;
+        }
+        mTransportType = type;
+    }
+
+    public HttpConnectionPool.Stats getConnectionPoolStats() {
+        return getTransport().getStats();
+    }
+
+    @Override
+    public void abortRequests() {
+        for (AbortHandle abort: mInFlight.keySet()) {
+            abort.abort();
+        }
+    }
+
+    /**
+     * Abort requests performed by the thread, e.g. by a worker whose task is cancelled
+     */
+    protected void abortRequests(Thread thread) {
+        for (Map.Entry<AbortHandle, Thread> e: mInFlight.entrySet()) {
+            if (e.getValue() == thread) {
+                e.getKey().abort();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void release() {
+        abortRequests();
+        if (mWorkers != null) {
+            mWorkers.shutdownNow();
+            mWorkers = null;
+        }
+        if (mHedgeWorkers != null) {
+            mHedgeWorkers.shutdownNow();
+            mHedgeWorkers = null;
+        }
+        if (mTransport != null) {
+            mTransport.shutdown();
+            mTransport = null;
+        }
+        mResolver.release();
+    }
+
+    protected synchronized HttpTransport getTransport() {
+        if (mTransport == null) {
+            switch (mTransportType) {
+                case SOCKET:
+                    mTransport = new SocketHttpTransport(mTrafficMeter, mResolver);
+                    break;
+                default:
+                    mTransport = new ApacheHttpTransport(mTrafficMeter, mResolver);
+                    break;
+            }
+            mTransport.setMaxConnections(mMaxConcurrentRequests);
+        }
+        return mTransport;
+    }
+
+    protected synchronized ExecutorService getWorkers() {
+        if (mWorkers == null) {
+            // one of the tasks is always executed by the calling thread
+            int workers = Math.max(1, mMaxConcurrentRequests - 1);
+            mWorkers = new ThreadPoolExecutor(
+                    workers, workers,
+                    WORKERS_KEEP_ALIVE, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new WorkersThreadFactory(mName + "Worker")
+            );
+        }
+        return mWorkers;
+    }
+
+    protected synchronized ExecutorService getHedgeWorkers() {
+        if (mHedgeWorkers == null) {
+            // hedged requests are made from the workers too, so they must not wait in a queue
+            mHedgeWorkers = new ThreadPoolExecutor(
+                    0, MAX_HEDGED_REQUESTS * 2,
+                    WORKERS_KEEP_ALIVE, TimeUnit.MILLISECONDS,
+                    new SynchronousQueue<Runnable>(),
+                    new WorkersThreadFactory(mName + "Hedge")
+            );
+        }
+        return mHedgeWorkers;
+    }
+
+    // ================================================================================
+    // ====================== Requests
+
+    /**
+     * Send GET request, its timeout is adapted to the latency of the action
+     */
+    protected HttpTransport.Response get(String action, String path, AbortHandle abort) throws IOException {
+        return send(action, path, null, null, getTimeout(action, path), abort);
+    }
+
+    /**
+     * Send POST request
+     * @param timeout Read timeout in milliseconds, see {@link #getTimeout(String, String)}
+     */
+    protected HttpTransport.Response post(String action, String path, String contentType, byte[] body, int timeout, AbortHandle abort) throws IOException {
+        return send(action, path, contentType, body, timeout, abort);
+    }
+
+    /**
+     * Send GET requests of the action pipelined over one connection, see {@link HttpTransport#getPipelined}
+     */
+    protected List<HttpTransport.Response> getPipelined(String action, List<String> paths, AbortHandle abort) throws IOException {
+        long startTime = System.nanoTime();
+        try {
+            List<HttpTransport.Response> responses = getTransport().getPipelined(
+                    mRemoteHost, mRemotePort, paths, mHttpClientName, getTimeout(action, paths.get(0)), mConnectionTimeout, abort
+            );
+            mTimeouts.onResponse(action, (System.nanoTime() - startTime) / 1000000);
+            return responses;
+        } catch (InterruptedIOException ex) {
+            if (!abort.isAborted()) {
+                mTimeouts.onTimeout(action);
+            }
+            onConnectFailure(ex);
+            throw ex;
+        } catch (IOException ex) {
+            onConnectFailure(ex);
+            throw ex;
+        }
+    }
+
+    private HttpTransport.Response send(String action, String path, String contentType, byte[] body, int timeout, AbortHandle abort) throws IOException {
+        long startTime = System.nanoTime();
+        try {
+            // waiting for a free connection doesn't depend on the network
+            HttpTransport.Response response = body == null
+                    ? getTransport().get(mRemoteHost, mRemotePort, path, mHttpClientName, timeout, mConnectionTimeout, abort)
+                    : getTransport().post(mRemoteHost, mRemotePort, path, contentType, body, mHttpClientName, timeout, mConnectionTimeout, abort);
+            mTimeouts.onResponse(action, (System.nanoTime() - startTime) / 1000000);
+            return response;
+        } catch (InterruptedIOException ex) {
+            if (!abort.isAborted()) {
+                mTimeouts.onTimeout(action);
+            }
+            onConnectFailure(ex);
+            throw ex;
+        } catch (IOException ex) {
+            onConnectFailure(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Host may have got another address, so it's resolved again by the next connection
+     */
+    protected void onConnectFailure(IOException ex) {
+        if (ex instanceof ConnectException || ex instanceof ConnectTimeoutException || ex instanceof NoRouteToHostException) {
+            mResolver.invalidate(mRemoteHost);
+        }
+    }
+
+    /**
+     * @param request Request or its body, the timeout of a big response is longer
+     * @return Read timeout of the request in milliseconds
+     */
+    protected int getTimeout(String action, String request) {
+        return mIsAdaptiveTimeouts
+                ? mTimeouts.getTimeout(action, request, mConnectionTimeout)
+                : mConnectionTimeout;
+    }
+
+    /**
+     * Response of the request was completely read, so the timeout of the next identical request
+     * is derived from its size
+     */
+    protected void onResponseSize(String action, String request, long bytes) {
+        mTimeouts.onResponseSize(action, request, bytes);
+    }
+
+    /**
+     * Register request in flight, so it can be aborted from another thread
+     * @throws InterruptedException if the current thread is interrupted, so the request must not be sent
+     */
+    protected AbortHandle registerRequest() throws InterruptedException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException();
+        }
+        AbortHandle abort = new AbortHandle();
+        mInFlight.put(abort, Thread.currentThread());
+        return abort;
+    }
+
+    protected void unregisterRequest(AbortHandle abort) {
+        mInFlight.remove(abort);
+    }
+
+    /**
+     * Failure of the aborted request means the request is cancelled
+     */
+    private static void checkAborted(AbortHandle abort) throws InterruptedException {
+        if (abort.isAborted()) {
+            throw new InterruptedException("Request is aborted");
+        }
+    }
+
+    /**
+     * Perform the exchange once. It's registered to be aborted, its traffic is attributed to the action,
+     * and its latency and outcome are recorded to the metrics.
+     */
+    protected <T> T perform(String action, Exchange<T> exchange) throws ApiException, IOException, InterruptedException {
+        AbortHandle abort = registerRequest();
+        String previousAction = mTrafficMeter.enterAction(action);
+        long startTime = System.nanoTime();
+        Throwable failure = null;
+        try {
+            return exchange.perform(abort);
+        } catch (ApiException ex) {
+            failure = ex;
+            throw ex;
+        } catch (IOException ex) {
+            failure = ex;
+            checkAborted(abort);
+            throw ex;
+        } catch (InterruptedException ex) {
+            failure = ex;
+            throw ex;
+        } catch (RuntimeException ex) {
+            failure = ex;
+            throw ex;
+        } finally {
+            if (failure != null && abort.isAborted()) {
+                failure = new InterruptedException();
+            }
+            mMetrics.record(action, System.nanoTime() - startTime, failure);
+            mTrafficMeter.exitAction(previousAction);
+            unregisterRequest(abort);
+        }
+    }
+
+    /**
+     * Perform the exchange which changes the state of the player. It's retried only if the request was not sent.
+     */
+    protected <T> T performCommand(String action, Exchange<T> exchange) throws ApiException, IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            mRetryPolicy.onRequest();
+            try {
+                return perform(action, exchange);
+            } catch (IOException ex) {
+                if (!isRetryAllowed(action, ex, attempt, false)) {
+                    throw ex;
+                }
+            } finally {
+                // even a failed command could be applied by the player, so responses in flight can be stale now
+                mFlights.invalidate();
+            }
+            Thread.sleep(mRetryPolicy.getBackoff(attempt));
+        }
+    }
+
+    /**
+     * Perform read-only exchange. Failed requests are retried according to the retry policy,
+     * slow requests are hedged if enabled. The exchange must not have side effects, as it can be performed twice.
+     */
+    protected <T> T performRead(String action, Exchange<T> exchange) throws ApiException, IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            mRetryPolicy.onRequest();
+            try {
+                return mIsHedging
+                        ? performHedged(action, exchange)
+                        : perform(action, exchange);
+            } catch (IOException ex) {
+                if (!isRetryAllowed(action, ex, attempt, true)) {
+                    throw ex;
+                }
+            }
+            Thread.sleep(mRetryPolicy.getBackoff(attempt));
+        }
+    }
+
+    /**
+     * Same as {@link #performRead(String, Exchange)}, but concurrent calls with the same key share one response.
+     * Result must be immutable, as it's returned to all the callers.
+     * A call doesn't share the response of a request which was sent before the last command was completed.
+     * @param key Identity of the request, e.g. its path or body
+     */
+    protected <T> T performReadShared(final String action, String key, final Exchange<T> exchange) throws ApiException, IOException, InterruptedException {
+        if (!mIsCoalescing) {
+            return performRead(action, exchange);
+        }
+
+        // the call is executed by this thread only if there was no identical request in flight
+        final boolean[] isExecuted = new boolean[1];
+        T result;
+        try {
+            result = mFlights.execute(key, new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    isExecuted[0] = true;
+                    return performRead(action, exchange);
+                }
+            });
+        } catch (ExecutionException ex) {
+            if (!isExecuted[0]) {
+                mMetrics.recordDeduplicated(action);
+            }
+            throw rethrow(ex.getCause());
+        }
+        if (!isExecuted[0]) {
+            mMetrics.recordDeduplicated(action);
+        }
+        return result;
+    }
+
+    private boolean isRetryAllowed(String action, IOException ex, int attempt, boolean isReadOnly) {
+        if (!mRetryPolicy.shouldRetry(ex, attempt, isReadOnly) || !mRetryPolicy.tryAcquireRetry()) {
+            return false;
+        }
+        mMetrics.recordRetry(action);
+        return true;
+    }
+
+    /**
+     * Perform the exchange in a worker and, if it isn't answered in time, perform it once more.
+     * The first successful response is returned, the other request is cancelled.
+     * The delay is taken from successful requests only, as timed out ones would push it towards the timeout
+     * exactly on the network where hedging helps.
+     */
+    private <T> T performHedged(final String action, final Exchange<T> exchange) throws ApiException, IOException, InterruptedException {
+        LatencyHistogram latency = mMetrics.getSuccessLatency(action);
+        if (latency == null || latency.getCount() < MIN_SAMPLES_TO_HEDGE) {
+            return perform(action, exchange);
+        }
+        long delay = latency.getValueAtPercentile(HEDGE_PERCENTILE);
+
+        final String scope = TrafficMeter.getScope();
+        final TaskThreads threads = new TaskThreads();
+        Callable<T> attempt = new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                String previousScope = TrafficMeter.enterScope(scope);
+                threads.enter();
+                try {
+                    return perform(action, exchange);
+                } finally {
+                    threads.exit();
+                    TrafficMeter.exitScope(previousScope);
+                }
+            }
+        };
+
+        CompletionService<T> completion = new ExecutorCompletionService<T>(getHedgeWorkers());
+        List<Future<T>> futures = new ArrayList<Future<T>>(2);
+        try {
+            futures.add(completion.submit(attempt));
+        } catch (RejectedExecutionException ex) {
+            // too many hedged requests at the moment
+            return perform(action, exchange);
+        }
+
+        try {
+            Future<T> done = completion.poll(delay, TimeUnit.MICROSECONDS);
+            if (done == null && mRetryPolicy.tryAcquireRetry()) {
+                try {
+                    futures.add(completion.submit(attempt));
+                    mMetrics.recordRetry(action);
+                } catch (RejectedExecutionException ex) {
+                    // wait for the first request only
+                }
+            }
+
+            Throwable failure = null;
+            for (int pending = futures.size(); pending > 0; pending--) {
+                if (done == null) {
+                    done = completion.take();
+                }
+                try {
+                    return done.get();
+                } catch (ExecutionException ex) {
+                    if (failure == null) {
+                        failure = ex.getCause();
+                    }
+                }
+                done = null;
+            }
+            throw rethrow(failure);
+        } finally {
+            for (Future<T> f: futures) {
+                f.cancel(true);
+            }
+            // the slower request mustn't hold its worker and connection until the timeout
+            threads.abort();
+        }
+    }
+
+    /**
+     * Execute tasks concurrently and return their results in the same order.
+     * Tasks are shared between the calling thread and the workers,
+     * so not more than {@link #getMaxConcurrentRequests()} tasks are run at once.
+     * If the calling thread is interrupted or any task fails, tasks which are not started yet are dropped,
+     * requests of the running ones are aborted at once, and the first failure is thrown.
+     */
+    @SuppressWarnings("unchecked")
+    protected <T> List<T> invokeAll(final List<Callable<T>> tasks) throws ApiException, IOException, InterruptedException {
+        final int count = tasks.size();
+        final Object[] results = new Object[count];
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        final String scope = TrafficMeter.getScope();
+        final TaskThreads threads = new TaskThreads();
+
+        Callable<Void> runner = new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                // traffic of workers is attributed to the scope of the caller
+                String previousScope = TrafficMeter.enterScope(scope);
+                threads.enter();
+                try {
+                    int i;
+                    while ((i = next.getAndIncrement()) < count) {
+                        if (Thread.interrupted()) {
+                            throw new InterruptedException();
+                        }
+                        results[i] = tasks.get(i).call();
+                    }
+                } catch (Exception ex) {
+                    // the others fail only because they are aborted, so they don't hide this failure
+                    if (failure.compareAndSet(null, ex)) {
+                        next.set(count);
+                        threads.abort();
+                    }
+                    throw ex;
+                } finally {
+                    threads.exit();
+                    TrafficMeter.exitScope(previousScope);
+                }
+                return null;
+            }
+        };
+
+        int runners = Math.min(count, getMaxConcurrentRequests());
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(Math.max(0, runners - 1));
+        try {
+            for (int i = 1; i < runners; i++) {
+                futures.add(getWorkers().submit(runner));
+            }
+            runner.call();
+            for (Future<Void> f: futures) {
+                f.get();
+            }
+        } catch (ExecutionException ex) {
+            Exception first = failure.get();
+            throw rethrow(first != null ? first : ex.getCause());
+        } catch (Exception ex) {
+            Exception first = failure.get();
+            throw rethrow(first != null ? first : ex);
+        } finally {
+            next.set(count);
+            for (Future<Void> f: futures) {
+                f.cancel(true);
+            }
+            threads.abort();
+        }
+
+        List<T> list = new ArrayList<T>(count);
+        for (Object r: results) {
+            list.add((T) r);
+        }
+        return list;
+    }
+
+    private ApiException rethrow(Throwable t) throws IOException, InterruptedException {
+        if (t instanceof ApiException) {
+            return (ApiException) t;
+        } else if (t instanceof IOException) {
+            throw (IOException) t;
+        } else if (t instanceof InterruptedException) {
+            throw (InterruptedException) t;
+        } else if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else {
+            return new ApiException(t.getMessage(), t);
+        }
+    }
+
+
+    /**
+     * One attempt of a request: send it and read its response.
+     * The response must be released or aborted before the attempt returns.
+     */
+    protected interface Exchange<T> {
+        /**
+         * @param abort Handle to pass to the transport, it's aborted by {@link #abortRequests()}
+         */
+        T perform(AbortHandle abort) throws ApiException, IOException, InterruptedException;
+    }
+
+    /**
+     * Threads which run tasks of one call. If the call is cancelled or fails,
+     * requests of the tasks are aborted, so the workers are freed at once.
+     */
+    private class TaskThreads {
+
+        private final List<Thread> mThreads = new ArrayList<Thread>(2);
+
+        synchronized void enter() {
+            mThreads.add(Thread.currentThread());
+        }
+
+        synchronized void exit() {
+            mThreads.remove(Thread.currentThread());
+        }
+
+        /**
+         * Thread can't leave the task while its requests are being aborted,
+         * so requests of its next tasks are not affected
+         */
+        synchronized void abort() {
+            for (Thread t: mThreads) {
+                abortRequests(t);
+            }
+        }
+    }
+
+    static class WorkersThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+        private final String mName;
+
+        WorkersThreadFactory(String name) {
+            mName = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r);
+            t.setName(mName + "-" + mCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Way of sending HTTP requests to the remote host and receiving responses.
+ * Implementations keep connections opened between requests.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public interface HttpTransport {
+
+    /**
+     * Send GET request and wait for the headers of the response
+     * @param path Path with query, e.g. "/?action=get_song_current"
+     * @param timeout Connect and read timeout in milliseconds
+     * @param connectionWaitTimeout How long to wait for a free connection if all of them are busy
+     * @param abort Handle which breaks off waiting for the connection, the response or its body. May be null
+     */
+    Response get(String host, int port, String path, String userAgent, int timeout, int connectionWaitTimeout, AbortHandle abort) throws IOException;
+
+    /**
+     * Send POST request with the body and wait for the headers of the response.
+     * The request may be not idempotent, so it's not sent again if the server closes the connection without a response.
+     * @param contentType Type of the body, e.g. "application/json; charset=UTF-8"
+     */
+    Response post(String host, int port, String path, String contentType, byte[] body, String userAgent, int timeout, int connectionWaitTimeout, AbortHandle abort) throws IOException;
+
+    /**
+     * Check if {@link #getPipelined} really pipelines requests, otherwise it sends them one by one
+     */
+    boolean isPipelining();
+
+    /**
+     * Send several GET requests at once over one connection without waiting for responses.
+     * Responses must be read in the order of requests. Only requests which can be safely repeated may be pipelined:
+     * if the server closes the connection, the rest of requests is sent again over a new one.
+     * Transports which can't pipeline send requests one by one and return responses read to memory,
+     * so callers which don't check {@link #isPipelining()} still work, but slower.
+     */
+    List<Response> getPipelined(String host, int port, List<String> paths, String userAgent, int timeout, int connectionWaitTimeout, AbortHandle abort) throws IOException;
+
+    /**
+     * Max count of connections to the host, it applies to requests sent after the call, even if the host
+     * was connected already
+     */
+    void setMaxConnections(int max);
+
+    HttpConnectionPool.Stats getStats();
+
+    /**
+     * Close all connections. Transport can't be used after shutdown.
+     */
+    void shutdown();
+
+
+    /**
+     * Response of a request. Either {@link #release()} or {@link #abort()} must be called when it's not needed
+     */
+    interface Response {
+
+        /**
+         * Body of the response
+         */
+        InputStream getContent() throws IOException;
+
+        /**
+         * Read out the rest of the body, so the connection can be reused by the next request
+         */
+        void release() throws IOException;
+
+        /**
+         * Drop the connection without reading the rest of the body
+         */
+        void abort() throws IOException;
+    }
+
+}
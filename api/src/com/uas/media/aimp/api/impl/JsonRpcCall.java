@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+/**
+ * Call of a JSON-RPC 2.0 method with named parameters.
+ * Parameters are written to JSON as they are added, so the call is encoded without intermediate objects.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+class JsonRpcCall {
+
+    private final String mMethod;
+    private final StringBuilder mParams = new StringBuilder();
+
+
+    JsonRpcCall(String method) {
+        if (method == null) {
+            throw new IllegalArgumentException("Method is null");
+        }
+        mMethod = method;
+    }
+
+    public String getMethod() {
+        return mMethod;
+    }
+
+    public JsonRpcCall param(String name, int value) {
+        appendName(name).append(value);
+        return this;
+    }
+
+    public JsonRpcCall param(String name, boolean value) {
+        appendName(name).append(value);
+        return this;
+    }
+
+    public JsonRpcCall param(String name, String value) {
+        appendString(appendName(name), value);
+        return this;
+    }
+
+    public JsonRpcCall param(String name, String[] values) {
+        StringBuilder out = appendName(name).append('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            appendString(out, values[i]);
+        }
+        out.append(']');
+        return this;
+    }
+
+    /**
+     * Write the request object of the call
+     * @param id Id of the call which is returned in its response
+     */
+    public void writeTo(StringBuilder out, int id) {
+        out.append("{\"jsonrpc\":\"2.0\",\"id\":").append(id).append(",\"method\":");
+        appendString(out, mMethod);
+        out.append(",\"params\":{").append(mParams).append("}}");
+    }
+
+    private StringBuilder appendName(String name) {
+        if (mParams.length() > 0) {
+            mParams.append(',');
+        }
+        appendString(mParams, name);
+        return mParams.append(':');
+    }
+
+    static StringBuilder appendString(StringBuilder out, String s) {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        String hex = Integer.toHexString(c);
+                        out.append("\\u");
+                        for (int k = hex.length(); k < 4; k++) {
+                            out.append('0');
+                        }
+                        out.append(hex);
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"');
+    }
+
+}
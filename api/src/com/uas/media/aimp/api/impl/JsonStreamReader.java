@@ -0,0 +1,528 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+import com.uas.media.aimp.api.ApiRequestException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Minimal pull parser of JSON working directly on UTF-8 bytes.
+ * Reads the stream incrementally through a reusable buffer, so big responses are processed
+ * without keeping the whole text in memory. Field names and numbers are matched and parsed
+ * in place, only string values are materialized.
+ * Parser is lenient in the same way as org.json on Android: unknown escape
+ * sequences (e.g. backslashes in file paths) are read as the escaped character.
+ * Instances are not thread-safe, but can be reused for several streams via {@link #reset(InputStream)}.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+class JsonStreamReader {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final char REPLACEMENT_CHAR = '\uFFFD';
+
+    private InputStream mIn;
+    private final byte[] mBuffer;
+    private int mPos;
+    private int mLimit;
+    private long mConsumed;
+
+    private char[] mChars;
+    private int mCharsLength;
+
+
+    JsonStreamReader() {
+        mBuffer = new byte[BUFFER_SIZE];
+        mChars = new char[256];
+    }
+
+    JsonStreamReader(InputStream in) {
+        this();
+        reset(in);
+    }
+
+    /**
+     * Start reading a new stream. Buffers are reused.
+     */
+    public void reset(InputStream in) {
+        mIn = in;
+        mPos = 0;
+        mLimit = 0;
+        mConsumed = 0;
+        mCharsLength = 0;
+    }
+
+    public boolean isAttached() {
+        return mIn != null;
+    }
+
+    /**
+     * Count of bytes consumed from the current stream
+     */
+    public long getPosition() {
+        return mConsumed;
+    }
+
+    /**
+     * Forget the current stream and return it
+     */
+    public InputStream detach() {
+        InputStream in = mIn;
+        reset(null);
+        return in;
+    }
+
+
+    public void beginObject() throws IOException, ApiRequestException {
+        expect('{');
+    }
+
+    public void endObject() throws IOException, ApiRequestException {
+        expect('}');
+    }
+
+    public void beginArray() throws IOException, ApiRequestException {
+        expect('[');
+    }
+
+    public void endArray() throws IOException, ApiRequestException {
+        expect(']');
+    }
+
+    /**
+     * Check if current object or array has more elements
+     */
+    public boolean hasNext() throws IOException {
+        int c = peekToken();
+        return c != '}' && c != ']' && c != -1;
+    }
+
+    /**
+     * Next meaningful character without consuming it, e.g. '[' if an array follows
+     * @return -1 at the end of the stream
+     */
+    public int peek() throws IOException {
+        return peekToken();
+    }
+
+    /**
+     * Check if the stream has only whitespaces left
+     */
+    public boolean isEnd() throws IOException {
+        return peekToken() == -1;
+    }
+
+    /**
+     * Read name of the next field and find it among the known ones without creating a string
+     * @param names Known names of fields
+     * @return Index of the name in the array or -1 if name is unknown
+     */
+    public int nextName(String[] names) throws IOException, ApiRequestException {
+        readString();
+        expect(':');
+        for (int i = 0; i < names.length; i++) {
+            if (charsEqual(names[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public String nextString() throws IOException, ApiRequestException {
+        readString();
+        return new String(mChars, 0, mCharsLength);
+    }
+
+    /**
+     * Read the next string value and compare it with given one without creating a string
+     */
+    public boolean nextStringEquals(String value) throws IOException, ApiRequestException {
+        readString();
+        return charsEqual(value);
+    }
+
+    public int nextInt() throws IOException, ApiRequestException {
+        long value = nextLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw syntaxError("Integer value is out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    public long nextLong() throws IOException, ApiRequestException {
+        if (peekToken() == '"') {
+            readString();
+        } else {
+            readLiteral();
+        }
+        return parseLong();
+    }
+
+    /**
+     * Read boolean value. Numbers are accepted too, non-zero number is true.
+     */
+    public boolean nextBoolean() throws IOException, ApiRequestException {
+        if (peekToken() == '"') {
+            throw syntaxError("Expected a boolean");
+        }
+        readLiteral();
+        if (charsEqual("true")) {
+            return true;
+        }
+        if (charsEqual("false")) {
+            return false;
+        }
+        return parseLong() != 0;
+    }
+
+    /**
+     * Skip the next value if it's null
+     * @return true if the value was null
+     */
+    public boolean skipNull() throws IOException, ApiRequestException {
+        if (peekToken() != 'n') {
+            return false;
+        }
+        readLiteral();
+        if (!charsEqual("null")) {
+            throw syntaxError("Unexpected literal " + new String(mChars, 0, mCharsLength));
+        }
+        return true;
+    }
+
+    /**
+     * Read the rest of the stream as a plain text, e.g. a response which is not JSON
+     */
+    public String nextText() throws IOException {
+        mCharsLength = 0;
+        while (fill()) {
+            appendUtf8(mBuffer[mPos++]);
+            mConsumed++;
+        }
+        int start = 0;
+        int end = mCharsLength;
+        while (start < end && isWhitespace(mChars[start])) {
+            start++;
+        }
+        while (end > start && isWhitespace(mChars[end - 1])) {
+            end--;
+        }
+        return new String(mChars, start, end - start);
+    }
+
+    /**
+     * Read the rest of the stream as a plain integer, surrounding whitespaces are ignored
+     */
+    public long nextPlainLong() throws IOException, ApiRequestException {
+        readLiteral();
+        if (!isEnd()) {
+            throw syntaxError("Expected a plain number");
+        }
+        return parseLong();
+    }
+
+    /**
+     * Skip the next value, including nested objects and arrays
+     */
+    public void skipValue() throws IOException, ApiRequestException {
+        int c = peekToken();
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            do {
+                c = peekToken();
+                if (c == '"') {
+                    skipString();
+                    continue;
+                }
+                read();
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                } else if (c == -1) {
+                    throw syntaxError("Unexpected end of stream");
+                }
+            } while (depth > 0);
+        } else {
+            readLiteral();
+        }
+    }
+
+
+    private void readString() throws IOException, ApiRequestException {
+        expect('"');
+        mCharsLength = 0;
+
+        while (true) {
+            if (!fill()) {
+                throw syntaxError("Unterminated string");
+            }
+            byte b = mBuffer[mPos++];
+            mConsumed++;
+            if (b == '"') {
+                return;
+            } else if (b == '\\') {
+                appendEscapeCharacter();
+            } else {
+                appendUtf8(b);
+            }
+        }
+    }
+
+    private void skipString() throws IOException, ApiRequestException {
+        expect('"');
+        while (true) {
+            int b = read();
+            if (b == -1) {
+                throw syntaxError("Unterminated string");
+            } else if (b == '"') {
+                return;
+            } else if (b == '\\') {
+                read();
+            }
+        }
+    }
+
+    private void readLiteral() throws IOException, ApiRequestException {
+        peekToken();
+        mCharsLength = 0;
+        while (fill()) {
+            byte b = mBuffer[mPos];
+            if (b == ',' || b == '}' || b == ']' || b == ':' || isWhitespace((char) b)) {
+                break;
+            }
+            appendChar((char) (b & 0xFF));
+            mPos++;
+            mConsumed++;
+        }
+        if (mCharsLength == 0) {
+            throw syntaxError("Expected a value");
+        }
+    }
+
+    /**
+     * Parse number from the chars buffer. Fractional numbers are truncated.
+     */
+    private long parseLong() throws ApiRequestException {
+        int i = 0;
+        boolean isNegative = false;
+        if (mCharsLength > 0 && (mChars[0] == '-' || mChars[0] == '+')) {
+            isNegative = mChars[0] == '-';
+            i++;
+        }
+        if (i == mCharsLength) {
+            throw syntaxError("Expected a number");
+        }
+
+        long value = 0;
+        for (; i < mCharsLength; i++) {
+            int digit = mChars[i] - '0';
+            if (digit < 0 || digit > 9 || value > (Long.MAX_VALUE - digit) / 10) {
+                // rare case: fraction, exponent or overflow
+                String literal = new String(mChars, 0, mCharsLength);
+                try {
+                    return (long) Double.parseDouble(literal);
+                } catch (NumberFormatException ex) {
+                    throw syntaxError("Expected a number but was " + literal);
+                }
+            }
+            value = value * 10 + digit;
+        }
+        return isNegative ? -value : value;
+    }
+
+    /**
+     * Decode escape sequence and append it to the chars buffer. Unknown sequences are read as the escaped
+     * character, which may be a multi-byte UTF-8 one, e.g. a backslash before a Cyrillic folder name.
+     */
+    private void appendEscapeCharacter() throws IOException, ApiRequestException {
+        int c = read();
+        if (c >= 0x80) {
+            appendUtf8((byte) c);
+        } else {
+            appendChar(readEscapeCharacter(c));
+        }
+    }
+
+    private char readEscapeCharacter(int c) throws IOException, ApiRequestException {
+        switch (c) {
+            case -1:
+                throw syntaxError("Unterminated escape sequence");
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int h = Character.digit(read(), 16);
+                    if (h == -1) {
+                        throw syntaxError("Invalid unicode escape sequence");
+                    }
+                    value = (value << 4) | h;
+                }
+                return (char) value;
+            case 't':
+                return '\t';
+            case 'b':
+                return '\b';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 'f':
+                return '\f';
+            default:
+                return (char) c;
+        }
+    }
+
+    /**
+     * Decode UTF-8 sequence which starts with given byte and append it to the chars buffer
+     */
+    private void appendUtf8(byte first) throws IOException {
+        int b = first & 0xFF;
+        if (b < 0x80) {
+            appendChar((char) b);
+            return;
+        }
+
+        int count;
+        int codePoint;
+        if ((b & 0xE0) == 0xC0) {
+            count = 1;
+            codePoint = b & 0x1F;
+        } else if ((b & 0xF0) == 0xE0) {
+            count = 2;
+            codePoint = b & 0x0F;
+        } else if ((b & 0xF8) == 0xF0) {
+            count = 3;
+            codePoint = b & 0x07;
+        } else {
+            appendChar(REPLACEMENT_CHAR);
+            return;
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (!fill() || (mBuffer[mPos] & 0xC0) != 0x80) {
+                appendChar(REPLACEMENT_CHAR);
+                return;
+            }
+            codePoint = (codePoint << 6) | (mBuffer[mPos++] & 0x3F);
+            mConsumed++;
+        }
+
+        if (codePoint < 0x10000) {
+            appendChar((char) codePoint);
+        } else if (codePoint <= Character.MAX_CODE_POINT) {
+            appendChar(Character.highSurrogate(codePoint));
+            appendChar(Character.lowSurrogate(codePoint));
+        } else {
+            appendChar(REPLACEMENT_CHAR);
+        }
+    }
+
+    private void appendChar(char c) {
+        if (mCharsLength == mChars.length) {
+            char[] chars = new char[mChars.length * 2];
+            System.arraycopy(mChars, 0, chars, 0, mCharsLength);
+            mChars = chars;
+        }
+        mChars[mCharsLength++] = c;
+    }
+
+    private boolean charsEqual(String s) {
+        if (s.length() != mCharsLength) {
+            return false;
+        }
+        for (int i = 0; i < mCharsLength; i++) {
+            if (s.charAt(i) != mChars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void expect(char expected) throws IOException, ApiRequestException {
+        int c = peekToken();
+        if (c != expected) {
+            throw syntaxError("Expected '" + expected + "' but was " + (c == -1 ? "end of stream" : "'" + (char) c + "'"));
+        }
+        read();
+    }
+
+    /**
+     * Skip whitespaces and separators and return the next meaningful character without consuming it
+     */
+    private int peekToken() throws IOException {
+        while (fill()) {
+            byte b = mBuffer[mPos];
+            if (b == ',' || isWhitespace((char) b)) {
+                mPos++;
+                mConsumed++;
+            } else {
+                return b & 0xFF;
+            }
+        }
+        return -1;
+    }
+
+    private int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        mConsumed++;
+        return mBuffer[mPos++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        if (mPos < mLimit) {
+            return true;
+        }
+        mPos = 0;
+        mLimit = mIn.read(mBuffer, 0, mBuffer.length);
+        if (mLimit <= 0) {
+            mLimit = 0;
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private ApiRequestException syntaxError(String message) {
+        return new ApiRequestException(message + " at position " + mConsumed);
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+import com.uas.media.aimp.api.ApiException;
+import com.uas.media.aimp.api.IPushPlugin;
+import com.uas.media.aimp.api.Statuses;
+
+import java.io.IOException;
+
+/**
+ * {@link CachingPlugin} of a plugin which pushes changes. Values reported as changed are dropped
+ * when {@link #waitForChanges()} returns, so the following reads see the changes at once.
+ * Staleness of the pushed values is bounded by the push rather than by TTL, so they live long.
+ * Playlists keep the default TTL, as not every change of them is pushed, and the position is always read,
+ * as it moves by itself.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class PushCachingPlugin extends CachingPlugin implements IPushPlugin {
+
+    public static final long DEFAULT_PUSHED_TTL = 1000*60*5;
+
+    private final IPushPlugin mPushPlugin;
+
+
+    public PushCachingPlugin(IPushPlugin plugin) {
+        super(plugin);
+        mPushPlugin = plugin;
+
+        setStatusTtl(Statuses.SHUFFLE, DEFAULT_PUSHED_TTL);
+        setStatusTtl(Statuses.REPEAT_SONG, DEFAULT_PUSHED_TTL);
+        setStatusTtl(Statuses.MUTE, DEFAULT_PUSHED_TTL);
+        setStatusTtl(Statuses.VOLUME, DEFAULT_PUSHED_TTL);
+        setStatusTtl(Statuses.PLAY, DEFAULT_PUSHED_TTL);
+        setPlayStateTtl(DEFAULT_PUSHED_TTL);
+        setCurrentSongTtl(DEFAULT_PUSHED_TTL);
+    }
+
+    @Override
+    public int waitForChanges() throws ApiException, IOException, InterruptedException {
+        int changes;
+        try {
+            changes = mPushPlugin.waitForChanges();
+        } catch (IOException ex) {
+            // changes could be missed while the push was broken
+            invalidate();
+            throw ex;
+        } catch (ApiException ex) {
+            invalidate();
+            throw ex;
+        }
+        invalidate(changes);
+        return changes;
+    }
+
+}
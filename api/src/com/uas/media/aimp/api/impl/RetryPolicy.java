@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.Random;
+
+/**
+ * When and how often failed requests are repeated.
+ * Read-only requests are retried on any network error with exponential backoff and full jitter,
+ * so clients which failed at the same moment don't retry at the same moment too.
+ * Other requests are retried only if they certainly were not sent, e.g. connection was refused.
+ * Retries and hedged requests are limited by a budget: not more than {@link #getMinRetriesPerWindow()}
+ * plus {@link #getBudgetRatio()} of requests made during the last window,
+ * so a dead host is not flooded with retries.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class RetryPolicy {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_BASE_BACKOFF = 50;
+    public static final long DEFAULT_MAX_BACKOFF = 1000;
+    public static final double DEFAULT_BUDGET_RATIO = 0.1;
+    public static final int DEFAULT_MIN_RETRIES_PER_WINDOW = 5;
+    public static final long DEFAULT_WINDOW = 1000*10;
+
+
+    private final int mMaxAttempts;
+    private final long mBaseBackoff;
+    private final long mMaxBackoff;
+    private final double mBudgetRatio;
+    private final int mMinRetriesPerWindow;
+    private final long mWindow;
+
+    private final Random mRandom = new Random();
+
+    private long mWindowStart;
+    private int mRequestsInWindow;
+    private int mRetriesInWindow;
+
+
+    public RetryPolicy() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_BACKOFF, DEFAULT_MAX_BACKOFF,
+                DEFAULT_BUDGET_RATIO, DEFAULT_MIN_RETRIES_PER_WINDOW, DEFAULT_WINDOW);
+    }
+
+    public RetryPolicy(int maxAttempts, long baseBackoff, long maxBackoff,
+                       double budgetRatio, int minRetriesPerWindow, long window) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Max attempts must be positive. Given value is " + maxAttempts);
+        }
+        if (baseBackoff < 0 || maxBackoff < baseBackoff) {
+            throw new IllegalArgumentException("Invalid backoff range: [" + baseBackoff + ", " + maxBackoff + "]");
+        }
+        if (budgetRatio < 0 || minRetriesPerWindow < 0) {
+            throw new IllegalArgumentException("Retry budget must be not negative");
+        }
+        if (window < 1) {
+            throw new IllegalArgumentException("Budget window must be positive. Given value is " + window);
+        }
+        mMaxAttempts = maxAttempts;
+        mBaseBackoff = baseBackoff;
+        mMaxBackoff = maxBackoff;
+        mBudgetRatio = budgetRatio;
+        mMinRetriesPerWindow = minRetriesPerWindow;
+        mWindow = window;
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    public double getBudgetRatio() {
+        return mBudgetRatio;
+    }
+
+    public int getMinRetriesPerWindow() {
+        return mMinRetriesPerWindow;
+    }
+
+
+    /**
+     * Check if request which failed with the given exception may be sent again
+     * @param attempt Number of the failed attempt, starting from 1
+     * @param isReadOnly If request doesn't change state of the player
+     */
+    public boolean shouldRetry(IOException ex, int attempt, boolean isReadOnly) {
+        if (attempt >= mMaxAttempts) {
+            return false;
+        }
+        return isReadOnly || isNotSent(ex);
+    }
+
+    /**
+     * Random delay before the next attempt in range [0, min(max backoff, base backoff * 2^(attempt-1))]
+     */
+    public long getBackoff(int attempt) {
+        long cap = mBaseBackoff << Math.min(attempt - 1, 20);
+        cap = Math.min(cap, mMaxBackoff);
+        synchronized (mRandom) {
+            return (long) (mRandom.nextDouble() * cap);
+        }
+    }
+
+    /**
+     * Count sent request in the budget
+     */
+    public synchronized void onRequest() {
+        updateWindow();
+        mRequestsInWindow++;
+    }
+
+    /**
+     * Take one retry from the budget
+     * @return false if the budget is exhausted and the request must not be repeated
+     */
+    public synchronized boolean tryAcquireRetry() {
+        updateWindow();
+        if (mRetriesInWindow >= mMinRetriesPerWindow + mBudgetRatio * mRequestsInWindow) {
+            return false;
+        }
+        mRetriesInWindow++;
+        return true;
+    }
+
+    /**
+     * Check if the request wasn't sent to the remote host
+     */
+    public static boolean isNotSent(IOException ex) {
+        return ex instanceof ConnectException
+                || ex instanceof ConnectTimeoutException
+                || ex instanceof ConnectionPoolTimeoutException;
+    }
+
+
+    private void updateWindow() {
+        long now = System.currentTimeMillis();
+        if (now - mWindowStart >= mWindow) {
+            mWindowStart = now;
+            mRequestsInWindow = 0;
+            mRetriesInWindow = 0;
+        }
+    }
+
+}
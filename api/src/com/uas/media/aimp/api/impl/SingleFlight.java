@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent calls with equal keys: the first caller executes the call,
+ * others wait for it and get the same result or exception.
+ * Calls which start after the first one is completed are executed again, nothing is cached.
+ * <p/>
+ * A call joins only a flight which was started after the last {@link #invalidate()}, so a read which follows
+ * a write never gets the response of a request sent before the write was completed.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+class SingleFlight {
+
+    private final ConcurrentMap<String, Flight<?>> mFlights = new ConcurrentHashMap<String, Flight<?>>();
+    private final AtomicLong mGeneration = new AtomicLong();
+    private final AtomicLong mExecutedCount = new AtomicLong();
+    private final AtomicLong mSharedCount = new AtomicLong();
+
+
+    /**
+     * @return Result of the call
+     * @throws ExecutionException if the call failed, the cause is the exception of the call
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Callable<T> call) throws ExecutionException, InterruptedException {
+        while (true) {
+            long generation = mGeneration.get();
+            Flight<T> task = new Flight<T>(call, generation);
+            Flight<T> flight = (Flight<T>) mFlights.putIfAbsent(key, task);
+
+            if (flight != null && flight.mGeneration < generation) {
+                // the flight was started before the last write, its response can be stale
+                if (!mFlights.replace(key, flight, task)) {
+                    continue;
+                }
+                flight = null;
+            }
+
+            if (flight == null) {
+                mExecutedCount.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    mFlights.remove(key, task);
+                }
+                return task.get();
+            }
+
+            try {
+                T result = flight.get();
+                mSharedCount.incrementAndGet();
+                return result;
+            } catch (ExecutionException ex) {
+                if (!(ex.getCause() instanceof InterruptedException)) {
+                    mSharedCount.incrementAndGet();
+                    throw ex;
+                }
+                // thread of the first caller was interrupted, but this one wasn't: execute the call again
+            }
+        }
+    }
+
+    /**
+     * Calls which start after this one don't join flights which are already started.
+     * Called after each request which changes the state of the player.
+     */
+    public void invalidate() {
+        mGeneration.incrementAndGet();
+    }
+
+    /**
+     * Count of calls which were really executed
+     */
+    public long getExecutedCount() {
+        return mExecutedCount.get();
+    }
+
+    /**
+     * Count of calls which got the result of another call
+     */
+    public long getSharedCount() {
+        return mSharedCount.get();
+    }
+
+
+    private static class Flight<T> extends FutureTask<T> {
+
+        private final long mGeneration;
+
+        public Flight(Callable<T> call, long generation) {
+            super(call);
+            mGeneration = generation;
+        }
+
+    }
+
+}
@@ -0,0 +1,1123 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+import com.uas.media.aimp.api.TrafficMeter;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal HTTP/1.1 client working over non-blocking socket channels.
+ * Supports only what the plugins need: GET and POST requests, keep-alive connections, pipelining of GET requests,
+ * bodies delimited by Content-Length, chunked encoding or closing of the connection.
+ * Each connection has its own selector, so waiting for the network has a timeout
+ * and is stopped as soon as the waiting thread is interrupted ({@link ClosedByInterruptException} is thrown).
+ * Buffers are allocated once per connection and reused by all its requests.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class SocketHttpTransport implements HttpTransport {
+
+    private static final int BUFFER_SIZE = 8192;
+    static final int MAX_HEADER_LINE = 8192;
+
+    static final byte[] HEADER_CONTENT_LENGTH = ascii("content-length");
+    static final byte[] HEADER_TRANSFER_ENCODING = ascii("transfer-encoding");
+    static final byte[] HEADER_CONNECTION = ascii("connection");
+    static final byte[] VALUE_CHUNKED = ascii("chunked");
+    static final byte[] VALUE_CLOSE = ascii("close");
+    static final byte[] VALUE_KEEP_ALIVE = ascii("keep-alive");
+
+
+    private final TrafficMeter mTrafficMeter;
+    private final HostResolver mResolver;
+    private final long mIdleTimeout;
+
+    // guarded by this
+    private final LinkedList<Connection> mIdleConnections = new LinkedList<Connection>();
+    private int mOpenedConnections;
+    private int mMaxConnections;
+    private boolean mIsShutdown;
+
+    private final AtomicLong mRequestsCount = new AtomicLong();
+    private final AtomicLong mNewConnectionsCount = new AtomicLong();
+    private final AtomicLong mEvictedConnectionsCount = new AtomicLong();
+
+
+    public SocketHttpTransport(TrafficMeter trafficMeter, HostResolver resolver) {
+        this(HttpConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_ROUTE, HttpConnectionPool.DEFAULT_IDLE_TIMEOUT, trafficMeter, resolver);
+    }
+
+    public SocketHttpTransport(int maxConnections, long idleTimeout, TrafficMeter trafficMeter, HostResolver resolver) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("Max connections must be positive. Given value is " + maxConnections);
+        }
+        if (idleTimeout < 1) {
+            throw new IllegalArgumentException("Idle timeout must be positive. Given value is " + idleTimeout);
+        }
+        if (resolver == null) {
+            throw new IllegalArgumentException("Resolver is null");
+        }
+        mMaxConnections = maxConnections;
+        mIdleTimeout = idleTimeout;
+        mTrafficMeter = trafficMeter;
+        mResolver = resolver;
+    }
+
+
+    @Override
+    public Response get(String host, int port, String path, String userAgent, int timeout, int connectionWaitTimeout, AbortHandle abort) throws IOException {
+        return getPipelined(host, port, Collections.singletonList(path), userAgent, timeout, connectionWaitTimeout, abort).get(0);
+    }
+
+    @Override
+    public Response post(String host, int port, String path, String contentType, byte[] body, String userAgent, int timeout, int connectionWaitTimeout, AbortHandle abort) throws IOException {
+        if (body == null) {
+            throw new IllegalArgumentException("Body is null");
+        }
+        mRequestsCount.incrementAndGet();
+        Pipeline pipeline = new Pipeline(host, port, Collections.singletonList(path), contentType, body, userAgent, timeout, connectionWaitTimeout);
+        return execute(pipeline, abort).get(0);
+    }
+
+    @Override
+    public boolean isPipelining() {
+        return true;
+    }
+
+    @Override
+    public List<Response> getPipelined(String host, int port, List<String> paths, String userAgent, int timeout, int connectionWaitTimeout, AbortHandle abort) throws IOException {
+        if (paths.isEmpty()) {
+            return Collections.emptyList();
+        }
+        mRequestsCount.addAndGet(paths.size());
+        return execute(new Pipeline(host, port, paths, null, null, userAgent, timeout, connectionWaitTimeout), abort);
+    }
+
+    private List<Response> execute(final Pipeline pipeline, AbortHandle abort) throws IOException {
+        if (abort != null) {
+            abort.setAction(new Runnable() {
+                @Override
+                public void run() {
+                    pipeline.abortAsync();
+                }
+            });
+        }
+        pipeline.start(0);
+
+        List<Response> responses = new ArrayList<Response>(pipeline.mResponses.length);
+        for (int i = 0; i < pipeline.mResponses.length; i++) {
+            responses.add(pipeline.mResponses[i]);
+        }
+        // the first response is waited for at once, like a usual request
+        boolean isStarted = false;
+        try {
+            pipeline.mResponses[0].readHead();
+            isStarted = true;
+        } finally {
+            if (!isStarted) {
+                pipeline.abort();
+            }
+        }
+        return responses;
+    }
+
+    @Override
+    public synchronized void setMaxConnections(int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("Max connections must be positive. Given value is " + max);
+        }
+        mMaxConnections = max;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized HttpConnectionPool.Stats getStats() {
+        long requests = mRequestsCount.get();
+        long newConnections = mNewConnectionsCount.get();
+        return new HttpConnectionPool.Stats(
+                requests,
+                Math.max(0, requests - newConnections),
+                newConnections,
+                mEvictedConnectionsCount.get(),
+                mIdleConnections.size()
+        );
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        mIsShutdown = true;
+        for (Connection c: mIdleConnections) {
+            c.close();
+        }
+        mOpenedConnections -= mIdleConnections.size();
+        mIdleConnections.clear();
+        notifyAll();
+    }
+
+    // ================================================================================
+    // ====================== Pool
+
+    /**
+     * Take an idle connection to the host or open a new one
+     */
+    private Connection obtain(String host, int port, int timeout, int connectionWaitTimeout, Pipeline owner) throws IOException {
+        while (true) {
+            Connection c = takeIdleOrReserve(host, port, connectionWaitTimeout, owner);
+            if (c == null) {
+                break;
+            }
+            if (!c.isStale()) {
+                c.mIsReused = true;
+                c.mOwner = owner;
+                owner.mLastConnection = c;
+                return c;
+            }
+            mEvictedConnectionsCount.incrementAndGet();
+            discard(c);
+        }
+
+        Connection c = null;
+        try {
+            c = new Connection(host, port);
+            c.mOwner = owner;
+            owner.mLastConnection = c;
+            c.connect(timeout);
+            mNewConnectionsCount.incrementAndGet();
+            return c;
+        } catch (IOException ex) {
+            if (c != null) {
+                c.close();
+            }
+            synchronized (this) {
+                mOpenedConnections--;
+                notifyAll();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * @return Idle connection to the host, or null if a new connection may be opened
+     */
+    private synchronized Connection takeIdleOrReserve(String host, int port, int connectionWaitTimeout, Pipeline owner) throws IOException {
+        long deadline = System.currentTimeMillis() + connectionWaitTimeout;
+        while (true) {
+            if (mIsShutdown) {
+                throw new IOException("Transport is shut down");
+            }
+            if (owner.mIsAborted) {
+                throw new IOException("Request is aborted");
+            }
+            evictIdleConnections();
+
+            // the most recently used connection is the least likely to be closed by the server
+            for (ListIterator<Connection> it = mIdleConnections.listIterator(mIdleConnections.size()); it.hasPrevious(); ) {
+                Connection c = it.previous();
+                if (c.isTo(host, port)) {
+                    it.remove();
+                    return c;
+                }
+            }
+            if (mOpenedConnections >= mMaxConnections && !mIdleConnections.isEmpty()) {
+                // idle connections to another host are not needed anymore
+                mIdleConnections.removeFirst().close();
+                mOpenedConnections--;
+                mEvictedConnectionsCount.incrementAndGet();
+            }
+            if (mOpenedConnections < mMaxConnections) {
+                mOpenedConnections++;
+                return null;
+            }
+
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new ConnectionPoolTimeoutException("Timeout waiting for connection");
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new ClosedByInterruptException();
+            }
+        }
+    }
+
+    private void evictIdleConnections() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Connection> it = mIdleConnections.iterator(); it.hasNext(); ) {
+            Connection c = it.next();
+            if (now - c.mIdleSince >= mIdleTimeout) {
+                it.remove();
+                c.close();
+                mOpenedConnections--;
+                mEvictedConnectionsCount.incrementAndGet();
+            }
+        }
+    }
+
+    private synchronized void recycle(Connection c) {
+        c.mOwner = null;
+        if (mIsShutdown || !c.mIsReusable) {
+            c.close();
+            mOpenedConnections--;
+        } else {
+            c.mIdleSince = System.currentTimeMillis();
+            mIdleConnections.addLast(c);
+        }
+        notifyAll();
+    }
+
+    private void discard(Connection c) {
+        c.close();
+        synchronized (this) {
+            mOpenedConnections--;
+            notifyAll();
+        }
+    }
+
+    // ================================================================================
+    // ====================== Requests
+
+    /**
+     * Requests sent over one connection, and their responses.
+     * If the server closes the connection after some of the responses, the rest of requests is sent again.
+     * Pipeline with a body consists of one POST request.
+     */
+    class Pipeline {
+
+        private final String mHost;
+        private final int mPort;
+        private final List<String> mPaths;
+        private final String mContentType;
+        private final byte[] mBody;
+        private final String mUserAgent;
+        private final int mTimeout;
+        private final int mConnectionWaitTimeout;
+        private final PipelinedResponse[] mResponses;
+
+        private Connection mConnection;
+        private int mFirstOnConnection;
+        private int mReleasedCount;
+
+        // are used by the aborting thread
+        private volatile boolean mIsAborted;
+        private volatile Connection mLastConnection;
+
+        Pipeline(String host, int port, List<String> paths, String contentType, byte[] body, String userAgent, int timeout, int connectionWaitTimeout) {
+            mHost = host;
+            mPort = port;
+            mPaths = paths;
+            mContentType = contentType;
+            mBody = body;
+            mUserAgent = userAgent;
+            mTimeout = timeout;
+            mConnectionWaitTimeout = connectionWaitTimeout;
+            mResponses = new PipelinedResponse[paths.size()];
+            for (int i = 0; i < mResponses.length; i++) {
+                mResponses[i] = new PipelinedResponse(this, i);
+            }
+        }
+
+        /**
+         * Send requests starting from the given one over a connection
+         */
+        void start(int first) throws IOException {
+            while (true) {
+                Connection c = obtain(mHost, mPort, mTimeout, mConnectionWaitTimeout, this);
+                try {
+                    c.writeRequests(mHost, mPort, mPaths, first, mUserAgent, mContentType, mBody, mTimeout);
+                    mConnection = c;
+                    mFirstOnConnection = first;
+                    return;
+                } catch (IOException ex) {
+                    discard(c);
+                    if (!c.mIsReused || !isClosedByServer(ex)) {
+                        throw ex;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Read head of the response, previous responses must be released
+         */
+        Connection readHead(PipelinedResponse response) throws IOException {
+            if (mConnection == null) {
+                throw new IOException("Connection is closed");
+            }
+            while (true) {
+                try {
+                    mConnection.readHead(mTimeout);
+                    return mConnection;
+                } catch (IOException ex) {
+                    if (!isClosedByServer(ex) || (response.mIndex == mFirstOnConnection && !mConnection.mIsReused)) {
+                        throw ex;
+                    }
+                    if (mBody != null) {
+                        // server could have performed the request before closing
+                        throw ex;
+                    }
+                    // server has closed the connection after previous responses, or while it was idle
+                    // and before our requests were read, send the rest again
+                    discard(mConnection);
+                    mConnection = null;
+                    start(response.mIndex);
+                }
+            }
+        }
+
+        private boolean isClosedByServer(IOException ex) {
+            return ex instanceof NoHttpResponseException || ex instanceof SocketException;
+        }
+
+        /**
+         * Body of the response has been read completely
+         */
+        void onReleased() {
+            mReleasedCount++;
+            if (mReleasedCount == mResponses.length && mConnection != null) {
+                recycle(mConnection);
+                mConnection = null;
+            }
+        }
+
+        void abort() {
+            if (mConnection != null) {
+                discard(mConnection);
+                mConnection = null;
+            }
+        }
+
+        /**
+         * Break off waiting of the requesting thread from another thread.
+         * The requesting thread fails and drops the connection itself.
+         */
+        void abortAsync() {
+            mIsAborted = true;
+            Connection c = mLastConnection;
+            if (c != null) {
+                c.wakeup();
+            }
+            synchronized (SocketHttpTransport.this) {
+                SocketHttpTransport.this.notifyAll();
+            }
+        }
+    }
+
+
+    class PipelinedResponse implements Response {
+
+        private final Pipeline mPipeline;
+        private final int mIndex;
+
+        private BodyStream mBody;
+        private boolean mIsReleased;
+
+        PipelinedResponse(Pipeline pipeline, int index) {
+            mPipeline = pipeline;
+            mIndex = index;
+        }
+
+        void readHead() throws IOException {
+            if (mBody != null) {
+                return;
+            }
+            if (mIndex > 0) {
+                mPipeline.mResponses[mIndex - 1].release();
+            }
+            if (mIsReleased) {
+                throw new IOException("Response is already released");
+            }
+            Connection c = mPipeline.readHead(this);
+            mBody = c.openBody(this);
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            readHead();
+            return mBody;
+        }
+
+        @Override
+        public void release() throws IOException {
+            if (mIsReleased) {
+                return;
+            }
+            readHead();
+            mBody.close();
+        }
+
+        @Override
+        public void abort() {
+            if (!mIsReleased) {
+                mIsReleased = true;
+                mPipeline.abort();
+            }
+        }
+
+        void onBodyEnd() {
+            if (!mIsReleased) {
+                mIsReleased = true;
+                mPipeline.onReleased();
+            }
+        }
+    }
+
+    // ================================================================================
+    // ====================== Connection
+
+    class Connection {
+
+        private final String mHost;
+        private final int mPort;
+        private SocketChannel mChannel;
+        private volatile Selector mSelector;
+        private SelectionKey mKey;
+
+        private final ByteBuffer mIn;
+        private ByteBuffer mOut;
+        private byte[] mLine;
+
+        long mIdleSince;
+        boolean mIsReusable;
+        boolean mIsReused;
+        volatile Pipeline mOwner;
+
+        // head of the current response
+        private long mContentLength;
+        private boolean mIsChunked;
+
+        Connection(String host, int port) {
+            mHost = host;
+            mPort = port;
+            mIn = ByteBuffer.allocate(BUFFER_SIZE);
+            mIn.flip();
+            mOut = ByteBuffer.allocate(512);
+            mLine = new byte[256];
+        }
+
+        boolean isTo(String host, int port) {
+            return mPort == port && mHost.equals(host);
+        }
+
+        void connect(int timeout) throws IOException {
+            InetSocketAddress address = new InetSocketAddress(mResolver.resolve(mHost), mPort);
+            mChannel = SocketChannel.open();
+            mChannel.configureBlocking(false);
+            mChannel.socket().setTcpNoDelay(true);
+            mSelector = Selector.open();
+
+            if (!mChannel.connect(address)) {
+                mKey = mChannel.register(mSelector, SelectionKey.OP_CONNECT);
+                while (!mChannel.finishConnect()) {
+                    if (!await(SelectionKey.OP_CONNECT, timeout)) {
+                        throw new ConnectTimeoutException("Connect to " + mHost + ":" + mPort + " timed out");
+                    }
+                }
+            } else {
+                mKey = mChannel.register(mSelector, 0);
+            }
+            mIsReusable = true;
+        }
+
+        /**
+         * Check if the server has closed the idle connection or sent something unexpected
+         */
+        boolean isStale() {
+            try {
+                if (mIn.hasRemaining()) {
+                    return true;
+                }
+                mIn.clear();
+                int read = mChannel.read(mIn);
+                mIn.flip();
+                return read != 0;
+            } catch (IOException ex) {
+                return true;
+            }
+        }
+
+        void close() {
+            mIsReusable = false;
+            try {
+                if (mSelector != null) {
+                    mSelector.close();
+                }
+            } catch (IOException ex) {
+                // nothing to do
+            }
+            try {
+                if (mChannel != null) {
+                    mChannel.close();
+                }
+            } catch (IOException ex) {
+                // nothing to do
+            }
+        }
+
+        // ====================== Writing
+
+        void writeRequests(String host, int port, List<String> paths, int first, String userAgent, String contentType, byte[] body, int timeout) throws IOException {
+            mOut.clear();
+            for (int i = first; i < paths.size(); i++) {
+                append(body == null ? "GET " : "POST ").append(paths.get(i)).append(" HTTP/1.1\r\n");
+                append("Host: ").append(host).append(":").append(Integer.toString(port)).append("\r\n");
+                append("User-Agent: ").append(userAgent).append("\r\n");
+                if (body != null) {
+                    append("Content-Type: ").append(contentType).append("\r\n");
+                    append("Content-Length: ").append(Integer.toString(body.length)).append("\r\n");
+                }
+                append("Connection: keep-alive\r\n\r\n");
+                if (body != null) {
+                    append(body);
+                }
+            }
+            mOut.flip();
+
+            while (mOut.hasRemaining()) {
+                int written = mChannel.write(mOut);
+                if (written > 0) {
+                    if (mTrafficMeter != null) {
+                        mTrafficMeter.addOut(written);
+                    }
+                } else if (!await(SelectionKey.OP_WRITE, timeout)) {
+                    throw new SocketTimeoutException("Write timed out");
+                }
+            }
+        }
+
+        private Connection append(String s) {
+            int length = s.length();
+            ensureRemaining(length);
+            for (int i = 0; i < length; i++) {
+                char c = s.charAt(i);
+                mOut.put(c < 0x80 ? (byte) c : (byte) '?');
+            }
+            return this;
+        }
+
+        private void append(byte[] bytes) {
+            ensureRemaining(bytes.length);
+            mOut.put(bytes);
+        }
+
+        private void ensureRemaining(int length) {
+            if (mOut.remaining() < length) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(mOut.capacity() * 2, mOut.position() + length));
+                mOut.flip();
+                bigger.put(mOut);
+                mOut = bigger;
+            }
+        }
+
+        // ====================== Reading
+
+        /**
+         * Wait until the channel is ready for the operation
+         * @return false on timeout
+         */
+        private boolean await(int operation, int timeout) throws IOException {
+            long deadline = System.currentTimeMillis() + timeout;
+            mKey.interestOps(operation);
+            while (true) {
+                checkAborted();
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    mKey.interestOps(0);
+                    return false;
+                }
+                int selected = mSelector.select(remaining);
+                mSelector.selectedKeys().clear();
+                if (Thread.currentThread().isInterrupted()) {
+                    mIsReusable = false;
+                    throw new ClosedByInterruptException();
+                }
+                if (selected > 0) {
+                    mKey.interestOps(0);
+                    return true;
+                }
+            }
+        }
+
+        private void checkAborted() throws IOException {
+            Pipeline owner = mOwner;
+            if (owner != null && owner.mIsAborted) {
+                mIsReusable = false;
+                throw new IOException("Request is aborted");
+            }
+        }
+
+        /**
+         * Stop waiting of the owner's thread, so it notices the abort
+         */
+        void wakeup() {
+            Selector selector = mSelector;
+            if (selector != null) {
+                selector.wakeup();
+            }
+        }
+
+        /**
+         * Read more bytes into the input buffer
+         * @return Count of read bytes, -1 if the connection is closed by the server
+         */
+        private int fill(int timeout) throws IOException {
+            mIn.compact();
+            try {
+                while (true) {
+                    int read = mChannel.read(mIn);
+                    if (read != 0) {
+                        if (read > 0 && mTrafficMeter != null) {
+                            mTrafficMeter.addIn(read);
+                        }
+                        return read;
+                    }
+                    if (!await(SelectionKey.OP_READ, timeout)) {
+                        mIsReusable = false;
+                        throw new SocketTimeoutException("Read timed out");
+                    }
+                }
+            } finally {
+                mIn.flip();
+            }
+        }
+
+        private int readByte(int timeout) throws IOException {
+            if (!mIn.hasRemaining() && fill(timeout) == -1) {
+                return -1;
+            }
+            return mIn.get() & 0xFF;
+        }
+
+        /**
+         * Read line without CRLF into the line buffer
+         * @return Length of the line, -1 if the stream is ended before any byte
+         */
+        private int readLine(int timeout) throws IOException {
+            int length = 0;
+            while (true) {
+                int b = readByte(timeout);
+                if (b == -1) {
+                    if (length == 0) {
+                        return -1;
+                    }
+                    throw new EOFException("Connection closed in the middle of a line");
+                }
+                if (b == '\n') {
+                    if (length > 0 && mLine[length - 1] == '\r') {
+                        length--;
+                    }
+                    return length;
+                }
+                if (length == mLine.length) {
+                    if (length >= MAX_HEADER_LINE) {
+                        throw new ProtocolException("Header line is too long");
+                    }
+                    byte[] bigger = new byte[length * 2];
+                    System.arraycopy(mLine, 0, bigger, 0, length);
+                    mLine = bigger;
+                }
+                mLine[length++] = (byte) b;
+            }
+        }
+
+        /**
+         * Read status line and headers of the next response
+         */
+        void readHead(int timeout) throws IOException {
+            int status;
+            boolean isHttp10;
+            do {
+                int length = readLine(timeout);
+                if (length == -1) {
+                    mIsReusable = false;
+                    throw new NoHttpResponseException(mHost + ":" + mPort + " failed to respond");
+                }
+                // HTTP/1.1 200 OK
+                if (length < 12 || mLine[0] != 'H' || mLine[4] != '/'
+                        || !isDigit(mLine[9]) || !isDigit(mLine[10]) || !isDigit(mLine[11])) {
+                    mIsReusable = false;
+                    throw new ProtocolException("Invalid status line: " + new String(mLine, 0, length, "ISO-8859-1"));
+                }
+                isHttp10 = mLine[5] == '1' && mLine[7] == '0';
+                status = (mLine[9] - '0') * 100 + (mLine[10] - '0') * 10 + (mLine[11] - '0');
+
+                mContentLength = -1;
+                mIsChunked = false;
+                boolean isClose = isHttp10;
+                while ((length = readLine(timeout)) > 0) {
+                    int colon = indexOf(mLine, length, (byte) ':');
+                    if (colon == -1) {
+                        continue;
+                    }
+                    if (equalsIgnoreCase(HEADER_CONTENT_LENGTH, mLine, 0, colon)) {
+                        mContentLength = parseLong(mLine, colon + 1, length);
+                    } else if (equalsIgnoreCase(HEADER_TRANSFER_ENCODING, mLine, 0, colon)) {
+                        mIsChunked = containsIgnoreCase(mLine, colon + 1, length, VALUE_CHUNKED);
+                    } else if (equalsIgnoreCase(HEADER_CONNECTION, mLine, 0, colon)) {
+                        if (containsIgnoreCase(mLine, colon + 1, length, VALUE_CLOSE)) {
+                            isClose = true;
+                        } else if (containsIgnoreCase(mLine, colon + 1, length, VALUE_KEEP_ALIVE)) {
+                            isClose = false;
+                        }
+                    }
+                }
+                if (length == -1) {
+                    mIsReusable = false;
+                    throw new EOFException("Connection closed in the middle of headers");
+                }
+                if (isClose) {
+                    mIsReusable = false;
+                }
+            } while (status >= 100 && status < 200);
+
+            if (!mIsChunked && mContentLength == -1 && status != 204 && status != 304) {
+                // body lasts until the connection is closed
+                mIsReusable = false;
+            }
+            if (status == 204 || status == 304) {
+                mContentLength = 0;
+            }
+        }
+
+        BodyStream openBody(PipelinedResponse response) {
+            if (mIsChunked) {
+                return new ChunkedBody(this, response);
+            } else if (mContentLength >= 0) {
+                return new LengthBody(this, response, mContentLength);
+            } else {
+                return new LengthBody(this, response, Long.MAX_VALUE);
+            }
+        }
+
+        /**
+         * Read bytes of the body directly from the input buffer
+         */
+        int readBody(byte[] buffer, int offset, int count, int timeout) throws IOException {
+            if (!mIn.hasRemaining() && fill(timeout) == -1) {
+                return -1;
+            }
+            int read = Math.min(count, mIn.remaining());
+            mIn.get(buffer, offset, read);
+            return read;
+        }
+    }
+
+    // ================================================================================
+    // ====================== Bodies
+
+    abstract class BodyStream extends InputStream {
+
+        protected final Connection mConnection;
+        protected final PipelinedResponse mResponse;
+        protected boolean mIsEnded;
+        private final byte[] mOneByte = new byte[1];
+
+        BodyStream(Connection connection, PipelinedResponse response) {
+            mConnection = connection;
+            mResponse = response;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = read(mOneByte, 0, 1);
+            return read == -1 ? -1 : mOneByte[0] & 0xFF;
+        }
+
+        /**
+         * Read out the rest of the body and free the connection
+         */
+        @Override
+        public void close() throws IOException {
+            if (mResponse.mIsReleased) {
+                return;
+            }
+            byte[] skip = new byte[512];
+            boolean isCompleted = false;
+            try {
+                while (read(skip, 0, skip.length) != -1) {
+                    // skip
+                }
+                isCompleted = true;
+            } finally {
+                if (!isCompleted) {
+                    mResponse.abort();
+                }
+            }
+        }
+
+        protected void end() {
+            if (!mIsEnded) {
+                mIsEnded = true;
+                mResponse.onBodyEnd();
+            }
+        }
+
+        protected int timeout() {
+            return mResponse.mPipeline.mTimeout;
+        }
+    }
+
+
+    class LengthBody extends BodyStream {
+
+        private long mRemaining;
+
+        LengthBody(Connection connection, PipelinedResponse response, long length) {
+            super(connection, response);
+            mRemaining = length;
+            if (length == 0) {
+                end();
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            if (mIsEnded || mResponse.mIsReleased) {
+                return -1;
+            }
+            if (count == 0) {
+                return 0;
+            }
+            int read = mConnection.readBody(buffer, offset, (int) Math.min(count, mRemaining), timeout());
+            if (read == -1) {
+                if (mRemaining != Long.MAX_VALUE) {
+                    mResponse.abort();
+                    throw new EOFException("Connection closed before the end of body");
+                }
+                // body delimited by closing of the connection
+                end();
+                return -1;
+            }
+            if (mRemaining != Long.MAX_VALUE) {
+                mRemaining -= read;
+                if (mRemaining == 0) {
+                    end();
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return mIsEnded ? 0 : (int) Math.min(mRemaining, mConnection.mIn.remaining());
+        }
+    }
+
+
+    class ChunkedBody extends BodyStream {
+
+        private long mChunkRemaining;
+
+        ChunkedBody(Connection connection, PipelinedResponse response) {
+            super(connection, response);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            if (mIsEnded || mResponse.mIsReleased) {
+                return -1;
+            }
+            if (count == 0) {
+                return 0;
+            }
+            if (mChunkRemaining == 0) {
+                mChunkRemaining = readChunkSize();
+                if (mChunkRemaining == 0) {
+                    skipTrailers();
+                    end();
+                    return -1;
+                }
+            }
+            int read = mConnection.readBody(buffer, offset, (int) Math.min(count, mChunkRemaining), timeout());
+            if (read == -1) {
+                mResponse.abort();
+                throw new EOFException("Connection closed in the middle of chunk");
+            }
+            mChunkRemaining -= read;
+            if (mChunkRemaining == 0) {
+                // CRLF after chunk data
+                if (mConnection.readLine(timeout()) != 0) {
+                    mResponse.abort();
+                    throw new ProtocolException("Chunk data is not followed by CRLF");
+                }
+            }
+            return read;
+        }
+
+        private long readChunkSize() throws IOException {
+            int length = mConnection.readLine(timeout());
+            if (length == -1) {
+                mResponse.abort();
+                throw new EOFException("Connection closed before the last chunk");
+            }
+            byte[] line = mConnection.mLine;
+            long size = 0;
+            int i = 0;
+            for (; i < length; i++) {
+                int digit = Character.digit(line[i], 16);
+                if (digit == -1) {
+                    // chunk extension or whitespace
+                    break;
+                }
+                if (size > Long.MAX_VALUE >> 4) {
+                    // would wrap negative and be passed on as a count of bytes
+                    mResponse.abort();
+                    throw new ProtocolException("Chunk size is too large");
+                }
+                size = size * 16 + digit;
+            }
+            if (i == 0) {
+                mResponse.abort();
+                throw new ProtocolException("Invalid chunk size");
+            }
+            return size;
+        }
+
+        private void skipTrailers() throws IOException {
+            int length;
+            while ((length = mConnection.readLine(timeout())) > 0) {
+                // skip
+            }
+            if (length == -1) {
+                mConnection.mIsReusable = false;
+            }
+        }
+    }
+
+    // ================================================================================
+    // ================================================================================
+
+
+    static byte[] ascii(String s) {
+        byte[] result = new byte[s.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) s.charAt(i);
+        }
+        return result;
+    }
+
+    static int indexOf(byte[] line, int length, byte b) {
+        for (int i = 0; i < length; i++) {
+            if (line[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compare lower case name with line[from, to) ignoring case and whitespaces around
+     */
+    static boolean equalsIgnoreCase(byte[] name, byte[] line, int from, int to) {
+        while (from < to && line[from] == ' ') {
+            from++;
+        }
+        while (to > from && line[to - 1] == ' ') {
+            to--;
+        }
+        if (to - from != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (toLower(line[from + i]) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean containsIgnoreCase(byte[] line, int from, int to, byte[] value) {
+        for (int i = from; i <= to - value.length; i++) {
+            int j = 0;
+            while (j < value.length && toLower(line[i + j]) == value[j]) {
+                j++;
+            }
+            if (j == value.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static byte toLower(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    static long parseLong(byte[] line, int from, int to) throws ProtocolException {
+        long result = 0;
+        boolean hasDigits = false;
+        for (int i = from; i < to; i++) {
+            byte b = line[i];
+            if (isDigit(b)) {
+                if (result > (Long.MAX_VALUE - 9) / 10) {
+                    throw new ProtocolException("Content-Length is too large");
+                }
+                result = result * 10 + (b - '0');
+                hasDigits = true;
+            } else if (b != ' ' && b != '\t') {
+                break;
+            }
+        }
+        if (!hasDigits) {
+            throw new ProtocolException("Invalid Content-Length");
+        }
+        return result;
+    }
+
+}
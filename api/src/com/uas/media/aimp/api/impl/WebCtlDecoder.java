@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+import com.uas.media.aimp.api.ApiRequestException;
+import com.uas.media.aimp.api.SongsChunkListener;
+import com.uas.media.aimp.api.models.CurrentSongInfo;
+import com.uas.media.aimp.api.models.Playlist;
+import com.uas.media.aimp.api.models.Song;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decoders of WebCtl responses. Each action has its own decoder which reads UTF-8 bytes
+ * of the response straight into the models, without building a string of the whole response
+ * or a JSON tree. Decoder keeps its buffers between responses, so one instance per thread is enough.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+class WebCtlDecoder {
+
+    private static final String[] PLAYLIST_FIELDS = {"id", "name", "size", "duration"};
+    private static final int PLAYLIST_ID = 0;
+    private static final int PLAYLIST_NAME = 1;
+    private static final int PLAYLIST_SIZE = 2;
+    private static final int PLAYLIST_DURATION = 3;
+
+    private static final String[] SONGS_FIELDS = {"status", "songs"};
+    private static final int SONGS_STATUS = 0;
+    private static final int SONGS_SONGS = 1;
+
+    private static final String[] SONG_FIELDS = {"name", "length"};
+    private static final int SONG_NAME = 0;
+    private static final int SONG_LENGTH = 1;
+
+    private static final String[] CURRENT_SONG_FIELDS = {"status", "PlayingList", "PlayingFile", "PlayingFileName", "length"};
+    private static final int CURRENT_SONG_STATUS = 0;
+    private static final int CURRENT_SONG_PLAYLIST = 1;
+    private static final int CURRENT_SONG_POSITION = 2;
+    private static final int CURRENT_SONG_NAME = 3;
+    private static final int CURRENT_SONG_LENGTH = 4;
+
+    private static final String STATUS_OK = "OK";
+
+    private final JsonStreamReader mReader;
+
+
+    WebCtlDecoder() {
+        mReader = new JsonStreamReader();
+    }
+
+    public void reset(InputStream in) {
+        mReader.reset(in);
+    }
+
+    public InputStream detach() {
+        return mReader.detach();
+    }
+
+    /**
+     * Count of bytes of the current response decoded so far
+     */
+    public long getBytesRead() {
+        return mReader.getPosition();
+    }
+
+    /**
+     * Check if decoder is busy with another response
+     */
+    public boolean isAttached() {
+        return mReader.isAttached();
+    }
+
+
+    /**
+     * Decode response of get_playlist_list. Hashes of playlists are not set.
+     */
+    public List<Playlist> decodePlaylists() throws IOException, ApiRequestException {
+        ArrayList<Playlist> result = new ArrayList<Playlist>();
+
+        mReader.beginArray();
+        while (mReader.hasNext()) {
+            Playlist pl = new Playlist();
+            int fields = 0;
+
+            mReader.beginObject();
+            while (mReader.hasNext()) {
+                int field = mReader.nextName(PLAYLIST_FIELDS);
+                switch (field) {
+                    case PLAYLIST_ID:
+                        pl.setId(mReader.nextInt());
+                        break;
+                    case PLAYLIST_NAME:
+                        pl.setName(mReader.nextString());
+                        break;
+                    case PLAYLIST_SIZE:
+                        pl.setSizeInBytes(mReader.nextLong());
+                        break;
+                    case PLAYLIST_DURATION:
+                        pl.setDuration(mReader.nextInt());
+                        break;
+                    default:
+                        mReader.skipValue();
+                        continue;
+                }
+                fields |= 1 << field;
+            }
+            mReader.endObject();
+
+            if (fields != (1 << PLAYLIST_FIELDS.length) - 1) {
+                throw new ApiRequestException("Error parsing response: playlist #" + result.size() + " has not all fields");
+            }
+            result.add(pl);
+        }
+        mReader.endArray();
+
+        return result;
+    }
+
+    /**
+     * Decode response of get_playlist_songs, passing songs to the listener by chunks
+     */
+    public void decodePlaylistSongs(int playlistId, int chunkSize, SongsChunkListener listener) throws IOException, ApiRequestException, InterruptedException {
+        boolean isStatusOk = false;
+        List<Song> chunk = new ArrayList<Song>(chunkSize);
+        int loadedCount = 0;
+
+        mReader.beginObject();
+        while (mReader.hasNext()) {
+            switch (mReader.nextName(SONGS_FIELDS)) {
+                case SONGS_STATUS:
+                    isStatusOk = mReader.nextStringEquals(STATUS_OK);
+                    if (!isStatusOk) {
+                        throw new ApiRequestException("Retrieve playlist's songs operation failed. Playlist with ID " + playlistId + " not found");
+                    }
+                    break;
+                case SONGS_SONGS:
+                    mReader.beginArray();
+                    while (mReader.hasNext()) {
+                        chunk.add(decodeSong());
+                        if (chunk.size() == chunkSize) {
+                            loadedCount += chunk.size();
+                            listener.onSongsChunkLoaded(playlistId, chunk, loadedCount);
+                            chunk = new ArrayList<Song>(chunkSize);
+
+                            if (Thread.interrupted()) {
+                                throw new InterruptedException();
+                            }
+                        }
+                    }
+                    mReader.endArray();
+                    break;
+                default:
+                    mReader.skipValue();
+                    break;
+            }
+        }
+        mReader.endObject();
+
+        if (!isStatusOk) {
+            throw new ApiRequestException("Retrieve playlist's songs operation failed. Response has no status");
+        }
+        if (!chunk.isEmpty()) {
+            loadedCount += chunk.size();
+            listener.onSongsChunkLoaded(playlistId, chunk, loadedCount);
+        }
+    }
+
+    private Song decodeSong() throws IOException, ApiRequestException {
+        String name = null;
+        int length = 0;
+
+        mReader.beginObject();
+        while (mReader.hasNext()) {
+            switch (mReader.nextName(SONG_FIELDS)) {
+                case SONG_NAME:
+                    name = mReader.nextString();
+                    break;
+                case SONG_LENGTH:
+                    length = mReader.nextInt();
+                    break;
+                default:
+                    mReader.skipValue();
+                    break;
+            }
+        }
+        mReader.endObject();
+
+        if (name == null) {
+            throw new ApiRequestException("Error parsing response: song has no name");
+        }
+        return new Song(name, length/1000);
+    }
+
+    /**
+     * Decode response of get_song_current
+     */
+    public CurrentSongInfo decodeCurrentSong() throws IOException, ApiRequestException {
+        boolean isStatusOk = false;
+        int playlistId = 0;
+        int songPosition = -1;
+        String name = null;
+        int length = 0;
+        int fields = 0;
+
+        mReader.beginObject();
+        while (mReader.hasNext()) {
+            int field = mReader.nextName(CURRENT_SONG_FIELDS);
+            switch (field) {
+                case CURRENT_SONG_STATUS:
+                    isStatusOk = mReader.nextStringEquals(STATUS_OK);
+                    break;
+                case CURRENT_SONG_PLAYLIST:
+                    playlistId = mReader.nextInt();
+                    break;
+                case CURRENT_SONG_POSITION:
+                    songPosition = mReader.nextInt();
+                    break;
+                case CURRENT_SONG_NAME:
+                    name = mReader.nextString();
+                    break;
+                case CURRENT_SONG_LENGTH:
+                    length = mReader.nextInt();
+                    break;
+                default:
+                    mReader.skipValue();
+                    continue;
+            }
+            fields |= 1 << field;
+        }
+        mReader.endObject();
+
+        if (!isStatusOk) {
+            throw new ApiRequestException("Unable to retrieve info about current playing song");
+        }
+        if ((fields & (1 << CURRENT_SONG_PLAYLIST)) == 0 || (fields & (1 << CURRENT_SONG_POSITION)) == 0) {
+            throw new ApiRequestException("Unable to retrieve info about current playing song. Response has no playing list or file");
+        }
+
+        CurrentSongInfo si = new CurrentSongInfo();
+        si.setPlaylistId(playlistId);
+        si.setSongPosition(songPosition);
+        if (songPosition < 0) {
+            si.setInfo(null);
+        } else {
+            if (name == null || (fields & (1 << CURRENT_SONG_LENGTH)) == 0) {
+                throw new ApiRequestException("Unable to retrieve info about current playing song. Response has no song's name or length");
+            }
+            si.setInfo(new Song(name, length));
+        }
+        return si;
+    }
+
+    /**
+     * Decode response of get_custom_status, which is a plain integer
+     */
+    public int decodeCustomStatus(int status) throws IOException, ApiRequestException {
+        long value;
+        try {
+            value = mReader.nextPlainLong();
+        } catch (ApiRequestException ex) {
+            throw new ApiRequestException("Status " + status + " value is not an integer. " + ex.getMessage());
+        }
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new ApiRequestException("Status " + status + " value is out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Decode a plain text response, e.g. get_playlist_crc
+     */
+    public String decodeText() throws IOException {
+        return mReader.nextText();
+    }
+
+}
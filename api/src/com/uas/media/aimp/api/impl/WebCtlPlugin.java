@@ -33,91 +33,38 @@ package com.uas.media.aimp.api.impl;
 
 import com.uas.media.aimp.api.ApiException;
 import com.uas.media.aimp.api.ApiRequestException;
-import com.uas.media.aimp.api.IPlugin;
 import com.uas.media.aimp.api.Logger;
+import com.uas.media.aimp.api.SongsChunkListener;
+import com.uas.media.aimp.api.Statuses;
 import com.uas.media.aimp.api.models.CurrentSongInfo;
 import com.uas.media.aimp.api.models.Playlist;
 import com.uas.media.aimp.api.models.Song;
-import org.apache.http.HttpEntity;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpConnectionParams;
-import org.apache.http.params.HttpParams;
-import org.apache.http.protocol.HTTP;
-import org.apache.http.util.EntityUtils;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.uas.media.aimp.api.models.StatusSnapshot;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * User: uas.sorokin@gmail.com
  */
-public class WebCtlPlugin implements IPlugin {
+public class WebCtlPlugin extends HttpPlugin {
 
-    public static final int DEFAULT_REQUEST_TIMEOUT = 5000;
     public static final int DEFAULT_PORT = 38475;
 
-	interface Statuses {
-		int VOLUME = 1;
-		int BALANCE = 2;
-		int SPEED = 3;
-		int PLAY = 4;
-		int MUTE = 5;
-		int REVERBATION = 6;
-		int ECHO = 7;
-		int CHORUS = 8;
-		int FLANGER = 9;
-		int EQUALIZER = 10;
-
-		int EQUALIZER1  = 11;
-		int EQUALIZER2  = 12;
-		int EQUALIZER3  = 13;
-		int EQUALIZER4  = 14;
-		int EQUALIZER5  = 15;
-		int EQUALIZER6  = 16;
-		int EQUALIZER7  = 17;
-		int EQUALIZER8  = 18;
-		int EQUALIZER9  = 19;
-		int EQUALIZER10 = 20;
-		int EQUALIZER11 = 21;
-		int EQUALIZER12 = 22;
-		int EQUALIZER13 = 23;
-		int EQUALIZER14 = 24;
-		int EQUALIZER15 = 25;
-		int EQUALIZER16 = 26;
-		int EQUALIZER17 = 27;
-		int EQUALIZER18 = 28;
-
-		int REPEAT_SONG = 29;
-		int STOP = 30;
-		int POSITION = 31;
-		int LENGTH = 32;
-		int REPEAT_PLAYLIST = 33;
-		int REPEAT_PLAYLIST_1 = 34;
-		int KBPS = 35;
-		int KHz = 36;
-		int MODE = 37;
-		int RADIO = 38;
-		int STREAM_TYPE = 39;
-		int TIMER = 40;
-		int SHUFFLE = 41;
-	}
-
+    private static final int SONGS_CHUNK_SIZE = 1024;
 
-    private String mRemoteHost;
-    private int mRemotePort;
-    private int mConnectionTimeout;
-    private String mHttpClientName;
+    private final ThreadLocal<WebCtlDecoder> mDecoders = new ThreadLocal<WebCtlDecoder>() {
+        @Override
+        protected WebCtlDecoder initialValue() {
+            return new WebCtlDecoder();
+        }
+    };
 
 
     public WebCtlPlugin() {
-
+        super("WebCtl", null, 0);
     }
 
     public WebCtlPlugin(String host) {
@@ -125,10 +72,7 @@ public class WebCtlPlugin implements IPlugin {
     }
 
     public WebCtlPlugin(String host, int port) {
-        mRemoteHost = host;
-        mRemotePort = port;
-        mHttpClientName = "";
-        mConnectionTimeout = DEFAULT_REQUEST_TIMEOUT;
+        super("WebCtl", host, port);
     }
 	
 	@Override
@@ -141,67 +85,6 @@ public class WebCtlPlugin implements IPlugin {
 		return "AIMP Web Control Plugin";
 	}
 
-    @Override
-    public String getRemoteHost() {
-        return mRemoteHost;
-    }
-
-    @Override
-    public void setRemoteHost(String host) {
-        if (host == null) {
-            throw new IllegalArgumentException("Host has null value");
-        }
-        mRemoteHost = host;
-    }
-
-    @Override
-    public int getRemotePort() {
-        return mRemotePort;
-    }
-
-    @Override
-    public void setRemotePort(int port) {
-        if (port < 1) {
-            throw new IllegalArgumentException("Port value is below 0. Given value is " + port);
-        }
-        mRemotePort = port;
-    }
-
-    @Override
-    public void setConnectionTimeout(int timeout) {
-        if (timeout < 1) {
-            throw new IllegalArgumentException("Connection timeout must be positive number. Given value is " + timeout);
-        }
-        mConnectionTimeout = timeout;
-    }
-
-    @Override
-    public int getConnectionTimeout() {
-        return mConnectionTimeout;
-    }
-
-    @Override
-    public int getTrafficIn() {
-        return 0;
-    }
-
-    @Override
-    public int getTrafficOut() {
-        return 0;
-    }
-
-    @Override
-    public String getHttpClientName() {
-        return mHttpClientName;
-    }
-
-    @Override
-    public void setHttpClientName(String name) {
-        if (name == null) {
-            throw new IllegalArgumentException("HttpClientName is null");
-        }
-        mHttpClientName = name;
-    }
 
     // ================================================================================
     // ================================================================================
@@ -222,7 +105,7 @@ public class WebCtlPlugin implements IPlugin {
 
     @Override
     public boolean play() throws ApiException, IOException, InterruptedException {
-        sendRequest("/?action=player_play");
+        sendCommand("/?action=player_play");
         return true;
     }
 
@@ -241,7 +124,7 @@ public class WebCtlPlugin implements IPlugin {
             throw new IllegalArgumentException("Invalid song's play position value: " + playPosition);
         }
 
-        sendRequest(
+        sendCommand(
                 "/?action=set_song_play" +
                         "&playlist=" + playlistId +
                         "&song=" + songPosition
@@ -253,31 +136,31 @@ public class WebCtlPlugin implements IPlugin {
 
     @Override
     public boolean stop() throws ApiException, IOException, InterruptedException {
-        sendRequest("/?action=player_stop");
+        sendCommand("/?action=player_stop");
         return true;
     }
 
     @Override
     public boolean pause() throws ApiException, IOException, InterruptedException {
-        sendRequest("/?action=player_pause");
+        sendCommand("/?action=player_pause");
         return true;
     }
 
     @Override
     public boolean next() throws ApiException, IOException, InterruptedException {
-        sendRequest("/?action=player_next");
+        sendCommand("/?action=player_next");
         return true;
     }
 
     @Override
     public boolean previous() throws ApiException, IOException, InterruptedException {
-        sendRequest("/?action=player_prevous");
+        sendCommand("/?action=player_prevous");
         return true;
     }
 
     @Override
     public int getPlayState() throws ApiException, IOException, InterruptedException {
-        return getCustomStatus(Statuses.PLAY).equals("1")
+        return getCustomStatus(Statuses.PLAY) == 1
                 ? PLAY_STATE_PLAYING
                 : PLAY_STATE_STOPPED
         ;
@@ -285,16 +168,7 @@ public class WebCtlPlugin implements IPlugin {
 
     @Override
     public int getSongPlayPosition() throws ApiException, IOException, InterruptedException {
-        String r = getCustomStatus(Statuses.POSITION);
-        try {
-            int position = Integer.parseInt(r);
-            if (position < 0) {
-                throw new NumberFormatException();
-            }
-            return position;
-        } catch(NumberFormatException ex) {
-            throw new ApiRequestException("Song play position expected to be a not negative integer. Response is: " + r);
-        }
+        return getCustomStatus(Statuses.POSITION);
     }
 
     @Override
@@ -312,12 +186,7 @@ public class WebCtlPlugin implements IPlugin {
 
     @Override
     public boolean isRepeatSong() throws ApiException, IOException, InterruptedException {
-        String r = getCustomStatus(Statuses.REPEAT_SONG);
-        if (!r.equals("1") && !r.equals("0")) {
-            throw new ApiRequestException("Repeat value is not 0 or 1. Response: " + r);
-        } else {
-            return r.equals("1");
-        }
+        return getCustomStatus(Statuses.REPEAT_SONG) == 1;
     }
 
     @Override
@@ -330,16 +199,7 @@ public class WebCtlPlugin implements IPlugin {
 
     @Override
     public int getVolume() throws ApiException, IOException, InterruptedException {
-        String r = getCustomStatus(Statuses.VOLUME);
-        try {
-            int volume = Integer.parseInt(r);
-            if (volume < 0 || volume > 100) {
-                throw new NumberFormatException();
-            }
-            return volume;
-        } catch(NumberFormatException ex) {
-            throw new ApiRequestException("Volume value must be a positive integer in range [0, 100]. Response: " + r);
-        }
+        return getCustomStatus(Statuses.VOLUME);
     }
 
     @Override
@@ -349,12 +209,7 @@ public class WebCtlPlugin implements IPlugin {
 
     @Override
     public boolean isMute() throws ApiException, IOException, InterruptedException {
-        String r = getCustomStatus(Statuses.MUTE);
-        if (!r.equals("1") && !r.equals("0")) {
-            throw new ApiRequestException("Mute value is not 0 or 1. Response: " + r);
-        } else {
-            return r.equals("1");
-        }
+        return getCustomStatus(Statuses.MUTE) == 1;
     }
 
     @Override
@@ -364,66 +219,70 @@ public class WebCtlPlugin implements IPlugin {
 
     @Override
     public boolean isShuffle() throws ApiException, IOException, InterruptedException {
-        String r = getCustomStatus(Statuses.SHUFFLE);
-        if (!r.equals("1") && !r.equals("0")) {
-            throw new ApiRequestException("Shuffle value is not 0 or 1. Response: " + r);
-        } else {
-            return r.equals("1");
-        }
+        return getCustomStatus(Statuses.SHUFFLE) == 1;
     }
 
     @Override
-    public CurrentSongInfo getCurrentSongInfo() throws ApiException, IOException, InterruptedException {
-        String response = asString(sendRequest("/?action=get_song_current"));
-
-        try {
-            JSONObject json = new JSONObject(response);
+    public StatusSnapshot getCustomStatuses(int... statuses) throws ApiException, IOException, InterruptedException {
+        if (statuses == null) {
+            throw new IllegalArgumentException("Statuses is null");
+        }
 
-            if (!json.getString("status").equals("OK")) {
-                throw new ApiRequestException("Unable to retrieve info about current playing song");
-            }
+        if (statuses.length > 1 && getTransport().isPipelining()) {
+            return new StatusSnapshot(statuses, readCustomStatusesPipelined(statuses));
+        }
 
-            CurrentSongInfo si = new CurrentSongInfo();
-            si.setPlaylistId(json.getInt("PlayingList"));
-            si.setSongPosition(json.getInt("PlayingFile"));
-            if (si.getSongPosition() < 0) {
-                si.setInfo(null);
-            } else {
-                si.setInfo(new Song(json.getString("PlayingFileName"), json.getInt("length")));
-            }
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(statuses.length);
+        for (final int status: statuses) {
+            tasks.add(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    return getCustomStatus(status);
+                }
+            });
+        }
+        List<Integer> responses = invokeAll(tasks);
 
-            return si;
-        } catch (JSONException e) {
-            throw new ApiRequestException("Unable to retrieve info about current playing song. Error parsing response: " + response);
+        int[] values = new int[statuses.length];
+        for (int i = 0; i < statuses.length; i++) {
+            values[i] = responses.get(i);
         }
+        return new StatusSnapshot(statuses, values);
+    }
+
+    @Override
+    public CurrentSongInfo getCurrentSongInfo() throws ApiException, IOException, InterruptedException {
+        return readShared("/?action=get_song_current", new Decoding<CurrentSongInfo>() {
+            @Override
+            public CurrentSongInfo decode(WebCtlDecoder decoder) throws ApiException, IOException, InterruptedException {
+                return decoder.decodeCurrentSong();
+            }
+        });
     }
 
 
 	@Override
 	public List<Playlist> getPlaylists() throws ApiException, IOException, InterruptedException {
-		ArrayList<Playlist> result = new ArrayList<Playlist>(0);
-
-		String response = asString(sendRequest("/?action=get_playlist_list"));
-
-		JSONArray json;
-		try {
-			json = new JSONArray(response);
-			result.ensureCapacity(json.length());
-
-			for (int i = 0; i < json.length(); ++i) {
-				JSONObject entry = json.getJSONObject(i);
-
-				Playlist pl = new Playlist();
-				pl.setId(entry.getInt("id"));
-				pl.setName(entry.getString("name"));
-				pl.setSizeInBytes(entry.getLong("size"));
-				pl.setDuration(entry.getInt("duration"));
-        		pl.setHash( getPlaylistHash(pl.getId()) );
-
-				result.add(pl);
+		List<Playlist> result = read("/?action=get_playlist_list", new Decoding<List<Playlist>>() {
+			@Override
+			public List<Playlist> decode(WebCtlDecoder decoder) throws ApiException, IOException, InterruptedException {
+				return decoder.decodePlaylists();
 			}
-		} catch (JSONException e) {
-			throw new ApiRequestException("Error parsing response: " + response);
+		});
+
+		// hashes are requested one per playlist, so load them in parallel
+		List<Callable<String>> tasks = new ArrayList<Callable<String>>(result.size());
+		for (final Playlist pl: result) {
+			tasks.add(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					return getPlaylistHash(pl.getId());
+				}
+			});
+		}
+		List<String> hashes = invokeAll(tasks);
+		for (int i = 0; i < result.size(); ++i) {
+			result.get(i).setHash(hashes.get(i));
 		}
 
 		return result;
@@ -432,40 +291,49 @@ public class WebCtlPlugin implements IPlugin {
 
     @Override
     public String getPlaylistHash(int playlistId) throws ApiException, IOException, InterruptedException {
-        return asString(sendRequest("/?action=get_playlist_crc&id=" + playlistId));
+        return readShared("/?action=get_playlist_crc&id=" + playlistId, new Decoding<String>() {
+            @Override
+            public String decode(WebCtlDecoder decoder) throws ApiException, IOException, InterruptedException {
+                return decoder.decodeText();
+            }
+        });
     }
 
 	@Override
 	public List<Song> getPlaylistSongs(int playlistId) throws ApiException, IOException, InterruptedException {
-		ArrayList<Song> result = new ArrayList<Song>(0);
-
-        //TODO Jackson crashes when meets \ in song's name
-        String response = asString(sendRequest("/?action=get_playlist_songs&id=" + playlistId));
+		final ArrayList<Song> result = new ArrayList<Song>(0);
 
-		JSONObject json;
-		try {
-			json = new JSONObject(response);
-
-			if (!json.getString("status").equals("OK")) {
-				throw new ApiRequestException("Retrieve playlist's songs operation failed. Playlist with ID " + playlistId + " not found");
+		getPlaylistSongs(playlistId, SONGS_CHUNK_SIZE, new SongsChunkListener() {
+			@Override
+			public void onSongsChunkLoaded(int playlistId, List<Song> chunk, int loadedCount) {
+				result.addAll(chunk);
 			}
+		});
 
-			JSONArray songs = (JSONArray)json.get("songs");
-			result.ensureCapacity(songs.length());
-			for (int i = 0; i < songs.length(); ++i) {
-				JSONObject entry = (JSONObject)songs.get(i);
-				result.add(new Song(entry.getString("name"), entry.getInt("length")/1000));
-			}
-		} catch (JSONException e) {
-			throw new ApiRequestException("Error parsing response: " + response);
+		return result;
+	}
+
+	@Override
+	public void getPlaylistSongs(final int playlistId, final int chunkSize, final SongsChunkListener listener) throws ApiException, IOException, InterruptedException {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be positive number. Given value is " + chunkSize);
+		}
+		if (listener == null) {
+			throw new IllegalArgumentException("Listener is null");
 		}
 
-		return result;
+		receive("/?action=get_playlist_songs&id=" + playlistId, new Decoding<Void>() {
+			@Override
+			public Void decode(WebCtlDecoder decoder) throws ApiException, IOException, InterruptedException {
+				decoder.decodePlaylistSongs(playlistId, chunkSize, listener);
+				return null;
+			}
+		});
 	}
 
 	@Override
 	public void removeSong(int playlistId, int songPosition) throws ApiException, IOException, InterruptedException {
-		sendRequest(
+		sendCommand(
 				"/?action=playlist_del_file" +
 				"&playlist=" + playlistId +
 				"&file=" + songPosition
@@ -473,38 +341,105 @@ public class WebCtlPlugin implements IPlugin {
 	}
 
 
-    protected HttpEntity sendRequest(String request) throws IOException {
-        final String uri = String.format(
-                "http://%s:%d%s",
-                mRemoteHost, mRemotePort, request
-        );
-
-        HttpParams httpParameters = new BasicHttpParams();
-        HttpConnectionParams.setConnectionTimeout(httpParameters, mConnectionTimeout);
-        HttpConnectionParams.setSoTimeout(httpParameters, mConnectionTimeout);
-
-        DefaultHttpClient httpClient = new DefaultHttpClient(httpParameters);
-        HttpGet httpGet = new HttpGet(uri);
-        httpGet.setHeader("User-Agent", mHttpClientName);
-
-        return httpClient.execute(httpGet).getEntity();
-    }
-
-    protected String asString(HttpEntity entity) throws IOException {
-        return EntityUtils.toString(entity, HTTP.UTF_8);
+    /**
+     * Send request and decode its response with the decoder of the current thread.
+     * If decoding fails or is interrupted, the rest of the response is not downloaded.
+     */
+    protected <T> T receive(final String request, final Decoding<T> decoding) throws ApiException, IOException, InterruptedException {
+        return perform(getActionName(request), getExchange(request, decoding));
+    }
+
+    /**
+     * Send read-only request and decode its response. Failed requests are retried according to the retry policy,
+     * slow requests are hedged if enabled. Decoding must not have side effects, as the response can be decoded twice.
+     */
+    protected <T> T read(String request, Decoding<T> decoding) throws ApiException, IOException, InterruptedException {
+        return performRead(getActionName(request), getExchange(request, decoding));
+    }
+
+    /**
+     * Same as {@link #read(String, Decoding)}, but concurrent calls with the same request share one response.
+     * Result must be immutable, as it's returned to all the callers.
+     */
+    protected <T> T readShared(String request, Decoding<T> decoding) throws ApiException, IOException, InterruptedException {
+        return performReadShared(getActionName(request), request, getExchange(request, decoding));
+    }
+
+    /**
+     * Send request which response is not needed.
+     * Response is consumed, so the connection is returned to the pool.
+     */
+    protected void sendCommand(final String request) throws ApiException, IOException, InterruptedException {
+        final String action = getActionName(request);
+        performCommand(action, new Exchange<Void>() {
+            @Override
+            public Void perform(AbortHandle abort) throws IOException {
+                get(action, request, abort).release();
+                return null;
+            }
+        });
+    }
+
+    private <T> Exchange<T> getExchange(final String request, final Decoding<T> decoding) {
+        final String action = getActionName(request);
+        return new Exchange<T>() {
+            @Override
+            public T perform(AbortHandle abort) throws ApiException, IOException, InterruptedException {
+                WebCtlDecoder decoder = mDecoders.get();
+                if (decoder.isAttached()) {
+                    // nested request from a listener of the current response
+                    decoder = new WebCtlDecoder();
+                }
+                HttpTransport.Response response = null;
+                boolean isCompleted = false;
+                try {
+                    response = get(action, request, abort);
+                    decoder.reset(response.getContent());
+
+                    T result = decoding.decode(decoder);
+                    isCompleted = true;
+                    onResponseSize(action, request, decoder.getBytesRead());
+                    return result;
+                } finally {
+                    decoder.detach();
+                    if (response != null) {
+                        if (isCompleted && !abort.isAborted()) {
+                            response.release();
+                        } else {
+                            response.abort();
+                        }
+                    }
+                }
+            }
+        };
     }
 
-    protected InputStream asStream(HttpEntity entity) throws IOException {
-        return entity.getContent();
+    /**
+     * Extract value of the action parameter, e.g. get_custom_status for "/?action=get_custom_status&status=4"
+     */
+    protected static String getActionName(String request) {
+        int start = request.indexOf("action=");
+        if (start == -1) {
+            return null;
+        }
+        start += "action=".length();
+        int end = request.indexOf('&', start);
+        return end == -1
+                ? request.substring(start)
+                : request.substring(start, end);
     }
 
 
     protected void setCustomStatus(String status, String value) throws ApiException, IOException, InterruptedException {
-        sendRequest(String.format(
+        sendCommand(getSetCustomStatusRequest(status, value));
+    }
+
+    protected String getSetCustomStatusRequest(String status, String value) {
+        return String.format(
                 "/?action=set_custom_status&status=%s&value=%s",
                 status,
                 value
-        ));
+        );
     }
 
     protected void setCustomStatus(int status, boolean value) throws ApiException, IOException, InterruptedException {
@@ -515,15 +450,96 @@ public class WebCtlPlugin implements IPlugin {
         setCustomStatus(String.valueOf(status), String.valueOf(value));
     }
 
-    protected String getCustomStatus(String status) throws ApiException, IOException, InterruptedException {
-        return asString(sendRequest(String.format(
-                "/?action=get_custom_status&status=%s",
-                status
-        )));
+    /**
+     * Read integer value of custom status and check it's in the range of known statuses
+     */
+    protected int getCustomStatus(final int status) throws ApiException, IOException, InterruptedException {
+        int value = readShared(getCustomStatusRequest(status), new Decoding<Integer>() {
+            @Override
+            public Integer decode(WebCtlDecoder decoder) throws ApiException, IOException, InterruptedException {
+                return decoder.decodeCustomStatus(status);
+            }
+        });
+        return checkCustomStatus(status, value);
+    }
+
+    protected String getCustomStatusRequest(int status) {
+        return "/?action=get_custom_status&status=" + status;
+    }
+
+    /**
+     * Check the value is in the range of known statuses
+     */
+    protected int checkCustomStatus(int status, int value) throws ApiRequestException {
+        switch (status) {
+            case Statuses.MUTE:
+            case Statuses.REPEAT_SONG:
+            case Statuses.SHUFFLE:
+                if (value != 0 && value != 1) {
+                    throw new ApiRequestException("Status " + status + " value is not 0 or 1. Response: " + value);
+                }
+                break;
+            case Statuses.VOLUME:
+                if (value < 0 || value > 100) {
+                    throw new ApiRequestException("Volume value must be a positive integer in range [0, 100]. Response: " + value);
+                }
+                break;
+            case Statuses.POSITION:
+                if (value < 0) {
+                    throw new ApiRequestException("Song play position expected to be a not negative integer. Response is: " + value);
+                }
+                break;
+        }
+        return value;
+    }
+
+
+    /**
+     * Read statuses with requests pipelined over one connection, so the whole batch costs one round trip
+     * without occupying several connections. Is retried as any other read, the whole batch is recorded as one request.
+     */
+    protected int[] readCustomStatusesPipelined(final int[] statuses) throws ApiException, IOException, InterruptedException {
+        final List<String> requests = new ArrayList<String>(statuses.length);
+        for (int status: statuses) {
+            requests.add(getCustomStatusRequest(status));
+        }
+        final String action = getActionName(requests.get(0));
+
+        return performRead(action, new Exchange<int[]>() {
+            @Override
+            public int[] perform(AbortHandle abort) throws ApiException, IOException, InterruptedException {
+                WebCtlDecoder decoder = mDecoders.get();
+                if (decoder.isAttached()) {
+                    decoder = new WebCtlDecoder();
+                }
+                List<HttpTransport.Response> responses = null;
+                int released = 0;
+                try {
+                    responses = getPipelined(action, requests, abort);
+
+                    int[] values = new int[statuses.length];
+                    for (int i = 0; i < statuses.length; i++) {
+                        HttpTransport.Response response = responses.get(i);
+                        decoder.reset(response.getContent());
+                        values[i] = checkCustomStatus(statuses[i], decoder.decodeCustomStatus(statuses[i]));
+                        decoder.detach();
+                        response.release();
+                        released++;
+                    }
+                    return values;
+                } finally {
+                    decoder.detach();
+                    if (responses != null && released < responses.size()) {
+                        // drops the connection with the rest of responses
+                        responses.get(released).abort();
+                    }
+                }
+            }
+        });
     }
 
-    protected String getCustomStatus(int status) throws ApiException, IOException, InterruptedException {
-        return getCustomStatus(String.valueOf(status));
+    protected interface Decoding<T> {
+        T decode(WebCtlDecoder decoder) throws ApiException, IOException, InterruptedException;
     }
 
-}
\ No newline at end of file
+}
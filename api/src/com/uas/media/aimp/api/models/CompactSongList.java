@@ -0,0 +1,382 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.models;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Songs of a playlist stored by columns: durations and ids of names in {@link SongNames} in int arrays.
+ * {@link #get(int)} creates a Song from the columns, so the list keeps no objects per song. The dictionary
+ * of names may be shared by playlists, so a song which is in several playlists has its name stored once.
+ *
+ * A song takes 12 bytes of columns plus its name in the dictionary, which is front coded UTF-8, so names with
+ * the same folder take only the bytes of the file's name. A Song in an ArrayList takes a reference, the Song,
+ * the String and the array of its chars, which is about 60 bytes plus 2 bytes per char.
+ * Footprint of the benchmarks module compares heap taken by generated libraries.
+ *
+ * Positions of songs are indexed by their name ids and durations, so {@link #indexOf(Object)} takes
+ * constant time. The index is an open addressing table of the last position of each distinct song,
+ * and positions of its duplicates are chained in order by a column into a ring, so the last position leads
+ * to the first one. The table takes 6 to 11 bytes per song. Appending a song takes constant time however many
+ * copies of it the list has, and removing only shifts the positions after the removed one,
+ * as the columns are shifted anyway.
+ *
+ * The list keeps a fingerprint of its songs in order, see {@link #getFingerprint()}.
+ *
+ * The list is not thread-safe and can be changed only through the package-private methods.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+class CompactSongList extends AbstractList<Song> implements RandomAccess {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int INITIAL_INDEX_CAPACITY = 32;
+
+    private final SongNames mNames;
+    private int mSize;
+    private int[] mDurations;
+    private int[] mNameIds;
+    // open addressing table of the last position + 1 of each distinct song, 0 is a free slot
+    private int[] mIndex;
+    private int mIndexedSongs;
+    // next position of the same song, the first one for the last one
+    private int[] mNextPositions;
+    private long mFingerprint = Fingerprints.EMPTY;
+    // a song was removed, so the fingerprint is computed again when it's needed
+    private boolean mIsFingerprintStale;
+
+
+    CompactSongList(SongNames names) {
+        mNames = names;
+        mDurations = new int[INITIAL_CAPACITY];
+        mNameIds = new int[INITIAL_CAPACITY];
+        mNextPositions = new int[INITIAL_CAPACITY];
+        mIndex = new int[INITIAL_INDEX_CAPACITY];
+    }
+
+    SongNames getNames() {
+        return mNames;
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * New Song with the name and duration of the song at the position
+     */
+    @Override
+    public Song get(int position) {
+        checkPosition(position);
+        return new Song(mNames.get(mNameIds[position]), mDurations[position]);
+    }
+
+    String getName(int position) {
+        checkPosition(position);
+        return mNames.get(mNameIds[position]);
+    }
+
+    int getDuration(int position) {
+        checkPosition(position);
+        return mDurations[position];
+    }
+
+    /**
+     * Search by the index, without creating songs
+     */
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof Song)) {
+            return -1;
+        }
+        Song song = (Song) o;
+        int nameId = mNames.find(song.getName());
+        if (nameId < 0) {
+            return -1;
+        }
+        int last = mIndex[findIndexSlot(nameId, song.getDuration())] - 1;
+        return last < 0 ? -1 : mNextPositions[last];
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * 64-bit hash of names and durations of the songs in order. It doesn't depend on the dictionary,
+     * so lists with the same songs have the same fingerprint. Appends update it, but a hash of a sequence
+     * can't drop a value from the middle, so after removals it's computed again by the first call,
+     * and a series of removals costs one pass.
+     */
+    long getFingerprint() {
+        if (mIsFingerprintStale) {
+            long fingerprint = Fingerprints.EMPTY;
+            for (int i = 0; i < mSize; i++) {
+                fingerprint = Fingerprints.add(fingerprint, fingerprint(i));
+            }
+            mFingerprint = fingerprint;
+            mIsFingerprintStale = false;
+        }
+        return mFingerprint;
+    }
+
+    void appendAll(List<Song> songs) {
+        int size = songs.size();
+        for (int i = 0; i < size; i++) {
+            Song song = songs.get(i);
+            if (song == null || song.getName() == null) {
+                throw new IllegalArgumentException("Song or its name is null");
+            }
+        }
+        ensureCapacity(mSize + size);
+        for (int i = 0; i < size; i++) {
+            Song song = songs.get(i);
+            mNameIds[mSize] = mNames.add(song.getName());
+            mDurations[mSize] = song.getDuration();
+            indexAppended(mSize);
+            if (!mIsFingerprintStale) {
+                mFingerprint = Fingerprints.add(mFingerprint, fingerprint(mSize));
+            }
+            mSize++;
+        }
+        modCount++;
+    }
+
+    /**
+     * Replace the songs by the songs of another list. Columns are copied if the lists share the dictionary,
+     * otherwise names are added to the dictionary of this list.
+     */
+    void copyFrom(CompactSongList another) {
+        if (another == this) {
+            return;
+        }
+        int size = another.mSize;
+        int capacity = Math.max(INITIAL_CAPACITY, size);
+        if (another.mNames == mNames) {
+            mNameIds = Arrays.copyOf(another.mNameIds, capacity);
+        } else {
+            int[] nameIds = new int[capacity];
+            for (int i = 0; i < size; i++) {
+                nameIds[i] = mNames.add(another.mNames.get(another.mNameIds[i]));
+            }
+            mNameIds = nameIds;
+        }
+        mDurations = Arrays.copyOf(another.mDurations, capacity);
+        mSize = size;
+        mFingerprint = another.mFingerprint;
+        mIsFingerprintStale = another.mIsFingerprintStale;
+        if (another.mNames == mNames) {
+            mIndex = another.mIndex.clone();
+            mIndexedSongs = another.mIndexedSongs;
+            mNextPositions = Arrays.copyOf(another.mNextPositions, capacity);
+        } else {
+            mNextPositions = new int[capacity];
+            buildIndex();
+        }
+        modCount++;
+    }
+
+    void removeAt(int position) {
+        checkPosition(position);
+        unindex(position);
+        System.arraycopy(mDurations, position + 1, mDurations, position, mSize - position - 1);
+        System.arraycopy(mNameIds, position + 1, mNameIds, position, mSize - position - 1);
+        System.arraycopy(mNextPositions, position + 1, mNextPositions, position, mSize - position - 1);
+        mSize--;
+
+        // songs after the removed one are moved by one position
+        for (int i = 0; i < mIndex.length; i++) {
+            if (mIndex[i] > position + 1) {
+                mIndex[i]--;
+            }
+        }
+        for (int i = 0; i < mSize; i++) {
+            if (mNextPositions[i] > position) {
+                mNextPositions[i]--;
+            }
+        }
+        mIsFingerprintStale = true;
+        modCount++;
+    }
+
+    /**
+     * Remove all songs and free the memory of the columns
+     */
+    void reset(int capacity) {
+        mSize = 0;
+        mDurations = new int[Math.max(INITIAL_CAPACITY, capacity)];
+        mNameIds = new int[mDurations.length];
+        mNextPositions = new int[mDurations.length];
+        mIndex = new int[INITIAL_INDEX_CAPACITY];
+        mIndexedSongs = 0;
+        mFingerprint = Fingerprints.EMPTY;
+        mIsFingerprintStale = false;
+        modCount++;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > mDurations.length) {
+            int capacity = Math.max(size, mDurations.length + (mDurations.length >> 1));
+            mDurations = Arrays.copyOf(mDurations, capacity);
+            mNameIds = Arrays.copyOf(mNameIds, capacity);
+            mNextPositions = Arrays.copyOf(mNextPositions, capacity);
+        }
+    }
+
+    private long fingerprint(int position) {
+        return Fingerprints.ofSong(mNames.getFingerprint(mNameIds[position]), mDurations[position]);
+    }
+
+    /**
+     * @return Slot of the song with the name id and duration or the free slot where it must be put
+     */
+    private int findIndexSlot(int nameId, int duration) {
+        int mask = mIndex.length - 1;
+        int slot = hash(nameId, duration) & mask;
+        while (true) {
+            int entry = mIndex[slot];
+            if (entry == 0 || (mNameIds[entry - 1] == nameId && mDurations[entry - 1] == duration)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Add the song at the last position to the index
+     */
+    private void indexAppended(int position) {
+        link(position);
+        if (mIndexedSongs * 4 > mIndex.length * 3) {
+            rehash(mIndex.length * 2);
+        }
+    }
+
+    /**
+     * Put the position after the last one of the same song, the index must have a free slot
+     */
+    private void link(int position) {
+        int slot = findIndexSlot(mNameIds[position], mDurations[position]);
+        if (mIndex[slot] == 0) {
+            mNextPositions[position] = position;
+            mIndexedSongs++;
+        } else {
+            int last = mIndex[slot] - 1;
+            mNextPositions[position] = mNextPositions[last];
+            mNextPositions[last] = position;
+        }
+        mIndex[slot] = position + 1;
+    }
+
+    /**
+     * Remove the song from the index, positions are not changed
+     */
+    private void unindex(int position) {
+        int slot = findIndexSlot(mNameIds[position], mDurations[position]);
+        int next = mNextPositions[position];
+        if (next != position) {
+            int previous = next;
+            while (mNextPositions[previous] != position) {
+                previous = mNextPositions[previous];
+            }
+            mNextPositions[previous] = next;
+            if (mIndex[slot] == position + 1) {
+                mIndex[slot] = previous + 1;
+            }
+        } else {
+            // shift the following entries back, so searches don't stop at the free slot
+            int mask = mIndex.length - 1;
+            int free = slot;
+            int i = slot;
+            while (true) {
+                i = (i + 1) & mask;
+                int entry = mIndex[i];
+                if (entry == 0) {
+                    break;
+                }
+                int home = hash(mNameIds[entry - 1], mDurations[entry - 1]) & mask;
+                // the entry may be moved to the free slot if its home slot is not between them
+                boolean between = free <= i ? (free < home && home <= i) : (free < home || home <= i);
+                if (!between) {
+                    mIndex[free] = entry;
+                    free = i;
+                }
+            }
+            mIndex[free] = 0;
+            mIndexedSongs--;
+        }
+    }
+
+    private void buildIndex() {
+        int capacity = INITIAL_INDEX_CAPACITY;
+        while (mSize * 4 > capacity * 3) {
+            capacity *= 2;
+        }
+        mIndex = new int[capacity];
+        mIndexedSongs = 0;
+        for (int i = 0; i < mSize; i++) {
+            link(i);
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] index = new int[capacity];
+        int mask = capacity - 1;
+        for (int entry: mIndex) {
+            if (entry != 0) {
+                int slot = hash(mNameIds[entry - 1], mDurations[entry - 1]) & mask;
+                while (index[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                index[slot] = entry;
+            }
+        }
+        mIndex = index;
+    }
+
+    private static int hash(int nameId, int duration) {
+        int h = nameId * 0x9E3779B9 + duration;
+        return h ^ (h >>> 16);
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position >= mSize) {
+            throw new IndexOutOfBoundsException("Position " + position + " is out of songs count " + mSize);
+        }
+    }
+
+}
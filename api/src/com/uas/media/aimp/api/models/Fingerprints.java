@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.models;
+
+/**
+ * 64-bit hashes of playlists' content. Values are built by {@link #add(long, long)} in order,
+ * each value is mixed, so a change of any bit changes about half of the bits of the result.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+final class Fingerprints {
+
+    static final long EMPTY = 0xCBF29CE484222325L;
+
+    private static final long PRIME = 0x100000001B3L;
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    private Fingerprints() {
+    }
+
+    /**
+     * Hash of the bytes of a name, the same for the same bytes in any dictionary
+     */
+    static long ofBytes(byte[] bytes, int start, int end) {
+        long h = EMPTY;
+        for (int i = start; i < end; i++) {
+            h = (h ^ (bytes[i] & 0xFF)) * PRIME;
+        }
+        return mix(h);
+    }
+
+    static long ofString(String s) {
+        if (s == null) {
+            return 0;
+        }
+        long h = EMPTY;
+        for (int i = 0, length = s.length(); i < length; i++) {
+            h = (h ^ s.charAt(i)) * PRIME;
+        }
+        return mix(h);
+    }
+
+    static long ofSong(long nameFingerprint, int duration) {
+        return mix(nameFingerprint + duration * GOLDEN);
+    }
+
+    /**
+     * Fingerprint of a sequence with one more value at its end
+     */
+    static long add(long fingerprint, long value) {
+        return fingerprint * GOLDEN + mix(value);
+    }
+
+    /**
+     * Finalizer of MurmurHash3
+     */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
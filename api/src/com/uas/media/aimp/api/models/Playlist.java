@@ -31,11 +31,12 @@
 
 package com.uas.media.aimp.api.models;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
+ * Playlist of AIMP. Each change of the playlist increments its version, and its fingerprint is a 64-bit hash
+ * of all its fields and songs, so playlists loaded at different times can be compared by the fingerprints.
+ *
  * User: uas.sorokin@gmail.com
  */
 public class Playlist {
@@ -46,25 +47,30 @@ public class Playlist {
 	private String mName;
 	private String mHash;
 
-	private final ArrayList<Song> mSongs;
+	private CompactSongList mSongs;
 
-    private boolean mIsDataChanged;
-    private int mHashCode;
+    private long mVersion;
+    private long mFingerprint;
+    private long mFingerprintVersion;
 
 
 	public Playlist() {
-		mSongs = new ArrayList<Song>(256);
-        mIsDataChanged = true;
-        mHashCode = 0;
+		this(new CompactSongList(new SongNames()));
 	}
 
+    private Playlist(CompactSongList songs) {
+        mSongs = songs;
+        mVersion = 0;
+        mFingerprintVersion = -1;
+    }
+
 	public int getId() {
 		return mId;
 	}
 
 	public void setId(int id) {
 		mId = id;
-        mIsDataChanged = true;
+        mVersion++;
 	}
 
 
@@ -77,7 +83,7 @@ public class Playlist {
             throw new IllegalArgumentException("Name is null");
         }
 		mName = name;
-        mIsDataChanged = true;
+        mVersion++;
 	}
 
 
@@ -90,7 +96,7 @@ public class Playlist {
             throw new IllegalArgumentException("Size of playlist must be positive number");
         }
 		mSize = size;
-        mIsDataChanged = true;
+        mVersion++;
 	}
 
 
@@ -103,7 +109,7 @@ public class Playlist {
             throw new IllegalArgumentException("Playlist's duration must be positive number");
         }
 		mDuration = duration;
-        mIsDataChanged = true;
+        mVersion++;
 	}
 
     public int getHoursDuration() {
@@ -128,27 +134,82 @@ public class Playlist {
             throw new IllegalArgumentException("Hash is null");
         }
 		mHash = hash;
-        mIsDataChanged = true;
+        mVersion++;
+	}
+
+	/**
+	 * Dictionary where names of songs are stored. Each playlist has its own one, unless it's changed.
+	 */
+	public SongNames getSongNames() {
+		return mSongs.getNames();
+	}
+
+	/**
+	 * Store names of songs in the dictionary, e.g. in the one shared by all playlists of the player,
+	 * so a song which is in several playlists has its name stored once. Songs which are in the playlist
+	 * already are moved to the dictionary, lists returned by {@link #getSongs()} before don't see later changes.
+	 */
+	public void setSongNames(SongNames names) {
+        if (names == null) {
+            throw new IllegalArgumentException("Names is null");
+        }
+        if (names != mSongs.getNames()) {
+            CompactSongList songs = new CompactSongList(names);
+            songs.copyFrom(mSongs);
+            mSongs = songs;
+            mVersion++;
+        }
 	}
 
 	public void setSongs(List<Song> songs) {
         if (songs == null) {
             throw new IllegalArgumentException("Songs list is null");
         }
-        mSongs.clear();
-        mSongs.ensureCapacity(songs.size());
-        mSongs.addAll(songs);
-        mIsDataChanged = true;
+        if (songs instanceof CompactSongList) {
+            // songs of another playlist, e.g. when it's not changed since the last load
+            mSongs.copyFrom((CompactSongList) songs);
+        } else {
+            mSongs.reset(songs.size());
+            mSongs.appendAll(songs);
+        }
+        mVersion++;
+	}
+
+	/**
+	 * Append songs to the end of playlist, e.g. when songs are loaded by chunks
+	 */
+	public void addSongs(List<Song> songs) {
+        if (songs == null) {
+            throw new IllegalArgumentException("Songs list is null");
+        }
+        mSongs.appendAll(songs);
+        mVersion++;
 	}
 
+	/**
+	 * Read-only list of songs, which reflects changes of the playlist. Each call of get() creates a new Song,
+	 * so {@link #getSongName(int)} and {@link #getSongDuration(int)} are cheaper when only a field is needed.
+	 */
 	public List<Song> getSongs() {
-		return Collections.unmodifiableList(mSongs);
+		return mSongs;
 	}
 
 	public Song getSong(int position) {
         return mSongs.get(position);
 	}
 
+    public int getSongsCount() {
+        return mSongs.size();
+    }
+
+    public String getSongName(int position) {
+        return mSongs.getName(position);
+    }
+
+    public int getSongDuration(int position) {
+        return mSongs.getDuration(position);
+    }
+
 
 	public int findSongPosition(Song song) {
 		return mSongs.indexOf(song);
@@ -159,18 +220,67 @@ public class Playlist {
 	}
 
     public void removeSong(int position) {
-        mSongs.remove(position);
+        mSongs.removeAt(position);
+        mVersion++;
     }
 
+    /**
+     * Playlist with the same fields and songs, which shares the dictionary of names with this one,
+     * e.g. to change a playlist which is read by other threads. Songs are copied by their columns.
+     * The copy has the same version and fingerprint, so it's not seen as changed until it's really changed.
+     */
+    public Playlist copy() {
+        CompactSongList songs = new CompactSongList(mSongs.getNames());
+        songs.copyFrom(mSongs);
+
+        Playlist copy = new Playlist(songs);
+        copy.mId = mId;
+        copy.mDuration = mDuration;
+        copy.mSize = mSize;
+        copy.mName = mName;
+        copy.mHash = mHash;
+        synchronized (this) {
+            copy.mVersion = mVersion;
+            copy.mFingerprint = mFingerprint;
+            copy.mFingerprintVersion = mFingerprintVersion;
+        }
+        return copy;
+    }
+
+    /**
+     * @return Count of changes of the playlist since it was created
+     */
+    public long getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * 64-bit hash of id, name, duration, size, hash and songs of the playlist. It's computed again
+     * only if the playlist is changed. Songs keep their part of it up to date by appends,
+     * and compute it again only here after removals, so removing a song doesn't hash the whole list.
+     */
+    public synchronized long getFingerprint() {
+        if (mFingerprintVersion != mVersion) {
+            long fingerprint = Fingerprints.EMPTY;
+            fingerprint = Fingerprints.add(fingerprint, mId);
+            fingerprint = Fingerprints.add(fingerprint, Fingerprints.ofString(mName));
+            fingerprint = Fingerprints.add(fingerprint, mDuration);
+            fingerprint = Fingerprints.add(fingerprint, mSize);
+            fingerprint = Fingerprints.add(fingerprint, Fingerprints.ofString(mHash));
+            fingerprint = Fingerprints.add(fingerprint, mSongs.size());
+            fingerprint = Fingerprints.add(fingerprint, mSongs.getFingerprint());
+            mFingerprint = fingerprint;
+            mFingerprintVersion = mVersion;
+        }
+        return mFingerprint;
+    }
+
+    /**
+     * Consistent with equals(), which compares hashes of playlists
+     */
     @Override
     public int hashCode() {
-        if (mIsDataChanged) {
-            synchronized (this) {
-                mHashCode = mId ^ mDuration ^ (int)mSize ^ mName.hashCode() ^ mHash.hashCode();
-                mIsDataChanged = false;
-            }
-        }
-        return mHashCode;
+        return mHash == null ? 0 : mHash.hashCode();
     }
 
     @Override
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.models;
+
+import java.util.Arrays;
+
+/**
+ * Dictionary of song names, which are stored once however many songs have them. Each name gets an id
+ * in order of adding, ids are never reused, so names are not removed.
+ *
+ * Names are stored as UTF-8 with front coding: names are grouped by 16 in order of adding, the first name
+ * of a group is stored whole, and others as the count of bytes they share with the previous name plus the rest.
+ * Songs of a playlist usually come folder by folder, so the path of a folder is stored once per group.
+ * To get a name, up to 16 names of its group are decoded, which takes about a microsecond.
+ *
+ * Besides its front coded bytes, a name takes 16 to 24 bytes of its fingerprint and the hash index. The dictionary is thread-safe.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class SongNames {
+
+    private static final int GROUP_SHIFT = 4;
+    private static final int GROUP_SIZE = 1 << GROUP_SHIFT;
+
+    private int mSize;
+    private byte[] mData = new byte[256];
+    private int mDataSize;
+    // offset of each group of names in mData
+    private int[] mGroupOffsets = new int[16];
+    // 64-bit hash of each name, names are compared only if they are equal
+    private long[] mFingerprints = new long[GROUP_SIZE];
+    // open addressing table of id + 1, 0 is a free slot
+    private int[] mTable = new int[32];
+
+    // the last added name, the next one is coded against it
+    private byte[] mLast = new byte[64];
+    private int mLastLength;
+    // buffer of get()
+    private byte[] mDecoded = new byte[64];
+
+
+    /**
+     * @return Count of names
+     */
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Add the name if there is no such one yet
+     * @return Id of the name
+     */
+    public synchronized int add(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("Name is null");
+        }
+        byte[] bytes = Utf8.encode(name);
+        long fingerprint = Fingerprints.ofBytes(bytes, 0, bytes.length);
+        int slot = findSlot(bytes, fingerprint);
+        if (mTable[slot] != 0) {
+            return mTable[slot] - 1;
+        }
+
+        int id = mSize;
+        append(bytes);
+        if (id == mFingerprints.length) {
+            mFingerprints = Arrays.copyOf(mFingerprints, id + (id >> 1));
+        }
+        mFingerprints[id] = fingerprint;
+        mTable[slot] = id + 1;
+        mSize++;
+        if (mSize * 2 > mTable.length) {
+            rehash(mTable.length * 2);
+        }
+        return id;
+    }
+
+    /**
+     * @return Id of the name, -1 if there is no such name
+     */
+    public synchronized int find(String name) {
+        if (name == null) {
+            return -1;
+        }
+        byte[] bytes = Utf8.encode(name);
+        return mTable[findSlot(bytes, Fingerprints.ofBytes(bytes, 0, bytes.length))] - 1;
+    }
+
+    public synchronized String get(int id) {
+        if (id < 0 || id >= mSize) {
+            throw new IndexOutOfBoundsException("Id " + id + " is out of names count " + mSize);
+        }
+        // decode() may grow the buffer, so it's taken after the call
+        int length = decode(id);
+        return Utf8.decode(mDecoded, 0, length);
+    }
+
+    /**
+     * 64-bit hash of the name, it depends only on the name, so it's the same in any dictionary
+     */
+    synchronized long getFingerprint(int id) {
+        if (id < 0 || id >= mSize) {
+            throw new IndexOutOfBoundsException("Id " + id + " is out of names count " + mSize);
+        }
+        return mFingerprints[id];
+    }
+
+    /**
+     * Bytes taken by the arrays of the dictionary, without headers of the arrays
+     */
+    public synchronized long getMemorySize() {
+        return mData.length + 4L * (mGroupOffsets.length + mTable.length) + 8L * mFingerprints.length + mLast.length + mDecoded.length;
+    }
+
+    private void append(byte[] name) {
+        int prefix = 0;
+        if ((mSize & (GROUP_SIZE - 1)) == 0) {
+            int group = mSize >> GROUP_SHIFT;
+            if (group == mGroupOffsets.length) {
+                mGroupOffsets = Arrays.copyOf(mGroupOffsets, group * 2);
+            }
+            mGroupOffsets[group] = mDataSize;
+        } else {
+            int max = Math.min(mLastLength, name.length);
+            while (prefix < max && mLast[prefix] == name[prefix]) {
+                prefix++;
+            }
+        }
+
+        int suffix = name.length - prefix;
+        ensureData(mDataSize + 10 + suffix);
+        mDataSize = writeVarInt(prefix, mData, mDataSize);
+        mDataSize = writeVarInt(suffix, mData, mDataSize);
+        System.arraycopy(name, prefix, mData, mDataSize, suffix);
+        mDataSize += suffix;
+
+        if (name.length > mLast.length) {
+            mLast = new byte[Math.max(name.length, mLast.length * 2)];
+        }
+        System.arraycopy(name, 0, mLast, 0, name.length);
+        mLastLength = name.length;
+    }
+
+    /**
+     * Decode the name into mDecoded
+     * @return Length of the name in bytes
+     */
+    private int decode(int id) {
+        int offset = mGroupOffsets[id >> GROUP_SHIFT];
+        int length = 0;
+        for (int i = id & ~(GROUP_SIZE - 1); i <= id; i++) {
+            int prefix = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = mData[offset++];
+                prefix |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            int suffix = 0;
+            shift = 0;
+            do {
+                b = mData[offset++];
+                suffix |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+
+            length = prefix + suffix;
+            if (length > mDecoded.length) {
+                mDecoded = Arrays.copyOf(mDecoded, Math.max(length, mDecoded.length * 2));
+            }
+            System.arraycopy(mData, offset, mDecoded, prefix, suffix);
+            offset += suffix;
+        }
+        return length;
+    }
+
+    /**
+     * @return Slot of the name or the free slot where it must be put
+     */
+    private int findSlot(byte[] name, long fingerprint) {
+        int mask = mTable.length - 1;
+        int slot = (int) fingerprint & mask;
+        while (true) {
+            int entry = mTable[slot];
+            if (entry == 0) {
+                return slot;
+            }
+            int id = entry - 1;
+            if (mFingerprints[id] == fingerprint && isDecoded(name, decode(id))) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private boolean isDecoded(byte[] name, int length) {
+        if (name.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (mDecoded[i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        int[] table = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < mSize; id++) {
+            int slot = (int) mFingerprints[id] & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+        mTable = table;
+    }
+
+    private void ensureData(int size) {
+        if (size > mData.length) {
+            mData = Arrays.copyOf(mData, Math.max(size, mData.length + (mData.length >> 1)));
+        }
+    }
+
+    private static int writeVarInt(int value, byte[] dst, int offset) {
+        while (value >= 0x80) {
+            dst[offset++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        dst[offset++] = (byte) value;
+        return offset;
+    }
+
+}
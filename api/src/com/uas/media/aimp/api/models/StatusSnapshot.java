@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.models;
+
+/**
+ * Values of several custom statuses read at once.
+ * Statuses are identified by their numeric codes, values are kept as primitives.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class StatusSnapshot {
+
+    private final int[] mStatuses;
+    private final int[] mValues;
+
+
+    public StatusSnapshot(int[] statuses, int[] values) {
+        if (statuses == null || values == null) {
+            throw new IllegalArgumentException("Statuses or values is null");
+        }
+        if (statuses.length != values.length) {
+            throw new IllegalArgumentException("Count of statuses and values must be equal");
+        }
+        mStatuses = statuses.clone();
+        mValues = values.clone();
+    }
+
+    public int size() {
+        return mStatuses.length;
+    }
+
+    public int getStatus(int index) {
+        return mStatuses[index];
+    }
+
+    public int getValue(int index) {
+        return mValues[index];
+    }
+
+    public boolean contains(int status) {
+        return indexOf(status) != -1;
+    }
+
+    public int getInt(int status) {
+        int index = indexOf(status);
+        if (index == -1) {
+            throw new IllegalArgumentException("Status " + status + " is not in the snapshot");
+        }
+        return mValues[index];
+    }
+
+    public boolean getBoolean(int status) {
+        return getInt(status) == 1;
+    }
+
+    private int indexOf(int status) {
+        for (int i = 0; i < mStatuses.length; i++) {
+            if (mStatuses[i] == status) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
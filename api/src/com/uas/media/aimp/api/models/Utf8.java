@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.models;
+
+/**
+ * UTF-8 encoding of song names. String.getBytes(Charset) is not available before API 9,
+ * and the one by the charset's name throws a checked exception.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+final class Utf8 {
+
+    private Utf8() {
+    }
+
+    static byte[] encode(String s) {
+        byte[] result = new byte[getEncodedLength(s)];
+        encode(s, result, 0);
+        return result;
+    }
+
+    static int getEncodedLength(String s) {
+        int length = s.length();
+        int bytes = 0;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return Offset after the encoded string
+     */
+    static int encode(String s, byte[] dst, int offset) {
+        int out = offset;
+        for (int i = 0, length = s.length(); i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                dst[out++] = (byte) c;
+            } else if (c < 0x800) {
+                dst[out++] = (byte) (0xC0 | (c >> 6));
+                dst[out++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                dst[out++] = (byte) (0xF0 | (cp >> 18));
+                dst[out++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                dst[out++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                dst[out++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                // a lone surrogate is kept as is, so the name is decoded back the same
+                dst[out++] = (byte) (0xE0 | (c >> 12));
+                dst[out++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                dst[out++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Decode bytes which were encoded by {@link #encode(String)}
+     */
+    static String decode(byte[] bytes, int start, int end) {
+        char[] chars = new char[end - start];
+        int length = 0;
+        int i = start;
+        while (i < end) {
+            int b = bytes[i];
+            if (b >= 0) {
+                chars[length++] = (char) b;
+                i++;
+            } else if ((b & 0xE0) == 0xC0) {
+                chars[length++] = (char) (((b & 0x1F) << 6) | (bytes[i + 1] & 0x3F));
+                i += 2;
+            } else if ((b & 0xF0) == 0xE0) {
+                chars[length++] = (char) (((b & 0x0F) << 12) | ((bytes[i + 1] & 0x3F) << 6) | (bytes[i + 2] & 0x3F));
+                i += 3;
+            } else {
+                int cp = ((b & 0x07) << 18) | ((bytes[i + 1] & 0x3F) << 12) | ((bytes[i + 2] & 0x3F) << 6) | (bytes[i + 3] & 0x3F);
+                cp -= 0x10000;
+                chars[length++] = (char) (0xD800 + (cp >> 10));
+                chars[length++] = (char) (0xDC00 + (cp & 0x3FF));
+                i += 4;
+            }
+        }
+        return new String(chars, 0, length);
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+import com.uas.media.aimp.api.ApiException;
+import com.uas.media.aimp.api.SongsChunkListener;
+import com.uas.media.aimp.api.Statuses;
+import com.uas.media.aimp.api.models.CurrentSongInfo;
+import com.uas.media.aimp.api.models.Playlist;
+import com.uas.media.aimp.api.models.Song;
+import com.uas.media.aimp.benchmark.Payloads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of WebCtl responses behind getPlaylists, getPlaylistSongs, getCurrentSongInfo and custom statuses.
+ * Responses are read from memory, so only the parsing and building of models is measured.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WebCtlDecoderBenchmark {
+
+    // the same as WebCtlPlugin uses
+    private static final int SONGS_CHUNK_SIZE = 1024;
+
+    private static final int PLAYLISTS_COUNT = 50;
+
+    @Param({"1000", "10000", "100000"})
+    public int songsCount;
+
+    private byte[] mPlaylists;
+    private byte[] mSongs;
+    private byte[] mCurrentSong;
+    private byte[] mCustomStatus;
+    private WebCtlDecoder mDecoder;
+
+
+    @Setup
+    public void setUp() throws IOException {
+        mPlaylists = Payloads.playlists(PLAYLISTS_COUNT);
+        mSongs = Payloads.playlistSongs(songsCount);
+        mCurrentSong = Payloads.currentSong();
+        mCustomStatus = Payloads.customStatus();
+        mDecoder = new WebCtlDecoder();
+    }
+
+    @Benchmark
+    public List<Playlist> decodePlaylists() throws IOException, ApiException {
+        mDecoder.reset(new ByteArrayInputStream(mPlaylists));
+        return mDecoder.decodePlaylists();
+    }
+
+    @Benchmark
+    public void decodePlaylistSongs(final Blackhole blackhole) throws IOException, ApiException, InterruptedException {
+        mDecoder.reset(new ByteArrayInputStream(mSongs));
+        mDecoder.decodePlaylistSongs(1, SONGS_CHUNK_SIZE, new SongsChunkListener() {
+            @Override
+            public void onSongsChunkLoaded(int playlistId, List<Song> chunk, int loadedCount) {
+                blackhole.consume(chunk);
+            }
+        });
+    }
+
+    @Benchmark
+    public CurrentSongInfo decodeCurrentSong() throws IOException, ApiException {
+        mDecoder.reset(new ByteArrayInputStream(mCurrentSong));
+        return mDecoder.decodeCurrentSong();
+    }
+
+    @Benchmark
+    public int decodeCustomStatus() throws IOException, ApiException {
+        mDecoder.reset(new ByteArrayInputStream(mCustomStatus));
+        return mDecoder.decodeCustomStatus(Statuses.VOLUME);
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+import com.uas.media.aimp.api.models.CurrentSongInfo;
+import com.uas.media.aimp.api.models.Playlist;
+import com.uas.media.aimp.api.models.Song;
+import com.uas.media.aimp.benchmark.Payloads;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of the same responses as {@link WebCtlDecoderBenchmark} the way WebCtlPlugin did it before
+ * {@link WebCtlDecoder}: the whole response is read to a string by EntityUtils and parsed by org.json.
+ * Results of both benchmarks are compared to see what the streaming decoder gives.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WebCtlJsonBaselineBenchmark {
+
+    private static final int PLAYLISTS_COUNT = 50;
+
+    @Param({"1000", "10000", "100000"})
+    public int songsCount;
+
+    private byte[] mPlaylists;
+    private byte[] mSongs;
+    private byte[] mCurrentSong;
+    private byte[] mCustomStatus;
+
+
+    @Setup
+    public void setUp() throws IOException {
+        mPlaylists = Payloads.playlists(PLAYLISTS_COUNT);
+        mSongs = Payloads.playlistSongs(songsCount);
+        mCurrentSong = Payloads.currentSong();
+        mCustomStatus = Payloads.customStatus();
+    }
+
+    @Benchmark
+    public List<Playlist> decodePlaylists() throws IOException, JSONException {
+        JSONArray json = new JSONArray(asString(mPlaylists));
+        List<Playlist> result = new ArrayList<Playlist>(json.length());
+        for (int i = 0; i < json.length(); ++i) {
+            JSONObject entry = json.getJSONObject(i);
+
+            Playlist pl = new Playlist();
+            pl.setId(entry.getInt("id"));
+            pl.setName(entry.getString("name"));
+            pl.setSizeInBytes(entry.getLong("size"));
+            pl.setDuration(entry.getInt("duration"));
+            result.add(pl);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<Song> decodePlaylistSongs() throws IOException, JSONException {
+        JSONObject json = new JSONObject(asString(mSongs));
+        if (!json.getString("status").equals("OK")) {
+            throw new IllegalStateException("Status is not OK");
+        }
+
+        JSONArray songs = (JSONArray)json.get("songs");
+        List<Song> result = new ArrayList<Song>(songs.length());
+        for (int i = 0; i < songs.length(); ++i) {
+            JSONObject entry = (JSONObject)songs.get(i);
+            result.add(new Song(entry.getString("name"), entry.getInt("length")/1000));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public CurrentSongInfo decodeCurrentSong() throws IOException, JSONException {
+        JSONObject json = new JSONObject(asString(mCurrentSong));
+        if (!json.getString("status").equals("OK")) {
+            throw new IllegalStateException("Status is not OK");
+        }
+
+        CurrentSongInfo si = new CurrentSongInfo();
+        si.setPlaylistId(json.getInt("PlayingList"));
+        si.setSongPosition(json.getInt("PlayingFile"));
+        if (si.getSongPosition() < 0) {
+            si.setInfo(null);
+        } else {
+            si.setInfo(new Song(json.getString("PlayingFileName"), json.getInt("length")));
+        }
+        return si;
+    }
+
+    @Benchmark
+    public int decodeCustomStatus() throws IOException {
+        return Integer.parseInt(asString(mCustomStatus));
+    }
+
+
+    private static String asString(byte[] response) throws IOException {
+        return EntityUtils.toString(new ByteArrayEntity(response), HTTP.UTF_8);
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.models;
+
+import com.uas.media.aimp.benchmark.Payloads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction, hashCode and equals of songs and playlists
+ *
+ * User: uas.sorokin@gmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ModelsBenchmark {
+
+    private String mName;
+    private int mDuration;
+    private Song mSong;
+    private Song mEqualSong;
+    private Song mOtherSong;
+    private Playlist mPlaylist;
+    private Playlist mEqualPlaylist;
+
+
+    @Setup
+    public void setUp() {
+        List<Song> songs = Payloads.songs(2);
+        mName = songs.get(0).getName();
+        mDuration = songs.get(0).getDuration();
+        mSong = songs.get(0);
+        // equal song must not share the name's instance, otherwise equals() is trivial
+        mEqualSong = new Song(new String(mName), mDuration);
+        mOtherSong = songs.get(1);
+        mPlaylist = createPlaylist();
+        mEqualPlaylist = createPlaylist();
+    }
+
+    @Benchmark
+    public Song createSong() {
+        return new Song(mName, mDuration);
+    }
+
+    @Benchmark
+    public Playlist createPlaylist() {
+        Playlist playlist = new Playlist();
+        playlist.setId(1);
+        playlist.setName(mName);
+        playlist.setDuration(mDuration);
+        playlist.setSizeInBytes(mDuration * 16000L);
+        playlist.setHash("3735928559");
+        return playlist;
+    }
+
+    @Benchmark
+    public int songHashCode() {
+        return mSong.hashCode();
+    }
+
+    @Benchmark
+    public boolean songEqualsSame() {
+        return mSong.equals(mEqualSong);
+    }
+
+    @Benchmark
+    public boolean songEqualsOther() {
+        return mSong.equals(mOtherSong);
+    }
+
+    @Benchmark
+    public int playlistHashCode() {
+        return mPlaylist.hashCode();
+    }
+
+    @Benchmark
+    public boolean playlistEquals() {
+        return mPlaylist.equals(mEqualPlaylist);
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.models;
+
+import com.uas.media.aimp.benchmark.Payloads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filling of a playlist with songs, reading of songs as the list of songs does,
+ * and search of song's position, which is done to highlight the current song
+ *
+ * User: uas.sorokin@gmail.com
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PlaylistSongsBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int songsCount;
+
+    private List<Song> mSongs;
+    private Playlist mPlaylist;
+    private Song mFirstSong;
+    private Song mMiddleSong;
+    private Song mLastSong;
+    private Song mMissingSong;
+
+
+    @Setup
+    public void setUp() {
+        mSongs = Payloads.songs(songsCount);
+        mPlaylist = Payloads.playlist(1, songsCount);
+        // searched songs are copies, as they are when the current song is decoded from another response
+        mFirstSong = copy(mSongs.get(0));
+        mMiddleSong = copy(mSongs.get(songsCount / 2));
+        mLastSong = copy(mSongs.get(songsCount - 1));
+        mMissingSong = new Song(mLastSong.getName() + " (missing)", mLastSong.getDuration());
+    }
+
+    @Benchmark
+    public Playlist setSongs() {
+        Playlist playlist = new Playlist();
+        playlist.setSongs(mSongs);
+        return playlist;
+    }
+
+    @Benchmark
+    public Song getSong() {
+        return mPlaylist.getSong(songsCount / 2);
+    }
+
+    @Benchmark
+    public String getSongName() {
+        return mPlaylist.getSongName(songsCount / 2);
+    }
+
+    @Benchmark
+    public int findFirstSong() {
+        return mPlaylist.findSongPosition(mFirstSong);
+    }
+
+    @Benchmark
+    public int findMiddleSong() {
+        return mPlaylist.findSongPosition(mMiddleSong);
+    }
+
+    @Benchmark
+    public int findLastSong() {
+        return mPlaylist.findSongPosition(mLastSong);
+    }
+
+    @Benchmark
+    public int findMissingSong() {
+        return mPlaylist.findSongPosition(mMissingSong);
+    }
+
+    private static Song copy(Song song) {
+        return new Song(new String(song.getName()), song.getDuration());
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.benchmark;
+
+import com.uas.media.aimp.api.models.Playlist;
+import com.uas.media.aimp.api.models.Song;
+import com.uas.media.aimp.api.models.SongNames;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Heap taken by the songs of playlists, measured by the used heap before and after the songs are created.
+ * JMH measures time only, so it's a plain program: run it with a fixed heap, e.g. -Xms512m -Xmx512m.
+ * Playlists are {@link Payloads#library(int)}, they are measured as lists of songs, as playlists with
+ * a dictionary of names for each and as playlists which share one dictionary, as {@code AimpPlayer} keeps them.
+ *
+ * Usage: Footprint [songs count in the library]
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class Footprint {
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        List<List<Song>> library = Payloads.library(count);
+        long songs = 0;
+        long chars = 0;
+        for (List<Song> source: library) {
+            for (Song song: source) {
+                chars += song.getName().length();
+            }
+            songs += source.size();
+        }
+        long before = usedHeap();
+        List<List<Song>> lists = new ArrayList<List<Song>>();
+        for (List<Song> source: library) {
+            lists.add(copy(source));
+        }
+        long listsSize = usedHeap() - before;
+        keep(lists);
+        lists = null;
+        keep(null);
+
+        before = usedHeap();
+        List<Playlist> playlists = new ArrayList<Playlist>();
+        for (List<Song> source: library) {
+            Playlist playlist = new Playlist();
+            playlist.setSongs(copy(source));
+            playlists.add(playlist);
+        }
+        long playlistsSize = usedHeap() - before;
+        keep(playlists);
+        playlists = null;
+        keep(null);
+
+        before = usedHeap();
+        playlists = new ArrayList<Playlist>();
+        SongNames names = new SongNames();
+        for (List<Song> source: library) {
+            Playlist playlist = new Playlist();
+            playlist.setSongNames(names);
+            playlist.setSongs(copy(source));
+            playlists.add(playlist);
+        }
+        long sharedSize = usedHeap() - before;
+        keep(playlists);
+
+        // the library is used after the measurements, so it's not collected while they are made
+        System.out.println(library.size() + " playlists, " + songs + " songs, " + count + " different, "
+                + (chars / songs) + " chars in a name on average");
+        print("ArrayList<Song>", listsSize, songs);
+        print("Playlist", playlistsSize, songs);
+        print("Shared names", sharedSize, songs);
+        System.out.println("Dictionary: " + names.size() + " names, " + names.getMemorySize() + " bytes");
+    }
+
+    /**
+     * Songs which don't share names with the source, as songs of a decoded response
+     */
+    private static List<Song> copy(List<Song> songs) {
+        List<Song> result = new ArrayList<Song>(songs.size());
+        for (Song song: songs) {
+            result.add(new Song(new String(song.getName().toCharArray()), song.getDuration()));
+        }
+        return result;
+    }
+
+    private static void print(String layout, long bytes, long count) {
+        System.out.println(String.format("%-16s %10d bytes, %6.1f bytes per song", layout, bytes, (double) bytes / count));
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // used heap settles after a few collections
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    private static volatile Object sKept;
+
+    /**
+     * Keep the object reachable until it's measured
+     */
+    private static void keep(Object o) {
+        sKept = o;
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.benchmark;
+
+import com.uas.media.aimp.api.models.Playlist;
+import com.uas.media.aimp.api.models.Song;
+import com.uas.media.aimp.emulator.EmulatedPlayer;
+import com.uas.media.aimp.emulator.EmulatedPlaylist;
+import com.uas.media.aimp.emulator.NetworkConditions;
+import com.uas.media.aimp.emulator.PlaylistGenerator;
+import com.uas.media.aimp.emulator.WebCtlEmulator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Data for benchmarks. Responses are rendered by {@link WebCtlEmulator}, so they are the same as WebCtl sends:
+ * file paths with raw backslashes, Cyrillic, CJK and emoji. All data is generated with the fixed seed,
+ * so each run of the benchmarks measures the same bytes.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public final class Payloads {
+
+    public static final long SEED = 20130401L;
+
+    private static final String[] LIBRARY_WORDS = {
+            "Кино", "Ария", "Beatles", "Daft", "Punk", "坂本", "Björk", "Сплин", "Мумий", "Тролль", "Sigur", "Rós",
+            "Звезда", "Love", "Солнце", "Night", "Дорога", "夢", "Rain", "Песня", "Город", "Sky", "Blue", "Ночь",
+            "Ёлка", "Live", "Road", "Heart", "Море", "Fire", "Зима", "Moon", "Dance", "Ветер", "音楽", "Time"
+    };
+
+    private Payloads() {
+    }
+
+    /**
+     * Response of get_playlist_list
+     */
+    public static byte[] playlists(int count) throws IOException {
+        return createEmulator(count, 1).handle("/?action=get_playlist_list");
+    }
+
+    /**
+     * Response of get_playlist_songs for the playlist with given number of songs
+     */
+    public static byte[] playlistSongs(int count) throws IOException {
+        return createEmulator(1, count).handle("/?action=get_playlist_songs&id=1");
+    }
+
+    /**
+     * Response of get_song_current while a song is played
+     */
+    public static byte[] currentSong() throws IOException {
+        WebCtlEmulator emulator = createEmulator(1, 10);
+        emulator.getPlayer().playSong(1, 5);
+        return emulator.handle("/?action=get_song_current");
+    }
+
+    /**
+     * Response of get_custom_status for the volume
+     */
+    public static byte[] customStatus() throws IOException {
+        return createEmulator(1, 1).handle("/?action=get_custom_status&status=" + EmulatedPlayer.STATUS_VOLUME);
+    }
+
+    /**
+     * Songs of the same generated playlist as {@link #playlistSongs(int)}
+     */
+    public static List<Song> songs(int count) {
+        EmulatedPlaylist source = new PlaylistGenerator(SEED).generatePlaylist(1, count);
+        List<Song> songs = new ArrayList<Song>(count);
+        for (int i = 0; i < count; i++) {
+            songs.add(new Song(source.getSongName(i), source.getSongLength(i) / 1000));
+        }
+        return songs;
+    }
+
+    /**
+     * Playlist filled with {@link #songs(int)}
+     */
+    public static Playlist playlist(int id, int count) {
+        Playlist playlist = new Playlist();
+        playlist.setId(id);
+        playlist.setName("Playlist " + id);
+        playlist.setHash(String.valueOf(id));
+        playlist.setSongs(songs(count));
+        return playlist;
+    }
+
+    /**
+     * Playlists shaped like a real library: albums in folders of artists with numbered tracks,
+     * a playlist with the whole library in the order of folders, a playlist for each of a few genres
+     * with whole albums, and favorites with single tracks from everywhere. So most tracks are in 2 or 3 playlists.
+     * @param songs Count of songs in the library
+     */
+    public static List<List<Song>> library(int songs) {
+        Random random = new Random(SEED);
+        List<Song> all = new ArrayList<Song>(songs);
+        List<List<Song>> albums = new ArrayList<List<Song>>();
+        while (all.size() < songs) {
+            String artist = LIBRARY_WORDS[random.nextInt(LIBRARY_WORDS.length)] + " "
+                    + LIBRARY_WORDS[random.nextInt(LIBRARY_WORDS.length)];
+            int artistAlbums = 1 + random.nextInt(6);
+            for (int i = 0; i < artistAlbums && all.size() < songs; i++) {
+                String album = (1970 + random.nextInt(50)) + " - " + LIBRARY_WORDS[random.nextInt(LIBRARY_WORDS.length)];
+                String folder = "D:\\Music\\" + artist + "\\" + album + "\\";
+                int tracks = Math.min(8 + random.nextInt(10), songs - all.size());
+                List<Song> albumSongs = new ArrayList<Song>(tracks);
+                for (int track = 1; track <= tracks; track++) {
+                    String title = LIBRARY_WORDS[random.nextInt(LIBRARY_WORDS.length)];
+                    if (random.nextBoolean()) {
+                        title += " " + LIBRARY_WORDS[random.nextInt(LIBRARY_WORDS.length)];
+                    }
+                    String name = folder + (track < 10 ? "0" : "") + track + ". " + artist + " - " + title + ".mp3";
+                    albumSongs.add(new Song(name, 60 + random.nextInt(540)));
+                }
+                albums.add(albumSongs);
+                all.addAll(albumSongs);
+            }
+        }
+
+        List<List<Song>> playlists = new ArrayList<List<Song>>();
+        playlists.add(all);
+        for (int genre = 0; genre < 4; genre++) {
+            List<Song> genreSongs = new ArrayList<Song>();
+            for (List<Song> album: albums) {
+                if (random.nextInt(4) == genre) {
+                    genreSongs.addAll(album);
+                }
+            }
+            playlists.add(genreSongs);
+        }
+        List<Song> favorites = new ArrayList<Song>();
+        for (int i = 0; i < songs / 10; i++) {
+            favorites.add(all.get(random.nextInt(all.size())));
+        }
+        playlists.add(favorites);
+        return playlists;
+    }
+
+    private static WebCtlEmulator createEmulator(int playlists, int songs) {
+        List<EmulatedPlaylist> generated = playlists == 0
+                ? Collections.<EmulatedPlaylist>emptyList()
+                : new PlaylistGenerator(SEED).generate(playlists, songs);
+        return new WebCtlEmulator(new EmulatedPlayer(generated, SEED), new NetworkConditions(SEED));
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.headless;
+
+import com.uas.media.aimp.api.IPlugin;
+import com.uas.media.aimp.api.impl.AimpControlPlugin;
+import com.uas.media.aimp.api.impl.HttpPlugin;
+import com.uas.media.aimp.api.impl.WebCtlPlugin;
+import com.uas.media.aimp.api.models.Playlist;
+import com.uas.media.aimp.api.models.Song;
+import com.uas.media.aimp.player.AimpPlayer;
+import com.uas.media.aimp.player.ConnectionListenerViaExecutor;
+import com.uas.media.aimp.player.JvmPlayerPlatform;
+import com.uas.media.aimp.player.StateObserverViaExecutor;
+
+import java.util.List;
+
+/**
+ * Host of {@link AimpPlayer} for a plain JVM: connects to AIMP, keeps the state in sync
+ * and prints changes of the state and used traffic. Is used for profiling and soak tests.
+ *
+ * Usage: HeadlessPlayer host [port] [--aimp-control] [--socket]
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class HeadlessPlayer {
+
+    private static final long STATS_INTERVAL = 1000*60;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: HeadlessPlayer host [port] [--aimp-control] [--socket]");
+            System.exit(1);
+        }
+        String host = args[0];
+        int port = -1;
+        boolean isAimpControl = false;
+        boolean isSocket = false;
+        for (int i = 1; i < args.length; i++) {
+            if ("--aimp-control".equals(args[i])) {
+                isAimpControl = true;
+            } else if ("--socket".equals(args[i])) {
+                isSocket = true;
+            } else {
+                port = Integer.parseInt(args[i]);
+            }
+        }
+
+        HttpPlugin plugin = isAimpControl
+                ? new AimpControlPlugin(host)
+                : new WebCtlPlugin(host);
+        if (isSocket) {
+            plugin.setTransportType(HttpPlugin.TransportType.SOCKET);
+        }
+        if (port > 0) {
+            plugin.setRemotePort(port);
+        }
+
+        JvmPlayerPlatform platform = new JvmPlayerPlatform();
+        final AimpPlayer player = new AimpPlayer();
+        player.registerConnectionListener(new ConnectionListenerViaExecutor(platform.getMainThreadExecutor()) {
+            @Override
+            public void onConnectionStatusChanged(IPlugin plugin, AimpPlayer.ConnectionStatus status) {
+                print("Connection: " + status);
+                if (status == AimpPlayer.ConnectionStatus.DISCONNECTED) {
+                    System.exit(2);
+                }
+            }
+
+            @Override
+            public void onHostNotFound(IPlugin plugin) {
+                print("Host is not found");
+            }
+
+            @Override
+            public void onAimpNotFound(IPlugin plugin) {
+                print("AIMP is not found");
+            }
+
+            @Override
+            public void onUnresolvedError(IPlugin plugin, Exception ex) {
+                print("Error: " + ex);
+            }
+        });
+        player.registerStateObserver(new StateObserverViaExecutor(platform.getMainThreadExecutor()) {
+            @Override
+            public void onPlay(Song song) {
+                print("Play: " + song);
+            }
+
+            @Override
+            public void onPause(Song song) {
+                print("Pause: " + song);
+            }
+
+            @Override
+            public void onStop(Song song) {
+                print("Stop: " + song);
+            }
+
+            @Override
+            public void onPlaylistsInfoUpdated(List<Playlist> pls, Playlist playlist) {
+                int songs = 0;
+                for (Playlist pl: pls) {
+                    songs += pl.getSongs().size();
+                }
+                print("Playlists: " + pls.size() + ", songs: " + songs);
+            }
+
+            @Override
+            public void onSongChanged(Playlist playlist, Song song, int position, double percentage) {
+                print("Song: " + song);
+            }
+
+            @Override
+            public void onVolumeChanged(int volume) {
+                print("Volume: " + volume);
+            }
+        });
+
+        player.connect(platform, plugin, AimpPlayer.defaultSyncParams());
+
+        while (true) {
+            Thread.sleep(STATS_INTERVAL);
+            print("Traffic in: " + plugin.getTrafficIn() + " bytes, out: " + plugin.getTrafficOut() + " bytes");
+        }
+    }
+
+    private static void print(String message) {
+        System.out.println(String.format("%tT %s", System.currentTimeMillis(), message));
+    }
+
+}
@@ -31,38 +31,39 @@
 
 package com.uas.media.aimp.player;
 
-import android.content.ComponentName;
-import android.content.Context;
-import android.content.Intent;
-import android.content.ServiceConnection;
-import android.os.IBinder;
 import com.uas.media.aimp.api.ApiException;
 import com.uas.media.aimp.api.IPlugin;
+import com.uas.media.aimp.api.Logger;
 import com.uas.media.aimp.api.models.CurrentSongInfo;
 import com.uas.media.aimp.api.models.Playlist;
 import com.uas.media.aimp.api.models.Song;
-import com.uas.media.aimp.utils.Logger;
+import com.uas.media.aimp.api.models.SongNames;
 
 import java.io.IOException;
-import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 /**
+ * Player which keeps the state of AIMP and executes commands. Doesn't depend on Android,
+ * the platform it runs on is given by {@link PlayerPlatform}.
+ *
  * User: uas.sorokin@gmail.com
  */
 public class AimpPlayer {
 
+    private static final String TAG = "AimpControl";
+
     private static final int SONG_POSITION_UPDATER_DELAY = 0;
     private static final int SONG_POSITION_UPDATER_INTERVAL = 1000;
 
     private static final int ERRORS_COUNT_TO_CANCEL_CONNECT = 10;
     private static final int TIMEOUT_TO_RESET_ERRORS_COUNT = 1000*60;
 
+    private static final int MIN_SONG_NAMES_TO_RENEW = 1000;
+
 
     public enum ConnectionStatus {
         DISCONNECTED,
@@ -92,24 +93,27 @@ public class AimpPlayer {
     private List<ConnectionListener> mConnectionListeners;
     private List<StateObserver> mStateObservers;
 
-    private Context mContext;
+    private PlayerPlatform mPlatform;
+    private volatile PlayerClock mClock = new SystemPlayerClock();
     private IPlugin mPlugin;
     private SyncParams mSyncParams;
 
     private ConnectionStatus mConnStatus;
-    private ServiceConnection mServiceConnection;
-    private SyncService mSyncService;
+    private SyncEngine mSyncEngine;
 
     private Thread tFirstConnectionThread;
     private Thread tDisconnectThread;
     private ExecutorService mExecutorService;
     private int mErrorsCount;
     private long mErrorsLastRaiseTime;
+    private volatile long mLastDisconnectDuration = -1;
+    private volatile long mLastConnectDuration = -1;
+    private volatile long mLastResolveDuration = -1;
 
 
-    private volatile List<Playlist> mPlaylists;
-    private volatile int mCurrentPlaylistId;
-    private volatile int mCurrentSongPosition;
+    // state is changed under the lock of the player and read without it
+    private volatile PlaylistsSnapshot mPlaylists;
+    private volatile SongNames mSongNames;
     private volatile PlayState mPlayState;
     private volatile int mSongPlayPosition;
 
@@ -119,7 +123,7 @@ public class AimpPlayer {
     private volatile boolean mIsMute;
     private volatile int mVolumeBeforeMute;
 
-    private Timer tSongPositionUpdater;
+    private PlayerTimer tSongPositionUpdater;
 
 
     public AimpPlayer() {
@@ -151,6 +155,13 @@ public class AimpPlayer {
         return mPlugin;
     }
 
+    /**
+     * Platform of the current connection, null if the player is disconnected
+     */
+    public synchronized PlayerPlatform getPlatform() {
+        return mPlatform;
+    }
+
 
     // ======================================
     // ======= REGISTER LISTENERS & OBSERVERS
@@ -202,9 +213,9 @@ public class AimpPlayer {
     }
 
 
-    public synchronized void connect(Context context, IPlugin plugin, SyncParams syncParams) throws AimpException {
-        if (context == null)
-            throw new IllegalArgumentException("Context is null");
+    public synchronized void connect(PlayerPlatform platform, IPlugin plugin, SyncParams syncParams) throws AimpException {
+        if (platform == null)
+            throw new IllegalArgumentException("Platform is null");
         if (plugin == null)
             throw new IllegalArgumentException("Plugin is null");
         if (syncParams == null)
@@ -216,7 +227,8 @@ public class AimpPlayer {
             throw new AimpException("Already connected or connecting");
         }
 
-        mContext = context.getApplicationContext();
+        mPlatform = platform;
+        mClock = platform.getClock();
         mPlugin = plugin;
         mSyncParams = syncParams;
 
@@ -243,18 +255,48 @@ public class AimpPlayer {
         tFirstConnectionThread.start();
     }
 
+    /**
+     * Time the last disconnection took in milliseconds, -1 if there was no disconnection yet
+     */
+    public long getLastDisconnectDuration() {
+        return mLastDisconnectDuration;
+    }
+
+    /**
+     * Time the last connection took in milliseconds (up to the CONNECTED status), -1 if there was no connection yet
+     */
+    public long getLastConnectDuration() {
+        return mLastConnectDuration;
+    }
+
+    /**
+     * Time the host lookup of the last connection took in milliseconds, -1 if there was no connection yet
+     */
+    public long getLastResolveDuration() {
+        return mLastResolveDuration;
+    }
+
     public synchronized void disconnect() throws AimpException {
         if (tDisconnectThread != null) {
             throw new AimpException("Disconnecting or not connected");
         }
 
+        final long startTime = mClock.nanoTime();
+        final IPlugin plugin = mPlugin;
         tDisconnectThread = new Thread(new Runnable() {
             @Override
             public void run() {
                 try {
                     tFirstConnectionThread.interrupt();
+                    // interrupt doesn't unblock reading of a socket
+                    if (plugin != null) {
+                        plugin.abortRequests();
+                    }
                     tFirstConnectionThread.join();
                     destroyAndCleanConnection();
+
+                    mLastDisconnectDuration = (mClock.nanoTime() - startTime) / 1000000;
+                    Logger.d(TAG, "Disconnected in " + mLastDisconnectDuration + " ms");
                 } catch (InterruptedException e) {
                     // this thread will not be interrupted, so this message cannot be raised
                 }
@@ -279,6 +321,8 @@ public class AimpPlayer {
         // we update connection status earlier in connect()
         notifyConnectionStatusChanged();
 
+        long startTime = mClock.nanoTime();
+
         // trying to establish connection with remote host
         try {
             tryToResolveHost();
@@ -286,12 +330,15 @@ public class AimpPlayer {
             notifyHostNotFound();
             throw new InterruptedException();
         }
+        long resolvedTime = mClock.nanoTime();
+        mLastResolveDuration = (resolvedTime - startTime) / 1000000;
 
         // ping to check is AIMP installed
         if (!tryToPing()) {
             notifyAimpNotFound();
             throw new InterruptedException();
         }
+        long pingDuration = (mClock.nanoTime() - resolvedTime) / 1000000;
 
         if (Thread.currentThread().isInterrupted()) {
             throw new InterruptedException();
@@ -304,8 +351,8 @@ public class AimpPlayer {
         // AIMP is pinging, so let's init default values
         initWithDefaults();
 
-        // AIMP is initialized, now create the sync service
-        tryToCreateAndConnectToService();
+        // AIMP is initialized, now bind the sync engine
+        tryToBindSyncEngine();
 
         if (Thread.currentThread().isInterrupted()) {
             throw new InterruptedException();
@@ -315,11 +362,15 @@ public class AimpPlayer {
         mConnStatus = ConnectionStatus.CONNECTED;
         notifyConnectionStatusChanged();
 
+        mLastConnectDuration = (mClock.nanoTime() - startTime) / 1000000;
+        Logger.d(TAG, "Connected in " + mLastConnectDuration + " ms (host resolved in " + mLastResolveDuration
+                + " ms, ping " + pingDuration + " ms)");
+
         // init executor
         mExecutorService = Executors.newSingleThreadExecutor();
 
-        // all is OK, let's launch sync service
-        mSyncService.submitSync(this, mSyncParams, new SyncService.ErrorsCallback() {
+        // all is OK, let's launch sync
+        mSyncEngine.submitSync(this, mSyncParams, new SyncEngine.ErrorsCallback() {
             @Override
             public void onException(Exception ex) {
                 onExecutorException(Commands.SYNC, ex);
@@ -327,7 +378,7 @@ public class AimpPlayer {
         });
 
         // launch the song position updater
-        tSongPositionUpdater = new Timer();
+        tSongPositionUpdater = mClock.createTimer("SongPositionUpdater");
         tSongPositionUpdater.scheduleAtFixedRate(
                 new SongPlayPositionUpdater(),
                 SONG_POSITION_UPDATER_DELAY,
@@ -336,22 +387,16 @@ public class AimpPlayer {
     }
 
     protected void tryToResolveHost() throws UnknownHostException {
-        InetAddress.getByName(mPlugin.getRemoteHost());
+        // the plugin keeps the address, so the following requests don't look it up again
+        mPlugin.resolveRemoteHost();
     }
 
     protected boolean tryToPing() throws InterruptedException {
         return mPlugin.ping();
     }
 
-    protected void tryToCreateAndConnectToService() throws InterruptedException {
-        CountDownLatch cdl = new CountDownLatch(1);
-        mServiceConnection = new ServiceConnectionImpl(cdl);
-        mContext.bindService(
-                new Intent(mContext, SyncService.class),
-                mServiceConnection,
-                Context.BIND_AUTO_CREATE
-        );
-        cdl.await();
+    protected void tryToBindSyncEngine() throws InterruptedException {
+        mSyncEngine = mPlatform.bindSyncEngine();
     }
 
     protected void initWithDefaults() throws ApiException, IOException, InterruptedException {
@@ -377,16 +422,23 @@ public class AimpPlayer {
             mExecutorService.shutdownNow();
             mExecutorService = null;
         }
+        // commands and sync tasks in progress are not waited for
+        if (mPlugin != null) {
+            mPlugin.abortRequests();
+        }
+
+        // if sync is active - cancel()
+        if (mSyncEngine != null) {
+            mSyncEngine.cancelSync(this);
+            mPlatform.unbindSyncEngine(mSyncEngine);
+            mSyncEngine = null;
+        }
 
-        // if sync service is active - cancel()
-        if (mSyncService != null) {
-            mContext.unbindService(mServiceConnection);
-            mContext.stopService(new Intent(mContext, SyncService.class));
-            mSyncService = null;
-            mServiceConnection = null;
+        if (mPlugin != null) {
+            mPlugin.release();
         }
 
-        mContext = null;
+        mPlatform = null;
         mPlugin = null;
         mSyncParams = null;
 
@@ -433,20 +485,24 @@ public class AimpPlayer {
         }
     }
 
+    protected void notifyPlaylistChunkLoaded(int playlistId, List<Song> chunk, int loadedCount) {
+        for (StateObserver so: mStateObservers) {
+            so.notifyPlaylistChunkLoaded(playlistId, chunk, loadedCount);
+        }
+    }
+
 
     // ============================================================
     // ============= STATE INIT
     // ============================================================
 
     protected void stateInit() {
-        mPlaylists = new ArrayList<Playlist>();
         stateClear();
     }
 
     protected void stateClear() {
-        mPlaylists.clear();
-        mCurrentPlaylistId = -1;
-        mCurrentSongPosition = -1;
+        mPlaylists = PlaylistsSnapshot.EMPTY;
+        mSongNames = new SongNames();
         mPlayState = PlayState.STOPPED;
         mSongPlayPosition = 0;
 
@@ -458,7 +514,6 @@ public class AimpPlayer {
 
         if (tSongPositionUpdater != null) {
             tSongPositionUpdater.cancel();
-            tSongPositionUpdater.purge();
             tSongPositionUpdater = null;
         }
     }
@@ -468,78 +523,67 @@ public class AimpPlayer {
     // ============= GETTERS
     // ============================================================
 
-    public synchronized boolean isPlaying() {
+    public boolean isPlaying() {
         return mPlayState == PlayState.PLAYING;
     }
 
-    public synchronized boolean isPaused() {
+    public boolean isPaused() {
         return mPlayState == PlayState.PAUSED;
     }
 
-    public synchronized boolean isStopped() {
+    public boolean isStopped() {
         return mPlayState == PlayState.STOPPED;
     }
 
-    public synchronized PlayState getPlayState() {
+    public PlayState getPlayState() {
         return mPlayState;
     }
 
-    public synchronized int getVolume() {
+    public int getVolume() {
         return mVolume;
     }
 
-    public synchronized boolean isShuffle() {
+    public boolean isShuffle() {
         return mIsShuffle;
     }
 
-    public synchronized boolean isRepeatSong() {
+    public boolean isRepeatSong() {
         return mIsRepeatSong;
     }
 
-    public synchronized boolean isMute() {
+    public boolean isMute() {
         return mIsMute;
     }
 
-    public synchronized boolean hasPlaylists() {
-        return mPlaylists.size() != 0;
+    public boolean hasPlaylists() {
+        return mPlaylists.getPlaylists().size() != 0;
     }
 
-    public synchronized List<Playlist> getPlaylists() {
-        return Collections.unmodifiableList(mPlaylists);
+    /**
+     * @return Read-only list of playlists, which is not changed later. Playlists are not changed too,
+     * a changed playlist is replaced by a new one with the same id
+     */
+    public List<Playlist> getPlaylists() {
+        return mPlaylists.getPlaylists();
     }
 
-    public synchronized Playlist getPlaylistById(int id) {
-        for (Playlist pl: mPlaylists) {
-            if (pl.getId() == id) {
-                return pl;
-            }
-        }
-        return null;
+    public Playlist getPlaylistById(int id) {
+        return mPlaylists.getPlaylistById(id);
     }
 
-    public synchronized int getPlaylistPosition(int id) {
-        for (int i = 0; i < mPlaylists.size(); i++) {
-            if (mPlaylists.get(i).getId() == id) {
-                return i;
-            }
-        }
-        return -1;
+    public int getPlaylistPosition(int id) {
+        return mPlaylists.getPlaylistPosition(id);
     }
 
-    public synchronized Playlist getCurrentPlaylist() {
-        return getPlaylistById(mCurrentPlaylistId);
+    public Playlist getCurrentPlaylist() {
+        return mPlaylists.getCurrentPlaylist();
     }
 
-    public synchronized Song getCurrentSong() {
-        Playlist currentPlaylist = getCurrentPlaylist();
-        if (mCurrentSongPosition == -1 || currentPlaylist == null) {
-            return null;
-        } else {
-            return currentPlaylist.getSong(mCurrentSongPosition);
-        }
+    public Song getCurrentSong() {
+        return mPlaylists.getCurrentSong();
     }
 
-    public synchronized int getSongPlayPosition() {
+    public int getSongPlayPosition() {
         switch(mPlayState) {
             case PLAYING:
             case PAUSED:
@@ -551,25 +595,37 @@ public class AimpPlayer {
     }
 
 
+    /**
+     * Dictionary for names of songs of loaded playlists, it's shared by all playlists.
+     * Names are never removed from a dictionary, so a new one is started when most of the names
+     * are not used by the playlists any more, and the playlists move to it when they are loaded next time.
+     */
+    synchronized SongNames getSongNamesForLoad() {
+        int songs = 0;
+        for (Playlist pl: mPlaylists.getPlaylists()) {
+            songs += pl.getSongsCount();
+        }
+        if (mSongNames.size() > 2 * Math.max(songs, MIN_SONG_NAMES_TO_RENEW)) {
+            mSongNames = new SongNames();
+        }
+        return mSongNames;
+    }
+
+
     // =============================================
     // ============ SETTERS
     // =============================================
 
     protected synchronized void setStatePlaylists(List<Playlist> pls, int currentPlaylistId) {
-        int hashcodesOld = 0;
-        int hashcodesNew = 0;
-
-        for (Playlist pl: mPlaylists) {
-            hashcodesOld ^= pl.hashCode();
-        }
-        for (Playlist pl: pls) {
-            hashcodesNew ^= pl.hashCode();
+        // fingerprints cover songs too and are kept up to date by the playlists, so it's a comparison of longs
+        List<Playlist> plsOld = mPlaylists.getPlaylists();
+        boolean isChanged = plsOld.size() != pls.size();
+        for (int i = 0; !isChanged && i < pls.size(); i++) {
+            isChanged = plsOld.get(i).getFingerprint() != pls.get(i).getFingerprint();
         }
 
-        if (hashcodesOld != hashcodesNew) {
-            mPlaylists.clear();
-            mPlaylists.addAll(pls);
-            mCurrentPlaylistId = currentPlaylistId;
+        if (isChanged) {
+            mPlaylists = mPlaylists.withPlaylists(pls, currentPlaylistId);
 
             for (StateObserver so: mStateObservers) {
                 so.notifyPlaylistsInfoUpdated(getPlaylists(), getCurrentPlaylist());
@@ -578,9 +634,9 @@ public class AimpPlayer {
     }
 
     protected synchronized void setStateCurrentSong(int playlistId, int songPosition, int playPosition) {
-        boolean isSongChanged = (mCurrentPlaylistId != playlistId) || (mCurrentSongPosition != songPosition);
-        mCurrentPlaylistId = playlistId;
-        mCurrentSongPosition = songPosition;
+        boolean isSongChanged = (mPlaylists.getCurrentPlaylistId() != playlistId)
+                || (mPlaylists.getCurrentSongPosition() != songPosition);
+        mPlaylists = mPlaylists.withCurrentSong(playlistId, songPosition);
 
         if (songPosition < 0) {
             mSongPlayPosition = 0;
@@ -713,8 +769,16 @@ public class AimpPlayer {
     }
 
     protected synchronized void removeSongFromPlaylist(int playlistId, int songPosition) {
-        Playlist pl = getPlaylistById(playlistId);
+        // the playlist could disappear or be reloaded by sync while the command was sent
+        Playlist current = getPlaylistById(playlistId);
+        if (current == null || songPosition < 0 || songPosition >= current.getSongsCount()) {
+            return;
+        }
+
+        // playlists are read without the lock, so the song is removed from a copy
+        Playlist pl = current.copy();
         pl.removeSong(songPosition);
+        mPlaylists = mPlaylists.withPlaylist(pl);
 
         for (StateObserver so: mStateObservers) {
             so.notifyPlaylistUpdated(pl);
@@ -895,13 +959,13 @@ public class AimpPlayer {
 
 
     protected void onExecutorException(Commands command, Exception ex) {
-        Logger.e(ex.getMessage(), ex);
+        Logger.e(TAG, ex.getMessage(), ex);
 
         if (ex instanceof InterruptedException) {
             return;
         }
 
-        long errorLastRaiseTimeDiffToNow = System.currentTimeMillis() - mErrorsLastRaiseTime;
+        long errorLastRaiseTimeDiffToNow = mClock.currentTimeMillis() - mErrorsLastRaiseTime;
         if (errorLastRaiseTimeDiffToNow < getTimeoutToResetErrorsCount()) {
             mErrorsCount++;
 
@@ -909,20 +973,20 @@ public class AimpPlayer {
                 try {
                     disconnect();
                 } catch (AimpException e) {
-                    Logger.e(e.getMessage(), e);
+                    Logger.e(TAG, e.getMessage(), e);
                 }
             } else {
-                mErrorsLastRaiseTime = System.currentTimeMillis();
+                mErrorsLastRaiseTime = mClock.currentTimeMillis();
             }
 
         } else {
-            mErrorsLastRaiseTime = System.currentTimeMillis();
+            mErrorsLastRaiseTime = mClock.currentTimeMillis();
             mErrorsCount = 1;
         }
     }
 
 
-    class SongPlayPositionUpdater extends TimerTask {
+    class SongPlayPositionUpdater implements Runnable {
         @Override
         public void run() {
             synchronized (AimpPlayer.this) {
@@ -934,25 +998,6 @@ public class AimpPlayer {
         }
     }
 
-    class ServiceConnectionImpl implements ServiceConnection {
-        private CountDownLatch mLatch;
-
-        ServiceConnectionImpl(CountDownLatch latch) {
-            mLatch = latch;
-        }
-
-        @Override
-        public void onServiceConnected(ComponentName name, IBinder service) {
-            mSyncService = ((SyncService.LocalBinder)service).getService();
-            mLatch.countDown();
-        }
-
-        @Override
-        public void onServiceDisconnected(ComponentName name) {
-
-        }
-    }
-
     public static SyncParams defaultSyncParams() {
         return new SyncParams() {
             @Override
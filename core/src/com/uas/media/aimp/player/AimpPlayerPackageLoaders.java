@@ -32,12 +32,16 @@
 package com.uas.media.aimp.player;
 
 import com.uas.media.aimp.api.ApiException;
-import com.uas.media.aimp.api.IPlugin;
+import com.uas.media.aimp.api.SongsChunkListener;
+import com.uas.media.aimp.api.Statuses;
 import com.uas.media.aimp.api.models.CurrentSongInfo;
 import com.uas.media.aimp.api.models.Playlist;
 import com.uas.media.aimp.api.models.Song;
+import com.uas.media.aimp.api.models.SongNames;
+import com.uas.media.aimp.api.models.StatusSnapshot;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -48,6 +52,8 @@ class AimpPlayerPackageLoaders {
     public static final boolean CHECK_HASH_YES = true;
     public static final boolean CHECK_HASH_NO = false;
 
+    private static final int SONGS_CHUNK_SIZE = 500;
+
     private AimpPlayer mPlayer;
 
     AimpPlayerPackageLoaders(AimpPlayer player) {
@@ -56,11 +62,15 @@ class AimpPlayerPackageLoaders {
 
 
     void loadCommons() throws InterruptedException, IOException, ApiException {
-        boolean isShuffle = mPlayer.getPlugin().isShuffle();
-        boolean isRepeat  = mPlayer.getPlugin().isRepeatSong();
-        boolean isMute    = mPlayer.getPlugin().isMute();
+        StatusSnapshot statuses = mPlayer.getPlugin().getCustomStatuses(
+                Statuses.SHUFFLE, Statuses.REPEAT_SONG, Statuses.MUTE, Statuses.PLAY
+        );
+
+        boolean isShuffle = statuses.getBoolean(Statuses.SHUFFLE);
+        boolean isRepeat  = statuses.getBoolean(Statuses.REPEAT_SONG);
+        boolean isMute    = statuses.getBoolean(Statuses.MUTE);
         AimpPlayer.PlayState playState =
-                mPlayer.getPlugin().getPlayState() == IPlugin.PLAY_STATE_PLAYING
+                statuses.getBoolean(Statuses.PLAY)
                 ? AimpPlayer.PlayState.PLAYING
                 : AimpPlayer.PlayState.STOPPED
         ;
@@ -107,6 +117,11 @@ class AimpPlayerPackageLoaders {
     void loadPlaylists(boolean checkHash) throws InterruptedException, IOException, ApiException {
         List<Playlist> plsListRemote = mPlayer.getPlugin().getPlaylists();
 
+        SongNames names = mPlayer.getSongNamesForLoad();
+        for (Playlist pl: plsListRemote) {
+            pl.setSongNames(names);
+        }
+
         // we should download songs only if flag is set
         if (!checkHash) {
             for (Playlist pl: plsListRemote) {
@@ -133,12 +148,19 @@ class AimpPlayerPackageLoaders {
 
 
     /**
-     * Load songs to specified playlist
+     * Load songs to specified playlist. The playlist is not published yet, so observers get only the chunks,
+     * and the playlist is changed by this thread only.
      * @param pl - Playlist to load songs
      */
-    void loadPlaylistSongs(Playlist pl) throws InterruptedException, IOException, ApiException {
-        List<Song> s = mPlayer.getPlugin().getPlaylistSongs(pl.getId());
-        pl.setSongs(s);
+    void loadPlaylistSongs(final Playlist pl) throws InterruptedException, IOException, ApiException {
+        pl.setSongs(Collections.<Song>emptyList());
+        mPlayer.getPlugin().getPlaylistSongs(pl.getId(), SONGS_CHUNK_SIZE, new SongsChunkListener() {
+            @Override
+            public void onSongsChunkLoaded(int playlistId, List<Song> chunk, int loadedCount) {
+                pl.addSongs(chunk);
+                mPlayer.notifyPlaylistChunkLoaded(playlistId, chunk, loadedCount);
+            }
+        });
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.player;
+
+import com.uas.media.aimp.api.IPlugin;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Delivers notifications by the executor, e.g. on the main thread of the platform
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class ConnectionListenerViaExecutor extends ConnectionListener {
+
+    private Executor mExecutor;
+
+    public ConnectionListenerViaExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor is null");
+        }
+        mExecutor = executor;
+    }
+
+    @Override
+    protected void notifyConnectionStatusChanged(final IPlugin plugin, final AimpPlayer.ConnectionStatus status) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                onConnectionStatusChanged(plugin, status);
+            }
+        });
+    }
+
+    @Override
+    protected void notifyHostNotFound(final IPlugin plugin) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                onHostNotFound(plugin);
+            }
+        });
+    }
+
+    @Override
+    protected void notifyAimpNotFound(final IPlugin plugin) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                onAimpNotFound(plugin);
+            }
+        });
+    }
+
+    @Override
+    protected void notifyUnresolvedError(final IPlugin plugin, final Exception exception) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                onUnresolvedError(plugin, exception);
+            }
+        });
+    }
+
+}
\ No newline at end of file
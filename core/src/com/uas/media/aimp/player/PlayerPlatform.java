@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.player;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Services of the platform which hosts {@link AimpPlayer}: the host of the sync engine,
+ * the main thread and the clock. The Android application binds the engine to its service,
+ * a plain JVM keeps it in the process.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public interface PlayerPlatform {
+
+    /**
+     * Start the host of the sync engine and wait until it's available. Is called by the connecting thread.
+     */
+    SyncEngine bindSyncEngine() throws InterruptedException;
+
+    /**
+     * Release the host of the engine. Sync of the player is already cancelled.
+     */
+    void unbindSyncEngine(SyncEngine engine);
+
+    /**
+     * Executor of the main thread, e.g. the UI thread, see {@link StateObserverViaExecutor}
+     */
+    Executor getMainThreadExecutor();
+
+    PlayerClock getClock();
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.player;
+
+import com.uas.media.aimp.api.models.Playlist;
+import com.uas.media.aimp.api.models.Song;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Playlists of the player and the current song at a moment. A snapshot and its playlists are never changed:
+ * {@link AimpPlayer} creates a new snapshot for each change and publishes it by a volatile field, so getters
+ * read it without locks and always see the current song and the playlists of the same moment.
+ * A new snapshot shares everything it doesn't change with the previous one: the list of playlists
+ * when only the current song is changed, and playlists which are not changed otherwise.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+final class PlaylistsSnapshot {
+
+    static final PlaylistsSnapshot EMPTY = new PlaylistsSnapshot(Collections.<Playlist>emptyList(), -1, -1);
+
+    private final List<Playlist> mPlaylists;
+    private final int mCurrentPlaylistId;
+    private final int mCurrentSongPosition;
+
+
+    private PlaylistsSnapshot(List<Playlist> playlists, int currentPlaylistId, int currentSongPosition) {
+        mPlaylists = playlists;
+        mCurrentPlaylistId = currentPlaylistId;
+        mCurrentSongPosition = currentSongPosition;
+    }
+
+    /**
+     * Snapshot with the playlists, the list is copied, playlists are not
+     */
+    PlaylistsSnapshot withPlaylists(List<Playlist> playlists, int currentPlaylistId) {
+        return new PlaylistsSnapshot(
+                Collections.unmodifiableList(new ArrayList<Playlist>(playlists)), currentPlaylistId, mCurrentSongPosition
+        );
+    }
+
+    /**
+     * Snapshot where the playlist is replaced by its new version with the same id.
+     * If there is no playlist with this id anymore, the snapshot is not changed.
+     */
+    PlaylistsSnapshot withPlaylist(Playlist playlist) {
+        int position = getPlaylistPosition(playlist.getId());
+        if (position == -1) {
+            return this;
+        }
+        List<Playlist> playlists = new ArrayList<Playlist>(mPlaylists);
+        playlists.set(position, playlist);
+        return new PlaylistsSnapshot(Collections.unmodifiableList(playlists), mCurrentPlaylistId, mCurrentSongPosition);
+    }
+
+    PlaylistsSnapshot withCurrentSong(int playlistId, int songPosition) {
+        return new PlaylistsSnapshot(mPlaylists, playlistId, songPosition);
+    }
+
+    /**
+     * @return Read-only list of playlists
+     */
+    List<Playlist> getPlaylists() {
+        return mPlaylists;
+    }
+
+    int getCurrentPlaylistId() {
+        return mCurrentPlaylistId;
+    }
+
+    int getCurrentSongPosition() {
+        return mCurrentSongPosition;
+    }
+
+    Playlist getPlaylistById(int id) {
+        for (Playlist pl: mPlaylists) {
+            if (pl.getId() == id) {
+                return pl;
+            }
+        }
+        return null;
+    }
+
+    int getPlaylistPosition(int id) {
+        for (int i = 0; i < mPlaylists.size(); i++) {
+            if (mPlaylists.get(i).getId() == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    Playlist getCurrentPlaylist() {
+        return getPlaylistById(mCurrentPlaylistId);
+    }
+
+    Song getCurrentSong() {
+        Playlist currentPlaylist = getCurrentPlaylist();
+        if (mCurrentSongPosition == -1 || currentPlaylist == null) {
+            return null;
+        } else {
+            return currentPlaylist.getSong(mCurrentSongPosition);
+        }
+    }
+
+}
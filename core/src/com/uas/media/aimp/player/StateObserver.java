@@ -61,6 +61,10 @@ public class StateObserver {
         onPlaylistUpdated(playlist);
     }
 
+    protected void notifyPlaylistChunkLoaded(final int playlistId, final List<Song> chunk, final int loadedCount) {
+        onPlaylistChunkLoaded(playlistId, chunk, loadedCount);
+    }
+
     protected void notifySongChanged(final Playlist playlist, final Song song, final int position, final double percentage) {
         onSongChanged(playlist, song, position, percentage);
     }
@@ -127,6 +131,17 @@ public class StateObserver {
     public void onPlaylistUpdated(Playlist playlist) {}
 
 
+    /**
+     * Is called while songs of playlist are being downloaded, for each next chunk.
+     * The playlist is published by onPlaylistsInfoUpdated when all songs of all playlists are loaded,
+     * until then the player has its previous version. Positions of songs in the chunks are positions in AIMP.
+     * @param playlistId Id of playlist which songs are loaded
+     * @param chunk Next loaded songs, the list is not used by the player
+     * @param loadedCount Count of songs loaded so far, including this chunk
+     */
+    public void onPlaylistChunkLoaded(int playlistId, List<Song> chunk, int loadedCount) {}
+
+
     /**
      * Is called when a new song is selected to be played
      * @param playlist A playlist contains selected song (current playlist)
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.player;
+
+import com.uas.media.aimp.api.models.Playlist;
+import com.uas.media.aimp.api.models.Song;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Delivers notifications by the executor, e.g. on the main thread of the platform
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class StateObserverViaExecutor extends StateObserver {
+
+    private Executor mExecutor;
+
+    public StateObserverViaExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor is null");
+        }
+        mExecutor = executor;
+    }
+
+    @Override
+    protected void notifyPlay(final Song song) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                onPlay(song);
+            }
+        });
+    }
+
+    @Override
+    protected void notifyStop(final Song song) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                onStop(song);
+            }
+        });
+    }
+
+    @Override
+    protected void notifyPause(final Song song) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                onPause(song);
+            }
+        });
+    }
+
+    @Override
+    protected void notifyPlaylistsInfoUpdated(final List<Playlist> pls, final Playlist playlist) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                onPlaylistsInfoUpdated(pls, playlist);
+            }
+        });
+    }
+
+    @Override
+    protected void notifyPlaylistUpdated(final Playlist playlist) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                onPlaylistUpdated(playlist);
+            }
+        });
+    }
+
+    @Override
+    protected void notifyPlaylistChunkLoaded(final int playlistId, final List<Song> chunk, final int loadedCount) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                onPlaylistChunkLoaded(playlistId, chunk, loadedCount);
+            }
+        });
+    }
+
+    @Override
+    protected void notifySongChanged(final Playlist playlist, final Song song, final int position, final double percentage) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                onSongChanged(playlist, song, position, percentage);
+            }
+        });
+    }
+
+    @Override
+    protected void notifySongPlayPositionChanged(final Playlist playlist, final Song song, final int position, final double percentage) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                onSongPlayPositionChanged(playlist, song, position, percentage);
+            }
+        });
+    }
+
+    @Override
+    protected void notifyVolumeChanged(final int volume) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                onVolumeChanged(volume);
+            }
+        });
+    }
+
+    @Override
+    protected void notifyShuffleStateChanged(final boolean state) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                onShuffleStateChanged(state);
+            }
+        });
+    }
+
+    @Override
+    protected void notifyRepeatSongStateChanged(final boolean state) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                onRepeatSongStateChanged(state);
+            }
+        });
+    }
+
+    @Override
+    protected void notifyMuteStateChanged(final boolean state) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                onMuteStateChanged(state);
+            }
+        });
+    }
+
+    @Override
+    protected void notifyDataIsTooLarge() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                onDataIsTooLarge();
+            }
+        });
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.player;
+
+import com.uas.media.aimp.api.IPushPlugin;
+import com.uas.media.aimp.api.TrafficMeter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the state of players in sync with AIMP: polls the plugin by timers of the player's clock
+ * or waits for changes pushed by the plugin. Is hosted by the platform, see {@link PlayerPlatform#bindSyncEngine()}.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class SyncEngine {
+
+    /**
+     * Scopes of traffic made by the updaters, see {@link TrafficMeter#getScopesUsage()}
+     */
+    public static final String TRAFFIC_SCOPE_PLAYSTATE = "sync_playstate";
+    public static final String TRAFFIC_SCOPE_PLAYLISTS = "sync_playlists";
+    public static final String TRAFFIC_SCOPE_COMMONS = "sync_commons";
+    public static final String TRAFFIC_SCOPE_PUSH = "sync_push";
+
+    private static final long PUSH_RETRY_DELAY = 1000*5;
+
+    public interface ErrorsCallback {
+        void onException(Exception ex);
+    }
+
+    private final Map<AimpPlayer, PlayerTimer> mTimers = new HashMap<AimpPlayer, PlayerTimer>();
+    private final Map<AimpPlayer, ErrorsCallback> mErrorCallbacks = new HashMap<AimpPlayer, ErrorsCallback>();
+
+
+    /**
+     * Start sync of the player. If the plugin pushes changes, the state is loaded when it changes,
+     * and only playlists are still polled, as not every change of them is reported.
+     * All updaters of the player run on one timer, so their loads never overlap.
+     */
+    public synchronized void submitSync(AimpPlayer player, SyncParams syncParams, ErrorsCallback callback) {
+        PlayerTimer t = player.getPlatform().getClock().createTimer("SyncTimer");
+
+        mTimers.put(player, t);
+        mErrorCallbacks.put(player, callback);
+
+        Updaters updaters = new Updaters(player);
+
+        t.scheduleAtFixedRate(
+                updaters.getPlaylistsUpdater(),
+                0, syncParams.getPlaylistsUpdatePeriod());
+
+        if (player.getPlugin() instanceof IPushPlugin) {
+            t.schedule(updaters.getPushUpdater(t), 0);
+            return;
+        }
+
+        t.scheduleAtFixedRate(
+                updaters.getPlayStateUpdater(),
+                0, syncParams.getPlaystateUpdatePeriod());
+        t.scheduleAtFixedRate(
+                updaters.getCommonsUpdater(),
+                0, syncParams.getOthersUpdatePeriod());
+    }
+
+    public synchronized void cancelSync(AimpPlayer player) {
+        PlayerTimer t = mTimers.remove(player);
+        if (t != null) {
+            t.cancel();
+        }
+
+        mErrorCallbacks.remove(player);
+    }
+
+    /**
+     * Cancel sync of all players, e.g. when the host is destroyed
+     */
+    public synchronized void cancelAll() {
+        for (AimpPlayer player: new ArrayList<AimpPlayer>(mTimers.keySet())) {
+            cancelSync(player);
+        }
+    }
+
+    private synchronized ErrorsCallback getErrorsCallback(AimpPlayer player) {
+        return mErrorCallbacks.get(player);
+    }
+
+
+    class Updaters {
+
+        private AimpPlayer mPlayer;
+        private AimpPlayerPackageLoaders mLoaders;
+
+        Updaters(AimpPlayer player) {
+            mPlayer = player;
+            mLoaders = new AimpPlayerPackageLoaders(mPlayer);
+        }
+
+        protected void notifyException(Exception ex) {
+            ErrorsCallback callback = getErrorsCallback(mPlayer);
+            if (callback != null) {
+                callback.onException(ex);
+            }
+        }
+
+        public Runnable getPlayStateUpdater() {
+             return new Runnable() {
+                 @Override
+                 public void run() {
+                     String previousScope = TrafficMeter.enterScope(TRAFFIC_SCOPE_PLAYSTATE);
+                     try {
+                         if (mPlayer.hasPlaylists()) {
+                             mLoaders.loadSongPlayPosition();
+                             mLoaders.loadCommons();
+                             mLoaders.loadCurrentSong();
+                         }
+                     } catch (Exception ex) {
+                         notifyException(ex);
+                     } finally {
+                         TrafficMeter.exitScope(previousScope);
+                     }
+                 }
+             };
+        }
+
+        public Runnable getPlaylistsUpdater() {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    String previousScope = TrafficMeter.enterScope(TRAFFIC_SCOPE_PLAYLISTS);
+                    try {
+                        mLoaders.loadPlaylists(AimpPlayerPackageLoaders.CHECK_HASH_YES);
+                        mLoaders.loadCurrentSong();
+                        mLoaders.loadSongPlayPosition();
+                    } catch (Exception ex) {
+                        notifyException(ex);
+                    } finally {
+                        TrafficMeter.exitScope(previousScope);
+                    }
+                }
+            };
+        }
+
+        /**
+         * Waits for changes pushed by the plugin and loads only the changed parts of the state.
+         * Each run waits once and schedules the next run on the same timer, so the playlists updater
+         * runs between waits. A wait in progress isn't stopped by cancel of the timer,
+         * but the player aborts requests of the plugin when it disconnects.
+         */
+        public Runnable getPushUpdater(final PlayerTimer timer) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    IPushPlugin plugin = (IPushPlugin) mPlayer.getPlugin();
+                    long delay = 0;
+                    String previousScope = TrafficMeter.enterScope(TRAFFIC_SCOPE_PUSH);
+                    try {
+                        int changes = plugin.waitForChanges();
+                        if ((changes & IPushPlugin.CHANGE_PLAYLISTS) != 0) {
+                            mLoaders.loadPlaylists(AimpPlayerPackageLoaders.CHECK_HASH_YES);
+                        }
+                        if (mPlayer.hasPlaylists()) {
+                            if ((changes & IPushPlugin.CHANGE_CURRENT_SONG) != 0) {
+                                mLoaders.loadCurrentSong();
+                            } else if ((changes & IPushPlugin.CHANGE_PLAY_STATE) != 0) {
+                                mLoaders.loadSongPlayPosition();
+                            }
+                        }
+                        if ((changes & (IPushPlugin.CHANGE_PLAY_STATE | IPushPlugin.CHANGE_CONTROLS)) != 0) {
+                            mLoaders.loadCommons();
+                        }
+                        if ((changes & IPushPlugin.CHANGE_CONTROLS) != 0) {
+                            mLoaders.loadVolume();
+                        }
+                    } catch (InterruptedException ex) {
+                        // requests are aborted on disconnect, then the timer is cancelled and the next run is dropped
+                        delay = PUSH_RETRY_DELAY;
+                    } catch (Exception ex) {
+                        notifyException(ex);
+                        delay = PUSH_RETRY_DELAY;
+                    } finally {
+                        TrafficMeter.exitScope(previousScope);
+                    }
+                    timer.schedule(this, delay);
+                }
+            };
+        }
+
+        public Runnable getCommonsUpdater() {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    String previousScope = TrafficMeter.enterScope(TRAFFIC_SCOPE_COMMONS);
+                    try {
+                        mLoaders.loadCommons();
+                        mLoaders.loadVolume();
+                    } catch (Exception ex) {
+                        notifyException(ex);
+                    } finally {
+                        TrafficMeter.exitScope(previousScope);
+                    }
+                }
+            };
+        }
+
+    }
+
+}
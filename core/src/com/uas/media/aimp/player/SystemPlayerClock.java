@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.player;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Clock of the system, timers are backed by {@link Timer}
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class SystemPlayerClock implements PlayerClock {
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public PlayerTimer createTimer(String name) {
+        final Timer timer = new Timer(name);
+        return new PlayerTimer() {
+            @Override
+            public void scheduleAtFixedRate(final Runnable task, long delay, long period) {
+                if (task == null) {
+                    throw new IllegalArgumentException("Task is null");
+                }
+                timer.scheduleAtFixedRate(new TimerTask() {
+                    @Override
+                    public void run() {
+                        task.run();
+                    }
+                }, delay, period);
+            }
+
+            @Override
+            public void schedule(final Runnable task, long delay) {
+                if (task == null) {
+                    throw new IllegalArgumentException("Task is null");
+                }
+                try {
+                    timer.schedule(new TimerTask() {
+                        @Override
+                        public void run() {
+                            task.run();
+                        }
+                    }, delay);
+                } catch (IllegalStateException ex) {
+                    // timer is cancelled
+                }
+            }
+
+            @Override
+            public void cancel() {
+                timer.cancel();
+                timer.purge();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,613 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.emulator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTTP server which answers JSON-RPC 2.0 requests of AimpControlPlugin the way AIMP Control Plugin does,
+ * using {@link EmulatedPlayer} as the state of AIMP. Batches of calls are answered by one response.
+ * Subscription on the update of the control panel's state is held until the player changes
+ * or the hold time passes (long polling), then the state of the control panel is returned.
+ * Songs are addressed by the ids of {@link EmulatedPlaylist}.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class AimpControlEmulator extends HttpEmulator {
+
+    public static final int DEFAULT_PORT = 3333;
+    public static final String RPC_PATH = "/RPC_JSON";
+    public static final int DEFAULT_HOLD_TIME = 1000*30;
+
+    private static final String EVENT_STATE_CHANGE = "control_panel_state_change";
+
+    private static final int PARSE_ERROR = -32700;
+    private static final int INVALID_REQUEST = -32600;
+    private static final int METHOD_NOT_FOUND = -32601;
+    private static final int INVALID_PARAMS = -32602;
+
+    private volatile int mHoldTime = DEFAULT_HOLD_TIME;
+
+
+    public AimpControlEmulator(EmulatedPlayer player, NetworkConditions conditions) {
+        super(player, conditions);
+    }
+
+    public int getHoldTime() {
+        return mHoldTime;
+    }
+
+    /**
+     * How long a subscription on changes is held if nothing changes, in milliseconds
+     */
+    public void setHoldTime(int holdTime) {
+        if (holdTime < 0) {
+            throw new IllegalArgumentException("Hold time must be not negative. Given value is " + holdTime);
+        }
+        mHoldTime = holdTime;
+    }
+
+    @Override
+    protected byte[] handle(String method, String target, byte[] body) throws IOException, InterruptedException {
+        if (!"POST".equals(method) || !RPC_PATH.equals(target)) {
+            return null;
+        }
+        return toBytes(handle(new String(body, "UTF-8")));
+    }
+
+    @Override
+    protected String getContentType() {
+        return "application/json; charset=utf-8";
+    }
+
+    // ================================================================================
+    // ====================== Calls
+
+    /**
+     * Perform the calls of the request and render the response, network conditions are not applied.
+     * @param request Single call or a batch of calls
+     * @return Single response or array of responses of the batch
+     * @throws InterruptedException if the thread is interrupted while a subscription is held
+     */
+    public String handle(String request) throws InterruptedException {
+        Object calls;
+        try {
+            calls = new JsonParser(request).parse();
+        } catch (IllegalArgumentException ex) {
+            return renderError(null, PARSE_ERROR, ex.getMessage());
+        }
+
+        if (!(calls instanceof List)) {
+            return call(calls);
+        }
+        List<?> batch = (List<?>) calls;
+        if (batch.isEmpty()) {
+            return renderError(null, INVALID_REQUEST, "Batch is empty");
+        }
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(call(batch.get(i)));
+        }
+        return json.append(']').toString();
+    }
+
+    private String call(Object call) throws InterruptedException {
+        if (!(call instanceof Map)) {
+            return renderError(null, INVALID_REQUEST, "Call is not an object");
+        }
+        Map<?, ?> request = (Map<?, ?>) call;
+        Object id = request.get("id");
+        Object method = request.get("method");
+        Object params = request.get("params");
+        if (!(method instanceof String)) {
+            return renderError(id, INVALID_REQUEST, "Call has no method");
+        }
+        if (params == null) {
+            params = new LinkedHashMap<String, Object>();
+        }
+        if (!(params instanceof Map)) {
+            return renderError(id, INVALID_PARAMS, "Parameters must be named");
+        }
+
+        String result;
+        try {
+            result = call((String) method, (Map<?, ?>) params);
+        } catch (IllegalArgumentException ex) {
+            return renderError(id, INVALID_PARAMS, ex.getMessage());
+        }
+        if (result == null) {
+            return renderError(id, METHOD_NOT_FOUND, "Method not found: " + method);
+        }
+        StringBuilder json = new StringBuilder(result.length() + 48);
+        json.append("{\"jsonrpc\":\"2.0\",\"id\":");
+        appendValue(json, id);
+        return json.append(",\"result\":").append(result).append('}').toString();
+    }
+
+    /**
+     * @return Result of the call or null if the method is unknown
+     * @throws IllegalArgumentException if parameters are invalid
+     */
+    private String call(String method, Map<?, ?> params) throws InterruptedException {
+        EmulatedPlayer player = getPlayer();
+        if ("GetPlayerControlPanelState".equals(method)) {
+            return renderPanelState(false);
+        } else if ("SubscribeOnAIMPStateUpdateEvent".equals(method)) {
+            if (!EVENT_STATE_CHANGE.equals(params.get("event"))) {
+                throw new IllegalArgumentException("Unknown event " + params.get("event"));
+            }
+            long playlistsVersion = player.getPlaylistsVersion();
+            player.awaitChange(player.getVersion(), mHoldTime);
+            return renderPanelState(playlistsVersion != player.getPlaylistsVersion());
+        } else if ("Status".equals(method)) {
+            int status = getInt(params, "status_id");
+            if (params.containsKey("value") && !player.setStatus(status, getInt(params, "value"))) {
+                throw new IllegalArgumentException("Unknown status " + status);
+            }
+            int value = player.getStatus(status);
+            if (value < 0) {
+                throw new IllegalArgumentException("Unknown status " + status);
+            }
+            return "{\"value\":" + value + "}";
+        } else if ("GetPlaylists".equals(method)) {
+            return renderPlaylists(getStrings(params, "fields"));
+        } else if ("GetPlaylistEntries".equals(method)) {
+            return renderEntries(
+                    getInt(params, "playlist_id"), getStrings(params, "fields"),
+                    getInt(params, "start_index"), getInt(params, "entries_count")
+            );
+        } else if ("GetEntryPositionInDataTable".equals(method)) {
+            synchronized (player) {
+                EmulatedPlaylist pl = getPlaylist(getInt(params, "playlist_id"));
+                return "{\"track_position\":" + getSongPosition(pl, getInt(params, "track_id")) + "}";
+            }
+        } else if ("GetPlaylistEntryInfo".equals(method)) {
+            return renderEntryInfo(getInt(params, "track_id"));
+        } else if ("Play".equals(method)) {
+            if (params.containsKey("track_id")) {
+                synchronized (player) {
+                    EmulatedPlaylist pl = getPlaylist(getInt(params, "playlist_id"));
+                    player.playSong(pl.getId(), getSongPosition(pl, getInt(params, "track_id")));
+                }
+            } else {
+                player.play();
+            }
+        } else if ("Stop".equals(method)) {
+            player.stop();
+        } else if ("Pause".equals(method)) {
+            player.pause();
+        } else if ("PlayNext".equals(method)) {
+            player.next();
+        } else if ("PlayPrevious".equals(method)) {
+            player.previous();
+        } else if ("RemoveTrack".equals(method)) {
+            int trackId = getInt(params, "track_id");
+            synchronized (player) {
+                for (EmulatedPlaylist pl: player.getPlaylists()) {
+                    int position = pl.indexOfSong(trackId);
+                    if (position >= 0) {
+                        player.removeSong(pl.getId(), position);
+                        return "{}";
+                    }
+                }
+            }
+            throw new IllegalArgumentException("Unknown track " + trackId);
+        } else {
+            return null;
+        }
+        return "{}";
+    }
+
+    private String renderPanelState(boolean isPlaylistsChanged) {
+        EmulatedPlayer player = getPlayer();
+        StringBuilder json = new StringBuilder(256);
+        synchronized (player) {
+            int state = player.getState();
+            int song = player.getCurrentSong();
+            EmulatedPlaylist pl = player.getPlaylistById(player.getCurrentPlaylistId());
+            json.append("{\"playback_state\":\"")
+                    .append(state == EmulatedPlayer.STATE_PLAYING
+                            ? "playing"
+                            : state == EmulatedPlayer.STATE_PAUSED ? "paused" : "stopped")
+                    .append("\",\"track_position\":").append(player.getPosition() / 1000)
+                    .append(",\"track_length\":").append(player.getCurrentSongLength())
+                    .append(",\"volume\":").append(player.getStatus(EmulatedPlayer.STATUS_VOLUME))
+                    .append(",\"mute_mode_on\":").append(player.getStatus(EmulatedPlayer.STATUS_MUTE) != 0)
+                    .append(",\"repeat_mode_on\":").append(player.getStatus(EmulatedPlayer.STATUS_REPEAT_SONG) != 0)
+                    .append(",\"shuffle_mode_on\":").append(player.getStatus(EmulatedPlayer.STATUS_SHUFFLE) != 0)
+                    .append(",\"playlist_id\":").append(pl == null ? -1 : pl.getId())
+                    .append(",\"track_id\":").append(song < 0 ? -1 : pl.getSongId(song))
+                    .append(",\"playlists_changed\":").append(isPlaylistsChanged);
+        }
+        return json.append('}').toString();
+    }
+
+    private String renderPlaylists(List<String> fields) {
+        EmulatedPlayer player = getPlayer();
+        StringBuilder json = new StringBuilder("[");
+        synchronized (player) {
+            List<EmulatedPlaylist> playlists = player.getPlaylists();
+            for (int i = 0; i < playlists.size(); i++) {
+                EmulatedPlaylist pl = playlists.get(i);
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append('{');
+                for (int k = 0; k < fields.size(); k++) {
+                    String field = fields.get(k);
+                    if (k > 0) {
+                        json.append(',');
+                    }
+                    appendString(json, field, true);
+                    json.append(':');
+                    if ("id".equals(field)) {
+                        json.append(pl.getId());
+                    } else if ("title".equals(field)) {
+                        appendString(json, pl.getName(), true);
+                    } else if ("duration".equals(field)) {
+                        json.append((long) pl.getDuration() * 1000);
+                    } else if ("size_of_entries".equals(field)) {
+                        json.append(pl.getSizeInBytes());
+                    } else if ("crc32".equals(field)) {
+                        json.append(pl.getCrc());
+                    } else {
+                        json.append("null");
+                    }
+                }
+                json.append('}');
+            }
+        }
+        return json.append(']').toString();
+    }
+
+    private String renderEntries(int playlistId, List<String> fields, int start, int count) {
+        if (start < 0 || count < 0) {
+            throw new IllegalArgumentException("Invalid range of entries " + start + ", " + count);
+        }
+        synchronized (getPlayer()) {
+            EmulatedPlaylist pl = getPlaylist(playlistId);
+            int end = (int) Math.min(pl.size(), (long) start + count);
+            StringBuilder json = new StringBuilder(Math.max(0, end - start) * 64 + 64);
+            json.append("{\"total_entries_count\":").append(pl.size()).append(",\"entries\":[");
+            for (int i = start; i < end; i++) {
+                if (i > start) {
+                    json.append(',');
+                }
+                json.append('[');
+                for (int k = 0; k < fields.size(); k++) {
+                    String field = fields.get(k);
+                    if (k > 0) {
+                        json.append(',');
+                    }
+                    if ("id".equals(field)) {
+                        json.append(pl.getSongId(i));
+                    } else if ("title".equals(field)) {
+                        appendString(json, pl.getSongName(i), true);
+                    } else if ("duration".equals(field)) {
+                        json.append(pl.getSongLength(i));
+                    } else {
+                        json.append("null");
+                    }
+                }
+                json.append(']');
+            }
+            return json.append("]}").toString();
+        }
+    }
+
+    private String renderEntryInfo(int trackId) {
+        EmulatedPlayer player = getPlayer();
+        synchronized (player) {
+            for (EmulatedPlaylist pl: player.getPlaylists()) {
+                int position = pl.indexOfSong(trackId);
+                if (position >= 0) {
+                    StringBuilder json = new StringBuilder("{\"id\":").append(trackId).append(",\"title\":");
+                    appendString(json, pl.getSongName(position), true);
+                    return json.append(",\"duration\":").append(pl.getSongLength(position)).append('}').toString();
+                }
+            }
+        }
+        throw new IllegalArgumentException("Unknown track " + trackId);
+    }
+
+    private static String renderError(Object id, int code, String message) {
+        StringBuilder json = new StringBuilder("{\"jsonrpc\":\"2.0\",\"id\":");
+        appendValue(json, id);
+        json.append(",\"error\":{\"code\":").append(code).append(",\"message\":");
+        appendString(json, message == null ? "" : message, true);
+        return json.append("}}").toString();
+    }
+
+    // ================================================================================
+    // ================================================================================
+
+
+    private EmulatedPlaylist getPlaylist(int id) {
+        EmulatedPlaylist pl = getPlayer().getPlaylistById(id);
+        if (pl == null) {
+            throw new IllegalArgumentException("Unknown playlist " + id);
+        }
+        return pl;
+    }
+
+    private static int getSongPosition(EmulatedPlaylist pl, int trackId) {
+        int position = pl.indexOfSong(trackId);
+        if (position < 0) {
+            throw new IllegalArgumentException("Playlist " + pl.getId() + " has no track " + trackId);
+        }
+        return position;
+    }
+
+    private static int getInt(Map<?, ?> params, String name) {
+        Object value = params.get(name);
+        if (!(value instanceof Number)) {
+            throw new IllegalArgumentException("Missed parameter " + name);
+        }
+        return ((Number) value).intValue();
+    }
+
+    private static List<String> getStrings(Map<?, ?> params, String name) {
+        Object value = params.get(name);
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException("Missed parameter " + name);
+        }
+        List<String> strings = new ArrayList<String>();
+        for (Object item: (List<?>) value) {
+            if (!(item instanceof String)) {
+                throw new IllegalArgumentException("Parameter " + name + " must be an array of strings");
+            }
+            strings.add((String) item);
+        }
+        return strings;
+    }
+
+    /**
+     * Append id of the call, it's a number, a string or null
+     */
+    private static void appendValue(StringBuilder json, Object value) {
+        if (value instanceof String) {
+            appendString(json, (String) value, true);
+        } else {
+            json.append(value);
+        }
+    }
+
+
+    /**
+     * Parser of JSON text into maps, lists, strings, numbers (Long or Double), booleans and nulls.
+     * Requests are small, so they are parsed as a whole.
+     */
+    private static class JsonParser {
+        private final String mText;
+        private int mPos;
+
+        JsonParser(String text) {
+            mText = text;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the text is not a valid JSON
+         */
+        Object parse() {
+            Object value = parseValue();
+            skipSpaces();
+            if (mPos < mText.length()) {
+                throw error("Unexpected text after the value");
+            }
+            return value;
+        }
+
+        private Object parseValue() {
+            skipSpaces();
+            if (mPos >= mText.length()) {
+                throw error("Unexpected end of the text");
+            }
+            char c = mText.charAt(mPos);
+            switch (c) {
+                case '{':
+                    return parseObject();
+                case '[':
+                    return parseArray();
+                case '"':
+                    return parseString();
+                case 't':
+                    return parseLiteral("true", Boolean.TRUE);
+                case 'f':
+                    return parseLiteral("false", Boolean.FALSE);
+                case 'n':
+                    return parseLiteral("null", null);
+                default:
+                    return parseNumber();
+            }
+        }
+
+        private Map<String, Object> parseObject() {
+            Map<String, Object> object = new LinkedHashMap<String, Object>();
+            mPos++;
+            skipSpaces();
+            if (peek() == '}') {
+                mPos++;
+                return object;
+            }
+            while (true) {
+                skipSpaces();
+                if (peek() != '"') {
+                    throw error("Name is expected");
+                }
+                String name = parseString();
+                skipSpaces();
+                expect(':');
+                object.put(name, parseValue());
+                skipSpaces();
+                if (peek() == ',') {
+                    mPos++;
+                } else {
+                    expect('}');
+                    return object;
+                }
+            }
+        }
+
+        private List<Object> parseArray() {
+            List<Object> array = new ArrayList<Object>();
+            mPos++;
+            skipSpaces();
+            if (peek() == ']') {
+                mPos++;
+                return array;
+            }
+            while (true) {
+                array.add(parseValue());
+                skipSpaces();
+                if (peek() == ',') {
+                    mPos++;
+                } else {
+                    expect(']');
+                    return array;
+                }
+            }
+        }
+
+        private String parseString() {
+            StringBuilder value = new StringBuilder();
+            mPos++;
+            while (true) {
+                if (mPos >= mText.length()) {
+                    throw error("Unterminated string");
+                }
+                char c = mText.charAt(mPos++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (mPos >= mText.length()) {
+                    throw error("Unterminated string");
+                }
+                char escaped = mText.charAt(mPos++);
+                switch (escaped) {
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        if (mPos + 4 > mText.length()) {
+                            throw error("Invalid escape");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(mText.substring(mPos, mPos + 4), 16));
+                        } catch (NumberFormatException ex) {
+                            throw error("Invalid escape");
+                        }
+                        mPos += 4;
+                        break;
+                    default:
+                        value.append(escaped);
+                        break;
+                }
+            }
+        }
+
+        private Object parseLiteral(String literal, Object value) {
+            if (!mText.startsWith(literal, mPos)) {
+                throw error("Unexpected literal");
+            }
+            mPos += literal.length();
+            return value;
+        }
+
+        private Number parseNumber() {
+            int start = mPos;
+            boolean isInteger = true;
+            while (mPos < mText.length()) {
+                char c = mText.charAt(mPos);
+                if (c == '.' || c == 'e' || c == 'E') {
+                    isInteger = false;
+                } else if (!(c >= '0' && c <= '9') && c != '-' && c != '+') {
+                    break;
+                }
+                mPos++;
+            }
+            String number = mText.substring(start, mPos);
+            try {
+                return isInteger ? (Number) Long.valueOf(number) : (Number) Double.valueOf(number);
+            } catch (NumberFormatException ex) {
+                throw error("Invalid number " + number);
+            }
+        }
+
+        private char peek() {
+            if (mPos >= mText.length()) {
+                throw error("Unexpected end of the text");
+            }
+            return mText.charAt(mPos);
+        }
+
+        private void expect(char c) {
+            if (peek() != c) {
+                throw error("'" + c + "' is expected");
+            }
+            mPos++;
+        }
+
+        private void skipSpaces() {
+            while (mPos < mText.length() && Character.isWhitespace(mText.charAt(mPos))) {
+                mPos++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + mPos);
+        }
+    }
+
+}
@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.emulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * State of AIMP emulated for the WebCtl server: playlists, the current song, statuses and playback.
+ * Position of the playing song follows the clock ({@link #now()}), and when the song ends the next one
+ * is started with respect to repeat and shuffle modes. Each change of the state is counted,
+ * so a request can be held until the state changes, see {@link #awaitChange(long, long)}. All methods are thread-safe.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class EmulatedPlayer {
+
+    public static final int STATE_STOPPED = 0;
+    public static final int STATE_PLAYING = 1;
+    public static final int STATE_PAUSED = 2;
+
+    /**
+     * Codes of AIMP statuses which have a special meaning, the rest is just stored
+     */
+    public static final int STATUS_VOLUME = 1;
+    public static final int STATUS_PLAY = 4;
+    public static final int STATUS_MUTE = 5;
+    public static final int STATUS_REPEAT_SONG = 29;
+    public static final int STATUS_STOP = 30;
+    public static final int STATUS_POSITION = 31;
+    public static final int STATUS_LENGTH = 32;
+    public static final int STATUS_REPEAT_PLAYLIST = 33;
+    public static final int STATUS_SHUFFLE = 41;
+    public static final int MAX_STATUS = 41;
+
+    // the end of a song is noticed by a held request this often
+    private static final long CHANGE_CHECK_INTERVAL = 100;
+
+    private final List<EmulatedPlaylist> mPlaylists;
+    private final int[] mStatuses = new int[MAX_STATUS + 1];
+    private final Random mRandom;
+
+    private int mPlaylistIndex;
+    private int mSong;
+    private int mState = STATE_STOPPED;
+    // position of the song at the moment of mPositionTime
+    private long mPosition;
+    private long mPositionTime;
+    // counts of changes of the whole state and of the playlists
+    private long mVersion;
+    private long mPlaylistsVersion;
+
+
+    public EmulatedPlayer(List<EmulatedPlaylist> playlists, long seed) {
+        if (playlists == null) {
+            throw new IllegalArgumentException("Playlists is null");
+        }
+        mPlaylists = new ArrayList<EmulatedPlaylist>(playlists);
+        mRandom = new Random(seed);
+        mStatuses[STATUS_VOLUME] = 50;
+        mStatuses[STATUS_REPEAT_PLAYLIST] = 1;
+        mPlaylistIndex = mPlaylists.isEmpty() ? -1 : 0;
+        mSong = getPlaylist() == null || getPlaylist().size() == 0 ? -1 : 0;
+    }
+
+    /**
+     * Time in milliseconds which drives the playback
+     */
+    protected long now() {
+        return System.currentTimeMillis();
+    }
+
+    // ================================================================================
+    // ====================== Playback
+
+    public synchronized void play() {
+        update();
+        if (mSong < 0) {
+            return;
+        }
+        if (mState == STATE_STOPPED) {
+            mPosition = 0;
+        }
+        mState = STATE_PLAYING;
+        mPositionTime = now();
+        onChanged();
+    }
+
+    public synchronized void stop() {
+        update();
+        mState = STATE_STOPPED;
+        mPosition = 0;
+        onChanged();
+    }
+
+    /**
+     * Pause the playing song or resume the paused one, as AIMP does
+     */
+    public synchronized void pause() {
+        update();
+        if (mState == STATE_PLAYING) {
+            mState = STATE_PAUSED;
+        } else if (mState == STATE_PAUSED) {
+            mState = STATE_PLAYING;
+            mPositionTime = now();
+        }
+        onChanged();
+    }
+
+    public synchronized void next() {
+        update();
+        if (mSong >= 0) {
+            startSong(nextSong(false));
+        }
+    }
+
+    public synchronized void previous() {
+        update();
+        EmulatedPlaylist pl = getPlaylist();
+        if (mSong >= 0) {
+            startSong(mSong == 0 ? pl.size() - 1 : mSong - 1);
+        }
+    }
+
+    /**
+     * @return false if there is no such song
+     */
+    public synchronized boolean playSong(int playlistId, int song) {
+        update();
+        int index = indexOf(playlistId);
+        if (index < 0 || song < 0 || song >= mPlaylists.get(index).size()) {
+            return false;
+        }
+        mPlaylistIndex = index;
+        mState = STATE_PLAYING;
+        startSong(song);
+        return true;
+    }
+
+    public synchronized int getState() {
+        update();
+        return mState;
+    }
+
+    /**
+     * @return Id of the current playlist, -1 if there are no playlists
+     */
+    public synchronized int getCurrentPlaylistId() {
+        EmulatedPlaylist pl = getPlaylist();
+        return pl == null ? -1 : pl.getId();
+    }
+
+    /**
+     * @return Position of the current song in its playlist, -1 if the playlist is empty
+     */
+    public synchronized int getCurrentSong() {
+        update();
+        return mSong;
+    }
+
+    public synchronized String getCurrentSongName() {
+        update();
+        return mSong < 0 ? "" : getPlaylist().getSongName(mSong);
+    }
+
+    /**
+     * Length of the current song in seconds
+     */
+    public synchronized int getCurrentSongLength() {
+        update();
+        return mSong < 0 ? 0 : getPlaylist().getSongLength(mSong) / 1000;
+    }
+
+    /**
+     * Position of the current song in milliseconds
+     */
+    public synchronized long getPosition() {
+        update();
+        return mPosition;
+    }
+
+    /**
+     * Count of changes of the state: commands, starts of songs and changes of playlists
+     */
+    public synchronized long getVersion() {
+        update();
+        return mVersion;
+    }
+
+    /**
+     * Count of changes of playlists
+     */
+    public synchronized long getPlaylistsVersion() {
+        return mPlaylistsVersion;
+    }
+
+    /**
+     * Wait until the state changes. Time is measured by the wall clock, not by {@link #now()}.
+     * @param version Version seen by the caller, see {@link #getVersion()}
+     * @param timeout Time to wait in milliseconds
+     * @return Current version, it's the given one if nothing has changed in time
+     */
+    public synchronized long awaitChange(long version, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (true) {
+            update();
+            long left = deadline - System.currentTimeMillis();
+            if (mVersion != version || left <= 0) {
+                return mVersion;
+            }
+            wait(Math.min(left, CHANGE_CHECK_INTERVAL));
+        }
+    }
+
+    // ================================================================================
+    // ====================== Statuses
+
+    /**
+     * @return Value of the status, -1 if the status is unknown
+     */
+    public synchronized int getStatus(int status) {
+        if (status < 1 || status > MAX_STATUS) {
+            return -1;
+        }
+        update();
+        switch (status) {
+            case STATUS_PLAY:
+                return mState;
+            case STATUS_STOP:
+                return mState == STATE_STOPPED ? 1 : 0;
+            case STATUS_POSITION:
+                return (int) (mPosition / 1000);
+            case STATUS_LENGTH:
+                return mSong < 0 ? 0 : getPlaylist().getSongLength(mSong) / 1000;
+            default:
+                return mStatuses[status];
+        }
+    }
+
+    /**
+     * @return false if the status is unknown
+     */
+    public synchronized boolean setStatus(int status, int value) {
+        if (status < 1 || status > MAX_STATUS) {
+            return false;
+        }
+        update();
+        switch (status) {
+            case STATUS_PLAY:
+                if (value == 0) {
+                    stop();
+                } else {
+                    play();
+                }
+                break;
+            case STATUS_STOP:
+                if (value != 0) {
+                    stop();
+                }
+                break;
+            case STATUS_POSITION:
+                if (mSong >= 0) {
+                    mPosition = Math.max(0, Math.min((long) value * 1000, getPlaylist().getSongLength(mSong)));
+                    mPositionTime = now();
+                }
+                break;
+            case STATUS_LENGTH:
+                return false;
+            case STATUS_VOLUME:
+                mStatuses[status] = Math.max(0, Math.min(100, value));
+                break;
+            default:
+                mStatuses[status] = value;
+                break;
+        }
+        onChanged();
+        return true;
+    }
+
+    // ================================================================================
+    // ====================== Playlists
+
+    /**
+     * Copy of the list, playlists must be accessed while holding the lock of the player
+     */
+    public synchronized List<EmulatedPlaylist> getPlaylists() {
+        return new ArrayList<EmulatedPlaylist>(mPlaylists);
+    }
+
+    /**
+     * @return Playlist or null if there is no playlist with such id
+     */
+    public synchronized EmulatedPlaylist getPlaylistById(int id) {
+        int index = indexOf(id);
+        return index < 0 ? null : mPlaylists.get(index);
+    }
+
+    /**
+     * Remove the song. If it's the current one, the next song becomes current.
+     * @return false if there is no such song
+     */
+    public synchronized boolean removeSong(int playlistId, int song) {
+        update();
+        int index = indexOf(playlistId);
+        if (index < 0 || song < 0 || song >= mPlaylists.get(index).size()) {
+            return false;
+        }
+        EmulatedPlaylist pl = mPlaylists.get(index);
+        pl.removeSong(song);
+        if (index == mPlaylistIndex) {
+            if (pl.size() == 0) {
+                mSong = -1;
+                mState = STATE_STOPPED;
+                mPosition = 0;
+            } else if (song < mSong) {
+                mSong--;
+            } else if (song == mSong) {
+                startSong(mSong % pl.size());
+            }
+        }
+        mPlaylistsVersion++;
+        onChanged();
+        return true;
+    }
+
+    // ================================================================================
+    // ================================================================================
+
+
+    private EmulatedPlaylist getPlaylist() {
+        return mPlaylistIndex < 0 ? null : mPlaylists.get(mPlaylistIndex);
+    }
+
+    private int indexOf(int playlistId) {
+        for (int i = 0; i < mPlaylists.size(); i++) {
+            if (mPlaylists.get(i).getId() == playlistId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void startSong(int song) {
+        mSong = song;
+        mPosition = 0;
+        mPositionTime = now();
+        onChanged();
+    }
+
+    private void onChanged() {
+        mVersion++;
+        notifyAll();
+    }
+
+    /**
+     * @param isEnded true if the current song has ended by itself, so repeat of the song is applied
+     * @return Next song or -1 if the playback stops
+     */
+    private int nextSong(boolean isEnded) {
+        int size = getPlaylist().size();
+        if (isEnded && mStatuses[STATUS_REPEAT_SONG] != 0) {
+            return mSong;
+        }
+        if (mStatuses[STATUS_SHUFFLE] != 0) {
+            return mRandom.nextInt(size);
+        }
+        if (mSong + 1 < size) {
+            return mSong + 1;
+        }
+        return !isEnded || mStatuses[STATUS_REPEAT_PLAYLIST] != 0 ? 0 : -1;
+    }
+
+    /**
+     * Move the playback to the current time, starting next songs if the current ones have ended
+     */
+    private void update() {
+        long now = now();
+        if (mState != STATE_PLAYING) {
+            mPositionTime = now;
+            return;
+        }
+        long time = mPositionTime;
+        long position = mPosition + (now - time);
+        while (true) {
+            int length = getPlaylist().getSongLength(mSong);
+            if (position < length) {
+                break;
+            }
+            time += length - mPosition;
+            position -= length;
+            int next = nextSong(true);
+            if (next < 0) {
+                mState = STATE_STOPPED;
+                mPosition = 0;
+                mPositionTime = now;
+                onChanged();
+                return;
+            }
+            mSong = next;
+            mPosition = 0;
+            onChanged();
+            if (length == 0 && getPlaylist().getSongLength(next) == 0) {
+                // songs of zero length would be skipped forever
+                break;
+            }
+        }
+        mPosition = position;
+        mPositionTime = now;
+    }
+
+}
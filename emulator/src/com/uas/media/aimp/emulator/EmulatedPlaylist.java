@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.emulator;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Playlist of the emulated player. Songs have names and lengths in milliseconds,
+ * and ids which are unique among all playlists like ids of tracks in AIMP.
+ * Is not thread-safe, access is guarded by {@link EmulatedPlayer}.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class EmulatedPlaylist {
+
+    // bytes per millisecond of a 128 kbps file
+    private static final int BYTES_PER_MS = 16;
+    private static final AtomicInteger NEXT_SONG_ID = new AtomicInteger(1);
+
+    private final int mId;
+    private final String mName;
+    private final List<String> mSongNames;
+    private final List<Integer> mSongLengths;
+    private final List<Integer> mSongIds;
+    private long mCrc = -1;
+
+
+    public EmulatedPlaylist(int id, String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("Name is null");
+        }
+        mId = id;
+        mName = name;
+        mSongNames = new ArrayList<String>();
+        mSongLengths = new ArrayList<Integer>();
+        mSongIds = new ArrayList<Integer>();
+    }
+
+    public int getId() {
+        return mId;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public void addSong(String name, int length) {
+        if (name == null) {
+            throw new IllegalArgumentException("Name is null");
+        }
+        if (length < 0) {
+            throw new IllegalArgumentException("Song's length must be not negative. Given value is " + length);
+        }
+        mSongNames.add(name);
+        mSongLengths.add(length);
+        mSongIds.add(NEXT_SONG_ID.getAndIncrement());
+        mCrc = -1;
+    }
+
+    public void removeSong(int position) {
+        mSongNames.remove(position);
+        mSongLengths.remove(position);
+        mSongIds.remove(position);
+        mCrc = -1;
+    }
+
+    public int size() {
+        return mSongNames.size();
+    }
+
+    public String getSongName(int position) {
+        return mSongNames.get(position);
+    }
+
+    public int getSongId(int position) {
+        return mSongIds.get(position);
+    }
+
+    /**
+     * @return Position of the song with the id, -1 if there is no such song
+     */
+    public int indexOfSong(int songId) {
+        return mSongIds.indexOf(songId);
+    }
+
+    /**
+     * Length of the song in milliseconds
+     */
+    public int getSongLength(int position) {
+        return mSongLengths.get(position);
+    }
+
+    /**
+     * Duration of all songs in seconds
+     */
+    public int getDuration() {
+        long duration = 0;
+        for (int length: mSongLengths) {
+            duration += length;
+        }
+        return (int) (duration / 1000);
+    }
+
+    /**
+     * Size of files as if all songs were encoded with 128 kbps
+     */
+    public long getSizeInBytes() {
+        return (long) getDuration() * 1000 * BYTES_PER_MS;
+    }
+
+    /**
+     * Checksum of names and lengths of songs, is changed by any change of the playlist
+     */
+    public long getCrc() {
+        if (mCrc < 0) {
+            CRC32 crc = new CRC32();
+            try {
+                for (int i = 0; i < mSongNames.size(); i++) {
+                    crc.update(mSongNames.get(i).getBytes("UTF-8"));
+                    int length = mSongLengths.get(i);
+                    crc.update(length >>> 24);
+                    crc.update(length >>> 16);
+                    crc.update(length >>> 8);
+                    crc.update(length);
+                }
+            } catch (UnsupportedEncodingException ex) {
+                throw new IllegalStateException(ex);
+            }
+            mCrc = crc.getValue();
+        }
+        return mCrc;
+    }
+
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.emulator;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP/1.1 server of an emulated AIMP plugin, which answers requests using {@link EmulatedPlayer} as the state of AIMP.
+ * Each response passes through {@link NetworkConditions}, so latency, jitter, loss and slow bodies
+ * can be injected. Connections are kept alive and pipelined requests are answered in order.
+ * Each connection is served by its own thread, so a request may be held until the player changes.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public abstract class HttpEmulator {
+
+    private static final int MAX_LINE_LENGTH = 8192;
+    private static final int MAX_BODY_LENGTH = 1024*1024;
+    // slices of slow bodies are sent this often
+    private static final int BODY_SLICE_INTERVAL = 100;
+
+    protected static final byte[] EMPTY = new byte[0];
+
+    private final EmulatedPlayer mPlayer;
+    private final NetworkConditions mConditions;
+
+    private ServerSocket mServerSocket;
+    private Thread mAcceptThread;
+    private final Set<Socket> mSockets = new HashSet<Socket>();
+
+    private final AtomicLong mRequests = new AtomicLong();
+    private final AtomicLong mConnections = new AtomicLong();
+    private final AtomicLong mLostResponses = new AtomicLong();
+
+
+    protected HttpEmulator(EmulatedPlayer player, NetworkConditions conditions) {
+        if (player == null) {
+            throw new IllegalArgumentException("Player is null");
+        }
+        if (conditions == null) {
+            throw new IllegalArgumentException("Conditions is null");
+        }
+        mPlayer = player;
+        mConditions = conditions;
+    }
+
+    public EmulatedPlayer getPlayer() {
+        return mPlayer;
+    }
+
+    public NetworkConditions getConditions() {
+        return mConditions;
+    }
+
+    public long getRequestsCount() {
+        return mRequests.get();
+    }
+
+    public long getConnectionsCount() {
+        return mConnections.get();
+    }
+
+    public long getLostResponsesCount() {
+        return mLostResponses.get();
+    }
+
+    /**
+     * Perform the request and render the response, network conditions are not applied.
+     * @param method Method of the request, e.g. GET
+     * @param target Path with query
+     * @param body Body of the request, empty if it has no body
+     * @return Body of the response or null if the target is unknown
+     * @throws InterruptedException if the emulator is stopped while the request is held
+     */
+    protected abstract byte[] handle(String method, String target, byte[] body) throws IOException, InterruptedException;
+
+    /**
+     * @return Value of Content-Type header of responses
+     */
+    protected abstract String getContentType();
+
+    // ================================================================================
+    // ====================== Server
+
+    /**
+     * Start listening on all interfaces
+     * @param port Port or 0 to choose any free one
+     */
+    public synchronized void start(int port) throws IOException {
+        if (mServerSocket != null) {
+            throw new IllegalStateException("Emulator is already started");
+        }
+        final ServerSocket serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port));
+        mServerSocket = serverSocket;
+        mAcceptThread = new Thread(getClass().getSimpleName() + "-accept") {
+            @Override
+            public void run() {
+                accept(serverSocket);
+            }
+        };
+        mAcceptThread.setDaemon(true);
+        mAcceptThread.start();
+    }
+
+    /**
+     * @return Port the emulator listens on, -1 if it's not started
+     */
+    public synchronized int getPort() {
+        return mServerSocket == null ? -1 : mServerSocket.getLocalPort();
+    }
+
+    /**
+     * Close the server socket and all connections
+     */
+    public void stop() throws InterruptedException {
+        Thread acceptThread;
+        synchronized (this) {
+            if (mServerSocket == null) {
+                return;
+            }
+            closeQuietly(mServerSocket);
+            mServerSocket = null;
+            acceptThread = mAcceptThread;
+            mAcceptThread = null;
+        }
+        acceptThread.join();
+        synchronized (mSockets) {
+            for (Socket socket: mSockets) {
+                closeQuietly(socket);
+            }
+            mSockets.clear();
+        }
+    }
+
+    private void accept(ServerSocket serverSocket) {
+        while (true) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException ex) {
+                // server socket is closed
+                return;
+            }
+            mConnections.incrementAndGet();
+            synchronized (mSockets) {
+                mSockets.add(socket);
+            }
+            Thread thread = new Thread(getClass().getSimpleName() + "-connection-" + mConnections.get()) {
+                @Override
+                public void run() {
+                    try {
+                        serve(socket);
+                    } catch (IOException ex) {
+                        // client has gone
+                    } catch (InterruptedException ex) {
+                        // emulator is stopped
+                    } finally {
+                        closeQuietly(socket);
+                        synchronized (mSockets) {
+                            mSockets.remove(socket);
+                        }
+                    }
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void serve(Socket socket) throws IOException, InterruptedException {
+        socket.setTcpNoDelay(true);
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = socket.getOutputStream();
+        while (true) {
+            String requestLine = readLine(in);
+            if (requestLine == null) {
+                return;
+            }
+            if (requestLine.length() == 0) {
+                // tolerate empty lines between requests
+                continue;
+            }
+            String[] parts = requestLine.split(" ");
+            if (parts.length != 3) {
+                writeResponse(out, 400, "Bad Request", EMPTY, false);
+                return;
+            }
+            boolean isKeepAlive = "HTTP/1.1".equals(parts[2]);
+            int contentLength = 0;
+            String header;
+            while ((header = readLine(in)) != null && header.length() > 0) {
+                int colon = header.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                String name = header.substring(0, colon).trim().toLowerCase(Locale.US);
+                String value = header.substring(colon + 1).trim();
+                if ("connection".equals(name)) {
+                    isKeepAlive = !"close".equalsIgnoreCase(value);
+                } else if ("content-length".equals(name)) {
+                    contentLength = Integer.parseInt(value);
+                }
+            }
+            if (header == null) {
+                return;
+            }
+            if (contentLength > MAX_BODY_LENGTH) {
+                writeResponse(out, 413, "Request Entity Too Large", EMPTY, false);
+                return;
+            }
+            byte[] requestBody = readBody(in, contentLength);
+            mRequests.incrementAndGet();
+
+            byte[] body = handle(parts[0], parts[1], requestBody);
+
+            if (mConditions.nextLoss()) {
+                mLostResponses.incrementAndGet();
+                if (mConditions.isStallOnLoss()) {
+                    // wait until the client gives up
+                    while (in.read() >= 0) {
+                    }
+                }
+                return;
+            }
+            sleep(mConditions.nextDelay());
+            if (body == null) {
+                writeResponse(out, 404, "Not Found", EMPTY, isKeepAlive);
+            } else {
+                writeResponse(out, 200, "OK", body, isKeepAlive);
+            }
+            if (!isKeepAlive) {
+                return;
+            }
+        }
+    }
+
+    private void writeResponse(OutputStream out, int code, String reason, byte[] body, boolean isKeepAlive) throws IOException, InterruptedException {
+        String head = "HTTP/1.1 " + code + " " + reason + "\r\n" +
+                "Content-Type: " + getContentType() + "\r\n" +
+                "Content-Length: " + body.length + "\r\n" +
+                (isKeepAlive ? "" : "Connection: close\r\n") +
+                "\r\n";
+        out.write(head.getBytes("US-ASCII"));
+        int rate = mConditions.getBodyRate();
+        if (rate == 0) {
+            out.write(body);
+        } else {
+            int slice = Math.max(1, rate * BODY_SLICE_INTERVAL / 1000);
+            for (int offset = 0; offset < body.length; offset += slice) {
+                out.write(body, offset, Math.min(slice, body.length - offset));
+                out.flush();
+                sleep(BODY_SLICE_INTERVAL);
+            }
+        }
+        out.flush();
+    }
+
+    // ================================================================================
+    // ================================================================================
+
+
+    /**
+     * Append the string as a JSON literal
+     * @param isEscapeBackslashes false to put backslashes as they are, like WebCtl does
+     */
+    protected static void appendString(StringBuilder json, String value, boolean isEscapeBackslashes) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append(isEscapeBackslashes ? "\\\\" : "\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                    break;
+            }
+        }
+        json.append('"');
+    }
+
+    protected static byte[] toBytes(String text) throws UnsupportedEncodingException {
+        return text.getBytes("UTF-8");
+    }
+
+    /**
+     * @return Line without CRLF or null if the stream has ended before any byte of the line
+     */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) >= 0) {
+            if (b == '\n') {
+                break;
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+            if (line.size() > MAX_LINE_LENGTH) {
+                throw new IOException("Too long line");
+            }
+        }
+        if (b < 0 && line.size() == 0) {
+            return null;
+        }
+        return line.toString("ISO-8859-1");
+    }
+
+    private static byte[] readBody(InputStream in, int length) throws IOException {
+        if (length == 0) {
+            return EMPTY;
+        }
+        byte[] body = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int read = in.read(body, offset, length - offset);
+            if (read < 0) {
+                throw new IOException("Unexpected end of the body");
+            }
+            offset += read;
+        }
+        return body;
+    }
+
+    private static void sleep(int millis) throws InterruptedException {
+        if (millis > 0) {
+            Thread.sleep(millis);
+        }
+    }
+
+    private static void closeQuietly(ServerSocket socket) {
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            // ignore
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            // ignore
+        }
+    }
+
+}
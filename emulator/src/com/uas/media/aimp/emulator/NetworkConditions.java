@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.emulator;
+
+import java.util.Random;
+
+/**
+ * Faults of the network injected by {@link HttpEmulator} into every response:
+ * latency with jitter before the response, loss of the response and slow transfer of the body.
+ * Values can be changed while the emulator is running.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class NetworkConditions {
+
+    private volatile int mLatency;
+    private volatile int mJitter;
+    private volatile double mLossRate;
+    private volatile boolean mStallOnLoss;
+    private volatile int mBodyRate;
+    private final Random mRandom;
+
+
+    public NetworkConditions() {
+        this(System.nanoTime());
+    }
+
+    public NetworkConditions(long seed) {
+        mRandom = new Random(seed);
+    }
+
+    public int getLatency() {
+        return mLatency;
+    }
+
+    /**
+     * Delay in milliseconds before each response
+     */
+    public void setLatency(int latency) {
+        if (latency < 0) {
+            throw new IllegalArgumentException("Latency must be not negative. Given value is " + latency);
+        }
+        mLatency = latency;
+    }
+
+    public int getJitter() {
+        return mJitter;
+    }
+
+    /**
+     * Upper bound of random delay in milliseconds which is added to the latency
+     */
+    public void setJitter(int jitter) {
+        if (jitter < 0) {
+            throw new IllegalArgumentException("Jitter must be not negative. Given value is " + jitter);
+        }
+        mJitter = jitter;
+    }
+
+    public double getLossRate() {
+        return mLossRate;
+    }
+
+    /**
+     * Probability in range [0, 1] that the request is not answered
+     */
+    public void setLossRate(double lossRate) {
+        if (lossRate < 0 || lossRate > 1) {
+            throw new IllegalArgumentException("Loss rate must be in range [0, 1]. Given value is " + lossRate);
+        }
+        mLossRate = lossRate;
+    }
+
+    public boolean isStallOnLoss() {
+        return mStallOnLoss;
+    }
+
+    /**
+     * If true, the connection of lost response stays open until the client closes it,
+     * so the client sees a timeout. Otherwise the connection is closed at once.
+     */
+    public void setStallOnLoss(boolean stallOnLoss) {
+        mStallOnLoss = stallOnLoss;
+    }
+
+    public int getBodyRate() {
+        return mBodyRate;
+    }
+
+    /**
+     * Speed of sending bodies in bytes per second, 0 means no limit
+     */
+    public void setBodyRate(int bodyRate) {
+        if (bodyRate < 0) {
+            throw new IllegalArgumentException("Body rate must be not negative. Given value is " + bodyRate);
+        }
+        mBodyRate = bodyRate;
+    }
+
+    /**
+     * @return Delay of the next response in milliseconds
+     */
+    public int nextDelay() {
+        int jitter = mJitter;
+        if (jitter == 0) {
+            return mLatency;
+        }
+        synchronized (mRandom) {
+            return mLatency + mRandom.nextInt(jitter + 1);
+        }
+    }
+
+    /**
+     * @return true if the next response must be lost
+     */
+    public boolean nextLoss() {
+        double lossRate = mLossRate;
+        if (lossRate == 0) {
+            return false;
+        }
+        synchronized (mRandom) {
+            return mRandom.nextDouble() < lossRate;
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.emulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generator of playlists which look like real ones: names of songs are Windows paths
+ * with Cyrillic, CJK and emoji characters, lengths are from 1 to 10 minutes.
+ * The same seed gives the same playlists.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class PlaylistGenerator {
+
+    private static final String[] ARTISTS = {
+            "Кино", "Ария", "The Beatles", "Daft Punk", "坂本龍一", "Björk", "Сплин", "AC/DC", "Мумий Тролль", "Sigur Rós"
+    };
+    private static final String[] ALBUMS = {
+            "Группа крови", "Abbey Road", "Discovery", "Ёлка 🎄", "Live \"1999\"", "Greatest Hits", "Ночь", "音楽図鑑"
+    };
+    private static final String[] WORDS = {
+            "Звезда", "Love", "по имени", "Солнце", "Night", "Дорога", "夢", "Rain", "Песня", "Город", "Sky", "🎵"
+    };
+
+    private final Random mRandom;
+
+
+    public PlaylistGenerator(long seed) {
+        mRandom = new Random(seed);
+    }
+
+    /**
+     * Generate playlists with ids starting from 1
+     * @param count Count of playlists
+     * @param songs Count of songs in each playlist
+     */
+    public List<EmulatedPlaylist> generate(int count, int songs) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Count of playlists must be not negative. Given value is " + count);
+        }
+        if (songs < 0) {
+            throw new IllegalArgumentException("Count of songs must be not negative. Given value is " + songs);
+        }
+        List<EmulatedPlaylist> result = new ArrayList<EmulatedPlaylist>(count);
+        for (int i = 1; i <= count; i++) {
+            result.add(generatePlaylist(i, songs));
+        }
+        return result;
+    }
+
+    public EmulatedPlaylist generatePlaylist(int id, int songs) {
+        EmulatedPlaylist pl = new EmulatedPlaylist(id, "Плейлист " + id + " - " + pick(WORDS));
+        for (int i = 0; i < songs; i++) {
+            pl.addSong(generateSongName(i), 60000 + mRandom.nextInt(540000));
+        }
+        return pl;
+    }
+
+    /**
+     * Path of a file as AIMP shows it. Parts of the path start with a capital letter or a digit,
+     * so backslashes never form JSON escapes like a line feed or a unicode escape, even if they are not escaped.
+     */
+    public String generateSongName(int number) {
+        String artist = pick(ARTISTS);
+        StringBuilder name = new StringBuilder(96);
+        name.append("D:\\Music\\").append(artist).append("\\").append(pick(ALBUMS)).append("\\");
+        if (number < 9) {
+            name.append('0');
+        }
+        name.append(number + 1).append(". ").append(artist).append(" - ");
+        int words = 1 + mRandom.nextInt(3);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                name.append(' ');
+            }
+            name.append(pick(WORDS));
+        }
+        return name.append(".mp3").toString();
+    }
+
+    private String pick(String[] values) {
+        return values[mRandom.nextInt(values.length)];
+    }
+
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.emulator;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTTP server which answers requests of WebCtlPlugin
+ * the way AIMP Web Control plugin does, using {@link EmulatedPlayer} as the state of AIMP.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class WebCtlEmulator extends HttpEmulator {
+
+    public static final int DEFAULT_PORT = 38475;
+
+    private volatile boolean mEscapeBackslashes;
+
+
+    public WebCtlEmulator(EmulatedPlayer player, NetworkConditions conditions) {
+        super(player, conditions);
+    }
+
+    /**
+     * WebCtl puts backslashes of file names into JSON as they are, which is the default.
+     * If enabled, backslashes are escaped as JSON requires.
+     */
+    public void setEscapeBackslashes(boolean escapeBackslashes) {
+        mEscapeBackslashes = escapeBackslashes;
+    }
+
+    @Override
+    protected byte[] handle(String method, String target, byte[] body) throws IOException {
+        return "GET".equals(method) ? handle(target) : null;
+    }
+
+    @Override
+    protected String getContentType() {
+        return "text/html; charset=utf-8";
+    }
+
+    // ================================================================================
+    // ====================== Actions
+
+    /**
+     * Perform the action of the request and render the response, network conditions are not applied.
+     * @param target Path with query, e.g. "/?action=get_custom_status&status=4"
+     * @return Body of the response or null if the action is unknown
+     */
+    public byte[] handle(String target) throws UnsupportedEncodingException {
+        EmulatedPlayer player = getPlayer();
+        Map<String, String> params = parseQuery(target);
+        String action = params.get("action");
+        if (action == null) {
+            return null;
+        }
+        try {
+            if ("get_playlist_list".equals(action)) {
+                return toBytes(renderPlaylists());
+            } else if ("get_playlist_crc".equals(action)) {
+                return toBytes(renderPlaylistCrc(getInt(params, "id")));
+            } else if ("get_playlist_songs".equals(action)) {
+                return toBytes(renderPlaylistSongs(getInt(params, "id")));
+            } else if ("get_song_current".equals(action)) {
+                return toBytes(renderCurrentSong());
+            } else if ("get_custom_status".equals(action)) {
+                return toBytes(String.valueOf(player.getStatus(getInt(params, "status"))));
+            } else if ("set_custom_status".equals(action)) {
+                player.setStatus(getInt(params, "status"), getInt(params, "value"));
+            } else if ("player_play".equals(action)) {
+                player.play();
+            } else if ("player_stop".equals(action)) {
+                player.stop();
+            } else if ("player_pause".equals(action)) {
+                player.pause();
+            } else if ("player_next".equals(action)) {
+                player.next();
+            } else if ("player_prevous".equals(action) || "player_previous".equals(action)) {
+                // WebCtl has a typo in the action's name
+                player.previous();
+            } else if ("set_song_play".equals(action)) {
+                player.playSong(getInt(params, "playlist"), getInt(params, "song"));
+            } else if ("playlist_del_file".equals(action)) {
+                player.removeSong(getInt(params, "playlist"), getInt(params, "file"));
+            } else {
+                return null;
+            }
+        } catch (NumberFormatException ex) {
+            return toBytes("{\"status\":\"ERROR\"}");
+        }
+        return EMPTY;
+    }
+
+    private String renderPlaylists() {
+        EmulatedPlayer player = getPlayer();
+        StringBuilder json = new StringBuilder("[");
+        synchronized (player) {
+            List<EmulatedPlaylist> playlists = player.getPlaylists();
+            for (int i = 0; i < playlists.size(); i++) {
+                EmulatedPlaylist pl = playlists.get(i);
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append("{\"id\":").append(pl.getId())
+                        .append(",\"duration\":").append(pl.getDuration())
+                        .append(",\"size\":").append(pl.getSizeInBytes())
+                        .append(",\"name\":");
+                appendString(json, pl.getName(), mEscapeBackslashes);
+                json.append('}');
+            }
+        }
+        return json.append(']').toString();
+    }
+
+    private String renderPlaylistCrc(int id) {
+        EmulatedPlayer player = getPlayer();
+        synchronized (player) {
+            EmulatedPlaylist pl = player.getPlaylistById(id);
+            return pl == null ? "0" : String.valueOf(pl.getCrc());
+        }
+    }
+
+    private String renderPlaylistSongs(int id) {
+        EmulatedPlayer player = getPlayer();
+        synchronized (player) {
+            EmulatedPlaylist pl = player.getPlaylistById(id);
+            if (pl == null) {
+                return "{\"status\":\"ERROR\"}";
+            }
+            StringBuilder json = new StringBuilder(pl.size() * 64 + 32);
+            json.append("{\"status\":\"OK\",\"songs\":[");
+            for (int i = 0; i < pl.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append("{\"name\":");
+                appendString(json, pl.getSongName(i), mEscapeBackslashes);
+                json.append(",\"length\":").append(pl.getSongLength(i)).append('}');
+            }
+            return json.append("]}").toString();
+        }
+    }
+
+    private String renderCurrentSong() {
+        EmulatedPlayer player = getPlayer();
+        StringBuilder json = new StringBuilder("{\"status\":\"OK\",\"PlayingList\":");
+        synchronized (player) {
+            json.append(player.getCurrentPlaylistId())
+                    .append(",\"PlayingFile\":").append(player.getCurrentSong())
+                    .append(",\"PlayingFileName\":");
+            appendString(json, player.getCurrentSongName(), mEscapeBackslashes);
+            json.append(",\"length\":").append(player.getCurrentSongLength());
+        }
+        return json.append('}').toString();
+    }
+
+    // ================================================================================
+    // ================================================================================
+
+
+    private static Map<String, String> parseQuery(String target) throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<String, String>();
+        int start = target.indexOf('?');
+        if (start < 0) {
+            return params;
+        }
+        for (String pair: target.substring(start + 1).split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq < 0) {
+                params.put(URLDecoder.decode(pair, "UTF-8"), "");
+            } else {
+                params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+                        URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+
+    private static int getInt(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null) {
+            throw new NumberFormatException("Missed parameter " + name);
+        }
+        return Integer.parseInt(value.trim());
+    }
+
+    // ================================================================================
+    // ====================== Command line
+
+    /**
+     * Run the emulator until the process is killed. With --aimp-control the emulator of AIMP Control Plugin is run.
+     * Options: --port, --playlists, --songs, --seed, --latency, --jitter, --loss, --stall, --body-rate, --escape,
+     * --aimp-control, --hold (ms)
+     */
+    public static void main(String[] args) throws Exception {
+        int port = -1;
+        int playlists = 5;
+        int songs = 1000;
+        long seed = 1;
+        NetworkConditions conditions = new NetworkConditions();
+        boolean isEscape = false;
+        boolean isAimpControl = false;
+        int holdTime = AimpControlEmulator.DEFAULT_HOLD_TIME;
+        List<String> options = new ArrayList<String>();
+        for (String arg: args) {
+            options.add(arg);
+        }
+        for (int i = 0; i < options.size(); i++) {
+            String option = options.get(i);
+            if ("--stall".equals(option)) {
+                conditions.setStallOnLoss(true);
+                continue;
+            }
+            if ("--escape".equals(option)) {
+                isEscape = true;
+                continue;
+            }
+            if ("--aimp-control".equals(option)) {
+                isAimpControl = true;
+                continue;
+            }
+            if (i + 1 >= options.size()) {
+                throw new IllegalArgumentException("Value of " + option + " is missed");
+            }
+            String value = options.get(++i);
+            if ("--port".equals(option)) {
+                port = Integer.parseInt(value);
+            } else if ("--playlists".equals(option)) {
+                playlists = Integer.parseInt(value);
+            } else if ("--songs".equals(option)) {
+                songs = Integer.parseInt(value);
+            } else if ("--seed".equals(option)) {
+                seed = Long.parseLong(value);
+            } else if ("--latency".equals(option)) {
+                conditions.setLatency(Integer.parseInt(value));
+            } else if ("--jitter".equals(option)) {
+                conditions.setJitter(Integer.parseInt(value));
+            } else if ("--loss".equals(option)) {
+                conditions.setLossRate(Double.parseDouble(value));
+            } else if ("--body-rate".equals(option)) {
+                conditions.setBodyRate(Integer.parseInt(value));
+            } else if ("--hold".equals(option)) {
+                holdTime = Integer.parseInt(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+
+        PlaylistGenerator generator = new PlaylistGenerator(seed);
+        EmulatedPlayer player = new EmulatedPlayer(generator.generate(playlists, songs), seed);
+        HttpEmulator emulator;
+        if (isAimpControl) {
+            AimpControlEmulator aimpControl = new AimpControlEmulator(player, conditions);
+            aimpControl.setHoldTime(holdTime);
+            emulator = aimpControl;
+        } else {
+            WebCtlEmulator webCtl = new WebCtlEmulator(player, conditions);
+            webCtl.setEscapeBackslashes(isEscape);
+            emulator = webCtl;
+        }
+        emulator.start(port >= 0 ? port : isAimpControl ? AimpControlEmulator.DEFAULT_PORT : DEFAULT_PORT);
+        System.out.println((isAimpControl ? "AIMP Control" : "WebCtl") + " emulator listens on port " + emulator.getPort() +
+                " with " + playlists + " playlists of " + songs + " songs");
+        while (true) {
+            Thread.sleep(60000);
+            System.out.println("Requests: " + emulator.getRequestsCount() +
+                    ", connections: " + emulator.getConnectionsCount() +
+                    ", lost responses: " + emulator.getLostResponsesCount());
+        }
+    }
+
+}
@@ -56,7 +56,7 @@ import com.bugsense.trace.BugSenseHandler;
 import com.uas.media.aimp.AimpPlayerInstance;
 import com.uas.media.aimp.R;
 import com.uas.media.aimp.api.IPlugin;
-import com.uas.media.aimp.api.impl.WebCtlPlugin;
+import com.uas.media.aimp.api.impl.CachingPlugin;
 import com.uas.media.aimp.api.models.Playlist;
 import com.uas.media.aimp.api.models.Song;
 import com.uas.media.aimp.player.*;
@@ -396,8 +396,8 @@ public class MainActivity extends SherlockFragmentActivity {
     protected void doConnect() {
         try {
             mAimpPlayer.connect(
-                    getApplicationContext(),
-                    new WebCtlPlugin(Settings.getHost(), Settings.getPort()),
+                    new AndroidPlayerPlatform(this),
+                    CachingPlugin.create(Settings.buildPlugin()),
                     Settings.buildSyncParams()
             );
         } catch (AimpException ex) {
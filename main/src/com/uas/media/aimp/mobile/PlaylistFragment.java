@@ -52,6 +52,7 @@ import com.uas.media.aimp.player.StateObserverViaHandler;
 import com.uas.media.aimp.utils.InitErrorHandler;
 import com.uas.media.aimp.utils.Logger;
 
+import java.util.ArrayList;
 import java.util.List;
 
 
@@ -76,6 +77,8 @@ public class PlaylistFragment extends Fragment {
 
     private AimpPlayer mAimpPlayer;
     private SongsAdapter mSongsAdapter;
+    // songs of the playlist which is being reloaded, in order of AIMP, null if the adapter shows the playlist
+    private List<Song> mLoadingSongs;
     private int mPlaylistId;
     private boolean mIsCurrentPlaylist;
     private Song mCurrentSong;
@@ -211,6 +214,7 @@ public class PlaylistFragment extends Fragment {
 
     protected void updateAdapter() {
         Playlist pl = mAimpPlayer.getPlaylistById(mPlaylistId);
+        mLoadingSongs = null;
         mSongsAdapter = new SongsAdapter(getActivity(), pl.getSongs());
         mViewHolder.list.setAdapter(mSongsAdapter);
     }
@@ -231,8 +235,20 @@ public class PlaylistFragment extends Fragment {
         return getString(R.string.playlist_length_format, hours, minutes, seconds);
     }
 
+    /**
+     * Position of the song in AIMP. While the playlist is reloaded, the player has its previous version,
+     * so the song is searched in the loaded songs which are shown
+     */
+    protected int findSongPosition(Playlist playlist, Song s) {
+        return mLoadingSongs != null ? mLoadingSongs.indexOf(s) : playlist.findSongPosition(s);
+    }
+
     protected void onSongClick(Playlist playlist, Song s) {
-        mAimpPlayer.changeSong(playlist.getId(), playlist.findSongPosition(s));
+        int songPosition = findSongPosition(playlist, s);
+        // song can be not found while the playlist is being reloaded
+        if (songPosition != -1) {
+            mAimpPlayer.changeSong(playlist.getId(), songPosition);
+        }
     }
 
     protected void onSongLongClick(final Playlist playlist, final Song s) {
@@ -244,8 +260,10 @@ public class PlaylistFragment extends Fragment {
                     @Override
                     public void onClick(DialogInterface dialog, int which) {
                         Playlist pl = mAimpPlayer.getPlaylistById(mPlaylistId);
-                        int songPosition = pl.findSongPosition(s);
-                        mAimpPlayer.removeSong(mPlaylistId, songPosition);
+                        int songPosition = findSongPosition(pl, s);
+                        if (songPosition != -1) {
+                            mAimpPlayer.removeSong(mPlaylistId, songPosition);
+                        }
                     }
                 })
                 .setCancelable(true)
@@ -298,6 +316,28 @@ public class PlaylistFragment extends Fragment {
             updateAdapter();
             scrollTo(scrollPosition);
         }
+
+        @Override
+        public void onPlaylistChunkLoaded(int playlistId, List<Song> chunk, int loadedCount) {
+            if (playlistId != mPlaylistId || mSongsAdapter == null) {
+                return;
+            }
+
+            // playlist is reloading: show new songs as soon as the first chunk arrives,
+            // the final list is set by onPlaylistsInfoUpdated when loading is completed
+            if (loadedCount == chunk.size()) {
+                mLoadingSongs = new ArrayList<Song>(chunk);
+                mSongsAdapter = new SongsAdapter(getActivity(), mLoadingSongs);
+                mViewHolder.list.setAdapter(mSongsAdapter);
+                scrollTo(mScrollPosition);
+            } else if (mLoadingSongs != null) {
+                mSongsAdapter.setNotifyOnChange(false);
+                for (Song s: chunk) {
+                    mSongsAdapter.add(s);
+                }
+                mSongsAdapter.notifyDataSetChanged();
+            }
+        }
     }
 
     class SrollListener implements AbsListView.OnScrollListener {
@@ -57,6 +57,7 @@ public class SettingsActivity extends SherlockPreferenceActivity {
     private EditTextPreference vHost;
     private EditTextPreference vPort;
     private ListPreference vSyncProfile;
+    private ListPreference vRemotePlugin;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -66,6 +67,7 @@ public class SettingsActivity extends SherlockPreferenceActivity {
         vHost = (EditTextPreference) findPreference(Settings.KEY_HOST);
         vPort = (EditTextPreference) findPreference(Settings.KEY_PORT);
         vSyncProfile = (ListPreference) findPreference(Settings.KEY_SYNC_PROFILE);
+        vRemotePlugin = (ListPreference) findPreference(Settings.KEY_REMOTE_PLUGIN);
 
         ActionBar ab = getSupportActionBar();
         ab.setDisplayHomeAsUpEnabled(true);
@@ -136,14 +138,25 @@ public class SettingsActivity extends SherlockPreferenceActivity {
                 break;
         }
 
+        switch (Settings.getRemotePlugin()) {
+            case Settings.REMOTE_PLUGIN_CONTROL:
+                vRemotePlugin.setSummary(getString(R.string.settings_remote_plugin_control));
+                break;
+            default:
+                vRemotePlugin.setSummary(getString(R.string.settings_remote_plugin_webctl));
+                break;
+        }
+
         if (AimpPlayerInstance.get().isConnected()) {
             vHost.setEnabled(false);
             vPort.setEnabled(false);
             vSyncProfile.setEnabled(false);
+            vRemotePlugin.setEnabled(false);
         } else {
             vHost.setEnabled(true);
             vPort.setEnabled(true);
             vSyncProfile.setEnabled(true);
+            vRemotePlugin.setEnabled(true);
         }
     }
 
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.player;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+/**
+ * Platform of the Android application: the sync engine is hosted by {@link SyncService}
+ * and the main thread is the UI thread
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class AndroidPlayerPlatform implements PlayerPlatform {
+
+    private final Context mContext;
+    private final Executor mMainThreadExecutor;
+    private final PlayerClock mClock;
+    private ServiceConnection mServiceConnection;
+
+
+    public AndroidPlayerPlatform(Context context) {
+        if (context == null) {
+            throw new IllegalArgumentException("Context is null");
+        }
+        mContext = context.getApplicationContext();
+        mMainThreadExecutor = new HandlerExecutor(new Handler(Looper.getMainLooper()));
+        mClock = new SystemPlayerClock();
+    }
+
+    @Override
+    public SyncEngine bindSyncEngine() throws InterruptedException {
+        ServiceConnectionImpl connection = new ServiceConnectionImpl();
+        synchronized (this) {
+            mServiceConnection = connection;
+        }
+        mContext.bindService(
+                new Intent(mContext, SyncService.class),
+                connection,
+                Context.BIND_AUTO_CREATE
+        );
+        connection.mLatch.await();
+        return connection.mService.getEngine();
+    }
+
+    @Override
+    public void unbindSyncEngine(SyncEngine engine) {
+        ServiceConnection connection;
+        synchronized (this) {
+            connection = mServiceConnection;
+            mServiceConnection = null;
+        }
+        if (connection != null) {
+            mContext.unbindService(connection);
+        }
+        mContext.stopService(new Intent(mContext, SyncService.class));
+    }
+
+    @Override
+    public Executor getMainThreadExecutor() {
+        return mMainThreadExecutor;
+    }
+
+    @Override
+    public PlayerClock getClock() {
+        return mClock;
+    }
+
+
+    static class ServiceConnectionImpl implements ServiceConnection {
+        private final CountDownLatch mLatch = new CountDownLatch(1);
+        private volatile SyncService mService;
+
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            mService = ((SyncService.LocalBinder)service).getService();
+            mLatch.countDown();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+
+        }
+    }
+
+}
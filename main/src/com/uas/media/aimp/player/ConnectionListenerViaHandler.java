@@ -32,57 +32,16 @@
 package com.uas.media.aimp.player;
 
 import android.os.Handler;
-import com.uas.media.aimp.api.IPlugin;
 
 /**
+ * Delivers notifications to the thread which has created the instance, usually the UI thread
+ *
  * User: uas.sorokin@gmail.com
  */
-public class ConnectionListenerViaHandler extends ConnectionListener {
-
-    private Handler mHandler;
+public class ConnectionListenerViaHandler extends ConnectionListenerViaExecutor {
 
     public ConnectionListenerViaHandler() {
-        mHandler = new Handler();
-    }
-
-    @Override
-    protected void notifyConnectionStatusChanged(final IPlugin plugin, final AimpPlayer.ConnectionStatus status) {
-        mHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                onConnectionStatusChanged(plugin, status);
-            }
-        });
-    }
-
-    @Override
-    protected void notifyHostNotFound(final IPlugin plugin) {
-        mHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                onHostNotFound(plugin);
-            }
-        });
-    }
-
-    @Override
-    protected void notifyAimpNotFound(final IPlugin plugin) {
-        mHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                onAimpNotFound(plugin);
-            }
-        });
-    }
-
-    @Override
-    protected void notifyUnresolvedError(final IPlugin plugin, final Exception exception) {
-        mHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                onUnresolvedError(plugin, exception);
-            }
-        });
+        super(new HandlerExecutor(new Handler()));
     }
 
-}
\ No newline at end of file
+}
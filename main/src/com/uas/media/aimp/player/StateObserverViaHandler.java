@@ -32,140 +32,16 @@
 package com.uas.media.aimp.player;
 
 import android.os.Handler;
-import com.uas.media.aimp.api.models.Playlist;
-import com.uas.media.aimp.api.models.Song;
-
-import java.util.List;
 
 /**
+ * Delivers notifications to the thread which has created the instance, usually the UI thread
+ *
  * User: uas.sorokin@gmail.com
  */
-public class StateObserverViaHandler extends StateObserver {
-
-    private Handler mHandler;
+public class StateObserverViaHandler extends StateObserverViaExecutor {
 
     public StateObserverViaHandler() {
-        mHandler = new Handler();
-    }
-
-    @Override
-    protected void notifyPlay(final Song song) {
-        mHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                onPlay(song);
-            }
-        });
-    }
-
-    @Override
-    protected void notifyStop(final Song song) {
-        mHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                onStop(song);
-            }
-        });
-    }
-
-    @Override
-    protected void notifyPause(final Song song) {
-        mHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                onPause(song);
-            }
-        });
-    }
-
-    @Override
-    protected void notifyPlaylistsInfoUpdated(final List<Playlist> pls, final Playlist playlist) {
-        mHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                onPlaylistsInfoUpdated(pls, playlist);
-            }
-        });
-    }
-
-    @Override
-    protected void notifyPlaylistUpdated(final Playlist playlist) {
-        mHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                onPlaylistUpdated(playlist);
-            }
-        });
-    }
-
-    @Override
-    protected void notifySongChanged(final Playlist playlist, final Song song, final int position, final double percentage) {
-        mHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                onSongChanged(playlist, song, position, percentage);
-            }
-        });
-    }
-
-    @Override
-    protected void notifySongPlayPositionChanged(final Playlist playlist, final Song song, final int position, final double percentage) {
-        mHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                onSongPlayPositionChanged(playlist, song, position, percentage);
-            }
-        });
-    }
-
-    @Override
-    protected void notifyVolumeChanged(final int volume) {
-        mHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                onVolumeChanged(volume);
-            }
-        });
-    }
-
-    @Override
-    protected void notifyShuffleStateChanged(final boolean state) {
-        mHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                onShuffleStateChanged(state);
-            }
-        });
-    }
-
-    @Override
-    protected void notifyRepeatSongStateChanged(final boolean state) {
-        mHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                onRepeatSongStateChanged(state);
-            }
-        });
-    }
-
-    @Override
-    protected void notifyMuteStateChanged(final boolean state) {
-        mHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                onMuteStateChanged(state);
-            }
-        });
-    }
-
-    @Override
-    protected void notifyDataIsTooLarge() {
-        mHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                onDataIsTooLarge();
-            }
-        });
+        super(new HandlerExecutor(new Handler()));
     }
 
-}
\ No newline at end of file
+}
@@ -36,31 +36,22 @@ import android.content.Intent;
 import android.os.Binder;
 import android.os.IBinder;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
-
 /**
+ * Android host of {@link SyncEngine}, keeps the process alive while players are synced
+ *
  * User: uas.sorokin@gmail.com
  */
 public class SyncService extends Service {
 
-    public interface ErrorsCallback {
-        void onException(Exception ex);
-    }
-
     private IBinder mBinder;
-    private Map<AimpPlayer, Timer> mTimers;
-    private Map<AimpPlayer, ErrorsCallback> mErrorCallbacks;
+    private SyncEngine mEngine;
 
 
     @Override
     public void onCreate() {
         super.onCreate();
         mBinder = new LocalBinder();
-        mTimers = new HashMap<AimpPlayer, Timer>();
-        mErrorCallbacks = new HashMap<AimpPlayer, ErrorsCallback>();
+        mEngine = new SyncEngine();
     }
 
     @Override
@@ -73,9 +64,7 @@ public class SyncService extends Service {
     public void onDestroy() {
         super.onDestroy();
 
-        for (Map.Entry<AimpPlayer, Timer> e: mTimers.entrySet()) {
-            cancelSync(e.getKey());
-        }
+        mEngine.cancelAll();
 
         stopForeground(true);
     }
@@ -85,98 +74,8 @@ public class SyncService extends Service {
         return mBinder;
     }
 
-
-    public void submitSync(AimpPlayer player, SyncParams syncParams, ErrorsCallback callback) {
-        Timer t = new Timer();
-
-        mTimers.put(player, t);
-        mErrorCallbacks.put(player, callback);
-
-        Updaters updaters = new Updaters(player);
-
-        t.scheduleAtFixedRate(
-                updaters.getPlaylistsUpdater(),
-                0, syncParams.getPlaylistsUpdatePeriod());
-        t.scheduleAtFixedRate(
-                updaters.getPlayStateUpdater(),
-                0, syncParams.getPlaystateUpdatePeriod());
-        t.scheduleAtFixedRate(
-                updaters.getCommonsUpdater(),
-                0, syncParams.getOthersUpdatePeriod());
-    }
-
-    public void cancelSync(AimpPlayer player) {
-        Timer t = mTimers.remove(player);
-        t.cancel();
-        t.purge();
-
-        mErrorCallbacks.remove(player);
-    }
-
-
-    class Updaters {
-
-        private AimpPlayer mPlayer;
-        private AimpPlayerPackageLoaders mLoaders;
-
-        Updaters(AimpPlayer player) {
-            mPlayer = player;
-            mLoaders = new AimpPlayerPackageLoaders(mPlayer);
-        }
-
-        protected void notifyException(Exception ex) {
-            ErrorsCallback callback = mErrorCallbacks.get(mPlayer);
-            if (callback != null) {
-                callback.onException(ex);
-            }
-        }
-
-        public TimerTask getPlayStateUpdater() {
-             return new TimerTask() {
-                 @Override
-                 public void run() {
-                     try {
-                         if (mPlayer.hasPlaylists()) {
-                             mLoaders.loadSongPlayPosition();
-                             mLoaders.loadCommons();
-                             mLoaders.loadCurrentSong();
-                         }
-                     } catch (Exception ex) {
-                         notifyException(ex);
-                     }
-                 }
-             };
-        }
-
-        public TimerTask getPlaylistsUpdater() {
-            return new TimerTask() {
-                @Override
-                public void run() {
-                    try {
-                        mLoaders.loadPlaylists(AimpPlayerPackageLoaders.CHECK_HASH_YES);
-                        mLoaders.loadCurrentSong();
-                        mLoaders.loadSongPlayPosition();
-                    } catch (Exception ex) {
-                        notifyException(ex);
-                    }
-                }
-            };
-        }
-
-        public TimerTask getCommonsUpdater() {
-            return new TimerTask() {
-                @Override
-                public void run() {
-                    try {
-                        mLoaders.loadCommons();
-                        mLoaders.loadVolume();
-                    } catch (Exception ex) {
-                        notifyException(ex);
-                    }
-                }
-            };
-        }
-
+    public SyncEngine getEngine() {
+        return mEngine;
     }
 
 
@@ -186,4 +85,4 @@ public class SyncService extends Service {
         }
     }
 
-}
\ No newline at end of file
+}
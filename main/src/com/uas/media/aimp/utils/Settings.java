@@ -34,6 +34,9 @@ package com.uas.media.aimp.utils;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 import com.uas.media.aimp.AppInstance;
+import com.uas.media.aimp.api.IPlugin;
+import com.uas.media.aimp.api.impl.AimpControlPlugin;
+import com.uas.media.aimp.api.impl.WebCtlPlugin;
 import com.uas.media.aimp.player.SyncParams;
 
 /**
@@ -44,11 +47,15 @@ public class Settings {
     public static final String KEY_HOST = "host";
     public static final String KEY_PORT = "port";
     public static final String KEY_SYNC_PROFILE = "sync_profile";
+    public static final String KEY_REMOTE_PLUGIN = "remote_plugin";
 
     public static final int SYNC_FREQUENCY_RARELY = 1;
     public static final int SYNC_FREQUENCY_OPTIMALLY = 2;
     public static final int SYNC_FREQUENCY_OFTEN = 3;
 
+    public static final int REMOTE_PLUGIN_WEBCTL = 1;
+    public static final int REMOTE_PLUGIN_CONTROL = 2;
+
     protected static final String DEFAULT_PORT_VALUE = "38475";
 
 
@@ -87,6 +94,28 @@ public class Settings {
         }
     }
 
+    /**
+     * Plugin of AIMP the app works with, one of REMOTE_PLUGIN_*
+     */
+    public static int getRemotePlugin() {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(AppInstance.getContext());
+        String t = sp.getString(KEY_REMOTE_PLUGIN, "1");
+        if (t.equals("2")) {
+            return REMOTE_PLUGIN_CONTROL;
+        } else {
+            return REMOTE_PLUGIN_WEBCTL;
+        }
+    }
+
+    public static IPlugin buildPlugin() {
+        switch (getRemotePlugin()) {
+            case REMOTE_PLUGIN_CONTROL:
+                return new AimpControlPlugin(getHost(), getPort());
+            default:
+                return new WebCtlPlugin(getHost(), getPort());
+        }
+    }
+
     public static SyncParams buildSyncParams() {
         int freq = getSyncFrequency();
 
@@ -133,7 +133,7 @@ public class PlayerTestActivity extends Activity {
 
     private void exec() throws Exception {
         IPlugin ir = new WebCtlPlugin("192.168.0.200", 38475);
-        mAimpPlayer.connect(this, ir, AimpPlayer.defaultSyncParams());
+        mAimpPlayer.connect(new AndroidPlayerPlatform(this), ir, AimpPlayer.defaultSyncParams());
 
         int stop = 0; stop = 1;
     }
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.api.impl;
+
+import com.uas.media.aimp.api.TrafficMeter;
+import com.uas.media.aimp.emulator.WebCtlEmulator;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Transport which answers requests by {@link WebCtlEmulator#handle(String)} in the calling thread,
+ * without sockets and network conditions. Traffic is counted as if the requests and responses went
+ * over one keep-alive connection of {@link SocketHttpTransport}, so byte counts are comparable with real ones.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class LoopbackHttpTransport implements HttpTransport {
+
+    private final WebCtlEmulator mEmulator;
+    private final TrafficMeter mTrafficMeter;
+    private final Map<String, long[]> mRequestsByAction = new TreeMap<String, long[]>();
+    private long mRequests;
+    private boolean mIsShutdown;
+
+
+    public LoopbackHttpTransport(WebCtlEmulator emulator, TrafficMeter trafficMeter) {
+        if (emulator == null) {
+            throw new IllegalArgumentException("Emulator is null");
+        }
+        if (trafficMeter == null) {
+            throw new IllegalArgumentException("Traffic meter is null");
+        }
+        mEmulator = emulator;
+        mTrafficMeter = trafficMeter;
+    }
+
+    @Override
+    public Response get(String host, int port, String path, String userAgent, int timeout, int connectionWaitTimeout, AbortHandle abort) throws IOException {
+        return send(host, port, path, userAgent, abort);
+    }
+
+    @Override
+    public Response post(String host, int port, String path, String contentType, byte[] body, String userAgent, int timeout, int connectionWaitTimeout, AbortHandle abort) throws IOException {
+        throw new IOException("WebCtl doesn't accept POST requests");
+    }
+
+    @Override
+    public boolean isPipelining() {
+        return true;
+    }
+
+    @Override
+    public List<Response> getPipelined(String host, int port, List<String> paths, String userAgent, int timeout, int connectionWaitTimeout, AbortHandle abort) throws IOException {
+        List<Response> responses = new ArrayList<Response>(paths.size());
+        for (String path: paths) {
+            responses.add(send(host, port, path, userAgent, abort));
+        }
+        return responses;
+    }
+
+    @Override
+    public void setMaxConnections(int max) {
+        // there are no connections
+    }
+
+    @Override
+    public synchronized HttpConnectionPool.Stats getStats() {
+        // everything goes over the same connection
+        return new HttpConnectionPool.Stats(mRequests, Math.max(0, mRequests - 1), mRequests > 0 ? 1 : 0, 0, mIsShutdown ? 0 : 1);
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        mIsShutdown = true;
+    }
+
+    /**
+     * @return Count of requests by the action of WebCtl, sorted by the action
+     */
+    public synchronized Map<String, Long> getRequestsByAction() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, long[]> entry: mRequestsByAction.entrySet()) {
+            result.put(entry.getKey(), entry.getValue()[0]);
+        }
+        return result;
+    }
+
+    public synchronized long getRequestsCount() {
+        return mRequests;
+    }
+
+    /**
+     * Zero counts of requests, traffic is counted by the meter and is reset separately
+     */
+    public synchronized void resetCounters() {
+        mRequests = 0;
+        mRequestsByAction.clear();
+    }
+
+    private Response send(String host, int port, String path, String userAgent, AbortHandle abort) throws IOException {
+        if (abort != null && abort.isAborted()) {
+            throw new InterruptedIOException("Request is aborted");
+        }
+        synchronized (this) {
+            if (mIsShutdown) {
+                throw new IOException("Transport is shut down");
+            }
+            mRequests++;
+            String action = getAction(path);
+            long[] count = mRequestsByAction.get(action);
+            if (count == null) {
+                count = new long[1];
+                mRequestsByAction.put(action, count);
+            }
+            count[0]++;
+        }
+
+        String requestHead = "GET " + path + " HTTP/1.1\r\n" +
+                "Host: " + host + ":" + port + "\r\n" +
+                "User-Agent: " + userAgent + "\r\n" +
+                "Connection: keep-alive\r\n\r\n";
+        mTrafficMeter.addOut(ascii(requestHead).length);
+
+        byte[] body = mEmulator.handle(path);
+        String responseHead = (body == null ? "HTTP/1.1 404 Not Found\r\n" : "HTTP/1.1 200 OK\r\n") +
+                "Content-Type: text/html; charset=utf-8\r\n" +
+                "Content-Length: " + (body == null ? 0 : body.length) + "\r\n\r\n";
+        if (body == null) {
+            body = new byte[0];
+        }
+        mTrafficMeter.addIn(ascii(responseHead).length + body.length);
+
+        final InputStream content = new ByteArrayInputStream(body);
+        return new Response() {
+            @Override
+            public InputStream getContent() {
+                return content;
+            }
+
+            @Override
+            public void release() {
+                // nothing to read out
+            }
+
+            @Override
+            public void abort() {
+                // nothing to drop
+            }
+        };
+    }
+
+    private static String getAction(String path) {
+        int start = path.indexOf("action=");
+        if (start < 0) {
+            return TrafficMeter.UNKNOWN;
+        }
+        start += "action=".length();
+        int end = path.indexOf('&', start);
+        return end < 0 ? path.substring(start) : path.substring(start, end);
+    }
+
+    private static byte[] ascii(String s) throws UnsupportedEncodingException {
+        return s.getBytes("US-ASCII");
+    }
+
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.simulation;
+
+import com.uas.media.aimp.api.IPushPlugin;
+import com.uas.media.aimp.api.Statuses;
+import com.uas.media.aimp.api.impl.AimpControlPlugin;
+import com.uas.media.aimp.api.models.CurrentSongInfo;
+import com.uas.media.aimp.api.models.Playlist;
+import com.uas.media.aimp.api.models.Song;
+import com.uas.media.aimp.api.models.StatusSnapshot;
+import com.uas.media.aimp.emulator.AimpControlEmulator;
+import com.uas.media.aimp.emulator.EmulatedPlayer;
+import com.uas.media.aimp.emulator.EmulatedPlaylist;
+import com.uas.media.aimp.emulator.NetworkConditions;
+import com.uas.media.aimp.emulator.PlaylistGenerator;
+import com.uas.media.aimp.player.AimpException;
+import com.uas.media.aimp.player.AimpPlayer;
+import com.uas.media.aimp.player.JvmPlayerPlatform;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs AimpControlPlugin and AimpPlayer against {@link AimpControlEmulator} over sockets of the local host.
+ * Reads of several values must cost one round trip, and {@link IPushPlugin#waitForChanges()} must return
+ * soon after a change and must not repeat requests while nothing changes. Changes are pushed,
+ * so unlike {@link Simulation} it runs on the wall clock and takes several hold times of the emulator.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class AimpControlCheck {
+
+    // a change is made this long after the request is sent, so the request is held by then
+    private static final int CHANGE_DELAY = 300;
+    private static final int WAIT_STEP = 10;
+
+    private long mSeed = 1;
+    private int mHoldTime = 2000;
+    private long mMaxLatency = 1000;
+    private final List<String> mFailures = new ArrayList<String>();
+
+    private EmulatedPlayer mAimp;
+    private AimpControlEmulator mEmulator;
+
+
+    public void setSeed(long seed) {
+        mSeed = seed;
+    }
+
+    /**
+     * @param holdTime How long the emulator holds requests of changes, in milliseconds
+     */
+    public void setHoldTime(int holdTime) {
+        if (holdTime <= CHANGE_DELAY) {
+            throw new IllegalArgumentException("Hold time must be longer than " + CHANGE_DELAY + " ms. Given value is " + holdTime);
+        }
+        mHoldTime = holdTime;
+    }
+
+    /**
+     * @param maxLatency How soon a change must be seen, in milliseconds
+     */
+    public void setMaxLatency(long maxLatency) {
+        if (maxLatency <= 0) {
+            throw new IllegalArgumentException("Max latency must be positive. Given value is " + maxLatency);
+        }
+        mMaxLatency = maxLatency;
+    }
+
+    /**
+     * @return Descriptions of failed checks, empty if all checks have passed
+     */
+    public List<String> run() throws Exception {
+        mFailures.clear();
+        mAimp = new EmulatedPlayer(new PlaylistGenerator(mSeed).generate(3, 200), mSeed);
+        mAimp.play();
+        mEmulator = new AimpControlEmulator(mAimp, new NetworkConditions(mSeed));
+        mEmulator.setHoldTime(mHoldTime);
+        mEmulator.start(0);
+        try {
+            checkBatchReads();
+            checkLongPoll();
+            checkPushSync();
+        } finally {
+            mEmulator.stop();
+        }
+        return mFailures;
+    }
+
+    // ================================================================================
+    // ====================== Checks
+
+    private void checkBatchReads() throws Exception {
+        AimpControlPlugin plugin = createPlugin();
+        try {
+            int[] statuses = {Statuses.VOLUME, Statuses.MUTE, Statuses.REPEAT_SONG, Statuses.SHUFFLE, Statuses.PLAY};
+            long requests = mEmulator.getRequestsCount();
+            StatusSnapshot snapshot = plugin.getCustomStatuses(statuses);
+            report("statuses", requests, 1);
+            for (int status: statuses) {
+                expect("status " + status, mAimp.getStatus(status), snapshot.getInt(status));
+            }
+
+            requests = mEmulator.getRequestsCount();
+            CurrentSongInfo si = plugin.getCurrentSongInfo();
+            // state of the control panel, then the position and the info of the song by one batch
+            report("current song", requests, 2);
+            synchronized (mAimp) {
+                expect("current playlist", mAimp.getCurrentPlaylistId(), si.getPlaylistId());
+                expect("current song", mAimp.getCurrentSong(), si.getSongPosition());
+                expect("current song's name", mAimp.getCurrentSongName(), si.getInfo().getName());
+            }
+
+            List<Playlist> playlists = plugin.getPlaylists();
+            expect("playlists", mAimp.getPlaylists().size(), playlists.size());
+            for (Playlist pl: playlists) {
+                List<Song> songs = plugin.getPlaylistSongs(pl.getId());
+                synchronized (mAimp) {
+                    EmulatedPlaylist aimpPl = mAimp.getPlaylistById(pl.getId());
+                    expect("songs of playlist " + pl.getId(), aimpPl.size(), songs.size());
+                    expect("hash of playlist " + pl.getId(), String.valueOf(aimpPl.getCrc()), pl.getHash());
+                }
+            }
+        } finally {
+            plugin.release();
+        }
+    }
+
+    private void checkLongPoll() throws Exception {
+        AimpControlPlugin plugin = createPlugin();
+        try {
+            expect("first changes", IPushPlugin.CHANGE_ALL, plugin.waitForChanges());
+
+            checkChange(plugin, "volume", IPushPlugin.CHANGE_CONTROLS, new Runnable() {
+                @Override
+                public void run() {
+                    mAimp.setStatus(EmulatedPlayer.STATUS_VOLUME, 20);
+                }
+            });
+            checkChange(plugin, "next song", IPushPlugin.CHANGE_CURRENT_SONG, new Runnable() {
+                @Override
+                public void run() {
+                    mAimp.next();
+                }
+            });
+            checkChange(plugin, "pause", IPushPlugin.CHANGE_PLAY_STATE, new Runnable() {
+                @Override
+                public void run() {
+                    mAimp.pause();
+                }
+            });
+            checkChange(plugin, "removed song", IPushPlugin.CHANGE_PLAYLISTS, new Runnable() {
+                @Override
+                public void run() {
+                    removeSongOfOtherPlaylist();
+                }
+            });
+
+            // the paused player doesn't change by itself
+            long requests = mEmulator.getRequestsCount();
+            long startTime = System.currentTimeMillis();
+            int changes = plugin.waitForChanges();
+            long elapsed = System.currentTimeMillis() - startTime;
+            expect("changes of the idle player", 0, changes);
+            // the state is read after the previous changes, and then the request is held
+            report("idle long poll", requests, 2);
+            if (elapsed < mHoldTime) {
+                fail("idle long poll has returned in " + elapsed + " ms, hold time is " + mHoldTime + " ms");
+            }
+            System.out.println("idle long poll: " + elapsed + " ms");
+        } finally {
+            plugin.release();
+        }
+    }
+
+    /**
+     * Make the change while the request of changes is held, and check that it's returned in time
+     */
+    private void checkChange(IPushPlugin plugin, String name, int expected, final Runnable change) throws Exception {
+        final long[] changeTime = new long[1];
+        Thread changer = new Thread("AimpControlCheck-change") {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(CHANGE_DELAY);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                changeTime[0] = System.currentTimeMillis();
+                change.run();
+            }
+        };
+        long requests = mEmulator.getRequestsCount();
+        changer.start();
+        int changes = plugin.waitForChanges();
+        long latency = System.currentTimeMillis() - changeTime[0];
+        changer.join();
+
+        // the state is read after the previous changes, and then the request is held
+        report(name, requests, 2);
+        if ((changes & expected) == 0) {
+            fail(name + " is not reported, changes are " + changes);
+        } else if (latency > mMaxLatency) {
+            fail(name + " is reported in " + latency + " ms, limit is " + mMaxLatency + " ms");
+        }
+        System.out.println(name + ": reported in " + latency + " ms");
+    }
+
+    private void checkPushSync() throws Exception {
+        AimpControlPlugin plugin = createPlugin();
+        Simulation.SimulatedPhone phone = new Simulation.SimulatedPhone();
+        phone.connect(new JvmPlayerPlatform(), plugin, AimpPlayer.defaultSyncParams());
+        phone.awaitConnect();
+        if (!phone.isConnected()) {
+            throw new AimpException("Phone has not connected to the emulator");
+        }
+        try {
+            awaitHeld();
+            mAimp.setStatus(EmulatedPlayer.STATUS_VOLUME, 70);
+            awaitPhone("volume on the phone", phone, new Condition() {
+                @Override
+                boolean isMet(AimpPlayer phone) {
+                    return phone.getVolume() == 70;
+                }
+            });
+
+            // the player is paused by the check of the long poll, so it's resumed
+            awaitHeld();
+            mAimp.pause();
+            awaitPhone("play state on the phone", phone, new Condition() {
+                @Override
+                boolean isMet(AimpPlayer phone) {
+                    return phone.getPlayState() == AimpPlayer.PlayState.PLAYING;
+                }
+            });
+
+            awaitHeld();
+            mAimp.next();
+            final String song = mAimp.getCurrentSongName();
+            awaitPhone("song on the phone", phone, new Condition() {
+                @Override
+                boolean isMet(AimpPlayer phone) {
+                    Song current = phone.getCurrentSong();
+                    return current != null && song.equals(current.getName());
+                }
+            });
+
+            // nothing changes, so only the held requests are sent
+            awaitHeld();
+            long requests = mEmulator.getRequestsCount();
+            Thread.sleep(mHoldTime * 2 + CHANGE_DELAY);
+            long sent = mEmulator.getRequestsCount() - requests;
+            System.out.println("idle push sync: " + sent + " requests in " + (mHoldTime * 2 + CHANGE_DELAY) + " ms");
+            if (sent > 3) {
+                fail("idle push sync has sent " + sent + " requests in two hold times");
+            }
+        } finally {
+            phone.disconnect();
+        }
+    }
+
+    // ================================================================================
+    // ================================================================================
+
+
+    private AimpControlPlugin createPlugin() {
+        AimpControlPlugin plugin = new AimpControlPlugin("127.0.0.1", mEmulator.getPort());
+        plugin.setLongPollTimeout(mHoldTime + AimpControlPlugin.DEFAULT_REQUEST_TIMEOUT);
+        return plugin;
+    }
+
+    private void removeSongOfOtherPlaylist() {
+        synchronized (mAimp) {
+            for (EmulatedPlaylist pl: mAimp.getPlaylists()) {
+                if (pl.getId() != mAimp.getCurrentPlaylistId() && pl.size() > 0) {
+                    mAimp.removeSong(pl.getId(), 0);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A change made before the server holds the request of changes is returned when the hold expires,
+     * so the phone is given time to load the previous changes and subscribe again
+     */
+    private void awaitHeld() throws InterruptedException {
+        Thread.sleep(CHANGE_DELAY);
+    }
+
+    private void awaitPhone(String name, AimpPlayer phone, Condition condition) throws InterruptedException {
+        long startTime = System.currentTimeMillis();
+        while (!condition.isMet(phone)) {
+            long elapsed = System.currentTimeMillis() - startTime;
+            if (elapsed > mMaxLatency) {
+                fail(name + " is not changed in " + mMaxLatency + " ms");
+                return;
+            }
+            Thread.sleep(WAIT_STEP);
+        }
+        System.out.println(name + ": changed in " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    private void report(String name, long requestsBefore, long expected) {
+        long sent = mEmulator.getRequestsCount() - requestsBefore;
+        System.out.println(name + ": " + sent + (sent == 1 ? " request" : " requests"));
+        if (sent != expected) {
+            fail(name + " has sent " + sent + " requests, expected " + expected);
+        }
+    }
+
+    private void expect(String name, Object expected, Object actual) {
+        if (!expected.equals(actual)) {
+            fail(name + " is " + actual + ", expected " + expected);
+        }
+    }
+
+    private void fail(String failure) {
+        mFailures.add(failure);
+    }
+
+
+
+    /**
+     * Run the checks and print the results. Exits with code 1 if a check fails, so it can be a step of a build.
+     * Options: --seed, --hold (ms), --max-latency (ms)
+     */
+    public static void main(String[] args) throws Exception {
+        AimpControlCheck check = new AimpControlCheck();
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Value of " + option + " is missed");
+            }
+            String value = args[++i];
+            if ("--seed".equals(option)) {
+                check.setSeed(Long.parseLong(value));
+            } else if ("--hold".equals(option)) {
+                check.setHoldTime(Integer.parseInt(value));
+            } else if ("--max-latency".equals(option)) {
+                check.setMaxLatency(Long.parseLong(value));
+            } else {
+                throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+
+        List<String> failures = check.run();
+        for (String failure: failures) {
+            System.out.println("FAILED: " + failure);
+        }
+        System.exit(failures.isEmpty() ? 0 : 1);
+    }
+
+    private abstract static class Condition {
+        abstract boolean isMet(AimpPlayer phone);
+    }
+
+}
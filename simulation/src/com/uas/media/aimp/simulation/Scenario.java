@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.simulation;
+
+import com.uas.media.aimp.emulator.EmulatedPlayer;
+import com.uas.media.aimp.emulator.EmulatedPlaylist;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Script of the user's actions on the PC, sorted by time
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class Scenario {
+
+    public static final String NEXT = "next";
+    public static final String PREVIOUS = "previous";
+    public static final String PLAY_SONG = "play_song";
+    public static final String SEEK = "seek";
+    public static final String VOLUME = "volume";
+    public static final String PAUSE = "pause";
+    public static final String STOP_OR_PLAY = "stop_or_play";
+    public static final String SHUFFLE = "shuffle";
+    public static final String REPEAT = "repeat";
+    public static final String MUTE = "mute";
+    public static final String REMOVE_SONG = "remove_song";
+
+    // kinds of random events and how often they happen relatively to each other
+    private static final String[] KINDS = {
+            NEXT, PREVIOUS, PLAY_SONG, SEEK, VOLUME, PAUSE, STOP_OR_PLAY, SHUFFLE, REPEAT, MUTE, REMOVE_SONG
+    };
+    private static final int[] WEIGHTS = {
+            30,   5,        10,        15,   15,     8,     5,            3,       3,      3,    3
+    };
+
+    private final List<ScriptedEvent> mEvents = new ArrayList<ScriptedEvent>();
+
+
+    public Scenario() {
+    }
+
+    public Scenario(List<ScriptedEvent> events) {
+        for (ScriptedEvent event: events) {
+            add(event);
+        }
+    }
+
+    /**
+     * Add the event, events of the same time are applied in order of adding
+     */
+    public void add(ScriptedEvent event) {
+        if (event == null) {
+            throw new IllegalArgumentException("Event is null");
+        }
+        int i = mEvents.size();
+        while (i > 0 && mEvents.get(i - 1).getTime() > event.getTime()) {
+            i--;
+        }
+        mEvents.add(i, event);
+    }
+
+    public List<ScriptedEvent> getEvents() {
+        return Collections.unmodifiableList(mEvents);
+    }
+
+    /**
+     * Random actions of a user who listens to music and sometimes touches the player
+     * @param seed Seed of the random, the same seed gives the same scenario
+     * @param duration Length of the scenario in milliseconds
+     * @param meanInterval Mean time between the actions in milliseconds
+     */
+    public static Scenario random(long seed, long duration, int meanInterval) {
+        if (meanInterval <= 0) {
+            throw new IllegalArgumentException("Interval must be positive. Given value is " + meanInterval);
+        }
+        final Random random = new Random(seed);
+        int weightsSum = 0;
+        for (int weight: WEIGHTS) {
+            weightsSum += weight;
+        }
+
+        Scenario scenario = new Scenario();
+        long time = 0;
+        while (true) {
+            // exponential intervals, as the actions are independent
+            time += (long) (-Math.log(1.0 - random.nextDouble()) * meanInterval);
+            if (time >= duration) {
+                return scenario;
+            }
+            int pick = random.nextInt(weightsSum);
+            int kind = 0;
+            while (pick >= WEIGHTS[kind]) {
+                pick -= WEIGHTS[kind];
+                kind++;
+            }
+            scenario.add(create(KINDS[kind], time, random.nextInt(Integer.MAX_VALUE)));
+        }
+    }
+
+    /**
+     * Event of one of the kinds of this class
+     * @param argument Non-negative number which chooses the song, the position or the value of the event
+     */
+    public static ScriptedEvent create(String kind, long time, final int argument) {
+        if (NEXT.equals(kind)) {
+            return new ScriptedEvent(time, kind) {
+                @Override
+                public void apply(EmulatedPlayer player) {
+                    player.next();
+                }
+            };
+        } else if (PREVIOUS.equals(kind)) {
+            return new ScriptedEvent(time, kind) {
+                @Override
+                public void apply(EmulatedPlayer player) {
+                    player.previous();
+                }
+            };
+        } else if (PLAY_SONG.equals(kind)) {
+            return new ScriptedEvent(time, kind) {
+                @Override
+                public void apply(EmulatedPlayer player) {
+                    synchronized (player) {
+                        List<EmulatedPlaylist> playlists = player.getPlaylists();
+                        if (!playlists.isEmpty()) {
+                            EmulatedPlaylist pl = playlists.get(argument % playlists.size());
+                            if (pl.size() > 0) {
+                                player.playSong(pl.getId(), argument % pl.size());
+                            }
+                        }
+                    }
+                }
+            };
+        } else if (SEEK.equals(kind)) {
+            return new ScriptedEvent(time, kind) {
+                @Override
+                public void apply(EmulatedPlayer player) {
+                    int length = player.getCurrentSongLength();
+                    if (length > 0) {
+                        player.setStatus(EmulatedPlayer.STATUS_POSITION, argument % length);
+                    }
+                }
+            };
+        } else if (VOLUME.equals(kind)) {
+            return new ScriptedEvent(time, kind) {
+                @Override
+                public void apply(EmulatedPlayer player) {
+                    player.setStatus(EmulatedPlayer.STATUS_VOLUME, argument % 101);
+                }
+            };
+        } else if (PAUSE.equals(kind)) {
+            return new ScriptedEvent(time, kind) {
+                @Override
+                public void apply(EmulatedPlayer player) {
+                    player.pause();
+                }
+            };
+        } else if (STOP_OR_PLAY.equals(kind)) {
+            return new ScriptedEvent(time, kind) {
+                @Override
+                public void apply(EmulatedPlayer player) {
+                    synchronized (player) {
+                        if (player.getState() == EmulatedPlayer.STATE_STOPPED) {
+                            player.play();
+                        } else {
+                            player.stop();
+                        }
+                    }
+                }
+            };
+        } else if (SHUFFLE.equals(kind) || REPEAT.equals(kind) || MUTE.equals(kind)) {
+            final int status = SHUFFLE.equals(kind)
+                    ? EmulatedPlayer.STATUS_SHUFFLE
+                    : REPEAT.equals(kind) ? EmulatedPlayer.STATUS_REPEAT_SONG : EmulatedPlayer.STATUS_MUTE;
+            return new ScriptedEvent(time, kind) {
+                @Override
+                public void apply(EmulatedPlayer player) {
+                    synchronized (player) {
+                        player.setStatus(status, player.getStatus(status) == 0 ? 1 : 0);
+                    }
+                }
+            };
+        } else if (REMOVE_SONG.equals(kind)) {
+            return new ScriptedEvent(time, kind) {
+                @Override
+                public void apply(EmulatedPlayer player) {
+                    synchronized (player) {
+                        List<EmulatedPlaylist> playlists = player.getPlaylists();
+                        if (!playlists.isEmpty()) {
+                            EmulatedPlaylist pl = playlists.get(argument % playlists.size());
+                            if (pl.size() > 0) {
+                                player.removeSong(pl.getId(), argument % pl.size());
+                            }
+                        }
+                    }
+                }
+            };
+        }
+        throw new IllegalArgumentException("Unknown kind of event: " + kind);
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.simulation;
+
+import com.uas.media.aimp.emulator.EmulatedPlayer;
+
+/**
+ * Action which the user makes on the PC at the given time of a simulation
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public abstract class ScriptedEvent {
+
+    private final long mTime;
+    private final String mName;
+
+
+    /**
+     * @param time Time of the event in milliseconds from the start of the simulation
+     * @param name Name for reports, events of the same kind must have the same name
+     */
+    protected ScriptedEvent(long time, String name) {
+        if (time < 0) {
+            throw new IllegalArgumentException("Time must be not negative. Given value is " + time);
+        }
+        if (name == null) {
+            throw new IllegalArgumentException("Name is null");
+        }
+        mTime = time;
+        mName = name;
+    }
+
+    public long getTime() {
+        return mTime;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Change the state of AIMP
+     */
+    public abstract void apply(EmulatedPlayer player);
+
+    @Override
+    public String toString() {
+        return mName + "@" + mTime;
+    }
+
+}
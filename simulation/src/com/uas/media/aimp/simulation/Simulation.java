@@ -0,0 +1,509 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.simulation;
+
+import com.uas.media.aimp.api.ApiException;
+import com.uas.media.aimp.api.impl.CachingPlugin;
+import com.uas.media.aimp.api.impl.LoopbackWebCtlPlugin;
+import com.uas.media.aimp.api.models.Playlist;
+import com.uas.media.aimp.api.models.Song;
+import com.uas.media.aimp.emulator.EmulatedPlayer;
+import com.uas.media.aimp.emulator.EmulatedPlaylist;
+import com.uas.media.aimp.emulator.NetworkConditions;
+import com.uas.media.aimp.emulator.PlaylistGenerator;
+import com.uas.media.aimp.emulator.WebCtlEmulator;
+import com.uas.media.aimp.player.AimpException;
+import com.uas.media.aimp.player.AimpPlayer;
+import com.uas.media.aimp.player.JvmPlayerPlatform;
+import com.uas.media.aimp.player.SyncParams;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Runs AimpPlayer with its sync engine and song position updater on a {@link VirtualPlayerClock}
+ * against an emulated AIMP, which is changed by a {@link Scenario}. Requests are answered in the same
+ * thread without delays, so the phone is late only because of polling, and hours are simulated in seconds.
+ * The same parameters give the same report.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class Simulation {
+
+    // any fixed wall time, so the times of runs don't differ
+    private static final long START_TIME = 1364774400000L;
+
+    // the phone counts seconds by itself, so it may be a second off
+    private static final int POSITION_TOLERANCE = 1;
+
+    private long mSeed = 1;
+    private long mDuration = 60 * 60 * 1000;
+    private int mPlaylistsCount = 3;
+    private int mSongsCount = 200;
+    private int mEventsInterval = 90 * 1000;
+    private SyncParams mSyncParams = AimpPlayer.defaultSyncParams();
+    private Scenario mScenario;
+    private boolean mIsCache;
+
+    private VirtualPlayerClock mClock;
+    private EmulatedPlayer mAimp;
+    private SimulatedPhone mPhone;
+    private int mPositionJumps;
+    private int mMaxPositionDrift;
+
+
+    public void setSeed(long seed) {
+        mSeed = seed;
+    }
+
+    /**
+     * @param duration Simulated time in milliseconds
+     */
+    public void setDuration(long duration) {
+        if (duration <= 0) {
+            throw new IllegalArgumentException("Duration must be positive. Given value is " + duration);
+        }
+        mDuration = duration;
+    }
+
+    public void setPlaylists(int playlistsCount, int songsCount) {
+        if (playlistsCount < 1) {
+            throw new IllegalArgumentException("There must be at least one playlist. Given value is " + playlistsCount);
+        }
+        if (songsCount < 1) {
+            throw new IllegalArgumentException("There must be at least one song. Given value is " + songsCount);
+        }
+        mPlaylistsCount = playlistsCount;
+        mSongsCount = songsCount;
+    }
+
+    /**
+     * @param interval Mean time between the random actions of the user in milliseconds
+     */
+    public void setEventsInterval(int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval must be positive. Given value is " + interval);
+        }
+        mEventsInterval = interval;
+    }
+
+    public void setSyncParams(SyncParams syncParams) {
+        if (syncParams == null) {
+            throw new IllegalArgumentException("Sync params is null");
+        }
+        mSyncParams = syncParams;
+    }
+
+    /**
+     * @param scenario Actions of the user, null for random ones
+     */
+    public void setScenario(Scenario scenario) {
+        mScenario = scenario;
+    }
+
+    /**
+     * @param isCache Whether the phone reads through {@link CachingPlugin} with default TTLs
+     */
+    public void setCache(boolean isCache) {
+        mIsCache = isCache;
+    }
+
+    public SimulationReport run() throws AimpException, InterruptedException {
+        mClock = new VirtualPlayerClock(START_TIME);
+        mPositionJumps = 0;
+        mMaxPositionDrift = 0;
+
+        List<EmulatedPlaylist> playlists = new PlaylistGenerator(mSeed).generate(mPlaylistsCount, mSongsCount);
+        mAimp = new EmulatedPlayer(playlists, mSeed) {
+            @Override
+            protected long now() {
+                return mClock.currentTimeMillis();
+            }
+        };
+        mAimp.play();
+
+        WebCtlEmulator emulator = new WebCtlEmulator(mAimp, new NetworkConditions(mSeed));
+        // names must come to the phone as they are, to be compared
+        emulator.setEscapeBackslashes(true);
+        LoopbackWebCtlPlugin plugin = new LoopbackWebCtlPlugin(emulator);
+        CachingPlugin cache = !mIsCache ? null : new CachingPlugin(plugin) {
+            @Override
+            protected long now() {
+                return mClock.currentTimeMillis();
+            }
+        };
+
+        mPhone = new SimulatedPhone();
+        mPhone.connect(new JvmPlayerPlatform(mClock), cache != null ? cache : plugin, mSyncParams);
+        mPhone.awaitConnect();
+        if (!mPhone.isConnected()) {
+            throw new AimpException("Phone has not connected to the emulator");
+        }
+        // loading of the whole state on connect is not a part of the sync
+        plugin.getTrafficMeter().reset();
+        plugin.getLoopback().resetCounters();
+
+        Scenario scenario = mScenario != null ? mScenario : Scenario.random(mSeed, mDuration, mEventsInterval);
+        List<StateField> fields = createFields();
+        SimulationReport report = new SimulationReport(mDuration, mSyncParams, fields);
+
+        List<ScriptedEvent> events = scenario.getEvents();
+        int nextEvent = 0;
+        long end = START_TIME + mDuration;
+        sample(fields);
+        while (true) {
+            // AIMP changes only by the events and by the end of songs, the phone only by the timers
+            long songEndTime = getSongEndTime();
+            long time = Math.min(end, Math.min(mClock.getNextTaskTime(), songEndTime));
+            if (nextEvent < events.size()) {
+                time = Math.min(time, START_TIME + events.get(nextEvent).getTime());
+            }
+            mClock.advanceTo(time);
+            if (time == songEndTime) {
+                // a repeated song has the same name, so it's noticed only by the position
+                mPositionJumps++;
+                report.addSongEnd();
+            }
+            while (nextEvent < events.size() && START_TIME + events.get(nextEvent).getTime() <= time) {
+                ScriptedEvent event = events.get(nextEvent++);
+                long position = mAimp.getPosition();
+                String song = getAimpSong();
+                event.apply(mAimp);
+                // seek, start of a song or stop
+                if (position != mAimp.getPosition() || !song.equals(getAimpSong())) {
+                    mPositionJumps++;
+                }
+                report.addEvent(event);
+            }
+            sample(fields);
+            if (time >= end) {
+                break;
+            }
+        }
+
+        report.setMaxPositionDrift(mMaxPositionDrift);
+        report.setRequests(plugin.getLoopback().getRequestsByAction());
+        report.setTraffic(plugin.getTrafficMeter().getTotalIn(), plugin.getTrafficMeter().getTotalOut(),
+                plugin.getTrafficMeter().getScopesUsage());
+        if (cache != null) {
+            report.setCacheStats(cache.getStats());
+        }
+
+        mPhone.disconnect();
+        return report;
+    }
+
+    private void sample(List<StateField> fields) {
+        long now = mClock.currentTimeMillis() - START_TIME;
+        boolean isPending = false;
+        for (StateField field: fields) {
+            field.sample(now);
+            isPending |= field.isPending();
+        }
+
+        synchronized (mAimp) {
+            // drift of the position which the phone counts by itself between the loads of the state
+            if (!isPending && mAimp.getState() == EmulatedPlayer.STATE_PLAYING) {
+                int drift = Math.abs(mPhone.getSongPlayPosition() - (int) (mAimp.getPosition() / 1000));
+                mMaxPositionDrift = Math.max(mMaxPositionDrift, drift);
+            }
+        }
+    }
+
+    /**
+     * @return Time when the current song of AIMP ends, Long.MAX_VALUE if it's not playing
+     */
+    private long getSongEndTime() {
+        synchronized (mAimp) {
+            if (mAimp.getState() != EmulatedPlayer.STATE_PLAYING) {
+                return Long.MAX_VALUE;
+            }
+            EmulatedPlaylist pl = mAimp.getPlaylistById(mAimp.getCurrentPlaylistId());
+            long left = pl.getSongLength(mAimp.getCurrentSong()) - mAimp.getPosition();
+            return mClock.currentTimeMillis() + Math.max(1, left);
+        }
+    }
+
+    // ================================================================================
+    // ====================== Fields
+
+    private List<StateField> createFields() {
+        List<StateField> fields = new ArrayList<StateField>();
+        fields.add(new StateField("song") {
+            @Override
+            protected Object getTruth() {
+                return getAimpSong();
+            }
+
+            @Override
+            protected boolean isConverged(Object truth) {
+                return truth.equals(getPhoneSong());
+            }
+        });
+        fields.add(new StateField("play_state") {
+            @Override
+            protected Object getTruth() {
+                switch (mAimp.getState()) {
+                    case EmulatedPlayer.STATE_PLAYING:
+                        return AimpPlayer.PlayState.PLAYING;
+                    case EmulatedPlayer.STATE_PAUSED:
+                        return AimpPlayer.PlayState.PAUSED;
+                    default:
+                        return AimpPlayer.PlayState.STOPPED;
+                }
+            }
+
+            @Override
+            protected boolean isConverged(Object truth) {
+                return truth == mPhone.getPlayState();
+            }
+        });
+        fields.add(new StateField("position") {
+            @Override
+            protected Object getTruth() {
+                // jumps only, otherwise the position moves by itself on both sides
+                return mPositionJumps;
+            }
+
+            @Override
+            protected boolean isConverged(Object truth) {
+                int position = (int) (mAimp.getPosition() / 1000);
+                return Math.abs(mPhone.getSongPlayPosition() - position) <= POSITION_TOLERANCE;
+            }
+        });
+        fields.add(new StateField("volume") {
+            @Override
+            protected Object getTruth() {
+                return mAimp.getStatus(EmulatedPlayer.STATUS_VOLUME);
+            }
+
+            @Override
+            protected boolean isConverged(Object truth) {
+                return truth.equals(mPhone.getVolume());
+            }
+        });
+        fields.add(new StateField("shuffle") {
+            @Override
+            protected Object getTruth() {
+                return mAimp.getStatus(EmulatedPlayer.STATUS_SHUFFLE) != 0;
+            }
+
+            @Override
+            protected boolean isConverged(Object truth) {
+                return truth.equals(mPhone.isShuffle());
+            }
+        });
+        fields.add(new StateField("repeat") {
+            @Override
+            protected Object getTruth() {
+                return mAimp.getStatus(EmulatedPlayer.STATUS_REPEAT_SONG) != 0;
+            }
+
+            @Override
+            protected boolean isConverged(Object truth) {
+                return truth.equals(mPhone.isRepeatSong());
+            }
+        });
+        fields.add(new StateField("mute") {
+            @Override
+            protected Object getTruth() {
+                return mAimp.getStatus(EmulatedPlayer.STATUS_MUTE) != 0;
+            }
+
+            @Override
+            protected boolean isConverged(Object truth) {
+                return truth.equals(mPhone.isMute());
+            }
+        });
+        fields.add(new StateField("playlists") {
+            @Override
+            protected Object getTruth() {
+                StringBuilder key = new StringBuilder();
+                for (EmulatedPlaylist pl: mAimp.getPlaylists()) {
+                    key.append(pl.getId()).append(':').append(pl.size()).append(';');
+                }
+                return key.toString();
+            }
+
+            @Override
+            protected boolean isConverged(Object truth) {
+                StringBuilder key = new StringBuilder();
+                for (Playlist pl: mPhone.getPlaylists()) {
+                    key.append(pl.getId()).append(':').append(pl.getSongs().size()).append(';');
+                }
+                return truth.equals(key.toString());
+            }
+        });
+        return fields;
+    }
+
+    private String getAimpSong() {
+        synchronized (mAimp) {
+            return mAimp.getCurrentPlaylistId() + "/" + mAimp.getCurrentSongName();
+        }
+    }
+
+    private String getPhoneSong() {
+        synchronized (mPhone) {
+            Playlist pl = mPhone.getCurrentPlaylist();
+            Song song = mPhone.getCurrentSong();
+            return (pl == null ? -1 : pl.getId()) + "/" + (song == null ? "" : song.getName());
+        }
+    }
+
+
+
+    /**
+     * Run a simulation and print the report. Exits with code 1 if a limit is exceeded, so it can be a step of a build.
+     * Options: --seed, --duration (s), --playlists, --songs, --interval (s), --playlists-period (ms),
+     * --playstate-period (ms), --others-period (ms), --max-p95 field=ms (may be repeated),
+     * --cache (true to read through CachingPlugin), --max-requests (per hour), --max-bytes (per hour)
+     */
+    public static void main(String[] args) throws Exception {
+        Simulation simulation = new Simulation();
+        int playlists = 3;
+        int songs = 200;
+        final long[] periods = {
+                AimpPlayer.defaultSyncParams().getPlaylistsUpdatePeriod(),
+                AimpPlayer.defaultSyncParams().getPlaystateUpdatePeriod(),
+                AimpPlayer.defaultSyncParams().getOthersUpdatePeriod()
+        };
+        Map<String, Long> maxLatencies = new LinkedHashMap<String, Long>();
+        long maxRequests = -1;
+        long maxBytes = -1;
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Value of " + option + " is missed");
+            }
+            String value = args[++i];
+            if ("--seed".equals(option)) {
+                simulation.setSeed(Long.parseLong(value));
+            } else if ("--duration".equals(option)) {
+                simulation.setDuration(Long.parseLong(value) * 1000);
+            } else if ("--playlists".equals(option)) {
+                playlists = Integer.parseInt(value);
+            } else if ("--songs".equals(option)) {
+                songs = Integer.parseInt(value);
+            } else if ("--interval".equals(option)) {
+                simulation.setEventsInterval(Integer.parseInt(value) * 1000);
+            } else if ("--playlists-period".equals(option)) {
+                periods[0] = Long.parseLong(value);
+            } else if ("--playstate-period".equals(option)) {
+                periods[1] = Long.parseLong(value);
+            } else if ("--others-period".equals(option)) {
+                periods[2] = Long.parseLong(value);
+            } else if ("--cache".equals(option)) {
+                simulation.setCache(Boolean.parseBoolean(value));
+            } else if ("--max-p95".equals(option)) {
+                int eq = value.indexOf('=');
+                if (eq < 0) {
+                    throw new IllegalArgumentException("Value of --max-p95 must be field=ms. Given value is " + value);
+                }
+                maxLatencies.put(value.substring(0, eq), Long.parseLong(value.substring(eq + 1)));
+            } else if ("--max-requests".equals(option)) {
+                maxRequests = Long.parseLong(value);
+            } else if ("--max-bytes".equals(option)) {
+                maxBytes = Long.parseLong(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+        simulation.setPlaylists(playlists, songs);
+        simulation.setSyncParams(new SyncParams() {
+            @Override
+            public long getPlaylistsUpdatePeriod() {
+                return periods[0];
+            }
+
+            @Override
+            public long getPlaystateUpdatePeriod() {
+                return periods[1];
+            }
+
+            @Override
+            public long getOthersUpdatePeriod() {
+                return periods[2];
+            }
+        });
+
+        SimulationReport report = simulation.run();
+        System.out.print(report);
+
+        List<String> failures = new ArrayList<String>();
+        for (Map.Entry<String, Long> entry: maxLatencies.entrySet()) {
+            StateField field = report.getField(entry.getKey());
+            if (field == null) {
+                throw new IllegalArgumentException("Unknown field " + entry.getKey());
+            }
+            if (field.getLatency(95) > entry.getValue()) {
+                failures.add("p95 of " + field.getName() + " is " + field.getLatency(95) + " ms, limit is " + entry.getValue() + " ms");
+            }
+        }
+        if (maxRequests >= 0 && report.getRequestsPerHour() > maxRequests) {
+            failures.add(report.getRequestsPerHour() + " requests per hour, limit is " + maxRequests);
+        }
+        if (maxBytes >= 0 && report.getBytesPerHour() > maxBytes) {
+            failures.add(report.getBytesPerHour() + " bytes per hour, limit is " + maxBytes);
+        }
+        for (String failure: failures) {
+            System.out.println("FAILED: " + failure);
+        }
+        System.exit(failures.isEmpty() ? 0 : 1);
+    }
+
+    /**
+     * Player which lets to wait until the connection is made
+     */
+    static class SimulatedPhone extends AimpPlayer {
+
+        private final CountDownLatch mConnected = new CountDownLatch(1);
+
+        @Override
+        protected void doConnectAndInit() throws ApiException, IOException, InterruptedException {
+            try {
+                super.doConnectAndInit();
+            } finally {
+                mConnected.countDown();
+            }
+        }
+
+        void awaitConnect() throws InterruptedException {
+            mConnected.await();
+        }
+    }
+
+}
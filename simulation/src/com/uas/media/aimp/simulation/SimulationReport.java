@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.simulation;
+
+import com.uas.media.aimp.api.TrafficMeter;
+import com.uas.media.aimp.api.impl.CachingPlugin;
+import com.uas.media.aimp.player.SyncParams;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Results of a {@link Simulation}: how long the phone was late for each field of the state,
+ * and how many requests and bytes the sync took. Loading of the state on connect is not counted.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class SimulationReport {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private final long mDuration;
+    private final SyncParams mSyncParams;
+    private final List<StateField> mFields;
+    private final Map<String, Integer> mEvents = new TreeMap<String, Integer>();
+    private int mSongEnds;
+    private int mMaxPositionDrift;
+    private Map<String, Long> mRequests = Collections.emptyMap();
+    private long mBytesIn;
+    private long mBytesOut;
+    private List<TrafficMeter.Usage> mScopes = Collections.emptyList();
+    private CachingPlugin.Stats mCacheStats;
+
+
+    SimulationReport(long duration, SyncParams syncParams, List<StateField> fields) {
+        mDuration = duration;
+        mSyncParams = syncParams;
+        mFields = new ArrayList<StateField>(fields);
+    }
+
+    void addEvent(ScriptedEvent event) {
+        Integer count = mEvents.get(event.getName());
+        mEvents.put(event.getName(), count == null ? 1 : count + 1);
+    }
+
+    void addSongEnd() {
+        mSongEnds++;
+    }
+
+    void setMaxPositionDrift(int drift) {
+        mMaxPositionDrift = drift;
+    }
+
+    void setRequests(Map<String, Long> requests) {
+        mRequests = requests;
+    }
+
+    void setTraffic(long bytesIn, long bytesOut, List<TrafficMeter.Usage> scopes) {
+        mBytesIn = bytesIn;
+        mBytesOut = bytesOut;
+        mScopes = scopes;
+    }
+
+    void setCacheStats(CachingPlugin.Stats stats) {
+        mCacheStats = stats;
+    }
+
+    /**
+     * Simulated time in milliseconds
+     */
+    public long getDuration() {
+        return mDuration;
+    }
+
+    public List<StateField> getFields() {
+        return Collections.unmodifiableList(mFields);
+    }
+
+    /**
+     * @return Field or null if there is no field with such name
+     */
+    public StateField getField(String name) {
+        for (StateField field: mFields) {
+            if (field.getName().equals(name)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Count of songs which ended by themselves and were followed by the next ones
+     */
+    public int getSongEnds() {
+        return mSongEnds;
+    }
+
+    /**
+     * Largest difference in seconds between the position which the phone counts and the one of AIMP,
+     * while AIMP plays and the phone shows all the changes of the state
+     */
+    public int getMaxPositionDrift() {
+        return mMaxPositionDrift;
+    }
+
+    public long getRequests() {
+        long sum = 0;
+        for (Long count: mRequests.values()) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    public long getRequestsPerHour() {
+        return perHour(getRequests());
+    }
+
+    public long getBytesPerHour() {
+        return perHour(mBytesIn + mBytesOut);
+    }
+
+    public void dump(Appendable out) throws IOException {
+        out.append(String.format(Locale.US, "Simulated %d s, sync periods: playlists %d ms, play state %d ms, others %d ms%n",
+                mDuration / 1000, mSyncParams.getPlaylistsUpdatePeriod(),
+                mSyncParams.getPlaystateUpdatePeriod(), mSyncParams.getOthersUpdatePeriod()));
+        out.append("Events on AIMP: ").append(String.valueOf(mSongEnds)).append(" songs ended");
+        for (Map.Entry<String, Integer> entry: mEvents.entrySet()) {
+            out.append(", ").append(String.valueOf(entry.getValue())).append(' ').append(entry.getKey());
+        }
+        out.append(String.format("%n%n"));
+
+        out.append(String.format(Locale.US, "%-12s %8s %10s %10s %10s %10s %11s %8s%n",
+                "field", "changes", "converged", "p50 ms", "p95 ms", "max ms", "superseded", "pending"));
+        for (StateField field: mFields) {
+            out.append(String.format(Locale.US, "%-12s %8d %10d %10s %10s %10s %11d %8s%n",
+                    field.getName(), field.getChanges(), field.getConverged(),
+                    latency(field, 50), latency(field, 95), latency(field, 100),
+                    field.getSuperseded(), field.isPending() ? "yes" : "no"));
+        }
+        out.append(String.format(Locale.US, "Max drift of the song position: %d s%n%n", mMaxPositionDrift));
+
+        out.append(String.format(Locale.US, "Requests: %d, %d per hour%n", getRequests(), getRequestsPerHour()));
+        for (Map.Entry<String, Long> entry: mRequests.entrySet()) {
+            out.append(String.format(Locale.US, "  %-24s %10d per hour%n", entry.getKey(), perHour(entry.getValue())));
+        }
+        out.append(String.format(Locale.US, "Traffic: %d bytes in, %d bytes out, %d bytes per hour%n",
+                mBytesIn, mBytesOut, getBytesPerHour()));
+        for (TrafficMeter.Usage scope: mScopes) {
+            out.append(String.format(Locale.US, "  %-24s %10d bytes per hour%n", scope.getName(), perHour(scope.getTotal())));
+        }
+        if (mCacheStats != null) {
+            out.append(String.format(Locale.US, "Cache: %s%n", mCacheStats));
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        try {
+            dump(result);
+        } catch (IOException ex) {
+            // StringBuilder doesn't throw it
+        }
+        return result.toString();
+    }
+
+    private long perHour(long value) {
+        return value * HOUR / mDuration;
+    }
+
+    private static String latency(StateField field, double percentile) {
+        long latency = field.getLatency(percentile);
+        return latency < 0 ? "-" : String.valueOf(latency);
+    }
+
+}
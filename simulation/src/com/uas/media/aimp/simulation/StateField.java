@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Part of the state which is compared between AIMP and the phone. Each time the value of AIMP changes,
+ * the time passed until the phone shows it is measured.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public abstract class StateField {
+
+    private final String mName;
+
+    private Object mTruth;
+    private boolean mIsStarted;
+    private boolean mIsPending;
+    private long mChangeTime;
+
+    private int mChanges;
+    private int mSuperseded;
+    private long[] mLatencies = new long[16];
+    private int mLatenciesCount;
+
+
+    protected StateField(String name) {
+        mName = name;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return Value of AIMP, it's compared by equals() with the previous one to find changes
+     */
+    protected abstract Object getTruth();
+
+    /**
+     * @param truth Current value of AIMP
+     * @return true if the phone shows the value
+     */
+    protected abstract boolean isConverged(Object truth);
+
+    /**
+     * Compare the state at the time. Must be called each time when the state of AIMP or the phone may change.
+     */
+    public void sample(long now) {
+        Object truth = getTruth();
+        if (!mIsStarted) {
+            // the initial value is loaded on connect
+            mIsStarted = true;
+            mTruth = truth;
+        } else if (mTruth == null ? truth != null : !mTruth.equals(truth)) {
+            mTruth = truth;
+            if (mIsPending) {
+                mSuperseded++;
+            }
+            mChanges++;
+            mIsPending = true;
+            mChangeTime = now;
+        }
+        if (mIsPending && isConverged(truth)) {
+            mIsPending = false;
+            if (mLatenciesCount == mLatencies.length) {
+                mLatencies = Arrays.copyOf(mLatencies, mLatencies.length * 2);
+            }
+            mLatencies[mLatenciesCount++] = now - mChangeTime;
+        }
+    }
+
+    /**
+     * Count of changes of AIMP, the initial value is not counted
+     */
+    public int getChanges() {
+        return mChanges;
+    }
+
+    /**
+     * Count of changes which were replaced by the next ones before the phone showed them
+     */
+    public int getSuperseded() {
+        return mSuperseded;
+    }
+
+    /**
+     * @return true if the phone doesn't show the last change yet
+     */
+    public boolean isPending() {
+        return mIsPending;
+    }
+
+    /**
+     * Count of changes which the phone showed
+     */
+    public int getConverged() {
+        return mLatenciesCount;
+    }
+
+    /**
+     * @param percentile From 0 to 100
+     * @return Latency in milliseconds of the converged changes, -1 if there are no such changes
+     */
+    public long getLatency(double percentile) {
+        if (mLatenciesCount == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(mLatencies, mLatenciesCount);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+}
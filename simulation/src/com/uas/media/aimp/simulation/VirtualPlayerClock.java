@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2013, Sorokin Alexander (uas.sorokin@gmail.com)
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *   notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in the
+ *   documentation and/or other materials provided with the distribution.
+ *
+ * 3. The names of the authors may not be used to endorse or promote products
+ *   derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED
+ * TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.uas.media.aimp.simulation;
+
+import com.uas.media.aimp.player.PlayerClock;
+import com.uas.media.aimp.player.PlayerTimer;
+
+import java.util.PriorityQueue;
+
+/**
+ * Clock whose time moves only by {@link #advanceTo(long)}. Tasks of all timers run on the thread
+ * which advances the clock, in order of their scheduled time and then in order of scheduling,
+ * so runs are deterministic.
+ *
+ * User: uas.sorokin@gmail.com
+ */
+public class VirtualPlayerClock implements PlayerClock {
+
+    private final PriorityQueue<ScheduledTask> mQueue = new PriorityQueue<ScheduledTask>();
+    private long mNow;
+    private long mSequence;
+
+
+    /**
+     * @param startTime Initial wall time in milliseconds
+     */
+    public VirtualPlayerClock(long startTime) {
+        mNow = startTime;
+    }
+
+    @Override
+    public synchronized long currentTimeMillis() {
+        return mNow;
+    }
+
+    @Override
+    public synchronized long nanoTime() {
+        return mNow * 1000000;
+    }
+
+    @Override
+    public PlayerTimer createTimer(String name) {
+        return new VirtualTimer();
+    }
+
+    /**
+     * @return Time of the next scheduled run, Long.MAX_VALUE if there are no tasks
+     */
+    public synchronized long getNextTaskTime() {
+        ScheduledTask next = mQueue.peek();
+        return next == null ? Long.MAX_VALUE : next.mTime;
+    }
+
+    /**
+     * Run all tasks scheduled up to the time, moving the clock to the time of each run
+     */
+    public void advanceTo(long time) {
+        while (true) {
+            ScheduledTask task;
+            synchronized (this) {
+                task = mQueue.peek();
+                if (task == null || task.mTime > time) {
+                    mNow = Math.max(mNow, time);
+                    return;
+                }
+                mQueue.poll();
+                mNow = Math.max(mNow, task.mTime);
+            }
+            if (!task.mTimer.mIsCancelled) {
+                task.mTask.run();
+                // fixed rate: the next run doesn't depend on how long this one took
+                synchronized (this) {
+                    if (!task.mTimer.mIsCancelled && task.mPeriod > 0) {
+                        task.mTime += task.mPeriod;
+                        task.mSequence = mSequence++;
+                        mQueue.add(task);
+                    }
+                }
+            }
+        }
+    }
+
+    private synchronized void addTask(VirtualTimer timer, Runnable task, long delay, long period) {
+        mQueue.add(new ScheduledTask(timer, task, mNow + delay, period, mSequence++));
+    }
+
+
+    private class VirtualTimer implements PlayerTimer {
+        private volatile boolean mIsCancelled;
+
+        @Override
+        public void scheduleAtFixedRate(Runnable task, long delay, long period) {
+            if (task == null) {
+                throw new IllegalArgumentException("Task is null");
+            }
+            if (period <= 0) {
+                throw new IllegalArgumentException("Period must be positive. Given value is " + period);
+            }
+            addTask(this, task, delay, period);
+        }
+
+        @Override
+        public void schedule(Runnable task, long delay) {
+            if (task == null) {
+                throw new IllegalArgumentException("Task is null");
+            }
+            if (!mIsCancelled) {
+                // zero period means a single run
+                addTask(this, task, delay, 0);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            mIsCancelled = true;
+        }
+    }
+
+    private static class ScheduledTask implements Comparable<ScheduledTask> {
+        private final VirtualTimer mTimer;
+        private final Runnable mTask;
+        private final long mPeriod;
+        private long mTime;
+        private long mSequence;
+
+        ScheduledTask(VirtualTimer timer, Runnable task, long time, long period, long sequence) {
+            mTimer = timer;
+            mTask = task;
+            mTime = time;
+            mPeriod = period;
+            mSequence = sequence;
+        }
+
+        @Override
+        public int compareTo(ScheduledTask another) {
+            if (mTime != another.mTime) {
+                return mTime < another.mTime ? -1 : 1;
+            }
+            return mSequence < another.mSequence ? -1 : (mSequence == another.mSequence ? 0 : 1);
+        }
+    }
+
+}